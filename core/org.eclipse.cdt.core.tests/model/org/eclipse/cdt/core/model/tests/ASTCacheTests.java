@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.cdt.core.model.tests;
 
+import java.io.ByteArrayInputStream;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -84,6 +86,7 @@ public class ASTCacheTests extends BaseTestCase {
 	private ICProject fProject;
 	private ITranslationUnit fTU1;
 	private ITranslationUnit fTU2;
+	private IFile fFile1;
 	private IIndex fIndex;
 
 	public ASTCacheTests(String name) {
@@ -103,7 +106,7 @@ public class ASTCacheTests extends BaseTestCase {
 		IProgressMonitor npm= new NullProgressMonitor();
 		fProject= createProject("ASTCacheTest");
 		assertNotNull(fProject);
-		IFile file1= createFile(fProject.getProject(), "source1.cpp", SOURCE1);
+		IFile file1= fFile1= createFile(fProject.getProject(), "source1.cpp", SOURCE1);
 		assertNotNull(file1);
 		IFile file2= createFile(fProject.getProject(), "source2.cpp", SOURCE2);
 		assertNotNull(file2);
@@ -299,6 +302,68 @@ public class ASTCacheTests extends BaseTestCase {
 		}
 	}
 
+	public void testReuseOfUnchangedAST() throws Exception {
+		final ASTCache cache= new ASTCache();
+		cache.setActiveElement(fTU1);
+		final IASTTranslationUnit[] result= {null};
+		ASTRunnable storeAST= new ASTRunnable() {
+			public IStatus runOnAST(ILanguage lang, IASTTranslationUnit ast) {
+				result[0]= ast;
+				return Status.OK_STATUS;
+			}
+		};
+		cache.runOnAST(fTU1, true, null, storeAST);
+		IASTTranslationUnit ast= result[0];
+		assertNotNull(ast);
+
+		// reconciling without a change of the contents
+		cache.aboutToBeReconciled(fTU1);
+		assertSame(ast, cache.createAST(fTU1, fIndex, null));
+		cache.reconciled(ast, fTU1);
+
+		// the AST is not reused for another translation unit
+		cache.setActiveElement(fTU2);
+		assertNotSame(ast, cache.createAST(fTU1, fIndex, null));
+
+		// reconciling after a change of the contents
+		cache.setActiveElement(fTU1);
+		cache.runOnAST(fTU1, true, null, storeAST);
+		ast= result[0];
+		fFile1.setContents(new ByteArrayInputStream("void foo3(int) {}".getBytes()), true, false, null);
+		cache.aboutToBeReconciled(fTU1);
+		IASTTranslationUnit newAST= cache.createAST(fTU1, fIndex, null);
+		assertNotSame(ast, newAST);
+		assertEquals("void foo3(int) {}", newAST.getDeclarations()[0].getRawSignature());
+	}
+
+	public void testNoReuseAfterChangeOfHeader() throws Exception {
+		IFile header= createFile(fProject.getProject(), "reuse.h", "int h1;");
+		IFile source= createFile(fProject.getProject(), "reuse.cpp", "#include \"reuse.h\"\nint s;");
+		ITranslationUnit tu= (ITranslationUnit) CoreModel.getDefault().create(source);
+		final ASTCache cache= new ASTCache();
+		cache.setActiveElement(tu);
+		final IASTTranslationUnit[] result= {null};
+		ASTRunnable storeAST= new ASTRunnable() {
+			public IStatus runOnAST(ILanguage lang, IASTTranslationUnit ast) {
+				result[0]= ast;
+				return Status.OK_STATUS;
+			}
+		};
+		cache.runOnAST(tu, true, null, storeAST);
+		IASTTranslationUnit ast= result[0];
+		assertNotNull(ast);
+
+		// the included file is unchanged
+		cache.aboutToBeReconciled(tu);
+		assertSame(ast, cache.createAST(tu, fIndex, null));
+		cache.reconciled(ast, tu);
+
+		// the included file is changed while the index is not updated
+		header.setContents(new ByteArrayInputStream("int h22;".getBytes()), true, false, null);
+		cache.aboutToBeReconciled(tu);
+		assertNotSame(ast, cache.createAST(tu, fIndex, null));
+	}
+
 	private void waitForAST(ASTCache cache, ITranslationUnit tUnit, ASTRunnable runnable) {
 		if (DEBUG) System.out.println("waiting for "+tUnit.getElementName());
 		long start= System.currentTimeMillis();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 QNX Software Systems and others.
+ * Copyright (c) 2000, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,8 +11,11 @@
 
 package org.eclipse.cdt.core.model.tests;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.HashSet;
+import java.util.Set;
 
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -29,6 +32,7 @@ import org.eclipse.cdt.core.settings.model.ICProjectDescription;
 import org.eclipse.cdt.core.testplugin.CProjectHelper;
 import org.eclipse.cdt.core.testplugin.CTestPlugin;
 import org.eclipse.cdt.core.testplugin.util.ExpectedStrings;
+import org.eclipse.cdt.internal.core.model.CModelManager;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
@@ -425,6 +429,58 @@ public class BinaryTests extends TestCase {
         assertTrue("A Binary", myBinary != null);
     }
 
+    /***
+     * The binary runner examines the files in parallel batches, all binaries have to be 
+     * found, the other files must not show up.
+     */
+    public void testBinaryRunnerWithManyFiles() throws Exception {
+        final int count= 150;
+        for (int i= 0; i < count; i++) {
+            testProject.getProject().getFile("copy_" + i).create(new FileInputStream(
+            		CTestPlugin.getDefault().getFileInPlugin(new Path("resources/exe/x86/o.g/exe_g"))),
+					false, monitor);
+            testProject.getProject().getFile("data_" + i).create(
+            		new ByteArrayInputStream("no binary".getBytes()), false, monitor);
+        }
+        restartBinaryRunner();
+
+        Set<String> names= new HashSet<String>();
+        for (IBinary binary : testProject.getBinaryContainer().getBinaries()) {
+            names.add(binary.getElementName());
+        }
+        for (int i= 0; i < count; i++) {
+            assertTrue("copy_" + i, names.contains("copy_" + i));
+            assertFalse("data_" + i, names.contains("data_" + i));
+        }
+    }
+
+    /***
+     * A file found not to be a binary is examined again by the binary runner after it has 
+     * been modified.
+     */
+    public void testBinaryRunnerAfterModification() throws Exception {
+        IFile file= testProject.getProject().getFile("modified");
+        file.create(new ByteArrayInputStream("no binary".getBytes()), false, monitor);
+        restartBinaryRunner();
+        assertNull(CProjectHelper.findBinary(testProject, "modified"));
+
+        // the unchanged file is skipped, it is remembered not to be a binary.
+        restartBinaryRunner();
+        assertNull(CProjectHelper.findBinary(testProject, "modified"));
+
+        file.setContents(new FileInputStream(
+        		CTestPlugin.getDefault().getFileInPlugin(new Path("resources/exe/x86/o.g/exe_g"))),
+				false, false, monitor);
+        restartBinaryRunner();
+        assertNotNull(CProjectHelper.findBinary(testProject, "modified"));
+    }
+
+    private void restartBinaryRunner() {
+        CModelManager manager= CModelManager.getDefault();
+        manager.removeBinaryRunner(testProject);
+        manager.getBinaryRunner(testProject).waitIfRunning();
+    }
+
 
 
     
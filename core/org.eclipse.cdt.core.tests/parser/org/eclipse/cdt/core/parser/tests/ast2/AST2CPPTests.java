@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2011 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -124,11 +124,13 @@ import org.eclipse.cdt.core.dom.ast.cpp.ICPPVariable;
 import org.eclipse.cdt.core.parser.ParserLanguage;
 import org.eclipse.cdt.core.parser.util.CharArrayUtils;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTNameBase;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTTranslationUnit;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ClassTypeHelper;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPInternalBinding;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.OverloadableOperator;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.CPPSemantics;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.CPPVisitor;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.FunctionSignature;
 import org.eclipse.cdt.internal.core.index.IndexCPPSignatureUtil;
 import org.eclipse.cdt.internal.core.parser.ParserException;
 
@@ -9391,4 +9393,50 @@ public class AST2CPPTests extends AST2BaseTest {
 		assertTrue(qn.isDeclaration());
 		assertTrue(qn.getLastName().isDeclaration());
 	}
+
+	//	int put(bool);
+	//	int put(short);
+	//	int put(int);
+	//	int put(long);
+	//	int put(double);
+	//	int put(char);
+	//	int put(const char*);
+	//	int put(const void*, int= 0);
+	//	void test(int i, double d, char c, const int* p) {
+	//		int x1= put(i);
+	//		int x2= put(d);
+	//		int x3= put(c);
+	//		int x4= put("s");
+	//		int x5= put(p);
+	//		int x6= put(p, 1);
+	//		int x7= put(i + 1);
+	//		int x8= put(c + 1);
+	//	}
+	public void testSignaturesOfOverloadSetAreReused() throws Exception {
+		BindingAssertionHelper bh= new BindingAssertionHelper(getAboveComment(), true);
+		CPPASTTranslationUnit tu= (CPPASTTranslationUnit) bh.getTranslationUnit();
+		FunctionSignature.Cache cache= tu.getFunctionSignatureCache();
+		cache.clear();
+
+		assertFirstParameterType("int", bh.assertNonProblem("put(i)", 3, ICPPFunction.class));
+		assertFirstParameterType("double", bh.assertNonProblem("put(d)", 3, ICPPFunction.class));
+		assertFirstParameterType("char", bh.assertNonProblem("put(c)", 3, ICPPFunction.class));
+		assertFirstParameterType("const char *", bh.assertNonProblem("put(\"s\")", 3, ICPPFunction.class));
+		assertFirstParameterType("const void *", bh.assertNonProblem("put(p)", 3, ICPPFunction.class));
+		assertFirstParameterType("const void *", bh.assertNonProblem("put(p, 1)", 3, ICPPFunction.class));
+
+		// each function of the overload set is analyzed once.
+		assertEquals(8, cache.size());
+		assertFirstParameterType("int", bh.assertNonProblem("put(i + 1)", 3, ICPPFunction.class));
+		assertEquals(8, cache.size());
+
+		// after clearing the cache the signatures are computed anew.
+		cache.clear();
+		assertFirstParameterType("int", bh.assertNonProblem("put(c + 1)", 3, ICPPFunction.class));
+		assertEquals(8, cache.size());
+	}
+
+	private void assertFirstParameterType(String expected, ICPPFunction fn) throws Exception {
+		assertEquals(expected, ASTTypeUtil.getType(fn.getType().getParameterTypes()[0]));
+	}
 }
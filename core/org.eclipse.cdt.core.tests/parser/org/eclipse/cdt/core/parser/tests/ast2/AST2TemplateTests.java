@@ -84,9 +84,11 @@ import org.eclipse.cdt.core.parser.ParserLanguage;
 import org.eclipse.cdt.core.parser.util.ObjectMap;
 import org.eclipse.cdt.internal.core.dom.parser.Value;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTNameBase;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTTranslationUnit;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPDeferredClassInstance;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPInternalUnknownScope;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPUnknownBinding;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.TemplateInstantiationCache;
 
 public class AST2TemplateTests extends AST2BaseTest {
 	
@@ -5402,4 +5404,65 @@ public class AST2TemplateTests extends AST2BaseTest {
 	public void testAddressOfMethodForInstantiation_Bug344310() throws Exception {
 		parseAndCheckBindings();
 	}
+
+	//	template<typename T> int f(T t) {return 0;}
+	//	template<typename T> int g(T* t) {return 0;}
+	//	struct A {};
+	//	void test(A a1, A a2, A a3, int i1, int i2) {
+	//		0 + f(a1);
+	//		0 + f(a2);
+	//		0 + f(i1);
+	//		0 + f(i2);
+	//		0 + g(i1);
+	//		0 + g(i2);
+	//		0 + f(a3);
+	//		0 + g(&i1);
+	//	}
+	public void testFunctionInstantiationsAreCached() throws Exception {
+		BindingAssertionHelper bh= new BindingAssertionHelper(getAboveComment(), true);
+		CPPASTTranslationUnit tu= (CPPASTTranslationUnit) bh.getTranslationUnit();
+		TemplateInstantiationCache cache= tu.getTemplateInstantiationCache();
+		cache.clear();
+
+		ICPPFunction f1= bh.assertNonProblem("f(a1)", 1);
+		ICPPFunction f2= bh.assertNonProblem("f(a2)", 1);
+		assertSame(f1, f2);
+		assertInstance(f1, ICPPTemplateInstance.class);
+
+		ICPPFunction f3= bh.assertNonProblem("f(i1)", 1);
+		ICPPFunction f4= bh.assertNonProblem("f(i2)", 1);
+		assertSame(f3, f4);
+		assertNotSame(f1, f3);
+
+		// failed deductions are cached, too.
+		bh.assertProblem("g(i1)", 1);
+		bh.assertProblem("g(i2)", 1);
+		assertEquals(3, cache.size());
+
+		// after clearing the cache the instances are computed anew, with the same result.
+		cache.clear();
+		assertSame(f1, bh.assertNonProblem("f(a3)", 1));
+		ICPPFunction g1= bh.assertNonProblem("g(&i1)", 1);
+		assertInstance(g1, ICPPTemplateInstance.class);
+		assertEquals(2, cache.size());
+	}
+
+	//	struct B {
+	//		template<typename T> int m(T t) {return 0;}
+	//	};
+	//	void test(B b, int i1, int i2, char c) {
+	//		0 + b.m(i1);
+	//		0 + b.m(i2);
+	//		0 + b.m(c);
+	//	}
+	public void testMethodInstantiationsAreCached() throws Exception {
+		BindingAssertionHelper bh= new BindingAssertionHelper(getAboveComment(), true);
+		ICPPFunction m1= bh.assertNonProblem("m(i1)", 1);
+		ICPPFunction m2= bh.assertNonProblem("m(i2)", 1);
+		ICPPFunction m3= bh.assertNonProblem("m(c)", 1);
+		assertSame(m1, m2);
+		assertNotSame(m1, m3);
+		assertEquals("int", ASTTypeUtil.getType(m1.getType().getParameterTypes()[0]));
+		assertEquals("char", ASTTypeUtil.getType(m3.getType().getParameterTypes()[0]));
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2010, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,6 +23,7 @@ import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
 import org.eclipse.cdt.internal.core.parser.scanner.AbstractCharArray;
 import org.eclipse.cdt.internal.core.parser.scanner.FileCharArray;
 import org.eclipse.cdt.internal.core.parser.scanner.LazyCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.StreamHasher;
 
 public class FileCharArrayTests extends BaseTestCase {
 	
@@ -63,6 +64,46 @@ public class FileCharArrayTests extends BaseTestCase {
 		testFile(false, LazyCharArray.CHUNK_SIZE*3+1);
 	}
 
+	public void testAsciiAndDecodedChunks() throws IOException {
+		// the second chunk contains a character that needs to be decoded
+		final int charSize= LazyCharArray.CHUNK_SIZE*3+1;
+		final int nonAscii= LazyCharArray.CHUNK_SIZE + 5;
+		StringBuilder expected= new StringBuilder();
+		fFile= File.createTempFile("data", ".txt");
+		OutputStream out= new BufferedOutputStream(new FileOutputStream(fFile));
+		try {
+			for (int i = 0; i < charSize; i++) {
+				if (i == nonAscii) {
+					out.write(0xc2);
+					out.write(0xa2);
+					expected.append('\u00a2');
+				} else {
+					out.write(i % 127);
+					expected.append((char) (i % 127));
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+		AbstractCharArray charArray;
+		final FileInputStream inputStream = new FileInputStream(fFile);
+		try {
+			charArray = FileCharArray.create(fFile.getPath(), "utf-8", inputStream);
+		} finally {
+			inputStream.close();
+		}
+		for (int j = 0; j < 2; j++) {
+			char[] chars= new char[charSize];
+			charArray.arraycopy(0, chars, 0, charSize);
+			assertEquals(expected.toString(), new String(chars));
+			assertEquals('\u00a2', charArray.get(nonAscii));
+			assertEquals(charSize, charArray.getLength());
+			assertEquals(StreamHasher.hash(expected.toString()), charArray.getContentsHash());
+			((LazyCharArray) charArray).testClearData();
+		}
+	}
+
 	private void testFile(boolean aligned, int charSize) throws IOException {
 		createFile(aligned, charSize);
 		
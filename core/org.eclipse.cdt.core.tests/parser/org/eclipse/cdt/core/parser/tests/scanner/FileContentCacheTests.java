@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.core.parser.tests.scanner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestSuite;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.parser.FileContentCache;
+import org.eclipse.cdt.internal.core.parser.InternalParserUtil;
+import org.eclipse.cdt.internal.core.parser.scanner.AbstractCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
+
+public class FileContentCacheTests extends BaseTestCase {
+
+	public static TestSuite suite() {
+		return suite(FileContentCacheTests.class);
+	}
+
+	private final List<File> fFiles= new ArrayList<File>();
+	private FileContentCache fCache;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fCache= FileContentCache.getInstance();
+		fCache.clear();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		fCache.setSizeLimit(-1);
+		fCache.clear();
+		for (File file : fFiles) {
+			file.delete();
+		}
+		super.tearDown();
+	}
+
+	private File createFile(String content) throws IOException {
+		File file= File.createTempFile("cache", ".h"); //$NON-NLS-1$ //$NON-NLS-2$
+		fFiles.add(file);
+		writeFile(file, content);
+		return file;
+	}
+
+	private void writeFile(File file, String content) throws IOException {
+		FileOutputStream out= new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("US-ASCII")); //$NON-NLS-1$
+		} finally {
+			out.close();
+		}
+	}
+
+	private AbstractCharArray read(File file) {
+		InternalFileContent content= InternalParserUtil.createExternalFileContent(file.getPath(), "US-ASCII"); //$NON-NLS-1$
+		assertNotNull(content);
+		return content.getSource();
+	}
+
+	private String toString(AbstractCharArray chars) {
+		char[] result= new char[chars.getLength()];
+		chars.arraycopy(0, result, 0, result.length);
+		return new String(result);
+	}
+
+	public void testContentIsShared() throws Exception {
+		File file= createFile("#define A 1\n"); //$NON-NLS-1$
+		AbstractCharArray first= read(file);
+		assertEquals("#define A 1\n", toString(first)); //$NON-NLS-1$
+		assertEquals(1, fCache.getEntryCount());
+		assertEquals(24, fCache.getBytesHeld());
+
+		assertSame(first, read(file));
+
+		// different charset
+		InternalFileContent content= InternalParserUtil.createExternalFileContent(file.getPath(), "UTF-8"); //$NON-NLS-1$
+		assertNotSame(first, content.getSource());
+	}
+
+	public void testModifiedFileIsReread() throws Exception {
+		File file= createFile("#define A 1\n"); //$NON-NLS-1$
+		AbstractCharArray first= read(file);
+		writeFile(file, "#define AB 12\n"); //$NON-NLS-1$
+
+		AbstractCharArray second= read(file);
+		assertNotSame(first, second);
+		assertEquals("#define AB 12\n", toString(second)); //$NON-NLS-1$
+		assertEquals(1, fCache.getEntryCount());
+
+		// the entry is removed with the file
+		fCache.remove(file.getPath());
+		AbstractCharArray third= read(file);
+		assertNotSame(second, third);
+		assertEquals("#define AB 12\n", toString(third)); //$NON-NLS-1$
+	}
+
+	public void testSizeLimit() throws Exception {
+		StringBuilder buf= new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			buf.append('x');
+		}
+		final String content= buf.toString();
+		// room for four files of 100 characters each.
+		fCache.setSizeLimit(800);
+		File[] files= new File[6];
+		AbstractCharArray[] contents= new AbstractCharArray[files.length];
+		for (int i = 0; i < files.length; i++) {
+			files[i]= createFile(content);
+			contents[i]= read(files[i]);
+		}
+		assertEquals(4, fCache.getEntryCount());
+		assertEquals(800, fCache.getBytesHeld());
+		assertEquals(2, fCache.getEvictionCount());
+
+		// the least recently used files have been evicted.
+		assertSame(contents[5], read(files[5]));
+		AbstractCharArray reread= read(files[0]);
+		assertNotSame(contents[0], reread);
+		assertEquals(content, toString(reread));
+
+		fCache.setSizeLimit(400);
+		assertEquals(400, fCache.getBytesHeld());
+		assertEquals(2, fCache.getEntryCount());
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2008 IBM Corporation and others.
+ * Copyright (c) 2004, 2011 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,12 +12,22 @@
 package org.eclipse.cdt.core.parser.tests.scanner;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestSuite;
 
+import org.eclipse.cdt.core.dom.ast.IMacroBinding;
+import org.eclipse.cdt.core.dom.parser.IScannerExtensionConfiguration;
+import org.eclipse.cdt.core.dom.parser.cpp.GPPScannerExtensionConfiguration;
+import org.eclipse.cdt.core.parser.FileContent;
 import org.eclipse.cdt.core.parser.IProblem;
 import org.eclipse.cdt.core.parser.IToken;
+import org.eclipse.cdt.core.parser.ParserLanguage;
+import org.eclipse.cdt.core.parser.ParserMode;
+import org.eclipse.cdt.core.parser.ScannerInfo;
+import org.eclipse.cdt.internal.core.parser.scanner.PredefinedMacroCache;
 
 
 /**
@@ -1362,4 +1372,75 @@ public class PreprocessorTests extends PreprocessorTestsBase {
 			validateProblem(i, IProblem.SCANNER_BAD_BINARY_FORMAT, null);
 		}
 	}
+
+	public void testPredefinedMacrosAreShared() throws Exception {
+		PredefinedMacroCache cache= PredefinedMacroCache.getInstance();
+		cache.clear();
+		Map<String, String> symbols= new HashMap<String, String>();
+		symbols.put("OBJ", " 1 ");
+		symbols.put("FUNC(x)", "x+x");
+
+		initializeScanner(FileContent.create("<test-code>", "OBJ FUNC(y)".toCharArray()), ParserLanguage.CPP,
+				ParserMode.COMPLETE_PARSE, new ScannerInfo(symbols));
+		IMacroBinding obj= fScanner.getMacroDefinitions().get("OBJ");
+		validateInteger("1");
+		validateIdentifier("y");
+		validateToken(IToken.tPLUS);
+		validateIdentifier("y");
+		validateEOF();
+
+		// a second preprocessor with the same symbols reuses the definitions, not the macros
+		initializeScanner(FileContent.create("<test-code>", "FUNC(OBJ)".toCharArray()), ParserLanguage.CPP,
+				ParserMode.COMPLETE_PARSE, new ScannerInfo(new HashMap<String, String>(symbols)));
+		assertNotSame(obj, fScanner.getMacroDefinitions().get("OBJ"));
+		assertEquals("1", String.valueOf(fScanner.getMacroDefinitions().get("OBJ").getExpansion()));
+		validateInteger("1");
+		validateToken(IToken.tPLUS);
+		validateInteger("1");
+		validateEOF();
+
+		// different symbols or a different language result in new macros
+		symbols.put("OBJ", "2");
+		initializeScanner(FileContent.create("<test-code>", "OBJ".toCharArray()), ParserLanguage.CPP,
+				ParserMode.COMPLETE_PARSE, new ScannerInfo(symbols));
+		assertNotSame(obj, fScanner.getMacroDefinitions().get("OBJ"));
+		validateInteger("2");
+		validateEOF();
+		initializeScanner(FileContent.create("<test-code>", "OBJ".toCharArray()), ParserLanguage.C,
+				ParserMode.COMPLETE_PARSE, new ScannerInfo(symbols));
+		validateInteger("2");
+		validateEOF();
+
+		// the macros are parsed anew after the cache has been cleared
+		cache.clear();
+		initializeScanner(FileContent.create("<test-code>", "FUNC(OBJ)".toCharArray()), ParserLanguage.CPP,
+				ParserMode.COMPLETE_PARSE, new ScannerInfo(symbols));
+		validateInteger("2");
+		validateToken(IToken.tPLUS);
+		validateInteger("2");
+		validateEOF();
+	}
+
+	public void testPredefinedMacrosDependOnLexerOptions() throws Exception {
+		Map<String, String> symbols= new HashMap<String, String>();
+		symbols.put("DOLLAR", "a$b");
+
+		initializeScanner(FileContent.create("<test-code>", "DOLLAR".toCharArray()), ParserLanguage.CPP,
+				ParserMode.COMPLETE_PARSE, new ScannerInfo(symbols));
+		IMacroBinding withDollar= fScanner.getMacroDefinitions().get("DOLLAR");
+		validateIdentifier("a$b");
+		validateEOF();
+
+		// the expansion of the shared macro must not be reused for a lexer treating '$' differently
+		IScannerExtensionConfiguration noDollar= new GPPScannerExtensionConfiguration() {
+			@Override
+			public boolean support$InIdentifiers() {
+				return false;
+			}
+		};
+		initializeScanner(FileContent.create("<test-code>", "DOLLAR".toCharArray()), ParserLanguage.CPP,
+				ParserMode.COMPLETE_PARSE, new ScannerInfo(symbols), noDollar);
+		assertNotSame(withDollar, fScanner.getMacroDefinitions().get("DOLLAR"));
+		validateIdentifier("a");
+	}
 }
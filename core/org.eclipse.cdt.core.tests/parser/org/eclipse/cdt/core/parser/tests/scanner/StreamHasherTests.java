@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 Google, Inc and others.
+ * Copyright (c) 2010, 2011 Google, Inc and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.cdt.core.parser.tests.scanner;
 
+import java.nio.ByteBuffer;
+
 import junit.framework.TestSuite;
 
 import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
@@ -87,4 +89,24 @@ public class StreamHasherTests extends BaseTestCase {
 			assertEquals(h, hasher.computeHash());
 		}
 	}
+
+	public void testByteChunks() throws Exception {
+		// Verify that ASCII characters supplied as bytes result in the same hash value.
+		final String text= TEXT.replace('\u2014', '-');
+		long h = StreamHasher.hash(text);
+		for (int chunkSize = 1; chunkSize <= 20; chunkSize++) {
+			StreamHasher hasher = new StreamHasher();
+			boolean asBytes= false;
+			for (int offset = 0; offset < text.length(); offset += chunkSize) {
+				String chunk = text.substring(offset, Math.min(offset + chunkSize, text.length()));
+				if (asBytes) {
+					hasher.addChunk(ByteBuffer.wrap(chunk.getBytes("US-ASCII")));
+				} else {
+					hasher.addChunk(chunk.toCharArray());
+				}
+				asBytes= !asBytes;
+			}
+			assertEquals(h, hasher.computeHash());
+		}
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Symbian Software Systems and others.
+ * Copyright (c) 2007, 2011 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,7 @@ import java.util.regex.Pattern;
 import junit.framework.Test;
 
 import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.dom.ILinkage;
 import org.eclipse.cdt.core.dom.IPDOMManager;
 import org.eclipse.cdt.core.dom.ast.DOMException;
 import org.eclipse.cdt.core.dom.ast.IBinding;
@@ -28,13 +29,18 @@ import org.eclipse.cdt.core.dom.ast.ICompositeType;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPMethod;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPNamespace;
 import org.eclipse.cdt.core.index.IIndex;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.index.IIndexManager;
 import org.eclipse.cdt.core.index.IndexFilter;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
 import org.eclipse.cdt.core.model.ICProject;
 import org.eclipse.cdt.core.testplugin.CProjectHelper;
 import org.eclipse.cdt.core.testplugin.CTestPlugin;
 import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
 import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
+import org.eclipse.cdt.internal.core.index.IWritableIndex;
+import org.eclipse.cdt.internal.core.index.IWritableIndexManager;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.runtime.CoreException;
@@ -101,6 +107,91 @@ public class IndexCompositeTests  extends BaseTestCase {
 		}
 	}
 
+	// class A {};
+
+	// class B {};
+	public void testCompositeBindingsAreCachedWhileLocked() throws Exception {
+		StringBuffer[] contents = getContentsForTest(2);
+		List projects = new ArrayList();
+
+		try {
+			ProjectBuilder pb = new ProjectBuilder("projB"+System.currentTimeMillis(), true);
+			pb.addFile("h1.h", contents[0]);
+			ICProject cprojB = pb.create();
+			projects.add(cprojB);
+
+			pb = new ProjectBuilder("projA"+System.currentTimeMillis(), true);
+			pb.addFile("h2.h", contents[1]).addDependency(cprojB.getProject());
+			ICProject cprojA = pb.create();
+			projects.add(cprojA);
+
+			setIndex(cprojA, REFS);
+
+			IBinding[] first= index.findBindings("A".toCharArray(), FILTER, new NullProgressMonitor());
+			assertEquals(1, first.length);
+			IBinding[] second= index.findBindings("A".toCharArray(), FILTER, new NullProgressMonitor());
+			assertEquals(1, second.length);
+			assertSame(first[0], second[0]);
+
+			// the cache is cleared when the last read lock is released
+			index.releaseReadLock();
+			index.acquireReadLock();
+			IBinding[] third= index.findBindings("A".toCharArray(), FILTER, new NullProgressMonitor());
+			assertEquals(1, third.length);
+			assertNotSame(first[0], third[0]);
+			assertEquals(first[0], third[0]);
+		} finally {
+			for(Iterator i = projects.iterator(); i.hasNext(); )
+				((ICProject)i.next()).getProject().delete(true, true, new NullProgressMonitor());
+		}
+	}
+
+	// class A {};
+
+	// class B {};
+	public void testCompositeBindingsAfterWriting() throws Exception {
+		StringBuffer[] contents = getContentsForTest(2);
+		List projects = new ArrayList();
+
+		try {
+			ProjectBuilder pb = new ProjectBuilder("projA"+System.currentTimeMillis(), true);
+			pb.addFile("h1.h", contents[0]).addFile("h2.h", contents[1]);
+			ICProject cprojA = pb.create();
+			projects.add(cprojA);
+
+			IWritableIndex windex= ((IWritableIndexManager) CCorePlugin.getIndexManager()).getWritableIndex(cprojA);
+			windex.acquireReadLock();
+			try {
+				assertEquals(1, windex.findBindings("A".toCharArray(), FILTER, new NullProgressMonitor()).length);
+				IBinding[] first= windex.findBindings("B".toCharArray(), FILTER, new NullProgressMonitor());
+				assertEquals(1, first.length);
+
+				// the bindings of h1.h are removed while the read lock is held.
+				IIndexFileLocation ifl= IndexLocationFactory.getWorkspaceIFL(cprojA.getProject().getFile("h1.h"));
+				IIndexFragmentFile file= windex.getWritableFile(ILinkage.CPP_LINKAGE_ID, ifl);
+				assertNotNull(file);
+				windex.acquireWriteLock(1);
+				try {
+					windex.clearFile(file, null);
+				} finally {
+					windex.releaseWriteLock(1);
+				}
+
+				assertEquals(0, windex.findBindings("A".toCharArray(), FILTER, new NullProgressMonitor()).length);
+				IBinding[] second= windex.findBindings("B".toCharArray(), FILTER, new NullProgressMonitor());
+				assertEquals(1, second.length);
+				assertNotSame(first[0], second[0]);
+				assertEquals(first[0], second[0]);
+				assertEquals("B", second[0].getName());
+			} finally {
+				windex.releaseReadLock();
+			}
+		} finally {
+			for(Iterator i = projects.iterator(); i.hasNext(); )
+				((ICProject)i.next()).getProject().delete(true, true, new NullProgressMonitor());
+		}
+	}
+
 	// class C1 {public: int i;};
 	// namespace X { class C2 {}; }
 	// enum E {E1,E2};
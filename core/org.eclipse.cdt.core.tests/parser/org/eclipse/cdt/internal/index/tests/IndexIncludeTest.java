@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2006, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -92,6 +92,79 @@ public class IndexIncludeTest extends IndexTestBase {
 		checkContext();
 	}
 
+	public void testParallelParsing() throws Exception {
+		IndexerPreferences.setParserThreadCount(4);
+		try {
+			CCorePlugin.getIndexManager().reindex(fProject);
+			waitForIndexer();
+			final IFile file= (IFile) fProject.getProject().findMember(new Path("included.h"));
+			assertNotNull("Can't find included.h", file);
+			fIndex.acquireReadLock();
+			try {
+				IIndexFile ifile= fIndex.getFile(ILinkage.CPP_LINKAGE_ID, IndexLocationFactory.getWorkspaceIFL(file));
+				assertNotNull("Can't find " + file.getLocation(), ifile);
+				assertNotNull(ifile.getParsedInContext());
+
+				IIndexBinding[] result= fIndex.findBindings(Pattern.compile("testInclude_cpp"), true, IndexFilter.ALL, npm());
+				assertEquals(1, result.length);
+			} finally {
+				fIndex.releaseReadLock();
+			}
+		} finally {
+			IndexerPreferences.setParserThreadCount(IndexerPreferences.DEFAULT_PARSER_THREADS);
+		}
+	}
+
+	// #define CALL_20111018(x) shared_20111018(x)
+	// struct Shared_20111018 {
+	//    void member(int a);
+	// };
+	// void shared_20111018(int a);
+
+	// #include "shared_20111018.h"
+	// void user_20111018(Shared_20111018& s) {
+	//    CALL_20111018(1);
+	//    s.member(2);
+	// }
+	public void testParallelParsingOfSharedHeader() throws Exception {
+		StringBuffer[] contents= getContentsForTest(2);
+		final int sourceCount= 16;
+		IndexerPreferences.setParserThreadCount(4);
+		try {
+			IFile header= TestSourceReader.createFile(fProject.getProject(), "shared_20111018.h", contents[0].toString());
+			for (int i = 0; i < sourceCount; i++) {
+				TestSourceReader.createFile(fProject.getProject(), "user" + i + "_20111018.cpp", contents[1].toString());
+			}
+			CCorePlugin.getIndexManager().reindex(fProject);
+			waitForIndexer();
+			fIndex.acquireReadLock();
+			try {
+				// the results of all parser threads refer to the same bindings of the header.
+				IIndexBinding[] shared= fIndex.findBindings("shared_20111018".toCharArray(), IndexFilter.ALL, npm());
+				assertEquals(1, shared.length);
+				assertEquals(1, fIndex.findDeclarations(shared[0]).length);
+				assertEquals(sourceCount, fIndex.findReferences(shared[0]).length);
+
+				IIndexBinding[] member= fIndex.findBindings(new char[][] {"Shared_20111018".toCharArray(),
+						"member".toCharArray()}, IndexFilter.ALL, npm());
+				assertEquals(1, member.length);
+				assertEquals(sourceCount, fIndex.findReferences(member[0]).length);
+
+				IIndexBinding[] user= fIndex.findBindings("user_20111018".toCharArray(), IndexFilter.ALL, npm());
+				assertEquals(1, user.length);
+				assertEquals(sourceCount, fIndex.findDefinitions(user[0]).length);
+
+				IIndexFile ifile= fIndex.getFile(ILinkage.CPP_LINKAGE_ID, IndexLocationFactory.getWorkspaceIFL(header));
+				assertNotNull(ifile);
+				assertEquals(sourceCount, fIndex.findIncludedBy(ifile).length);
+			} finally {
+				fIndex.releaseReadLock();
+			}
+		} finally {
+			IndexerPreferences.setParserThreadCount(IndexerPreferences.DEFAULT_PARSER_THREADS);
+		}
+	}
+
 	private void waitForIndexer() {
 		assertTrue(CCorePlugin.getIndexManager().joinIndexer(10000, npm()));
 	}
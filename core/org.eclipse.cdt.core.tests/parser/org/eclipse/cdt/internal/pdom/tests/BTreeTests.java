@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 Symbian Software Systems and others.
+ * Copyright (c) 2006, 2011 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -100,6 +100,32 @@ public class BTreeTests extends BaseTestCase {
 		}
 	}
 
+	/**
+	 * Test bulk insertion into an empty and into a populated B-tree, including records
+	 * that are already present and duplicates within a batch.
+	 */
+	public void testInsertAll() throws Exception {
+		Random random = new Random(90210);
+		for (int degree = 2; degree <= 12; degree+= 5) {
+			for (int n : new int[] {0, 1, 7, 64, 1000, 20000}) {
+				init(degree);
+				final SortedSet expected = new TreeSet();
+				for (int batch = 0; batch < 3; batch++) {
+					long[] records = new long[n];
+					for (int i = 0; i < n; i++) {
+						Integer value = new Integer(random.nextInt(2 * n + 1));
+						expected.add(value);
+						records[i] = new BTMockRecord(db, value.intValue()).getRecord();
+					}
+					btree.insertAll(records);
+					assertBTreeMatchesSortedSet("[batch " + batch + "] ", btree, expected);
+					assertBTreeInvariantsHold("[batch " + batch + "] ");
+				}
+				finish();
+			}
+		}
+	}
+
 	/**
 	 * Insert/Delete a random number of records into/from the B-tree 
 	 * @param seed the seed for obtaining the deterministic random testing
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 QNX Software Systems
+ * Copyright (c) 2005, 2011 QNX Software Systems
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,8 @@ package org.eclipse.cdt.internal.pdom.tests;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
 import java.util.Random;
 
 import junit.framework.Test;
@@ -27,6 +29,8 @@ import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
 import org.eclipse.cdt.internal.core.pdom.db.ShortString;
+import org.eclipse.cdt.internal.core.pdom.db.StringTable;
+import org.eclipse.cdt.internal.core.pdom.db.TrigramIndex;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 
@@ -126,6 +130,319 @@ public class DBTest extends BaseTestCase {
 		assertEquals(mem2, mem1);
 	}
 	
+	public void testMappedIO() throws Exception {
+		File f = getTestDir().append("testMappedIO.dat").toFile();
+		f.delete();
+		Database mdb = new Database(f, new ChunkCache(), 0, false, true);
+		assertTrue(mdb.usesMappedIO());
+		mdb.setExclusiveLock();
+		final int n= 3 * Database.CHUNK_SIZE;
+		long[] recs= new long[n];
+		for (int i = 0; i < n; i++) {
+			recs[i]= mdb.malloc(8);
+			mdb.putInt(recs[i], i);
+			mdb.putRecPtr(recs[i] + 4, i > 0 ? recs[i-1] : 0);
+		}
+		IString str= mdb.newString("mapped");
+		mdb.putRecPtr(Database.DATA_AREA, str.getRecord());
+		mdb.close();
+		assertEquals(0, f.length() % Database.CHUNK_SIZE);
+
+		// read the content without memory mapping
+		Database hdb = new Database(f, new ChunkCache(), 0, true, false);
+		hdb.setLocked(true);
+		for (int i = 0; i < n; i++) {
+			assertEquals(i, hdb.getInt(recs[i]));
+			assertEquals(i > 0 ? recs[i-1] : 0, hdb.getRecPtr(recs[i] + 4));
+		}
+		assertTrue(hdb.getString(hdb.getRecPtr(Database.DATA_AREA)).equals("mapped"));
+		hdb.setExclusiveLock();
+		hdb.close();
+		
+		// and with memory mapping, again
+		mdb = new Database(f, new ChunkCache(), 0, true, true);
+		mdb.setLocked(true);
+		for (int i = 0; i < n; i++) {
+			assertEquals(i, mdb.getInt(recs[i]));
+		}
+		mdb.setExclusiveLock();
+		mdb.close();
+
+		// clearing truncates the file, although segments of it have been mapped.
+		mdb = new Database(f, new ChunkCache(), 0, false, true);
+		mdb.setExclusiveLock();
+		assertEquals(1, mdb.getInt(recs[1]));
+		mdb.clear(0);
+		assertEquals(Database.CHUNK_SIZE, f.length());
+		final long rec= mdb.malloc(8);
+		mdb.putInt(rec, 42);
+		assertEquals(42, mdb.getInt(rec));
+		mdb.close();
+		// the segments have been released, such that the file can be deleted on all platforms.
+		assertTrue(f.delete());
+	}
+
+	public void testEvictionPolicies() throws Exception {
+		for (ChunkCache.EvictionPolicy policy : ChunkCache.EvictionPolicy.values()) {
+			File f = getTestDir().append("testEviction.dat").toFile();
+			f.delete();
+			ChunkCache cache= new ChunkCache(4 * Database.CHUNK_SIZE, policy);
+			assertEquals(policy, cache.getEvictionPolicy());
+			Database edb = new Database(f, cache, 0, false);
+			edb.setExclusiveLock();
+			final int n= 4 * Database.CHUNK_SIZE;
+			long[] recs= new long[n];
+			for (int i = 0; i < n; i++) {
+				recs[i]= edb.malloc(8);
+				edb.putInt(recs[i], i);
+			}
+			edb.giveUpExclusiveLock(true);
+			edb.resetCacheCounters();
+			for (int i = 0; i < n; i++) {
+				assertEquals(i, edb.getInt(recs[i]));
+			}
+			assertTrue(edb.getCacheHits() > 0);
+			assertTrue(edb.getCacheMisses() > 0);
+			assertTrue(edb.getCacheEvictions() > 0);
+			edb.setExclusiveLock();
+			edb.close();
+			f.delete();
+		}
+	}
+
+	public void testChunkSizes() throws Exception {
+		for (int chunkSize= Database.CHUNK_SIZE; chunkSize <= Database.MAX_CHUNK_SIZE; chunkSize*= 4) {
+			File f = getTestDir().append("testChunkSize.dat").toFile();
+			f.delete();
+			Database cdb = new Database(f, new ChunkCache(), 7, chunkSize, false, false);
+			assertEquals(chunkSize, cdb.getChunkSize());
+			cdb.setExclusiveLock();
+			cdb.setVersion(7);
+			final int n= 1000;
+			long[] recs= new long[n];
+			for (int i = 0; i < n; i++) {
+				recs[i]= cdb.malloc(Database.MAX_MALLOC_SIZE / (1 + i % 10));
+				cdb.putInt(recs[i], i);
+			}
+			cdb.close();
+			assertEquals(0, f.length() % chunkSize);
+
+			// the chunk size of the existing database is used.
+			cdb = new Database(f, new ChunkCache(), 0, Database.CHUNK_SIZE, true, false);
+			cdb.setLocked(true);
+			assertEquals(chunkSize, cdb.getChunkSize());
+			assertEquals(7, cdb.getVersion());
+			for (int i = 0; i < n; i++) {
+				assertEquals(i, cdb.getInt(recs[i]));
+			}
+			cdb.setExclusiveLock();
+			cdb.close();
+
+			// the requested chunk size is used when the database is cleared.
+			cdb = new Database(f, new ChunkCache(), 0, Database.MAX_CHUNK_SIZE, false, false);
+			cdb.setExclusiveLock();
+			cdb.clear(9);
+			assertEquals(Database.MAX_CHUNK_SIZE, cdb.getChunkSize());
+			assertEquals(9, cdb.getVersion());
+			cdb.close();
+			f.delete();
+		}
+	}
+
+	public void testWriteAheadLog() throws Exception {
+		if (!Database.USE_WRITE_AHEAD_LOG)
+			return;
+
+		File f = getTestDir().append("testWriteAheadLog.dat").toFile();
+		File log = new File(f.getPath() + ".wal");
+		f.delete();
+		log.delete();
+		Database wdb = new Database(f, new ChunkCache(), 7, false);
+		wdb.setExclusiveLock();
+		final int n= 2 * Database.CHUNK_SIZE;
+		long[] recs= new long[n];
+		for (int i = 0; i < n; i++) {
+			recs[i]= wdb.malloc(8);
+			wdb.putInt(recs[i], i);
+		}
+		wdb.giveUpExclusiveLock(true);
+		assertEquals(0, log.length());
+
+		// modify the database and simulate a crash while writing the log.
+		wdb.setExclusiveLock();
+		for (int i = 0; i < n; i++) {
+			wdb.putInt(recs[i], -i);
+		}
+		RandomAccessFile raf= new RandomAccessFile(log, "rw");
+		raf.writeInt(0x57414C52);
+		raf.writeLong(Database.CHUNK_SIZE);
+		raf.writeInt(Database.CHUNK_SIZE);
+		raf.write(new byte[100]);
+		raf.close();
+
+		// the incomplete log is discarded, the database is in the state of the last flush.
+		Database rdb = new Database(f, new ChunkCache(), 0, false);
+		assertFalse(log.exists());
+		rdb.setLocked(true);
+		assertEquals(7, rdb.getVersion());
+		for (int i = 0; i < n; i++) {
+			assertEquals(i, rdb.getInt(recs[i]));
+		}
+		rdb.setExclusiveLock();
+		rdb.close();
+		assertFalse(log.exists());
+		f.delete();
+	}
+
+	public void testEvictedChunksWaitForFlush() throws Exception {
+		if (!Database.USE_WRITE_AHEAD_LOG)
+			return;
+
+		File f = getTestDir().append("testEvictedChunks.dat").toFile();
+		f.delete();
+		Database wdb = new Database(f, new ChunkCache(16 * Database.CHUNK_SIZE), 0, false);
+		wdb.setExclusiveLock();
+		// 24 chunks worth of records
+		final int n= 24 * Database.CHUNK_SIZE / 16;
+		long[] recs= new long[n];
+		for (int i = 0; i < n; i++) {
+			recs[i]= wdb.malloc(8);
+			wdb.putInt(recs[i], i);
+		}
+		wdb.flush();
+
+		// releasing the lock does not write the evicted chunks without the others.
+		for (int i = 0; i < n; i++) {
+			wdb.putInt(recs[i], -i);
+		}
+		wdb.giveUpExclusiveLock(false);
+		RandomAccessFile raf= new RandomAccessFile(f, "r");
+		try {
+			for (int i = 0; i < n; i++) {
+				assertEquals(-i, wdb.getInt(recs[i]));
+				raf.seek(recs[i]);
+				assertEquals(i, raf.readInt());
+			}
+			wdb.setExclusiveLock();
+			wdb.flush();
+			for (int i = 0; i < n; i++) {
+				raf.seek(recs[i]);
+				assertEquals(-i, raf.readInt());
+			}
+		} finally {
+			raf.close();
+		}
+		wdb.close();
+		f.delete();
+	}
+
+	public void testTruncateTrailingFreeSpace() throws Exception {
+		File f = getTestDir().append("testTruncateTrailingFreeSpace.dat").toFile();
+		f.delete();
+		Database cdb = new Database(f, new ChunkCache(), 0, false);
+		cdb.setExclusiveLock();
+		final int n= 10000;
+		long[] recs= new long[n];
+		for (int i = 0; i < n; i++) {
+			recs[i]= cdb.malloc(4 + i % 100);
+			cdb.putInt(recs[i], i);
+		}
+		cdb.flush();
+		final long size= cdb.getSizeBytes();
+
+		// keep every 100th record of the first half, only.
+		for (int i = 0; i < n; i++) {
+			if (i >= n/2 || i % 100 != 0) {
+				cdb.free(recs[i]);
+			}
+		}
+		assertTrue(cdb.getBytesFreedSinceTruncation() > 0);
+		final long reclaimed= cdb.truncateTrailingFreeSpace();
+		cdb.flush();
+		assertTrue(reclaimed > 0);
+		assertEquals(size - reclaimed, cdb.getSizeBytes());
+		assertEquals(0, cdb.getBytesFreedSinceTruncation());
+		// nothing has been freed since, the chunks are not visited again.
+		assertEquals(0, cdb.coalesceFreeBlocks(1, cdb.getChunkCount()));
+
+		// the merged blocks are reused for large records.
+		final long big= cdb.malloc(Database.MAX_MALLOC_SIZE);
+		assertTrue(big < size - reclaimed);
+		cdb.putInt(big, -1);
+		cdb.close();
+
+		cdb = new Database(f, new ChunkCache(), 0, false);
+		cdb.setLocked(true);
+		for (int i = 0; i < n/2; i+= 100) {
+			assertEquals(i, cdb.getInt(recs[i]));
+		}
+		assertEquals(-1, cdb.getInt(big));
+		cdb.setExclusiveLock();
+		assertFalse(cdb.isClosed());
+		cdb.close();
+		assertTrue(cdb.isClosed());
+		f.delete();
+	}
+
+	public void testStringTable() throws Exception {
+		StringTable table= new StringTable(db, Database.DATA_AREA);
+		final IString s1= table.intern("begin".toCharArray());
+		final IString s2= table.intern("end".toCharArray());
+		assertFalse(s1.getRecord() == s2.getRecord());
+		assertEquals(s1.getRecord(), table.intern("begin".toCharArray()).getRecord());
+		assertEquals(2, table.getReferenceCount(s1.getRecord()));
+		assertEquals(s2.getRecord(), table.find("end".toCharArray()));
+		assertEquals(0, table.find("size".toCharArray()));
+
+		char[] longName= new char[ShortString.MAX_LENGTH + 10];
+		Arrays.fill(longName, 'x');
+		final IString s3= table.intern(longName);
+		assertEquals(s3.getRecord(), table.intern(longName).getRecord());
+		assertEquals(new String(longName), s3.getString());
+
+		table.release(s1.getRecord());
+		assertEquals(s1.getRecord(), table.find("begin".toCharArray()));
+		table.release(s1.getRecord());
+		assertEquals(0, table.find("begin".toCharArray()));
+		table.release(s3.getRecord());
+		table.release(s3.getRecord());
+		assertEquals(0, table.find(longName));
+		assertEquals("end", db.getString(table.find("end".toCharArray())).getString());
+	}
+
+	public void testTrigramIndex() throws Exception {
+		TrigramIndex index= new TrigramIndex(db, Database.DATA_AREA + 4);
+		StringTable table= new StringTable(db, Database.DATA_AREA, index);
+		final long getValue= table.intern("getValue".toCharArray()).getRecord();
+		final long setValue= table.intern("setValue".toCharArray()).getRecord();
+		final long values= table.intern("VALUES".toCharArray()).getRecord();
+		final long getter= table.intern("get_value_t".toCharArray()).getRecord();
+		table.intern("ab".toCharArray());
+
+		assertCandidates(index.findCandidates(new char[][] {"value".toCharArray()}), getValue, setValue, values, getter);
+		assertCandidates(index.findCandidates(new char[][] {"getv".toCharArray()}), getValue);
+		assertCandidates(index.findCandidates(new char[][] {"get".toCharArray(), "lue".toCharArray()}),
+				getValue, getter);
+		assertCandidates(index.findCandidates(new char[][] {"xyz".toCharArray()}));
+		assertNull(index.findCandidates(new char[][] {"ab".toCharArray()}));
+		assertEquals(2, index.getCount("get".toCharArray()));
+
+		// a string is removed from the index once it is no longer referenced.
+		table.intern("getValue".toCharArray());
+		table.release(getValue);
+		assertCandidates(index.findCandidates(new char[][] {"getv".toCharArray()}), getValue);
+		table.release(getValue);
+		assertCandidates(index.findCandidates(new char[][] {"getv".toCharArray()}));
+		assertEquals(1, index.getCount("get".toCharArray()));
+	}
+
+	private void assertCandidates(long[] candidates, long... expected) {
+		assertNotNull(candidates);
+		Arrays.sort(candidates);
+		Arrays.sort(expected);
+		assertTrue(Arrays.equals(expected, candidates));
+	}
+
 	private static class FindVisitor implements IBTreeVisitor {
 		private Database db;
 		private String key;
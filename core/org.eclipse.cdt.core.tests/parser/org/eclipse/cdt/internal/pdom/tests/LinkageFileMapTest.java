@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.net.URI;
+import java.util.HashMap;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.LinkageFileMap;
+
+/**
+ * Tests for the map used by the indexer to store information about files.
+ */
+public class LinkageFileMapTest extends BaseTestCase {
+	private static final int C_LINKAGE= 1;
+	private static final int CPP_LINKAGE= 2;
+
+	public static Test suite() {
+		return suite(LinkageFileMapTest.class);
+	}
+
+	private static URI[] createLocations(int count) throws Exception {
+		URI[] result= new URI[count];
+		for (int i = 0; i < count; i++) {
+			result[i]= new URI("file:/project/folder" + (i % 100) + "/file" + i + ".h"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		return result;
+	}
+
+	public void testPutAndGet() throws Exception {
+		URI[] locations= createLocations(1000);
+		LinkageFileMap<String> map= new LinkageFileMap<String>();
+		for (int i = 0; i < locations.length; i++) {
+			assertNull(map.put(CPP_LINKAGE, locations[i], "cpp" + i)); //$NON-NLS-1$
+			if (i % 2 == 0) {
+				assertNull(map.put(C_LINKAGE, locations[i], "c" + i)); //$NON-NLS-1$
+			}
+		}
+		assertEquals(1500, map.size());
+		assertEquals(1000, map.getLocationCount());
+
+		for (int i = 0; i < locations.length; i++) {
+			// use an equal but not identical location for the lookup
+			URI location= new URI(locations[i].toString());
+			assertEquals("cpp" + i, map.get(CPP_LINKAGE, location)); //$NON-NLS-1$
+			assertEquals(i % 2 == 0 ? "c" + i : null, map.get(C_LINKAGE, location)); //$NON-NLS-1$
+			assertNull(map.get(3, location));
+		}
+		assertNull(map.get(CPP_LINKAGE, new URI("file:/other.h"))); //$NON-NLS-1$
+
+		assertEquals("cpp0", map.put(CPP_LINKAGE, locations[0], "new")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("new", map.get(CPP_LINKAGE, locations[0])); //$NON-NLS-1$
+		assertEquals(1500, map.size());
+		assertEquals("c0", map.put(C_LINKAGE, locations[0], null)); //$NON-NLS-1$
+		assertEquals(1499, map.size());
+
+		map.clear();
+		assertEquals(0, map.size());
+		assertNull(map.get(CPP_LINKAGE, locations[1]));
+	}
+
+	/**
+	 * Compares the memory used by the map with a hash map using composite keys, which
+	 * is what the indexer used to store information about files.
+	 */
+	public void testMemoryUsage() throws Exception {
+		final int count= 100000;
+		final URI[] locations= createLocations(count);
+		final Object value= new Object();
+
+		long mem= memoryUsed();
+		HashMap<CompositeKey, Object> hashMap= new HashMap<CompositeKey, Object>();
+		for (URI location : locations) {
+			hashMap.put(new CompositeKey(C_LINKAGE, location), value);
+			hashMap.put(new CompositeKey(CPP_LINKAGE, location), value);
+		}
+		final long hashMapMem= memoryUsed() - mem;
+		assertEquals(2 * count, hashMap.size());
+		hashMap= null;
+
+		mem= memoryUsed();
+		LinkageFileMap<Object> map= new LinkageFileMap<Object>();
+		for (URI location : locations) {
+			map.put(C_LINKAGE, location, value);
+			map.put(CPP_LINKAGE, location, value);
+		}
+		final long mapMem= memoryUsed() - mem;
+		assertEquals(2 * count, map.size());
+
+		assertTrue("HashMap: " + hashMapMem + " bytes, LinkageFileMap: " + mapMem + " bytes", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				mapMem < hashMapMem);
+	}
+
+	private static final class CompositeKey {
+		final int fLinkageID;
+		final URI fUri;
+
+		CompositeKey(int linkageID, URI uri) {
+			fLinkageID= linkageID;
+			fUri= uri;
+		}
+		@Override
+		public int hashCode() {
+			return fUri.hashCode() * 31 + fLinkageID;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			CompositeKey other= (CompositeKey) obj;
+			return fLinkageID == other.fLinkageID && fUri.equals(other.fUri);
+		}
+	}
+
+	private long memoryUsed() throws InterruptedException {
+		final Runtime runtime = Runtime.getRuntime();
+		long mem= runtime.totalMemory()-runtime.freeMemory();
+		long newMem= mem;
+		int i=0;
+		do {
+			Thread.sleep(50);
+			System.gc();
+			mem= newMem;
+			newMem= runtime.totalMemory()-runtime.freeMemory();
+		} while (newMem < mem && ++i<5);
+		return mem;
+	}
+}
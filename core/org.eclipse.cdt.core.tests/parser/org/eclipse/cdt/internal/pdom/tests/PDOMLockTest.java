@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.PDOMLock;
+
+/**
+ * Tests for the read/write lock of the PDOM.
+ */
+public class PDOMLockTest extends BaseTestCase {
+
+	public static Test suite() {
+		return suite(PDOMLockTest.class);
+	}
+
+	private static Thread start(Runnable r) {
+		Thread th= new Thread(r);
+		th.setDaemon(true);
+		th.start();
+		return th;
+	}
+
+	public void testReadersShareLock() throws Exception {
+		final PDOMLock lock= new PDOMLock();
+		assertTrue(lock.acquireReadLock(-1));
+		final boolean[] acquired= {false};
+		Thread th= start(new Runnable() {
+			public void run() {
+				try {
+					acquired[0]= lock.acquireReadLock(1000);
+					lock.releaseReadLock();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		th.join(5000);
+		assertTrue(acquired[0]);
+		assertTrue(lock.releaseReadLock());
+		assertEquals(0, lock.getLockCount());
+	}
+
+	public void testTimedWriteLock() throws Exception {
+		final PDOMLock lock= new PDOMLock();
+		assertTrue(lock.acquireReadLock(-1));
+		final boolean[] acquired= {true};
+		Thread th= start(new Runnable() {
+			public void run() {
+				try {
+					acquired[0]= lock.acquireWriteLock(0, 100);
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		th.join(5000);
+		assertFalse(acquired[0]);
+		assertEquals(0, lock.getWaitingWriterCount());
+		assertEquals(1, lock.getStatistics().getTimeoutCount());
+
+		// upgrade the read lock
+		assertTrue(lock.acquireWriteLock(1, 0));
+		assertEquals(-1, lock.getLockCount());
+		assertFalse(lock.acquireReadLock(50));
+		lock.releaseWriteLock(1);
+		assertEquals(1, lock.getLockCount());
+		assertTrue(lock.releaseReadLock());
+	}
+
+	public void testNewReadersQueueBehindWriter() throws Exception {
+		final PDOMLock lock= new PDOMLock();
+		assertTrue(lock.acquireReadLock(-1));
+		final boolean[] writeLocked= {false};
+		Thread writer= start(new Runnable() {
+			public void run() {
+				try {
+					writeLocked[0]= lock.acquireWriteLock(0, -1);
+					lock.releaseWriteLock(0);
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		while (lock.getWaitingWriterCount() == 0) {
+			Thread.sleep(10);
+		}
+		final boolean[] readLocked= {true};
+		Thread reader= start(new Runnable() {
+			public void run() {
+				try {
+					readLocked[0]= lock.acquireReadLock(PDOMLock.READER_BARGING_DELAY / 5);
+					if (readLocked[0])
+						lock.releaseReadLock();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		reader.join(5000);
+		// a new reader does not overtake the waiting writer,
+		assertFalse(readLocked[0]);
+		// a thread holding a read lock does.
+		assertTrue(lock.acquireReadLock(0));
+		lock.releaseReadLock();
+
+		lock.releaseReadLock();
+		writer.join(5000);
+		assertTrue(writeLocked[0]);
+		assertEquals(0, lock.getLockCount());
+	}
+
+	public void testWaitingReadersGoBeforeNextWriter() throws Exception {
+		final PDOMLock lock= new PDOMLock();
+		assertTrue(lock.acquireWriteLock(0, -1));
+		final boolean[] readLocked= {false};
+		Thread reader= start(new Runnable() {
+			public void run() {
+				try {
+					readLocked[0]= lock.acquireReadLock(-1);
+					lock.releaseReadLock();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		while (!lock.hasWaitingReaders()) {
+			Thread.sleep(10);
+		}
+		// same pattern as used by the indexer to yield the write lock
+		lock.releaseWriteLock(0);
+		assertTrue(lock.acquireWriteLock(0, -1));
+		reader.join(5000);
+		assertTrue(readLocked[0]);
+		lock.releaseWriteLock(0);
+	}
+
+	public void testStatistics() throws Exception {
+		final PDOMLock lock= new PDOMLock();
+		assertTrue(lock.acquireReadLock(-1));
+		Thread.sleep(20);
+		lock.releaseReadLock();
+		assertTrue(lock.acquireWriteLock(0, -1));
+		lock.releaseWriteLock(0);
+
+		PDOMLock.Statistics stats= lock.getStatistics();
+		assertEquals(1, stats.getReadLockCount());
+		assertEquals(1, stats.getWriteLockCount());
+		assertEquals(2, stats.getLongestHolds().length);
+		PDOMLock.LongHold hold= stats.getLongestHolds()[0];
+		assertFalse(hold.isWriteLock());
+		assertEquals(Thread.currentThread().getName(), hold.getThreadName());
+		assertTrue(hold.getDuration() >= 10);
+
+		long sum= 0;
+		for (long count : stats.getReadWaitHistogram()) {
+			sum+= count;
+		}
+		assertEquals(1, sum);
+
+		lock.resetStatistics();
+		assertEquals(0, lock.getStatistics().getReadLockCount());
+	}
+}
@@ -17,6 +17,7 @@ import org.eclipse.cdt.core.index.IIndex;
 import org.eclipse.cdt.core.index.IIndexManager;
 import org.eclipse.cdt.core.model.ILanguage;
 import org.eclipse.cdt.core.model.ITranslationUnit;
+import org.eclipse.cdt.core.parser.FileContent;
 import org.eclipse.cdt.internal.core.dom.parser.ASTTranslationUnit;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -81,6 +82,15 @@ public class ASTCache {
 	private long fLastWriteOnIndex;
 	/** Indicates whether the AST is currently being computed */
 	private boolean fIsReconciling;
+	/**
+	 * The AST of the active translation unit that was dropped when reconciling started. It is
+	 * reused as a whole if the contents of the translation unit turn out to be unchanged, e.g. 
+	 * when the reconciler is forced without an edit. After an edit the translation unit is 
+	 * always parsed again, parts of the previous AST are not reused.
+	 */
+	private IASTTranslationUnit fPreviousAST;
+	/** The timestamp of the last index write access at the time the previous AST got cached. */
+	private long fPreviousLastWriteOnIndex;
 
 	/**
 	 * Create a new AST cache.
@@ -296,6 +306,8 @@ public class ASTCache {
 		if (fAST != null)
 			disposeAST();
 
+		if (ast != null)
+			fPreviousAST= null;
 		fAST= ast;
 		fLastWriteOnIndex= fAST == null ? 0 : fAST.getIndex().getLastWriteAccess();
 
@@ -331,6 +343,13 @@ public class ASTCache {
 		if (progressMonitor != null && progressMonitor.isCanceled())
 			return null;
 
+		final IASTTranslationUnit previous= getReusableAST(tUnit, index);
+		if (previous != null) {
+			if (DEBUG)
+				System.out.println(DEBUG_PREFIX + getThreadName() + "reusing AST of unchanged contents for: " + toString(tUnit)); //$NON-NLS-1$
+			return previous;
+		}
+
 		final IASTTranslationUnit root[]= new IASTTranslationUnit[1]; 
 		
 		SafeRunner.run(new ISafeRunnable() {
@@ -354,6 +373,45 @@ public class ASTCache {
 		return root[0];
 	}
 
+	/**
+	 * Returns the AST that was dropped when reconciling of the given translation unit started,
+	 * provided that neither the contents of the translation unit, nor its configuration or
+	 * the included files did change and the index has not been modified since.
+	 */
+	private IASTTranslationUnit getReusableAST(ITranslationUnit tUnit, IIndex index) {
+		final IASTTranslationUnit previous;
+		synchronized (fCacheMutex) {
+			previous= fPreviousAST;
+			if (previous == null || !tUnit.equals(fActiveTU)
+					|| !tUnit.equals(previous.getOriginatingTranslationUnit())
+					|| fPreviousLastWriteOnIndex < index.getLastWriteAccess()) {
+				return null;
+			}
+		}
+		final long hash= ((ASTTranslationUnit) previous).getContentsHash();
+		if (hash == 0)
+			return null;
+		final FileContent content= FileContent.create(tUnit);
+		if (content == null || content.getContentsHash() != hash)
+			return null;
+		// the scanner info or the included files may have changed.
+		final long inputsHash= ((ASTTranslationUnit) previous).getInputsHash();
+		if (inputsHash == 0 || !(tUnit instanceof TranslationUnit))
+			return null;
+		try {
+			if (((TranslationUnit) tUnit).computeInputsHash(previous, index, fParseMode) != inputsHash)
+				return null;
+		} catch (CoreException e) {
+			return null;
+		}
+
+		synchronized (fCacheMutex) {
+			if (previous != fPreviousAST)
+				return null;
+		}
+		return previous;
+	}
+
 	/**
 	 * Set the given translation unit as active element to cache an AST for.
 	 * 
@@ -366,6 +424,7 @@ public class ASTCache {
 		synchronized (fCacheMutex) {
 			fIsReconciling= false;
 			fActiveTU= tUnit;
+			fPreviousAST= null;
 			cache(null, tUnit);
 		}
 		if (DEBUG)
@@ -403,6 +462,10 @@ public class ASTCache {
 				System.out.println(DEBUG_PREFIX + getThreadName() + "about to reconcile: " + toString(tUnit)); //$NON-NLS-1$ 
 	
 			fIsReconciling= true;
+			if (fAST != null) {
+				fPreviousAST= fAST;
+				fPreviousLastWriteOnIndex= fLastWriteOnIndex;
+			}
 			cache(null, tUnit);
 		}
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 QNX Software Systems and others.
+ * Copyright (c) 2000, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,16 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.core.model;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.IBinaryParser.IBinaryFile;
@@ -27,6 +37,8 @@ import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IResourceProxy;
 import org.eclipse.core.resources.IResourceProxyVisitor;
 import org.eclipse.core.runtime.CoreException;
@@ -40,6 +52,25 @@ import org.eclipse.core.runtime.content.IContentTypeManager;
 import org.eclipse.core.runtime.jobs.Job;
 
 public class BinaryRunner {
+	/**
+	 * Number of threads used to detect the binaries among the files on the output entries,
+	 * a value less than two causes the files to be examined by the runner job, only.
+	 */
+	private static final int DETECTION_THREADS= Integer.getInteger("org.eclipse.cdt.core.binaryRunner.threads", //$NON-NLS-1$
+			Math.min(4, Runtime.getRuntime().availableProcessors()));
+	/**
+	 * Number of files examined in parallel before the binaries are added to the containers.
+	 */
+	private static final int BATCH_SIZE= 64;
+
+	private static ExecutorService sDetectionExecutor;
+
+	/**
+	 * Per project, the full paths of the files found not to be binaries together with their
+	 * modification stamps. Allows subsequent runs to skip the files that have not changed. Access
+	 * must be synchronized on the map.
+	 */
+	private static final Map<IProject, Map<IPath, Long>> sNonBinaries= new HashMap<IProject, Map<IPath, Long>>();
 
 	class BinaryRunnerOperation extends CModelOperation {
 
@@ -119,7 +150,9 @@ public class BinaryRunner {
 						// traverse project, but only if at least one binary parser is configured
 						BinaryParserConfig[] parsers = CModelManager.getDefault().getBinaryParser(cproject.getProject());
 						if (parsers.length > 0) {
-							cproject.getProject().accept(new Visitor(monitor), IContainer.INCLUDE_PHANTOMS);
+							Visitor visitor = new Visitor(monitor);
+							cproject.getProject().accept(visitor, IContainer.INCLUDE_PHANTOMS);
+							addBinaries(visitor.getCandidates(), monitor);
 						}
 
 						if (!monitor.isCanceled()) {
@@ -170,10 +203,181 @@ public class BinaryRunner {
 		waitIfRunning();
 	}
 
+	/**
+	 * Removes the information about files that are not binaries for the given project, has to be
+	 * called when the binary parsers of the project change and when the project is closed or
+	 * deleted.
+	 */
+	static void clearNonBinaries(IProject project) {
+		synchronized (sNonBinaries) {
+			sNonBinaries.remove(project);
+		}
+	}
+
+	/**
+	 * Removes the information about the files that have been deleted according to the delta.
+	 * Only the projects with files that are known not to be binaries are visited.
+	 */
+	static void removeNonBinaries(IResourceDelta delta) {
+		synchronized (sNonBinaries) {
+			if (sNonBinaries.isEmpty())
+				return;
+		}
+		for (IResourceDelta projectDelta : delta.getAffectedChildren()) {
+			final IResource project= projectDelta.getResource();
+			synchronized (sNonBinaries) {
+				if (!sNonBinaries.containsKey(project))
+					continue;
+				if (projectDelta.getKind() == IResourceDelta.REMOVED) {
+					sNonBinaries.remove(project);
+					continue;
+				}
+			}
+			try {
+				projectDelta.accept(new IResourceDeltaVisitor() {
+					public boolean visit(IResourceDelta child) {
+						final IResource resource= child.getResource();
+						if (child.getKind() == IResourceDelta.REMOVED && resource.getType() == IResource.FILE) {
+							synchronized (sNonBinaries) {
+								final Map<IPath, Long> nonBinaries= sNonBinaries.get(resource.getProject());
+								if (nonBinaries != null) {
+									nonBinaries.remove(resource.getFullPath());
+								}
+							}
+						}
+						return true;
+					}
+				});
+			} catch (CoreException e) {
+				CCorePlugin.log(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the file has been found not to be a binary and has not changed since.
+	 */
+	private static boolean isKnownNonBinary(IFile file) {
+		final long stamp= file.getModificationStamp();
+		synchronized (sNonBinaries) {
+			final Map<IPath, Long> nonBinaries= sNonBinaries.get(file.getProject());
+			if (nonBinaries == null)
+				return false;
+			final Long known= nonBinaries.get(file.getFullPath());
+			return known != null && known.longValue() == stamp;
+		}
+	}
+
+	/**
+	 * Stops the threads detecting binaries and forgets about the files that are not binaries,
+	 * called when the model manager is shut down.
+	 */
+	static void shutdownDetection() {
+		synchronized (BinaryRunner.class) {
+			if (sDetectionExecutor != null) {
+				sDetectionExecutor.shutdownNow();
+				sDetectionExecutor= null;
+			}
+		}
+		synchronized (sNonBinaries) {
+			sNonBinaries.clear();
+		}
+	}
+
+	/**
+	 * Examines the candidates and adds the binaries to the containers of the project. The files
+	 * are read in parallel, the elements are created in the order of the candidates by the
+	 * calling thread. The files that are not binaries are remembered by the calling thread, 
+	 * such that nothing is added for the project after the runner has been stopped.
+	 */
+	private void addBinaries(List<IFile> candidates, IProgressMonitor monitor) {
+		final CModelManager factory = CModelManager.getDefault();
+		final ExecutorService executor= DETECTION_THREADS > 1 ? getDetectionExecutor() : null;
+		final List<Future<IBinaryFile>> results= new ArrayList<Future<IBinaryFile>>(BATCH_SIZE);
+		final long[] stamps= new long[BATCH_SIZE];
+		for (int i = 0; i < candidates.size(); i += BATCH_SIZE) {
+			final List<IFile> batch= candidates.subList(i, Math.min(i + BATCH_SIZE, candidates.size()));
+			// the modification stamps are taken before the files are read.
+			for (int j = 0; j < batch.size(); j++) {
+				stamps[j]= batch.get(j).getModificationStamp();
+			}
+			if (executor != null) {
+				results.clear();
+				for (final IFile file : batch) {
+					results.add(executor.submit(new Callable<IBinaryFile>() {
+						public IBinaryFile call() {
+							return factory.createBinaryFile(file);
+						}
+					}));
+				}
+			}
+			for (int j = 0; j < batch.size(); j++) {
+				if (monitor.isCanceled()) {
+					for (Future<IBinaryFile> result : results) {
+						result.cancel(false);
+					}
+					return;
+				}
+				final IFile file = batch.get(j);
+				IBinaryFile bin;
+				if (executor == null) {
+					bin= factory.createBinaryFile(file);
+				} else {
+					try {
+						bin= results.get(j).get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					} catch (ExecutionException e) {
+						CCorePlugin.log(e.getCause());
+						monitor.worked(1);
+						continue;
+					}
+				}
+				setNonBinary(file, stamps[j], bin == null);
+				if (bin != null) {
+					// Create the file will add it to the {Archive,Binary}Container.
+					factory.create(file, bin, cproject);
+				}
+				monitor.worked(1);
+			}
+		}
+	}
+
+	private static void setNonBinary(IFile file, long stamp, boolean isNonBinary) {
+		synchronized (sNonBinaries) {
+			Map<IPath, Long> nonBinaries= sNonBinaries.get(file.getProject());
+			if (isNonBinary) {
+				if (nonBinaries == null) {
+					nonBinaries= new HashMap<IPath, Long>();
+					sNonBinaries.put(file.getProject(), nonBinaries);
+				}
+				nonBinaries.put(file.getFullPath(), stamp);
+			} else if (nonBinaries != null) {
+				nonBinaries.remove(file.getFullPath());
+			}
+		}
+	}
+
+	private static synchronized ExecutorService getDetectionExecutor() {
+		if (sDetectionExecutor == null) {
+			sDetectionExecutor= Executors.newFixedThreadPool(DETECTION_THREADS, new ThreadFactory() {
+				private int fCount;
+				public Thread newThread(Runnable r) {
+					Thread th= new Thread(r, "CDT Binary Detection " + (++fCount)); //$NON-NLS-1$
+					th.setDaemon(true);
+					return th;
+				}
+			});
+		}
+		return sDetectionExecutor;
+	}
+
 	private class Visitor implements IResourceProxyVisitor {
 		private IProgressMonitor vMonitor;
 		private IProject project;
 		private IContentType textContentType;
+		private List<IFile> candidates = new ArrayList<IFile>();
 
 		public Visitor(IProgressMonitor monitor) {
 			vMonitor = monitor;
@@ -182,6 +386,13 @@ public class BinaryRunner {
 			textContentType = mgr.getContentType("org.eclipse.core.runtime.text"); //$NON-NLS-1$
 		}
 
+		/**
+		 * Returns the files on the output entries that may be binaries.
+		 */
+		public List<IFile> getCandidates() {
+			return candidates;
+		}
+
 		public boolean visit(IResourceProxy proxy) throws CoreException {
 			if (vMonitor.isCanceled()) {
 				return false;
@@ -216,11 +427,8 @@ public class BinaryRunner {
 				for (int i = 0; i < entries.length; ++i) {
 					if (isOnOutputEntry(entries[i], path)) {
 						IFile file = (IFile) proxy.requestResource();
-						CModelManager factory = CModelManager.getDefault();
-						IBinaryFile bin = factory.createBinaryFile(file);
-						if (bin != null) {
-							// Create the file will add it to the {Archive,Binary}Container.
-							factory.create(file, bin, cproject);
+						if (!isKnownNonBinary(file)) {
+							candidates.add(file);
 						}
 						return true;
 					}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 QNX Software Systems and others.
+ * Copyright (c) 2000, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -754,6 +754,7 @@ public class CModelManager implements IResourceChangeListener, IContentTypeChang
 					CCorePlugin.log(e);
 				}
 				binaryParsersMap.remove(project);
+				BinaryRunner.clearNonBinaries(project);
 
 				// Fired and ICElementDelta.PARSER_CHANGED
 				CElementDelta delta = new CElementDelta(getCModel());
@@ -883,6 +884,7 @@ public class CModelManager implements IResourceChangeListener, IContentTypeChang
 				try {
 					if (delta != null) {
 						checkForProjectRename(delta);
+						BinaryRunner.removeNonBinaries(delta);
 						ICElementDelta[] translatedDeltas = fDeltaProcessor.processResourceDelta(delta);
 						if (translatedDeltas.length > 0) {
 							for (ICElementDelta translatedDelta : translatedDeltas) {
@@ -1290,6 +1292,7 @@ public class CModelManager implements IResourceChangeListener, IContentTypeChang
 		for (BinaryRunner runner : runners) {
 			runner.stop();
 		}
+		BinaryRunner.shutdownDetection();
 
 		// Nullify the static factory
 		factory = null;
@@ -1313,6 +1316,7 @@ public class CModelManager implements IResourceChangeListener, IContentTypeChang
 	private void preDeleteProject(IProject project) {
 		// stop the binary runner for this project
 		removeBinaryRunner(project);
+		BinaryRunner.clearNonBinaries(project);
 		// stop indexing jobs for this project
 		CCoreInternals.getPDOMManager().preDeleteProject(create(project));
 	}
@@ -1320,6 +1324,7 @@ public class CModelManager implements IResourceChangeListener, IContentTypeChang
 	private void preCloseProject(IProject project) {
 		// stop the binary runner for this project
 		removeBinaryRunner(project);
+		BinaryRunner.clearNonBinaries(project);
 		// stop indexing jobs for this project
 		CCoreInternals.getPDOMManager().preCloseProject(create(project));
 	}
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.core.model;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,6 +30,7 @@ import java.util.Map;
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.ILinkage;
 import org.eclipse.cdt.core.dom.ast.IASTCompletionNode;
+import org.eclipse.cdt.core.dom.ast.IASTPreprocessorIncludeStatement;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
 import org.eclipse.cdt.core.index.IIndex;
 import org.eclipse.cdt.core.index.IIndexFile;
@@ -58,6 +60,7 @@ import org.eclipse.cdt.core.model.IUsing;
 import org.eclipse.cdt.core.model.IWorkingCopy;
 import org.eclipse.cdt.core.model.LanguageManager;
 import org.eclipse.cdt.core.parser.FileContent;
+import org.eclipse.cdt.core.parser.IExtendedScannerInfo;
 import org.eclipse.cdt.core.parser.IParserLogService;
 import org.eclipse.cdt.core.parser.IScannerInfo;
 import org.eclipse.cdt.core.parser.IScannerInfoProvider;
@@ -809,9 +812,57 @@ public class TranslationUnit extends Openable implements ITranslationUnit {
 		ASTTranslationUnit ast = (ASTTranslationUnit) ((AbstractLanguage) language).getASTTranslationUnit(
 				fileContent, scanInfo, crf, index, options, log);
 		ast.setOriginatingTranslationUnit(this);
+		// The contents have been read completely, computing the hash does not cause any I/O.
+		ast.setContentsHash(fileContent.getContentsHash());
+		ast.setInputsHash(computeInputsHash(ast, language, scanInfo));
 		return ast;
 	}
 
+	/**
+	 * Computes the hash of the inputs other than the contents of this translation unit, that
+	 * an AST created with the given index and style depends on. The include directives are 
+	 * taken from the given AST. Returns <code>0</code> if no AST can be created.
+	 * @see ASTTranslationUnit#getInputsHash()
+	 */
+	public long computeInputsHash(IASTTranslationUnit ast, IIndex index, int style) throws CoreException {
+		ITranslationUnit configureWith = getSourceContextTU(index, style);
+		IScannerInfo scanInfo= configureWith.getScannerInfo((style & AST_SKIP_IF_NO_BUILD_INFO) == 0);
+		ILanguage language= configureWith.getLanguage();
+		if (scanInfo == null || language == null) {
+			return 0;
+		}
+		return computeInputsHash(ast, language, scanInfo);
+	}
+
+	private static long computeInputsHash(IASTTranslationUnit ast, ILanguage language, IScannerInfo scanInfo) {
+		long hash= language.getId().hashCode();
+		hash= 31 * hash + Arrays.hashCode(scanInfo.getIncludePaths());
+		final Map<String, String> symbols= scanInfo.getDefinedSymbols();
+		hash= 31 * hash + (symbols == null ? 0 : symbols.hashCode());
+		if (scanInfo instanceof IExtendedScannerInfo) {
+			final IExtendedScannerInfo einfo= (IExtendedScannerInfo) scanInfo;
+			hash= 31 * hash + Arrays.hashCode(einfo.getLocalIncludePath());
+			hash= 31 * hash + Arrays.hashCode(einfo.getMacroFiles());
+			hash= 31 * hash + Arrays.hashCode(einfo.getIncludeFiles());
+		}
+		// Headers are read from the saved files. Their time stamps are used, such that headers
+		// skipped via the index need not be read.
+		for (IASTPreprocessorIncludeStatement include : ast.getIncludeDirectives()) {
+			if (include.isResolved()) {
+				final String path= include.getPath();
+				final File file= new File(path);
+				if (!file.isFile()) {
+					// a remote location, changes cannot be detected.
+					return 0;
+				}
+				hash= 31 * hash + path.hashCode();
+				hash= 31 * hash + file.lastModified();
+				hash= 31 * hash + file.length();
+			}
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
 	private IncludeFileContentProvider getIncludeFileContentProvider(int style, IIndex index, int linkageID) {
 		final ICProject cprj= getCProject();
 		final ProjectIndexerInputAdapter pathResolver = new ProjectIndexerInputAdapter(cprj);
@@ -37,6 +37,7 @@ import org.eclipse.cdt.core.index.IIndex;
 import org.eclipse.cdt.core.index.IIndexFile;
 import org.eclipse.cdt.core.index.IIndexFileSet;
 import org.eclipse.cdt.core.model.ITranslationUnit;
+import org.eclipse.cdt.core.parser.FileContent;
 import org.eclipse.cdt.core.parser.util.ArrayUtil;
 import org.eclipse.cdt.internal.core.index.IndexBasedFileContentProvider;
 import org.eclipse.cdt.internal.core.parser.scanner.ILocationResolver;
@@ -71,6 +72,8 @@ public abstract class ASTTranslationUnit extends ASTNode implements IASTTranslat
 	private INodeFactory fNodeFactory;
 	private boolean fForContentAssist;
 	private ITranslationUnit fOriginatingTranslationUnit;
+	private long fContentsHash;
+	private long fInputsHash;
 	/** The semaphore controlling exclusive access to the AST. */
 	private final Semaphore fSemaphore= new Semaphore(1);
 
@@ -450,6 +453,31 @@ public abstract class ASTTranslationUnit extends ASTNode implements IASTTranslat
 		this.fOriginatingTranslationUnit = tu;
 	}
 
+	/**
+	 * Returns the hash of the contents of the file the ast was created from, or <code>0</code>
+	 * if it is unknown.
+	 * @see FileContent#getContentsHash()
+	 */
+	public long getContentsHash() {
+		return fContentsHash;
+	}
+
+	public void setContentsHash(long hash) {
+		fContentsHash= hash;
+	}
+
+	/**
+	 * Returns the hash of the inputs of the ast other than the contents of its file, i.e. the
+	 * configuration of the parser and the included files, or <code>0</code> if it is unknown.
+	 */
+	public long getInputsHash() {
+		return fInputsHash;
+	}
+
+	public void setInputsHash(long hash) {
+		fInputsHash= hash;
+	}
+
 	/**
 	 * Starts exclusive access 
 	 * @throws InterruptedException
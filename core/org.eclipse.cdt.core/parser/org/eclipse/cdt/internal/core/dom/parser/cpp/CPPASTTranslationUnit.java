@@ -31,6 +31,8 @@ import org.eclipse.cdt.internal.core.dom.Linkage;
 import org.eclipse.cdt.internal.core.dom.parser.ASTTranslationUnit;
 import org.eclipse.cdt.internal.core.dom.parser.IASTAmbiguityParent;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.CPPVisitor;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.FunctionSignature;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.TemplateInstantiationCache;
 import org.eclipse.cdt.internal.core.index.IIndexScope;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
 
@@ -41,6 +43,8 @@ public class CPPASTTranslationUnit extends ASTTranslationUnit implements ICPPAST
     private CPPNamespaceScope fScope = null;
     private ICPPNamespace fBinding = null;
 	private final CPPScopeMapper fScopeMapper= new CPPScopeMapper(this);
+	private final TemplateInstantiationCache fTemplateInstantiationCache= new TemplateInstantiationCache();
+	private final FunctionSignature.Cache fFunctionSignatureCache= new FunctionSignature.Cache();
 	
 	public CPPASTTranslationUnit() {
 	}
@@ -176,6 +180,20 @@ public class CPPASTTranslationUnit extends ASTTranslationUnit implements ICPPAST
 		fScopeMapper.handleAdditionalDirectives(scope);
 	}
 
+	/**
+	 * Returns the cache for instantiations of function templates within this translation unit.
+	 */
+	public TemplateInstantiationCache getTemplateInstantiationCache() {
+		return fTemplateInstantiationCache;
+	}
+
+	/**
+	 * Returns the cache for the signatures of functions called within this translation unit.
+	 */
+	public FunctionSignature.Cache getFunctionSignatureCache() {
+		return fFunctionSignatureCache;
+	}
+
 	@Override
 	public void resolveAmbiguities() {
 		accept(new CPPASTAmbiguityResolver()); 
@@ -2290,25 +2290,14 @@ public class CPPSemantics {
 					return new ICPPFunction[] {fn};
 				} 
 				
-				// The index is optimized to provide the function type, try not to use the parameters
-				// as long as possible.
-				final ICPPFunctionType ft = fn.getType();
-				final IType[] parameterTypes = ft.getParameterTypes();
-				int numPars = parameterTypes.length;
-				if (numPars == 1 && SemanticUtil.isVoidType(parameterTypes[0]))
-					numPars= 0;
+				final FunctionSignature sig= FunctionSignature.get(fn, data.tu);
+				final ICPPFunctionType ft = sig.getType();
 
 				int numArgs = argumentCount;
 				if (fn instanceof ICPPMethod && data.argsContainImpliedObject)
 					numArgs--;
 
-				boolean ok;
-				if (numArgs > numPars) {
-					// more arguments than parameters --> need ellipsis or parameter pack
-					ok= fn.takesVarArgs() || fn.hasParameterPack();
-				} else {
-					ok = numArgs >= fn.getRequiredArgumentCount();
-				}
+				boolean ok= sig.acceptsArgumentCount(numArgs);
 				if (ok) {
 					if (fn instanceof IIndexBinding) {
 						for (ICPPFunction other : result) {
@@ -2573,15 +2562,14 @@ public class CPPSemantics {
 		IType[] argTypes = data.getFunctionArgumentTypes();
 		ValueCategory[] isLValue= data.getFunctionArgumentValueCategories();
 		int skipArg= 0;
-	    final ICPPFunctionType ftype= fn.getType();
-	    if (ftype == null)
+		final FunctionSignature sig= FunctionSignature.get(fn, data.tu);
+	    if (sig.getType() == null)
 	    	return null;
 
-		IType implicitParameterType= null;
 		IType impliedObjectType= null;
-		final IType[] paramTypes= ftype.getParameterTypes();
-		if (fn instanceof ICPPMethod && !(fn instanceof ICPPConstructor)) {
-		    implicitParameterType = getImplicitParameterType((ICPPMethod) fn);
+		final IType[] paramTypes= sig.getParameterTypes();
+		final IType implicitParameterType= sig.getImplicitParameterType();
+		if (implicitParameterType != null) {
 		    if (data.argsContainImpliedObject) {
 		    	impliedObjectType= argTypes[0];
 		    	skipArg= 1;
@@ -2601,8 +2589,7 @@ public class CPPSemantics {
 			if (impliedObjectType == null) {
 				impliedObjectType= data.getImpliedObjectType();
 			}
-			if (fn instanceof ICPPMethod && 
-					(((ICPPMethod) fn).isDestructor() || ASTInternal.isStatic(fn, false))) {
+			if (sig.ignoresImpliedObject()) {
 			    // 13.3.1-4 for static member functions, the implicit object parameter always matches, no cost
 			    cost = new Cost(impliedObjectType, implicitParameterType, Rank.IDENTITY);
 			    cost.setImpliedObject();
@@ -2642,8 +2629,8 @@ public class CPPSemantics {
 
 			IType paramType;
 			if (j < paramTypes.length) {
-				paramType= getNestedType(paramTypes[j], TDEF);
-			} else if (!fn.takesVarArgs()) {
+				paramType= paramTypes[j];
+			} else if (!sig.takesVarArgs()) {
 				paramType= VOID_TYPE;
 			} else {
 				cost = new Cost(argType, null, Rank.ELLIPSIS_CONVERSION);
@@ -1581,12 +1581,17 @@ public class CPPTemplates {
 		if (!haveTemplate && !requireTemplate) 
 			return fns;
 		
+		final TemplateInstantiationCache cache= TemplateInstantiationCache.getCache(name);
+		// the arguments are hashed once for all candidates.
+		final TemplateInstantiationCache.Arguments cacheArgs= cache == null ? null
+				: new TemplateInstantiationCache.Arguments(tmplArgs, fnArgs, argCats);
 		final List<ICPPFunction> result= new ArrayList<ICPPFunction>(fns.length);
 		for (ICPPFunction fn : fns) {
 			if (fn != null) {
 				if (fn instanceof ICPPFunctionTemplate) {
 					ICPPFunctionTemplate fnTmpl= (ICPPFunctionTemplate) fn;
-					ICPPFunction inst = instantiateForFunctionCall(fnTmpl, tmplArgs, fnArgs, argCats, withImpliedObjectArg);
+					ICPPFunction inst = instantiateForFunctionCall(fnTmpl, tmplArgs, fnArgs, argCats,
+							withImpliedObjectArg, cache, cacheArgs);
 					if (inst != null)
 						result.add(inst);
 				} else if (!requireTemplate || fn instanceof ICPPUnknownBinding) {
@@ -1599,12 +1604,30 @@ public class CPPTemplates {
 
 	private static ICPPFunction instantiateForFunctionCall(ICPPFunctionTemplate template,
 			ICPPTemplateArgument[] tmplArgs, List<IType> fnArgs, List<ValueCategory> argCats,
-			boolean withImpliedObjectArg) {
+			boolean withImpliedObjectArg, TemplateInstantiationCache cache, 
+			TemplateInstantiationCache.Arguments cacheArgs) {
 		if (withImpliedObjectArg && template instanceof ICPPMethod) {
 			fnArgs= fnArgs.subList(1, fnArgs.size());
 			argCats= argCats.subList(1, argCats.size());
+			if (cacheArgs != null) {
+				cacheArgs= cacheArgs.withoutImpliedObjectArg();
+			}
 		}
-		
+		if (cache == null)
+			return instantiateForFunctionCall(template, tmplArgs, fnArgs, argCats);
+
+		final TemplateInstantiationCache.Key key= new TemplateInstantiationCache.Key(template, cacheArgs);
+		final Object cached= cache.get(key);
+		if (cached != TemplateInstantiationCache.NOT_CACHED)
+			return (ICPPFunction) cached;
+
+		final ICPPFunction result= instantiateForFunctionCall(template, tmplArgs, fnArgs, argCats);
+		cache.put(key, result);
+		return result;
+	}
+
+	private static ICPPFunction instantiateForFunctionCall(ICPPFunctionTemplate template,
+			ICPPTemplateArgument[] tmplArgs, List<IType> fnArgs, List<ValueCategory> argCats) {
 		CPPTemplateParameterMap map= new CPPTemplateParameterMap(fnArgs.size());
 		try {
 			ICPPTemplateArgument[] args= TemplateArgumentDeduction.deduceForFunctionCall(template, tmplArgs, fnArgs, argCats, map);
@@ -1679,19 +1702,37 @@ public class CPPTemplates {
 				tmplArgs= ICPPTemplateArgument.EMPTY_ARGUMENTS;
 			}
 
-			CPPTemplateParameterMap map= new CPPTemplateParameterMap(4);
-			ICPPTemplateArgument[] args= TemplateArgumentDeduction.deduceForAddressOf(template, tmplArgs, target, map);
-			if (args != null) {
-				IBinding instance= instantiateFunctionTemplate(template, args, map);
-				if (instance instanceof ICPPFunction) {
-					return (ICPPFunction) instance;
-				} 
-			}
+			final TemplateInstantiationCache cache= TemplateInstantiationCache.getCache(name);
+			if (cache == null)
+				return instantiateForAddressOfFunction(template, tmplArgs, target);
+
+			final TemplateInstantiationCache.Key key= new TemplateInstantiationCache.Key(template, 
+					new TemplateInstantiationCache.Arguments(tmplArgs, target));
+			final Object cached= cache.get(key);
+			if (cached != TemplateInstantiationCache.NOT_CACHED)
+				return (ICPPFunction) cached;
+
+			final ICPPFunction result= instantiateForAddressOfFunction(template, tmplArgs, target);
+			cache.put(key, result);
+			return result;
 		} catch (DOMException e) {
 		}
 		return null;
 	}
 
+	private static ICPPFunction instantiateForAddressOfFunction(ICPPFunctionTemplate template,
+			ICPPTemplateArgument[] tmplArgs, IFunctionType target) throws DOMException {
+		CPPTemplateParameterMap map= new CPPTemplateParameterMap(4);
+		ICPPTemplateArgument[] args= TemplateArgumentDeduction.deduceForAddressOf(template, tmplArgs, target, map);
+		if (args != null) {
+			IBinding instance= instantiateFunctionTemplate(template, args, map);
+			if (instance instanceof ICPPFunction) {
+				return (ICPPFunction) instance;
+			} 
+		}
+		return null;
+	}
+
 	// 14.5.6.2 Partial ordering of function templates
 	static int orderFunctionTemplates(ICPPFunctionTemplate f1, ICPPFunctionTemplate f2, TypeSelection mode)
 			throws DOMException {
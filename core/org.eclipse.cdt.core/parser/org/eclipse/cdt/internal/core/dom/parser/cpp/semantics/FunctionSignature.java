@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.dom.parser.cpp.semantics;
+
+import static org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.SemanticUtil.TDEF;
+import static org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.SemanticUtil.getNestedType;
+
+import java.util.HashMap;
+
+import org.eclipse.cdt.core.dom.ast.DOMException;
+import org.eclipse.cdt.core.dom.ast.IType;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPConstructor;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPFunction;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPFunctionType;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPMethod;
+import org.eclipse.cdt.internal.core.dom.parser.ASTInternal;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTTranslationUnit;
+import org.eclipse.cdt.internal.core.parser.util.CacheStatistics;
+
+/**
+ * The signature of a function in the form needed for overload resolution. Computing it requires
+ * access to the parameters of the function, which is costly for functions from the index. The
+ * signatures are cached per translation unit, such that a large overload set (e.g. the shift
+ * operators of an output stream) is analyzed once rather than for each call.
+ */
+public final class FunctionSignature {
+	private static final int UNKNOWN= -1;
+
+	/**
+	 * Cache for the signatures of the functions called within a translation unit.
+	 */
+	public static final class Cache {
+		private final HashMap<ICPPFunction, FunctionSignature> fSignatures= new HashMap<ICPPFunction, FunctionSignature>();
+		private final CacheStatistics fStatistics= new CacheStatistics();
+
+		synchronized FunctionSignature get(ICPPFunction fn) {
+			FunctionSignature result= fSignatures.get(fn);
+			fStatistics.record(result != null);
+			return result;
+		}
+
+		synchronized void put(ICPPFunction fn, FunctionSignature signature) {
+			fSignatures.put(fn, signature);
+		}
+
+		public CacheStatistics getStatistics() {
+			return fStatistics;
+		}
+
+		public synchronized int size() {
+			return fSignatures.size();
+		}
+
+		public synchronized void clear() {
+			fSignatures.clear();
+			fStatistics.reset();
+		}
+	}
+
+	/**
+	 * Returns the signature for the given function, which is cached with the translation unit
+	 * once the ast is complete. While ambiguities are resolved, further declarations may
+	 * contribute default arguments.
+	 */
+	static FunctionSignature get(ICPPFunction fn, CPPASTTranslationUnit tu) {
+		if (tu == null || !tu.isFrozen())
+			return new FunctionSignature(fn);
+
+		final Cache cache= tu.getFunctionSignatureCache();
+		FunctionSignature result= cache.get(fn);
+		if (result == null) {
+			result= new FunctionSignature(fn);
+			cache.put(fn, result);
+		}
+		return result;
+	}
+
+	private final ICPPFunction fFunction;
+	private final ICPPFunctionType fType;
+	private final IType[] fParameterTypes;
+	private final int fParameterCount;
+	private final boolean fTakesVarArgs;
+
+	// Computed on demand, the index is optimized to provide the function type.
+	private volatile int fRequiredArgumentCount= UNKNOWN;
+	private volatile int fHasParameterPack= UNKNOWN;
+	private volatile IType fImplicitParameterType;
+	private volatile int fIgnoresImpliedObject= UNKNOWN;
+
+	private FunctionSignature(ICPPFunction fn) {
+		fFunction= fn;
+		fType= fn.getType();
+		if (fType == null) {
+			fParameterTypes= IType.EMPTY_TYPE_ARRAY;
+			fParameterCount= 0;
+			fTakesVarArgs= false;
+		} else {
+			final IType[] parameterTypes= fType.getParameterTypes();
+			int numPars= parameterTypes.length;
+			if (numPars == 1 && SemanticUtil.isVoidType(parameterTypes[0]))
+				numPars= 0;
+			fParameterCount= numPars;
+			fParameterTypes= new IType[parameterTypes.length];
+			for (int i = 0; i < parameterTypes.length; i++) {
+				fParameterTypes[i]= getNestedType(parameterTypes[i], TDEF);
+			}
+			fTakesVarArgs= fn.takesVarArgs();
+		}
+	}
+
+	/**
+	 * Returns the type of the function, may be <code>null</code>.
+	 */
+	public ICPPFunctionType getType() {
+		return fType;
+	}
+
+	/**
+	 * Returns the types of the parameters with typedefs removed.
+	 */
+	public IType[] getParameterTypes() {
+		return fParameterTypes;
+	}
+
+	/**
+	 * Returns the number of parameters, a single parameter of type <code>void</code> is not counted.
+	 */
+	public int getParameterCount() {
+		return fParameterCount;
+	}
+
+	public boolean takesVarArgs() {
+		return fTakesVarArgs;
+	}
+
+	public boolean hasParameterPack() {
+		int result= fHasParameterPack;
+		if (result == UNKNOWN) {
+			fHasParameterPack= result= fFunction.hasParameterPack() ? 1 : 0;
+		}
+		return result != 0;
+	}
+
+	public int getRequiredArgumentCount() {
+		int result= fRequiredArgumentCount;
+		if (result == UNKNOWN) {
+			fRequiredArgumentCount= result= fFunction.getRequiredArgumentCount();
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether the function can be called with the given number of arguments.
+	 */
+	public boolean acceptsArgumentCount(int numArgs) {
+		if (numArgs > fParameterCount) {
+			// more arguments than parameters --> need ellipsis or parameter pack
+			return fTakesVarArgs || hasParameterPack();
+		}
+		return numArgs >= getRequiredArgumentCount();
+	}
+
+	/**
+	 * Returns the type of the implicit object parameter for methods other than constructors,
+	 * or <code>null</code>.
+	 */
+	public IType getImplicitParameterType() throws DOMException {
+		if (!(fFunction instanceof ICPPMethod) || fFunction instanceof ICPPConstructor)
+			return null;
+
+		IType result= fImplicitParameterType;
+		if (result == null) {
+			fImplicitParameterType= result= CPPSemantics.getImplicitParameterType((ICPPMethod) fFunction);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the implicit object parameter matches any object, which is the case for
+	 * static methods and destructors (13.3.1-4).
+	 */
+	public boolean ignoresImpliedObject() {
+		int result= fIgnoresImpliedObject;
+		if (result == UNKNOWN) {
+			boolean ignores= fFunction instanceof ICPPMethod &&
+					(((ICPPMethod) fFunction).isDestructor() || ASTInternal.isStatic(fFunction, false));
+			fIgnoresImpliedObject= result= ignores ? 1 : 0;
+		}
+		return result != 0;
+	}
+}
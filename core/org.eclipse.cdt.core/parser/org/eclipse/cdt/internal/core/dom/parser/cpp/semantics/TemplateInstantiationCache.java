@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.dom.parser.cpp.semantics;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.eclipse.cdt.core.dom.ast.ASTTypeUtil;
+import org.eclipse.cdt.core.dom.ast.IASTExpression.ValueCategory;
+import org.eclipse.cdt.core.dom.ast.IASTName;
+import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
+import org.eclipse.cdt.core.dom.ast.IType;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPFunction;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPFunctionTemplate;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPTemplateArgument;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTTranslationUnit;
+import org.eclipse.cdt.internal.core.parser.util.CacheStatistics;
+
+/**
+ * Cache for the results of deducing the template arguments of a function template and
+ * instantiating it, including failed attempts. The same function template is typically
+ * instantiated for the same argument types over and over again in a translation unit.
+ * <p>
+ * The cache is kept per translation unit. The types used as keys are compared via
+ * {@link IType#isSameType(IType)}, their string representation is used for hashing, only.
+ */
+public final class TemplateInstantiationCache {
+	/**
+	 * Returned by {@link #get(Key)} when there is no result in the cache.
+	 */
+	static final Object NOT_CACHED= new Object();
+
+	/**
+	 * Returns the cache of the translation unit containing the name, or <code>null</code> if
+	 * the cache cannot be used. The cache is used only after the ast has been completed.
+	 * While ambiguities are resolved, the declarations visible to a name depend on the order
+	 * of resolution.
+	 */
+	static TemplateInstantiationCache getCache(IASTName name) {
+		if (name != null) {
+			final IASTTranslationUnit tu= name.getTranslationUnit();
+			if (tu instanceof CPPASTTranslationUnit && tu.isFrozen()) {
+				return ((CPPASTTranslationUnit) tu).getTemplateInstantiationCache();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The arguments of a function call or the target type for taking the address of a function
+	 * template. The hash code is computed once for all candidates considered for the call.
+	 */
+	static final class Arguments {
+		private final ICPPTemplateArgument[] fTemplateArgs;
+		private final IType[] fTypes;
+		private final ValueCategory[] fValueCategories;
+		private final int fHashCode;
+		private Arguments fWithoutImpliedObjectArg;
+
+		/**
+		 * Creates the arguments for a call with the given arguments.
+		 */
+		Arguments(ICPPTemplateArgument[] tmplArgs, List<IType> fnArgs, List<ValueCategory> argCats) {
+			this(tmplArgs, fnArgs.toArray(new IType[fnArgs.size()]),
+					argCats.toArray(new ValueCategory[argCats.size()]));
+		}
+
+		/**
+		 * Creates the arguments for taking the address of a function template, the target type
+		 * may be <code>null</code>.
+		 */
+		Arguments(ICPPTemplateArgument[] tmplArgs, IType target) {
+			this(tmplArgs, new IType[] {target}, null);
+		}
+
+		private Arguments(ICPPTemplateArgument[] tmplArgs, IType[] types, ValueCategory[] valueCats) {
+			fTemplateArgs= tmplArgs;
+			fTypes= types;
+			fValueCategories= valueCats;
+
+			int hash= 0;
+			if (tmplArgs.length > 0) {
+				hash= ASTTypeUtil.getArgumentListString(tmplArgs, true).hashCode();
+			}
+			for (IType type : types) {
+				hash= 31 * hash + (type == null ? 0 : ASTTypeUtil.getType(type, true).hashCode());
+			}
+			fHashCode= hash;
+		}
+
+		/**
+		 * Returns the arguments of a call without the implied object argument, which is the 
+		 * first one.
+		 */
+		Arguments withoutImpliedObjectArg() {
+			if (fWithoutImpliedObjectArg == null) {
+				final int length= fTypes.length - 1;
+				IType[] types= new IType[length];
+				System.arraycopy(fTypes, 1, types, 0, length);
+				ValueCategory[] valueCats= new ValueCategory[length];
+				System.arraycopy(fValueCategories, 1, valueCats, 0, length);
+				fWithoutImpliedObjectArg= new Arguments(fTemplateArgs, types, valueCats);
+			}
+			return fWithoutImpliedObjectArg;
+		}
+
+		boolean isSame(Arguments other) {
+			if (this == other)
+				return true;
+			if (fHashCode != other.fHashCode)
+				return false;
+			if (fTypes.length != other.fTypes.length || fTemplateArgs.length != other.fTemplateArgs.length)
+				return false;
+			if ((fValueCategories == null) != (other.fValueCategories == null))
+				return false;
+			for (int i = 0; i < fTemplateArgs.length; i++) {
+				if (!fTemplateArgs[i].isSameValue(other.fTemplateArgs[i]))
+					return false;
+			}
+			for (int i = 0; i < fTypes.length; i++) {
+				final IType t1= fTypes[i];
+				final IType t2= other.fTypes[i];
+				if (t1 != t2 && (t1 == null || t2 == null || !t1.isSameType(t2)))
+					return false;
+				if (fValueCategories != null && fValueCategories[i] != other.fValueCategories[i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Key for an instantiation of a function template for a function call or for taking
+	 * its address.
+	 */
+	static final class Key {
+		private final ICPPFunctionTemplate fTemplate;
+		private final Arguments fArguments;
+		private final int fHashCode;
+
+		Key(ICPPFunctionTemplate template, Arguments args) {
+			fTemplate= template;
+			fArguments= args;
+			fHashCode= 31 * template.hashCode() + args.fHashCode;
+		}
+
+		@Override
+		public int hashCode() {
+			return fHashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key other= (Key) obj;
+			return fHashCode == other.fHashCode && fTemplate.equals(other.fTemplate)
+					&& fArguments.isSame(other.fArguments);
+		}
+	}
+
+	private HashMap<Key, ICPPFunction> fResults;
+	private final CacheStatistics fStatistics= new CacheStatistics();
+
+	/**
+	 * Returns the cached instance for the key, which is <code>null</code> if the instantiation
+	 * failed, or {@link #NOT_CACHED}.
+	 */
+	synchronized Object get(Key key) {
+		if (fResults != null && fResults.containsKey(key)) {
+			fStatistics.record(true);
+			return fResults.get(key);
+		}
+		fStatistics.record(false);
+		return NOT_CACHED;
+	}
+
+	/**
+	 * Stores the result of an instantiation, <code>null</code> for a failed attempt.
+	 */
+	synchronized void put(Key key, ICPPFunction result) {
+		if (fResults == null) {
+			fResults= new HashMap<Key, ICPPFunction>();
+		}
+		fResults.put(key, result);
+	}
+
+	public CacheStatistics getStatistics() {
+		return fStatistics;
+	}
+
+	public synchronized int size() {
+		return fResults == null ? 0 : fResults.size();
+	}
+
+	public synchronized void clear() {
+		fResults= null;
+		fStatistics.reset();
+	}
+}
@@ -336,6 +336,7 @@ public class CIndex implements IIndex {
 				for (i = 0; i < fFragments.length; i++) {
 					fFragments[i].acquireReadLock();
 				}
+				setCachesEnabled(true);
 			} finally {
 				if (i < fFragments.length) {
 					// rollback
@@ -350,6 +351,8 @@ public class CIndex implements IIndex {
 
 	public synchronized void releaseReadLock() {
 		if (--fReadLock == 0) {
+			// The fragments may change as soon as the lock is released.
+			setCachesEnabled(false);
 			for (IIndexFragment fragment : fFragments) {
 				fragment.releaseReadLock();
 			}
@@ -360,6 +363,17 @@ public class CIndex implements IIndex {
 		return fReadLock;
 	}
 
+	/**
+	 * Enables or disables the caches of the composite bindings, a disabled cache is cleared.
+	 */
+	protected synchronized void setCachesEnabled(boolean enable) {
+		for (ICompositesFactory factory : new ICompositesFactory[] {cppCF, cCF, fCF}) {
+			if (factory != null) {
+				factory.setCacheEnabled(enable);
+			}
+		}
+	}
+
 	public boolean hasWaitingReaders() {
 		for (IIndexFragment fragment : fFragments) {
 			if (fragment.hasWaitingReaders()) {
@@ -476,23 +490,23 @@ public class CIndex implements IIndex {
 		return result.toArray(new IIndexFragmentBinding[result.size()]);
 	}
 
-	private ICompositesFactory getCompositesFactory(int linkageID) {
+	private synchronized ICompositesFactory getCompositesFactory(int linkageID) {
 		switch (linkageID) {
 		case ILinkage.CPP_LINKAGE_ID:
 			if (cppCF == null) {
-				cppCF = new CPPCompositesFactory(new CIndex(fFragments, fFragments.length));
+				cppCF = initCache(new CPPCompositesFactory(new CIndex(fFragments, fFragments.length)));
 			}
 			return cppCF;
 
 		case ILinkage.C_LINKAGE_ID:
 			if (cCF == null) {
-				cCF = new CCompositesFactory(new CIndex(fFragments, fFragments.length));
+				cCF = initCache(new CCompositesFactory(new CIndex(fFragments, fFragments.length)));
 			}
 			return cCF;
 
 		case ILinkage.FORTRAN_LINKAGE_ID:
 			if (fCF == null) {
-				fCF = new CCompositesFactory(new CIndex(fFragments, fFragments.length));
+				fCF = initCache(new CCompositesFactory(new CIndex(fFragments, fFragments.length)));
 			}
 			// This is a placeholder - it will throw CompositingNotImplementedError
 			// if non-empty (non-c) results are returned by a fragment
@@ -501,6 +515,15 @@ public class CIndex implements IIndex {
 		throw new CompositingNotImplementedError();
 	}
 
+	/**
+	 * The composite bindings are cached as long as the read lock is held, the fragments cannot
+	 * change during that time.
+	 */
+	private ICompositesFactory initCache(ICompositesFactory factory) {
+		factory.setCacheEnabled(fReadLock > 0);
+		return factory;
+	}
+
 	private IndexFilter retargetFilter(final ILinkage linkage, final IndexFilter filter) {
 		return new IndexFilter() {
 			@Override
@@ -112,4 +112,10 @@ public interface IWritableIndexFragment extends IIndexFragment {
 	 * @return the size of the database in bytes
 	 */
 	long getDatabaseSizeBytes();
+
+	/**
+	 * Returns the number of nodes that have been deleted from the fragment. The records of deleted
+	 * nodes may be reused, bindings obtained before the count has changed may no longer be valid.
+	 */
+	long getDeletedNodeCount();
 }
@@ -164,7 +164,7 @@ public final class IndexBasedFileContentProvider extends InternalFileContentProv
 		}
 		IndexFileContent content;
 		if (fRelatedIndexerTask != null) {
-			content= fRelatedIndexerTask.getFileContent(fLinkage, ifl);
+			content= fRelatedIndexerTask.getFileContent(fLinkage, ifl, fIndex);
 			if (content == null) {
 				throw new NeedToParseException();
 			}
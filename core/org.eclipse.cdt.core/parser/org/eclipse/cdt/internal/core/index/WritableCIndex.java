@@ -126,6 +126,8 @@ public class WritableCIndex extends CIndex implements IWritableIndex {
 		assert !fIsWriteLocked: "Multiple write locks is not allowed"; //$NON-NLS-1$
 		assert giveupReadlockCount == getReadLockCount(): "Unexpected read lock is not allowed"; //$NON-NLS-1$
 		
+		// The records of the cached bindings may be freed and reused while writing.
+		setCachesEnabled(false);
 		fWritableFragment.acquireWriteLock(giveupReadlockCount);
 		fIsWriteLocked= true;
 	}
@@ -149,6 +151,8 @@ public class WritableCIndex extends CIndex implements IWritableIndex {
 		
 		if (establishReadlockCount == 0) {
 			fThread= null;
+		} else {
+			setCachesEnabled(true);
 		}
 	}
 
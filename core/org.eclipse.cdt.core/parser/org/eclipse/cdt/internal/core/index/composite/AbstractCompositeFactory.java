@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 Symbian Software Systems and others.
+ * Copyright (c) 2007, 2011 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@
 package org.eclipse.cdt.internal.core.index.composite;
 
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.TreeSet;
 
 import org.eclipse.cdt.core.CCorePlugin;
@@ -23,6 +24,7 @@ import org.eclipse.cdt.internal.core.index.CIndex;
 import org.eclipse.cdt.internal.core.index.DefaultFragmentBindingComparator;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentBinding;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentBindingComparator;
+import org.eclipse.cdt.internal.core.parser.util.CacheStatistics;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMFragmentBindingComparator;
 import org.eclipse.core.runtime.CoreException;
 
@@ -32,6 +34,8 @@ import org.eclipse.core.runtime.CoreException;
 public abstract class AbstractCompositeFactory implements ICompositesFactory {	
 	protected IIndex index;
 	private Comparator<IIndexFragmentBinding> fragmentComparator;
+	private HashMap<IIndexFragmentBinding, IIndexBinding> fCompositeBindings;
+	private final CacheStatistics fCacheStatistics= new CacheStatistics();
 	
 	public AbstractCompositeFactory(IIndex index) {
 		this.index= index;
@@ -61,6 +65,59 @@ public abstract class AbstractCompositeFactory implements ICompositesFactory {
 		return result;
 	}
 
+	/**
+	 * @see ICompositesFactory#getCompositeBinding(IIndexFragmentBinding)
+	 */
+	public final IIndexBinding getCompositeBinding(IIndexFragmentBinding binding) {
+		if (binding == null)
+			return null;
+
+		final HashMap<IIndexFragmentBinding, IIndexBinding> cache;
+		synchronized (this) {
+			cache= fCompositeBindings;
+			if (cache != null) {
+				IIndexBinding result= cache.get(binding);
+				fCacheStatistics.record(result != null);
+				if (result != null) {
+					return result;
+				}
+			}
+		}
+		IIndexBinding result= createCompositeBinding(binding);
+		if (result != null && cache != null) {
+			synchronized (this) {
+				// Don't store the binding if the cache has been invalidated in the meantime.
+				if (cache == fCompositeBindings) {
+					cache.put(binding, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a new composite binding for the specified binding, which is not <code>null</code>.
+	 */
+	protected abstract IIndexBinding createCompositeBinding(IIndexFragmentBinding binding);
+
+	/**
+	 * @see ICompositesFactory#setCacheEnabled(boolean)
+	 */
+	public final synchronized void setCacheEnabled(boolean enable) {
+		if (!enable) {
+			fCompositeBindings= null;
+		} else if (fCompositeBindings == null) {
+			fCompositeBindings= new HashMap<IIndexFragmentBinding, IIndexBinding>();
+		}
+	}
+
+	/**
+	 * @see ICompositesFactory#getCacheStatistics()
+	 */
+	public final CacheStatistics getCacheStatistics() {
+		return fCacheStatistics;
+	}
+
 	/**
 	 * @see ICompositesFactory#getCompositeBindings(IIndexFragmentBinding[][])
 	 */
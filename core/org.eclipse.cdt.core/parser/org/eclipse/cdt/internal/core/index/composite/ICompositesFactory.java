@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 Symbian Software Systems and others.
+ * Copyright (c) 2007, 2011 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import org.eclipse.cdt.core.dom.ast.IValue;
 import org.eclipse.cdt.core.index.IIndexBinding;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentBinding;
 import org.eclipse.cdt.internal.core.index.IIndexScope;
+import org.eclipse.cdt.internal.core.parser.util.CacheStatistics;
 
 public interface ICompositesFactory {
 	
@@ -36,6 +37,18 @@ public interface ICompositesFactory {
 	 */
 	public IIndexBinding getCompositeBinding(IIndexFragmentBinding binding);
 
+	/**
+	 * Enables or disables the cache of composite bindings. While the cache is enabled, the same
+	 * composite is returned for a binding of a fragment. The cache must be disabled (which
+	 * clears it) whenever the fragments may change.
+	 */
+	public void setCacheEnabled(boolean enable);
+
+	/**
+	 * Returns the statistics of the lookups in the cache of composite bindings.
+	 */
+	public CacheStatistics getCacheStatistics();
+
 	/**
 	 * Identifies common bindings, calls getCompositeBindings
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 Symbian Software Systems and others.
+ * Copyright (c) 2007, 2011 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -129,9 +129,10 @@ public class CCompositesFactory extends AbstractCompositeFactory {
 	}
 
 	/* 
-	 * @see org.eclipse.cdt.internal.core.index.composite.cpp.ICompositesFactory#getCompositeBinding(org.eclipse.cdt.core.index.IIndex, org.eclipse.cdt.core.dom.ast.IBinding)
+	 * @see org.eclipse.cdt.internal.core.index.composite.AbstractCompositeFactory#createCompositeBinding(org.eclipse.cdt.internal.core.index.IIndexFragmentBinding)
 	 */
-	public IIndexBinding getCompositeBinding(IIndexFragmentBinding rbinding) {
+	@Override
+	protected IIndexBinding createCompositeBinding(IIndexFragmentBinding rbinding) {
 		IIndexBinding result;
 		
 		if(rbinding==null) {
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.parser.CodeReaderCache;
+import org.eclipse.cdt.internal.core.parser.scanner.CharArray;
+import org.eclipse.cdt.internal.core.parser.util.CacheStatistics;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+
+/**
+ * Cache for the contents of files read by the parser, shared by all file content providers.
+ * Header files are typically read for many translation units, the cache avoids reading and
+ * decoding them over and over again.
+ * <p>
+ * Only small files that are fully decoded into a {@link CharArray} are cached, these are immutable
+ * and can be used by parsers running in different threads. The cache is bounded by the number
+ * of bytes held, the least recently used entries are evicted first. An entry is valid as long as
+ * modification time and size of the file do not change, in addition entries are removed when
+ * the workspace reports a change of the file.
+ * <p>
+ * The size limit is taken from the preference {@link CodeReaderCache#CODE_READER_BUFFER}.
+ */
+public final class FileContentCache {
+	private static final long MB= 1024 * 1024;
+	private static final FileContentCache INSTANCE= new FileContentCache(-1);
+
+	public static FileContentCache getInstance() {
+		return INSTANCE;
+	}
+
+	private static final class Entry {
+		final String fCharset;
+		final long fTimestamp;
+		final long fFileSize;
+		final CharArray fChars;
+		final long fWeight;
+
+		Entry(String charset, long timestamp, long fileSize, CharArray chars) {
+			fCharset= charset;
+			fTimestamp= timestamp;
+			fFileSize= fileSize;
+			fChars= chars;
+			fWeight= 2L * chars.getLength();
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> fCache= new LinkedHashMap<String, Entry>(256, 0.75f, true);
+	private long fSizeLimit;
+	private long fBytesHeld;
+	private final CacheStatistics fStatistics= new CacheStatistics();
+	private long fEvictions;
+	private boolean fListening;
+
+	/**
+	 * Creates a cache with the given limit in bytes, a negative limit causes the limit to be
+	 * read from the preferences.
+	 */
+	FileContentCache(long sizeLimit) {
+		fSizeLimit= sizeLimit;
+	}
+
+	/**
+	 * Returns the cached content for the file at the given path, or <code>null</code> if there is no
+	 * valid entry. The entry is valid if it was read using the same charset and the given file still
+	 * has the same modification time and size.
+	 */
+	public CharArray get(String path, String charset, File file) {
+		final long timestamp= file.lastModified();
+		final long fileSize= file.length();
+		synchronized (this) {
+			final Entry entry= fCache.get(path);
+			if (entry != null) {
+				if (entry.fTimestamp == timestamp && entry.fFileSize == fileSize
+						&& entry.fCharset.equals(charset)) {
+					fStatistics.record(true);
+					return entry.fChars;
+				}
+				removeEntry(path);
+			}
+			fStatistics.record(false);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the content of a file. Modification time and size of the file must be determined
+	 * before the file is read, such that a modification during the read invalidates the entry.
+	 */
+	public void put(String path, String charset, long timestamp, long fileSize, CharArray chars) {
+		if (timestamp == 0)
+			return;
+
+		final Entry entry= new Entry(charset, timestamp, fileSize, chars);
+		synchronized (this) {
+			final long limit= getSizeLimit();
+			if (entry.fWeight > limit / 4)
+				return;
+
+			registerListeners();
+			removeEntry(path);
+			fCache.put(path, entry);
+			fBytesHeld+= entry.fWeight;
+			evict(limit);
+		}
+	}
+
+	/**
+	 * Removes the entry for the given path.
+	 */
+	public synchronized void remove(String path) {
+		removeEntry(path);
+	}
+
+	/**
+	 * Removes all entries and resets the statistics.
+	 */
+	public synchronized void clear() {
+		fCache.clear();
+		fBytesHeld= 0;
+		fStatistics.reset();
+		fEvictions= 0;
+	}
+
+	/**
+	 * Changes the maximum number of bytes held by the cache, a negative value causes the limit to
+	 * be read from the preferences.
+	 */
+	public synchronized void setSizeLimit(long bytes) {
+		fSizeLimit= bytes;
+		evict(getSizeLimit());
+	}
+
+	public synchronized long getSizeLimit() {
+		if (fSizeLimit < 0) {
+			long mb= CodeReaderCache.DEFAULT_CACHE_SIZE_IN_MB;
+			if (Platform.isRunning()) {
+				mb= Platform.getPreferencesService().getInt(CCorePlugin.PLUGIN_ID,
+						CodeReaderCache.CODE_READER_BUFFER, CodeReaderCache.DEFAULT_CACHE_SIZE_IN_MB, null);
+				if (mb < 0)
+					mb= CodeReaderCache.DEFAULT_CACHE_SIZE_IN_MB;
+			}
+			fSizeLimit= mb * MB;
+		}
+		return fSizeLimit;
+	}
+
+	public synchronized long getBytesHeld() {
+		return fBytesHeld;
+	}
+
+	public synchronized int getEntryCount() {
+		return fCache.size();
+	}
+
+	public CacheStatistics getStatistics() {
+		return fStatistics;
+	}
+
+	public synchronized long getEvictionCount() {
+		return fEvictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "FileContentCache: " + fCache.size() + " files, " + fBytesHeld + " bytes, " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ fStatistics + ", " + fEvictions + " evictions"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void removeEntry(String path) {
+		final Entry old= fCache.remove(path);
+		if (old != null) {
+			fBytesHeld-= old.fWeight;
+		}
+	}
+
+	private void evict(long limit) {
+		if (fBytesHeld <= limit)
+			return;
+		for (Iterator<Entry> it= fCache.values().iterator(); it.hasNext() && fBytesHeld > limit;) {
+			final Entry eldest= it.next();
+			it.remove();
+			fBytesHeld-= eldest.fWeight;
+			fEvictions++;
+		}
+	}
+
+	/**
+	 * Registers the listeners for resource changes and for changes of the size limit, as soon
+	 * as the first entry is added.
+	 */
+	private void registerListeners() {
+		if (fListening || !Platform.isRunning())
+			return;
+		fListening= true;
+		try {
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(new IResourceChangeListener() {
+				public void resourceChanged(IResourceChangeEvent event) {
+					final IResourceDelta delta= event.getDelta();
+					if (delta != null) {
+						handleDelta(delta);
+					}
+				}
+			}, IResourceChangeEvent.POST_CHANGE);
+			InstanceScope.INSTANCE.getNode(CCorePlugin.PLUGIN_ID).addPreferenceChangeListener(new IPreferenceChangeListener() {
+				public void preferenceChange(PreferenceChangeEvent event) {
+					if (CodeReaderCache.CODE_READER_BUFFER.equals(event.getKey())) {
+						setSizeLimit(-1);
+					}
+				}
+			});
+		} catch (IllegalStateException e) {
+			// The workspace is not available, rely on the modification times.
+		}
+	}
+
+	private void handleDelta(IResourceDelta delta) {
+		if (getEntryCount() == 0)
+			return;
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					final IResource res= delta.getResource();
+					if (res.getType() != IResource.FILE)
+						return true;
+					switch (delta.getKind()) {
+					case IResourceDelta.REMOVED:
+						break;
+					case IResourceDelta.CHANGED:
+						if ((delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING)) != 0)
+							break;
+						return false;
+					default:
+						return false;
+					}
+					final IPath location= res.getLocation();
+					if (location != null) {
+						remove(location.toOSString());
+					}
+					return false;
+				}
+			});
+		} catch (CoreException e) {
+			CCorePlugin.log(e);
+		}
+	}
+}
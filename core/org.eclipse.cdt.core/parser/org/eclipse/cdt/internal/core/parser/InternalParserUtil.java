@@ -21,6 +21,7 @@ import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.parser.FileContent;
 import org.eclipse.cdt.core.parser.ParserFactory;
 import org.eclipse.cdt.internal.core.parser.scanner.AbstractCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.CharArray;
 import org.eclipse.cdt.internal.core.parser.scanner.FileCharArray;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
 import org.eclipse.cdt.internal.core.resources.PathCanonicalizationStrategy;
@@ -153,9 +154,16 @@ public class InternalParserUtil extends ParserFactory {
 
 		InputStream in;
 		try {
+			final String charset= file.getCharset();
+			final IPath location= file.getLocation();
+			final File localFile= location != null ? location.toFile() : null;
+			InternalFileContent cached= getCachedFileContent(path, charset, localFile);
+			if (cached != null)
+				return cached;
+
 			in= file.getContents(true);
 			try {
-				return createFileContent(path, file.getCharset(), in);
+				return createFileContent(path, charset, localFile, in);
 			} finally {
 				try {
 					in.close();
@@ -199,6 +207,10 @@ public class InternalParserUtil extends ParserFactory {
 			}
 		}
 		if (includeFile != null && includeFile.isFile()) {
+			InternalFileContent cached= getCachedFileContent(path, encoding, includeFile);
+			if (cached != null)
+				return cached;
+
 			FileInputStream in;
 			try {
 				in = new FileInputStream(includeFile);
@@ -207,7 +219,7 @@ public class InternalParserUtil extends ParserFactory {
 				return null;
 			}
 			try {
-				return createFileContent(path, encoding, in);
+				return createFileContent(path, encoding, includeFile, in);
 			} finally {
 				try {
 					in.close();
@@ -218,9 +230,27 @@ public class InternalParserUtil extends ParserFactory {
 		return null;
 	}
 
-	private static InternalFileContent createFileContent(String path, String charset, InputStream in) {
+	/**
+	 * Returns the content of a local file from the {@link FileContentCache}, or <code>null</code>.
+	 */
+	private static InternalFileContent getCachedFileContent(String path, String charset, File localFile) {
+		if (localFile == null)
+			return null;
+		CharArray chars= FileContentCache.getInstance().get(path, charset, localFile);
+		if (chars == null)
+			return null;
+		return new InternalFileContent(path, chars);
+	}
+
+	private static InternalFileContent createFileContent(String path, String charset, File localFile, InputStream in) {
 		try {
+			// Determine the stamps before reading, a concurrent modification invalidates the entry.
+			final long timestamp= localFile != null ? localFile.lastModified() : 0;
+			final long fileSize= localFile != null ? localFile.length() : 0;
 			AbstractCharArray chars= FileCharArray.create(path, charset, in);
+			if (chars instanceof CharArray && timestamp != 0) {
+				FileContentCache.getInstance().put(path, charset, timestamp, fileSize, (CharArray) chars);
+			}
 			return new InternalFileContent(path, chars);
 		} catch (IOException e) {
 			CCorePlugin.log(e);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2011 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@
 package org.eclipse.cdt.internal.core.parser.scanner;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -336,20 +337,36 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
             fMacroDictionary.put(__STDC_VERSION__.getNameCharArray(), __STDC_VERSION__);
         }
 
+        // the macros provided by the configuration and the scanner info are parsed once for all
+        // preprocessors, each of them uses its own copies.
         IMacro[] toAdd = config.getAdditionalMacros();
-        if (toAdd != null) {
-        	for (final IMacro macro : toAdd) {
-        		addMacroDefinition(macro.getSignature(), macro.getExpansion());
+        final Map<String, String> macroDict= info.getDefinedSymbols();
+        final PredefinedMacroCache cache= PredefinedMacroCache.getInstance();
+        final PredefinedMacroCache.Key key= new PredefinedMacroCache.Key(lang, fLexOptions, toAdd, macroDict);
+        PreprocessorMacro[] macros= cache.get(key);
+        if (macros == null) {
+        	List<PreprocessorMacro> parsed= new ArrayList<PreprocessorMacro>();
+        	if (toAdd != null) {
+        		for (final IMacro macro : toAdd) {
+        			addMacro(parsed, macro.getSignature(), macro.getExpansion());
+        		}
         	}
+        	if (macroDict != null) {
+        		for (Map.Entry<String, String> entry : macroDict.entrySet()) {
+        			final String name= entry.getKey();
+        			final String value= entry.getValue().trim();
+        			addMacro(parsed, name.toCharArray(), value.toCharArray());
+        		}
+        	}
+        	macros= parsed.toArray(new PreprocessorMacro[parsed.size()]);
+        	cache.put(key, macros);
         }
-
-        final Map<String, String> macroDict= info.getDefinedSymbols();
-        if (macroDict != null) {
-        	for (Map.Entry<String, String> entry : macroDict.entrySet()) {
-				final String key= entry.getKey();
-				final String value= entry.getValue().trim();
-				addMacroDefinition(key.toCharArray(), value.toCharArray());
-            }
+        for (PreprocessorMacro macro : macros) {
+        	if (macro instanceof ObjectStyleMacro) {
+        		macro= ((ObjectStyleMacro) macro).copy();
+        	}
+        	fLocationMap.registerPredefinedMacro(macro);
+        	fMacroDictionary.put(macro.getNameCharArray(), macro);
         }
 
         Collection<PreprocessorMacro> predefined= fMacroDictionary.values();
@@ -418,13 +435,26 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     	return buffer;
 	}
 
+    private void addMacro(List<PreprocessorMacro> target, char[] key, char[] value) {
+    	PreprocessorMacro macro= parseMacroDefinition(key, value);
+    	if (macro != null) {
+    		target.add(macro);
+    	}
+    }
+
     public PreprocessorMacro addMacroDefinition(char[] key, char[] value) {
+    	PreprocessorMacro result= parseMacroDefinition(key, value);
+    	if (result != null) {
+    		fLocationMap.registerPredefinedMacro(result);
+    		fMacroDictionary.put(result.getNameCharArray(), result);
+    	}
+    	return result;
+    }
+
+    private PreprocessorMacro parseMacroDefinition(char[] key, char[] value) {
      	final Lexer lex= new Lexer(key, fLexOptions, ILexerLog.NULL, null);
     	try {
-    		PreprocessorMacro result= fMacroDefinitionParser.parseMacroDefinition(lex, ILexerLog.NULL, value);
-    		fLocationMap.registerPredefinedMacro(result);
-	    	fMacroDictionary.put(result.getNameCharArray(), result);
-	    	return result;
+    		return fMacroDefinitionParser.parseMacroDefinition(lex, ILexerLog.NULL, value);
     	} catch (Exception e) {
     		fLog.traceLog("Invalid macro definition: '" + String.valueOf(key) + "'");     //$NON-NLS-1$//$NON-NLS-2$
     		return null;
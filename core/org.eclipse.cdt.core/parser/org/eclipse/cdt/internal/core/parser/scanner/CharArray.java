@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2009, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,7 +17,7 @@ package org.eclipse.cdt.internal.core.parser.scanner;
 public final class CharArray extends AbstractCharArray {
 
 	private final char[] fArray;
-	private long hash64;
+	private volatile long hash64;
 
 	public CharArray(char[] array) {
 		fArray= array;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2010, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -7,7 +7,7 @@
  *
  * Contributors:
  *    Markus Schorn - initial API and implementation
- *******************************************************************************/ 
+ *******************************************************************************/
 package org.eclipse.cdt.internal.core.parser.scanner;
 
 import java.io.FileInputStream;
@@ -25,12 +25,22 @@ import java.nio.charset.CodingErrorAction;
 import org.eclipse.cdt.core.CCorePlugin;
 
 /**
- * Implementation of char array for a file referencing content via 
+ * Implementation of char array for a file referencing content via
  * soft references.
+ * <p>
+ * For charsets that are compatible with ASCII, chunks consisting of ASCII characters only are
+ * kept as bytes rather than being decoded. Optionally the file is mapped into memory, then such
+ * chunks do not use any space on the heap.
  */
 public class FileCharArray extends LazyCharArray {
 	private static final String UTF8_CHARSET_NAME = "UTF-8"; //$NON-NLS-1$
 
+	/**
+	 * Whether large files are mapped into memory. A mapped file cannot be modified on some
+	 * platforms until the mapping is garbage collected, therefore this is off by default.
+	 */
+	public static final boolean USE_MAPPED_IO= Boolean.getBoolean("org.eclipse.cdt.core.parser.scanner.mmap"); //$NON-NLS-1$
+
 	public static AbstractCharArray create(String fileName, String charSet, InputStream in) throws IOException {
 		// no support for non-local files
 		if (!(in instanceof FileInputStream)) {
@@ -46,15 +56,19 @@ public class FileCharArray extends LazyCharArray {
 			return decodeSmallFile(channel, (int) lsize, charSet);
 		}
 
-		return new FileCharArray(fileName, charSet);
+		final FileCharArray result= new FileCharArray(fileName, charSet);
+		if (USE_MAPPED_IO && lsize <= Integer.MAX_VALUE) {
+			result.fMappedFile= channel.map(FileChannel.MapMode.READ_ONLY, 0, lsize);
+		}
+		return result;
 	}
-	
+
 	private static AbstractCharArray decodeSmallFile(FileChannel channel, int lsize, String charSet) throws IOException {
 		ByteBuffer byteBuffer = ByteBuffer.allocate(lsize);
 		channel.read(byteBuffer);
 		byteBuffer.flip();
 		skipUTF8ByteOrderMark(byteBuffer, charSet);
-		
+
 		CharBuffer charBuffer = Charset.forName(charSet).decode(byteBuffer);
 		char[] buf= extractChars(charBuffer);
 		return new CharArray(buf);
@@ -69,7 +83,7 @@ public class FileCharArray extends LazyCharArray {
 			}
 		}
 	}
-	
+
 	private static char[] extractChars(CharBuffer charBuffer) {
 		if (charBuffer.hasArray() && charBuffer.arrayOffset() == 0) {
 			char[] buf = charBuffer.array();
@@ -81,21 +95,37 @@ public class FileCharArray extends LazyCharArray {
 		return buf;
 	}
 
+	/**
+	 * Checks whether the charset maps the ASCII range of bytes to the same characters and
+	 * does not use these bytes within the encoding of other characters.
+	 */
+	private static boolean isAsciiCompatible(String charSet) {
+		final String name= Charset.forName(charSet).name();
+		return name.equals(UTF8_CHARSET_NAME) || name.equals("US-ASCII") || name.equals("ISO-8859-1"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	private String fFileName;
 	private String fCharSet;
+	private final boolean fIsAsciiCompatible;
 	private FileChannel fChannel;
+	private ByteBuffer fMappedFile;
 	private long fNextFileOffset= 0;
 	private int fNextCharOffset= 0;
 	private boolean fReachedEOF= false;
-	
+
 
 	private FileCharArray(String fileName, String charSet) {
 		fFileName= fileName;
 		fCharSet= charSet;
+		fIsAsciiCompatible= isAsciiCompatible(charSet);
 	}
 
 	@Override
 	protected Chunk createChunk(int chunkNumber) {
+		if (fMappedFile != null) {
+			return super.createChunk(chunkNumber);
+		}
+
 		FileInputStream fis;
 		try {
 			fis = new FileInputStream(fFileName);
@@ -114,31 +144,32 @@ public class FileCharArray extends LazyCharArray {
 			}
 		}
 	}
-	
+
 	@Override
 	protected Chunk nextChunk() {
 		if (fReachedEOF)
 			return null;
-		
+
 		try {
-			assert fChannel != null;
+			assert fChannel != null || fMappedFile != null;
+			if (fIsAsciiCompatible) {
+				Chunk chunk= nextAsciiChunk();
+				if (chunk != null || fReachedEOF)
+					return chunk;
+			}
 			final Charset charset = Charset.forName(fCharSet);
 			final CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
 			.onUnmappableCharacter(CodingErrorAction.REPLACE);
 
 			int needBytes = 3 + (int) (CHUNK_SIZE * (double) decoder.averageCharsPerByte()); // avoid rounding errors.
-			final ByteBuffer in = ByteBuffer.allocate(needBytes);
 			final CharBuffer dest= CharBuffer.allocate(CHUNK_SIZE);
 
 			boolean eof;
 			CoderResult result;
 			long fileOffset= fNextFileOffset;
 			do {
-				in.clear();
-				fChannel.position(fileOffset);
-				fChannel.read(in);
-				eof= in.remaining() > 0;
-				in.flip();
+				final ByteBuffer in= readBytes(fChannel, fileOffset, needBytes);
+				eof= in.remaining() < needBytes;
 				if (fileOffset == 0) {
 					skipUTF8ByteOrderMark(in, fCharSet);
 				}
@@ -168,20 +199,115 @@ public class FileCharArray extends LazyCharArray {
 		}
 	}
 
+	/**
+	 * Creates the next chunk without decoding, in case it consists of ASCII characters, only.
+	 * Returns <code>null</code> if the chunk needs to be decoded or the end of the file has been
+	 * reached.
+	 */
+	private Chunk nextAsciiChunk() throws IOException {
+		final ByteBuffer in= readBytes(fChannel, fNextFileOffset, CHUNK_SIZE);
+		if (fNextFileOffset == 0) {
+			skipUTF8ByteOrderMark(in, fCharSet);
+		}
+		final int start= in.position();
+		final int end= in.limit();
+		if (start == end) {
+			fReachedEOF= true;
+			return null;
+		}
+		for (int i = start; i < end; i++) {
+			if (in.get(i) < 0)
+				return null;
+		}
+		final long sourceOffset= fNextFileOffset + start;
+		final long sourceEndOffset= fNextFileOffset + end;
+		final Chunk chunk= newAsciiChunk(sourceOffset, sourceEndOffset, fNextCharOffset, in);
+		fNextFileOffset= sourceEndOffset;
+		fNextCharOffset+= end - start;
+		if (end < CHUNK_SIZE) {
+			fReachedEOF= true;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Reads up to the given number of bytes from the file, the bytes read are the remaining
+	 * bytes of the buffer returned. For a mapped file the buffer is a view on the mapping and
+	 * the channel is not used.
+	 */
+	private ByteBuffer readBytes(FileChannel channel, long fileOffset, int length) throws IOException {
+		if (fMappedFile != null) {
+			final ByteBuffer result= fMappedFile.duplicate();
+			final int capacity= result.capacity();
+			final int start= (int) Math.min(fileOffset, capacity);
+			result.limit((int) Math.min((long) start + length, capacity));
+			result.position(start);
+			return result.slice();
+		}
+		final ByteBuffer result= ByteBuffer.allocate(length);
+		while (result.hasRemaining()) {
+			if (channel.read(result, fileOffset + result.position()) <= 0)
+				break;
+		}
+		result.flip();
+		return result;
+	}
+
 	@Override
 	protected void rereadChunkData(Chunk chunk, char[] dest) {
+		final ByteBuffer in= reread(chunk);
+		if (in == null)
+			return;
+		final Charset charset = Charset.forName(fCharSet);
+		final CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		if (chunk.fSourceOffset == 0) {
+			skipUTF8ByteOrderMark(in, fCharSet);
+		}
+		decoder.decode(in, CharBuffer.wrap(dest), true);
+	}
+
+	@Override
+	protected ByteBuffer rereadAsciiChunkData(Chunk chunk) {
+		final int length= (int) (chunk.fSourceEndOffset - chunk.fSourceOffset);
+		ByteBuffer result= reread(chunk);
+		if (result == null || result.remaining() < length) {
+			final ByteBuffer full= ByteBuffer.allocate(length);
+			if (result != null) {
+				full.put(result);
+			}
+			full.clear();
+			result= full;
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the bytes of the source range of the chunk, returns <code>null</code> if the file
+	 * can no longer be read.
+	 */
+	private ByteBuffer reread(Chunk chunk) {
+		final int length= (int) (chunk.fSourceEndOffset - chunk.fSourceOffset);
+		if (fMappedFile != null) {
+			try {
+				return readBytes(null, chunk.fSourceOffset, length);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
 		FileInputStream fis;
 		try {
 			fis = new FileInputStream(fFileName);
 		} catch (FileNotFoundException e1) {
 			// File has been deleted in the meantime
-			return;
+			return null;
 		}
 		try {
-			FileChannel channel = fis.getChannel();
-			decode(channel, chunk.fSourceOffset, chunk.fSourceEndOffset, CharBuffer.wrap(dest));
+			return readBytes(fis.getChannel(), chunk.fSourceOffset, length);
 		} catch (IOException e) {
 			// File cannot be read
+			return null;
 		} finally {
 			try {
 				fis.close();
@@ -189,21 +315,4 @@ public class FileCharArray extends LazyCharArray {
 			}
 		}
 	}
-
-	private void decode(FileChannel channel, long fileOffset, long fileEndOffset, CharBuffer dest) throws IOException {
-		final Charset charset = Charset.forName(fCharSet);
-		final CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
-				.onUnmappableCharacter(CodingErrorAction.REPLACE);
-
-		final ByteBuffer in = ByteBuffer.allocate((int) (fileEndOffset - fileOffset));
-		
-		in.clear();
-		channel.position(fileOffset);
-		channel.read(in);
-		in.flip();
-		if (fileOffset == 0) {
-			skipUTF8ByteOrderMark(in, fCharSet);
-		}
-		decoder.decode(in, dest, true);
-	}
 }
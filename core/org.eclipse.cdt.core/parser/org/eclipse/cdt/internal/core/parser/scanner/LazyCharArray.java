@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2010, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@
 package org.eclipse.cdt.internal.core.parser.scanner;
 
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,6 +20,8 @@ import java.util.List;
  * Implementation of char array for a file referencing content via 
  * soft references.
  * Because of bug 320157 we need to deal with chunks of different length.
+ * Chunks consisting of ASCII characters only can be provided as bytes, such that they
+ * don't need to be decoded.
  */
 public abstract class LazyCharArray extends AbstractCharArray {
 	private final static int CHUNK_BITS= 16;  // 2^16 == 64K
@@ -29,23 +32,36 @@ public abstract class LazyCharArray extends AbstractCharArray {
 		final int fCharEndOffset;
 		final long fSourceOffset;
 		final long fSourceEndOffset;
+		final boolean fIsAscii;
 		private SoftReference<char[]> fCharsReference;
+		private SoftReference<ByteBuffer> fBytesReference;
 
 		private Chunk(long sourceOffset, long sourceEndOffset, int charOffset, char[] chars) {
 			fCharOffset= charOffset;
 			fCharEndOffset= charOffset+ chars.length;
 			fSourceOffset= sourceOffset;
 			fSourceEndOffset= sourceEndOffset;
+			fIsAscii= false;
 			fCharsReference= new SoftReference<char[]>(chars);
 		}
+
+		private Chunk(long sourceOffset, long sourceEndOffset, int charOffset, ByteBuffer asciiBytes) {
+			fCharOffset= charOffset;
+			fCharEndOffset= charOffset+ asciiBytes.remaining();
+			fSourceOffset= sourceOffset;
+			fSourceEndOffset= sourceEndOffset;
+			fIsAscii= true;
+			fBytesReference= new SoftReference<ByteBuffer>(asciiBytes);
+		}
 	}
 
 	private int fLength= -1;
 	private List<Chunk> fChunks= new ArrayList<Chunk>();
 	private StreamHasher fHasher;
 	private long fHash64;
-	// Make a reference to the currently used char[], such that it is not collected.
+	// Make a reference to the currently used char[] or bytes, such that it is not collected.
 	private char[] fCurrentChars;
+	private ByteBuffer fCurrentBytes;
 
 	protected LazyCharArray() {
 		fHasher = new StreamHasher();
@@ -87,6 +103,9 @@ public abstract class LazyCharArray extends AbstractCharArray {
 	public final char get(int offset) {
 		Chunk chunk= getChunkForOffset(offset);
 		if (chunk != null) {
+			if (chunk.fIsAscii) {
+				return (char) (getChunkBytes(chunk).get(offset - chunk.fCharOffset) & 0xff);
+			}
 			return getChunkData(chunk)[offset - chunk.fCharOffset];
 		}
 		return 0;
@@ -96,6 +115,17 @@ public abstract class LazyCharArray extends AbstractCharArray {
 	public final void arraycopy(int offset, char[] destination, int destinationPos, int length) {
 		final Chunk chunk= getChunkForOffset(offset);
 		final int offsetInChunk= offset-chunk.fCharOffset;
+		if (chunk.fIsAscii) {
+			final ByteBuffer bytes= getChunkBytes(chunk);
+			final int lenInChunk= Math.min(length, bytes.limit() - offsetInChunk);
+			for (int i = 0; i < lenInChunk; i++) {
+				destination[destinationPos + i]= (char) (bytes.get(offsetInChunk + i) & 0xff);
+			}
+			if (lenInChunk < length) {
+				arraycopy(offset+lenInChunk, destination, destinationPos+lenInChunk, length-lenInChunk);
+			}
+			return;
+		}
 		final char[] data= getChunkData(chunk);
 		final int maxLenInChunk = data.length - offsetInChunk;
 		if (length <= maxLenInChunk) {
@@ -150,8 +180,11 @@ public abstract class LazyCharArray extends AbstractCharArray {
 				break;
 			}
 			if (fHasher != null) {
-				final char[] chunkData = getChunkData(chunk);
-				fHasher.addChunk(chunkData);
+				if (chunk.fIsAscii) {
+					fHasher.addChunk(getChunkBytes(chunk));
+				} else {
+					fHasher.addChunk(getChunkData(chunk));
+				}
 			}
 			fChunks.add(chunk);
 		}
@@ -170,6 +203,16 @@ public abstract class LazyCharArray extends AbstractCharArray {
 		return new Chunk(sourceOffset, sourceEndOffset, charOffset, chars);
 	}
 
+	/**
+	 * Creates a new chunk for a range of the input that consists of ASCII characters, only.
+	 * The remaining bytes of the buffer are the characters of the chunk.
+	 */
+	protected Chunk newAsciiChunk(long sourceOffset, long sourceEndOffset, int charOffset, ByteBuffer bytes) {
+		final ByteBuffer data= bytes.slice();
+		fCurrentBytes= data;
+		return new Chunk(sourceOffset, sourceEndOffset, charOffset, data);
+	}
+
 	/**
 	 * Read the next chunk from the input.
 	 */
@@ -185,20 +228,40 @@ public abstract class LazyCharArray extends AbstractCharArray {
 		return fCurrentChars= data;
 	}
 
+	private ByteBuffer getChunkBytes(Chunk chunk) {
+		ByteBuffer data= chunk.fBytesReference.get();
+		if (data == null) {
+			data= rereadAsciiChunkData(chunk);
+			chunk.fBytesReference= new SoftReference<ByteBuffer>(data);
+		}
+		return fCurrentBytes= data;
+	}
+
 	/**
 	 * Reread the data for the chunk. In case the source range no longer (fully) exists,
 	 * read as much as possible.
 	 */
 	protected abstract void rereadChunkData(Chunk chunk, char[] data);
 
+	/**
+	 * Reread the data for a chunk created via {@link #newAsciiChunk(long, long, int, ByteBuffer)}.
+	 * The buffer returned must start at position zero and have the length of the chunk. In case the source range no longer
+	 * (fully) exists, read as much as possible.
+	 */
+	protected abstract ByteBuffer rereadAsciiChunkData(Chunk chunk);
+
 	/** 
 	 * For testing purposes: Simulates that all the data gets collected.
 	 */
 	public void testClearData() {
 		for (Chunk chunk : fChunks) {
-			chunk.fCharsReference= new SoftReference<char[]>(null);
+			if (chunk.fIsAscii) {
+				chunk.fBytesReference= new SoftReference<ByteBuffer>(null);
+			} else {
+				chunk.fCharsReference= new SoftReference<char[]>(null);
+			}
 		}
-		if (fCurrentChars != null)
-			fCurrentChars= null;
+		fCurrentChars= null;
+		fCurrentBytes= null;
 	}
 }
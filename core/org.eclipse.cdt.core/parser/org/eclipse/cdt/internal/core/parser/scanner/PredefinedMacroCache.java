@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.core.parser.IMacro;
+import org.eclipse.cdt.core.parser.ParserLanguage;
+import org.eclipse.cdt.internal.core.parser.scanner.Lexer.LexerOptions;
+import org.eclipse.cdt.internal.core.parser.util.CacheStatistics;
+
+/**
+ * Cache for the macros the preprocessor defines before it starts processing a translation unit.
+ * Tools typically provide hundreds of macros for each translation unit, in most cases all
+ * translation units of a project share the same set of macros. Rather than parsing the
+ * definitions for each translation unit, the macros are reused.
+ * <p>
+ * The cached macros are never expanded. Each preprocessor works with copies of them
+ * ({@link ObjectStyleMacro#copy()}), which lex their expansion with the options of that
+ * preprocessor. Thus no state is shared among the preprocessors and their ASTs.
+ */
+public final class PredefinedMacroCache {
+	private static final int MAX_ENTRIES= 16;
+	private static final PredefinedMacroCache INSTANCE= new PredefinedMacroCache(MAX_ENTRIES);
+
+	public static PredefinedMacroCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Key for a set of predefined macros. Comprises everything that influences the result of
+	 * parsing the definitions.
+	 */
+	static final class Key {
+		private final ParserLanguage fLanguage;
+		private final int fLexerFlags;
+		private final List<String> fAdditionalMacros;
+		private final Map<String, String> fDefinedSymbols;
+		private final int fHashCode;
+
+		Key(ParserLanguage lang, LexerOptions options, IMacro[] additionalMacros,
+				Map<String, String> definedSymbols) {
+			fLanguage= lang;
+			fLexerFlags= (options.fSupportDollarInIdentifiers ? 1 : 0)
+					| (options.fSupportAtSignInIdentifiers ? 2 : 0)
+					| (options.fSupportMinAndMax ? 4 : 0)
+					| (options.fSupportSlashPercentComments ? 8 : 0)
+					| (options.fSupportUTFLiterals ? 16 : 0);
+			fAdditionalMacros= new ArrayList<String>();
+			if (additionalMacros != null) {
+				for (IMacro macro : additionalMacros) {
+					fAdditionalMacros.add(String.valueOf(macro.getSignature()));
+					fAdditionalMacros.add(String.valueOf(macro.getExpansion()));
+				}
+			}
+			fDefinedSymbols= definedSymbols == null ? null : new HashMap<String, String>(definedSymbols);
+			fHashCode= 31 * (31 * (31 * fLanguage.hashCode() + fLexerFlags) + fAdditionalMacros.hashCode())
+					+ (fDefinedSymbols == null ? 0 : fDefinedSymbols.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return fHashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key other= (Key) obj;
+			if (fHashCode != other.fHashCode || fLanguage != other.fLanguage || fLexerFlags != other.fLexerFlags)
+				return false;
+			if (!fAdditionalMacros.equals(other.fAdditionalMacros))
+				return false;
+			return fDefinedSymbols == null ? other.fDefinedSymbols == null
+					: fDefinedSymbols.equals(other.fDefinedSymbols);
+		}
+	}
+
+	private final LinkedHashMap<Key, PreprocessorMacro[]> fCache;
+	private final CacheStatistics fStatistics= new CacheStatistics();
+
+	private PredefinedMacroCache(final int maxEntries) {
+		fCache= new LinkedHashMap<Key, PreprocessorMacro[]>(maxEntries, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, PreprocessorMacro[]> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the macros for the given key in the order they have been defined, or
+	 * <code>null</code> if they are not cached.
+	 */
+	synchronized PreprocessorMacro[] get(Key key) {
+		final PreprocessorMacro[] result= fCache.get(key);
+		fStatistics.record(result != null);
+		return result;
+	}
+
+	synchronized void put(Key key, PreprocessorMacro[] macros) {
+		fCache.put(key, macros);
+	}
+
+	/**
+	 * Removes all entries from the cache and resets the statistics.
+	 */
+	public synchronized void clear() {
+		fCache.clear();
+		fStatistics.reset();
+	}
+
+	public CacheStatistics getStatistics() {
+		return fStatistics;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -101,7 +101,7 @@ abstract class PreprocessorMacro implements IMacroBinding {
 }
 
 class ObjectStyleMacro extends PreprocessorMacro {
-	private final AbstractCharArray fExpansion;
+	final AbstractCharArray fExpansion;
 	final int fExpansionOffset;
 	final int fEndOffset;
 	private TokenList fExpansionTokens;
@@ -122,6 +122,14 @@ class ObjectStyleMacro extends PreprocessorMacro {
 		}
 	}
 
+	/**
+	 * Creates a macro with the same definition that lexes its expansion on its own, 
+	 * see {@link PredefinedMacroCache}.
+	 */
+	ObjectStyleMacro copy() {
+		return new ObjectStyleMacro(getNameCharArray(), fExpansionOffset, fEndOffset, null, fExpansion);
+	}
+
 	public int getExpansionOffset() {
 		return fExpansionOffset;
 	}
@@ -195,6 +203,12 @@ class FunctionStyleMacro extends ObjectStyleMacro {
 		fHasVarArgs= hasVarArgs;
 	}
 	
+	@Override
+	FunctionStyleMacro copy() {
+		return new FunctionStyleMacro(getNameCharArray(), fParamList, fHasVarArgs, fExpansionOffset, fEndOffset, 
+				null, fExpansion);
+	}
+
 	@Override
 	public char[][] getParameterList() {
 		final int length = fParamList.length;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 Google, Inc and others.
+ * Copyright (c) 2010, 2011 Google, Inc and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -47,6 +47,8 @@
 
 package org.eclipse.cdt.internal.core.parser.scanner;
 
+import java.nio.ByteBuffer;
+
 /**
  * Computes a 64-bit hash value of a character stream that can be supplied one chunk at a time.
  * Usage:
@@ -84,28 +86,45 @@ public final class StreamHasher {
 	 * @param chunk Contents of the chunk.
 	 */
 	public void addChunk(char[] chunk) {
-		for (int pos = 0; pos < chunk.length; pos++, hashedOffset++) {
-			char cc = chunk[pos];
-			switch (state++) {
-			case -1:
-				throw new IllegalStateException("addChunk is called after computeHash."); //$NON-NLS-1$
-			case 0:
-			case 2:
-			case 4:
-				previousCharacter = cc;
-				break;
-			case 1:
-				a += previousCharacter | (cc << 16);
-				break;
-			case 3:
-				b += previousCharacter | (cc << 16);
-				break;
-			case 5:
-				c += previousCharacter | (cc << 16);
-				mix();
-				state = 0;
-				break;
-			}
+		for (int pos = 0; pos < chunk.length; pos++) {
+			addCharacter(chunk[pos]);
+		}
+	}
+
+	/**
+	 * Adds a chunk of characters stored as bytes to the hasher, each byte is treated as one
+	 * character in the range 0 to 255. The hash value is the same as for the decoded
+	 * characters as long as the characters are in the ASCII range.
+	 * @param chunk Contents of the chunk, the bytes from position zero to the limit are added.
+	 */
+	public void addChunk(ByteBuffer chunk) {
+		final int limit= chunk.limit();
+		for (int pos = 0; pos < limit; pos++) {
+			addCharacter((char) (chunk.get(pos) & 0xff));
+		}
+	}
+
+	private void addCharacter(char cc) {
+		hashedOffset++;
+		switch (state++) {
+		case -1:
+			throw new IllegalStateException("addChunk is called after computeHash."); //$NON-NLS-1$
+		case 0:
+		case 2:
+		case 4:
+			previousCharacter = cc;
+			break;
+		case 1:
+			a += previousCharacter | (cc << 16);
+			break;
+		case 3:
+			b += previousCharacter | (cc << 16);
+			break;
+		case 5:
+			c += previousCharacter | (cc << 16);
+			mix();
+			state = 0;
+			break;
 		}
 	}
 
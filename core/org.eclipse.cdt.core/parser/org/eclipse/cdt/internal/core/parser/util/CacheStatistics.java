@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.util;
+
+/**
+ * Counts the lookups of a cache, for tracing and testing purposes.
+ */
+public final class CacheStatistics {
+	private long fHits;
+	private long fMisses;
+
+	/**
+	 * Records a lookup, which could or could not be served from the cache.
+	 */
+	public synchronized void record(boolean hit) {
+		if (hit) {
+			fHits++;
+		} else {
+			fMisses++;
+		}
+	}
+
+	public synchronized long getHitCount() {
+		return fHits;
+	}
+
+	public synchronized long getMissCount() {
+		return fMisses;
+	}
+
+	/**
+	 * Returns the ratio of lookups that could be served from the cache.
+	 */
+	public synchronized double getHitRate() {
+		final long lookups= fHits + fMisses;
+		return lookups == 0 ? 0 : (double) fHits / lookups;
+	}
+
+	public synchronized void reset() {
+		fHits= fMisses= 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return fHits + " hits, " + fMisses + " misses, hit rate " + Math.round(getHitRate() * 100) + "%"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+}
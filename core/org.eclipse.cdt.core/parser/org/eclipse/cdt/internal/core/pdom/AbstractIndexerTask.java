@@ -24,6 +24,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.IPDOMIndexerTask;
@@ -33,6 +39,7 @@ import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit.IDependencyTree;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit.IDependencyTree.IASTInclusionNode;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPUsingDirective;
+import org.eclipse.cdt.core.index.IIndex;
 import org.eclipse.cdt.core.index.IIndexFile;
 import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.index.IIndexInclude;
@@ -49,6 +56,7 @@ import org.eclipse.cdt.core.parser.IncludeFileContentProvider;
 import org.eclipse.cdt.core.parser.ParserUtil;
 import org.eclipse.cdt.core.parser.ScannerInfo;
 import org.eclipse.cdt.internal.core.dom.IIncludeFileResolutionHeuristics;
+import org.eclipse.cdt.internal.core.index.CIndex;
 import org.eclipse.cdt.internal.core.index.IIndexFragment;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
 import org.eclipse.cdt.internal.core.index.IWritableIndex;
@@ -74,26 +82,12 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		skip, useDefaultLanguage, useAlternateLanguage, useBoth
 	}
 	private static final int MAX_ERRORS = 500;
+	/**
+	 * Time in milliseconds after which the indexer flushes the index, such that it can resume
+	 * from there after a crash.
+	 */
+	private static final long CHECKPOINT_INTERVAL = 60000;
 	
-	private static class FileKey {
-		final URI fUri;
-		final int fLinkageID;
-		
-		public FileKey(int linkageID, URI uri) {
-			fUri= uri;
-			fLinkageID= linkageID;
-		}
-		@Override
-		public int hashCode() {
-			return fUri.hashCode() * 31 + fLinkageID;
-		}
-		@Override
-		public boolean equals(Object obj) {
-			FileKey other = (FileKey) obj;
-			return fLinkageID == other.fLinkageID && fUri.equals(other.fUri);
-		}
-	}
-
 	public static class IndexFileContent {
 		private IIndexFile fIndexFile;
 		private boolean fRequestUpdate;
@@ -170,12 +164,218 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 
+	/**
+	 * The index and the file content provider used for parsing, the parser threads of a
+	 * {@link ParallelParser} use a context of their own.
+	 */
+	private static final class ParserContext {
+		final IIndex fParserIndex;
+		InternalFileContentProvider fCodeReaderFactory;
+
+		ParserContext(IIndex index) {
+			fParserIndex= index;
+		}
+	}
+
+	/**
+	 * Parses files in a pool of parser threads. The thread running the indexer task is the
+	 * only one writing to the index, it stores the results of the parser threads in the order
+	 * they are completed. The number of results that are pending is limited, such that only
+	 * a bounded number of ASTs is kept in memory.
+	 * <p>
+	 * A parser thread holds a read lock on the index of its own from the construction of the
+	 * AST until its symbols are prepared, because the AST refers to bindings of the index. The
+	 * file is read and the task waits for being stored without the lock, during that time the
+	 * results of other threads can be written. When nodes have been deleted from the index
+	 * meanwhile, the AST may refer to records that have been reused. Such a file is parsed again
+	 * by the thread writing the index.
+	 */
+	private final class ParallelParser {
+		private final IIndexFragment[] fFragments;
+		private final ExecutorService fExecutor;
+		private final BlockingQueue<ParseTask> fResults;
+		private volatile boolean fDisposed;
+		private final ThreadLocal<ParserContext> fContexts= new ThreadLocal<ParserContext>() {
+			@Override
+			protected ParserContext initialValue() {
+				return new ParserContext(new CIndex(fFragments));
+			}
+		};
+		private final int fMaxPending;
+		private int fPending;
+
+		ParallelParser(int threadCount, IIndexFragment[] fragments) {
+			fFragments= fragments;
+			fMaxPending= 2 * threadCount;
+			fResults= new ArrayBlockingQueue<ParseTask>(fMaxPending);
+			fExecutor= Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+				private int fCount;
+				public Thread newThread(Runnable r) {
+					Thread th= new Thread(r, "CDT Indexer Parser " + (++fCount)); //$NON-NLS-1$
+					th.setDaemon(true);
+					return th;
+				}
+			});
+		}
+
+		/**
+		 * Schedules the task for being parsed, stores results of other tasks while too many
+		 * of them are pending.
+		 */
+		void schedule(ParseTask task, IProgressMonitor pm) throws CoreException, InterruptedException {
+			while (fPending >= fMaxPending) {
+				store(fResults.take(), pm);
+			}
+			fPending++;
+			fExecutor.execute(task);
+		}
+
+		/**
+		 * Waits for all scheduled tasks and stores their results.
+		 */
+		void storePendingResults(IProgressMonitor pm) throws CoreException, InterruptedException {
+			while (fPending > 0) {
+				store(fResults.take(), pm);
+			}
+		}
+
+		private void store(ParseTask task, IProgressMonitor pm) throws CoreException, InterruptedException {
+			fPending--;
+			Throwable th= task.fError;
+			if (th == null && task.fSymbols != null && !pm.isCanceled()) {
+				fStatistics.fParsingTime += task.fParsingTime;
+				try {
+					if (task.fDeletedNodeCount != getDeletedNodeCount()) {
+						task.fSymbols= null;
+						parseAndWriteToIndex(task.fTu, task.fLinkageID, task.fLanguage, task.fScanInfo,
+								task.fInContext, task.fIsSource, pm);
+					} else {
+						writeToIndex(task.fLinkageID, task.fSymbols, task.fIFLs, task.fContentsHash,
+								task.fConfigHash, task.fIsSource, pm);
+					}
+				} catch (CoreException e) {
+					th= e;
+				} catch (RuntimeException e) {
+					th= e;
+				} catch (StackOverflowError e) {
+					th= e;
+				} catch (AssertionError e) {
+					th= e;
+				}
+			}
+			if (th != null) {
+				if (th instanceof OutOfMemoryError && --fSwallowOutOfMemoryError < 0)
+					throw (OutOfMemoryError) th;
+				swallowError(task.fPath, th);
+			}
+		}
+
+		/**
+		 * Discards the tasks that have not yet been started and waits for the running ones, such
+		 * that no parser thread holds a lock on the index after the indexer task has completed.
+		 * The threads are not interrupted, an interrupt closes the file of the database.
+		 */
+		void dispose() {
+			fDisposed= true;
+			fExecutor.shutdown();
+			boolean interrupted= false;
+			while (!fExecutor.isTerminated()) {
+				try {
+					fExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					interrupted= true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		final class ParseTask implements Runnable {
+			final Object fTu;
+			final int fLinkageID;
+			final IPath fPath;
+			final AbstractLanguage fLanguage;
+			final IScannerInfo fScanInfo;
+			final boolean fInContext;
+			final boolean fIsSource;
+			final IProgressMonitor fMonitor;
+
+			// Results, computed by the parser thread.
+			long fParsingTime;
+			long fDeletedNodeCount;
+			long fContentsHash;
+			int fConfigHash;
+			IIndexFileLocation[] fIFLs;
+			PreparedSymbols fSymbols;
+			Throwable fError;
+
+			ParseTask(Object tu, int linkageID, IPath path, AbstractLanguage lang, IScannerInfo scanInfo,
+					boolean inContext, boolean isSource, IProgressMonitor pm) {
+				fTu= tu;
+				fLinkageID= linkageID;
+				fPath= path;
+				fLanguage= lang;
+				fScanInfo= scanInfo;
+				fInContext= inContext;
+				fIsSource= isSource;
+				fMonitor= pm;
+			}
+
+			public void run() {
+				try {
+					if (!fDisposed && !fMonitor.isCanceled()) {
+						parse(fContexts.get());
+					}
+				} catch (InterruptedException e) {
+					// The indexer task is no longer interested in the result.
+				} catch (CoreException e) {
+					fError= e;
+				} catch (RuntimeException e) {
+					fError= e;
+				} catch (StackOverflowError e) {
+					fError= e;
+				} catch (AssertionError e) {
+					fError= e;
+				} catch (OutOfMemoryError e) {
+					fError= e;
+				} finally {
+					fResults.add(this);
+				}
+			}
+
+			private void parse(ParserContext context) throws CoreException, InterruptedException {
+				long start= System.currentTimeMillis();
+				final FileContent codeReader= fResolver.getCodeReader(fTu);
+				if (codeReader == null)
+					return;
+				fContentsHash= codeReader.getContentsHash();
+				fConfigHash= computeHashCode(fScanInfo);
+
+				final IIndex index= context.fParserIndex;
+				index.acquireReadLock();
+				try {
+					fDeletedNodeCount= getDeletedNodeCount();
+					IASTTranslationUnit ast= createAST(context, fTu, fLanguage, codeReader, fScanInfo,
+							fASTOptions, fInContext, fMonitor);
+					fParsingTime= System.currentTimeMillis() - start;
+					if (ast != null) {
+						fIFLs= getFilesToUpdate(fLinkageID, ast, index);
+						fSymbols= prepareSymbols(ast, fIFLs, fMonitor);
+					}
+				} finally {
+					index.releaseReadLock();
+				}
+			}
+		}
+	}
+
 	protected enum MessageKind { parsingFileTask, errorWhileParsing, tooManyIndexProblems }
 	
 	private int fUpdateFlags= IIndexManager.UPDATE_ALL;
 	private UnusedHeaderStrategy fIndexHeadersWithoutContext= UnusedHeaderStrategy.useDefaultLanguage;
 	private boolean fIndexFilesWithoutConfiguration= true;
-	private HashMap<FileKey, IndexFileContent> fFileInfos= new HashMap<FileKey, IndexFileContent>();
+	private LinkageFileMap<IndexFileContent> fFileInfos= new LinkageFileMap<IndexFileContent>();
 
 	private Object[] fFilesToUpdate;
 	private List<Object> fFilesToRemove = new ArrayList<Object>();
@@ -187,8 +387,11 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	private ITodoTaskUpdater fTodoTaskUpdater;
 	private final boolean fIsFastIndexer;
 	private long fFileSizeLimit= 0;
-	private InternalFileContentProvider fCodeReaderFactory;
+	private ParserContext fParserContext;
+	private int fParserThreadCount= 1;
+	private ParallelParser fParallelParser;
 	private int fSwallowOutOfMemoryError= 5;
+	private long fLastCheckpoint;
 	/**
 	 * A queue of urgent indexing tasks that contribute additional files to this task.
 	 * The files from the urgent tasks are indexed before all not yet processed files. 
@@ -238,6 +441,14 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		fFileSizeLimit= limit;
 	}
 
+	/**
+	 * Sets the number of threads used for parsing. With more than one thread, files are parsed
+	 * concurrently, while the index is still written by the thread running the task, only.
+	 */
+	public final void setParserThreadCount(int count) {
+		fParserThreadCount= Math.max(1, count);
+	}
+
 	protected abstract IWritableIndex createIndex();
 	protected abstract IIncludeFileResolutionHeuristics createIncludeHeuristics();
 	protected abstract IncludeFileContentProvider createReaderFactory();
@@ -262,56 +473,60 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			IIndexFileLocation dummyLoc= fResolver.resolveASTPath(dummyName);
 			setIndexed(lang.getLinkageID(), dummyLoc);
 			FileContent codeReader= FileContent.create(dummyName, code.toCharArray());
-			return createAST(lang, codeReader, scanInfo, options, false, monitor);
+			return createAST(fParserContext, lang, codeReader, scanInfo, options, false, monitor);
 		}
 		return null;
 	}
 	
 
-	private final IASTTranslationUnit createAST(Object tu, AbstractLanguage language, FileContent codeReader,
-			IScannerInfo scanInfo, int options, boolean inContext, IProgressMonitor pm) throws CoreException {
+	private final IASTTranslationUnit createAST(ParserContext context, Object tu, AbstractLanguage language,
+			FileContent codeReader, IScannerInfo scanInfo, int options, boolean inContext, IProgressMonitor pm)
+			throws CoreException {
 		if (codeReader == null) {
 			return null;
 		}
 		if (fResolver.isSourceUnit(tu)) {
 			options |= ILanguage.OPTION_IS_SOURCE_UNIT;
 		}
-		return createAST(language, codeReader, scanInfo, options, inContext, pm);
+		return createAST(context, language, codeReader, scanInfo, options, inContext, pm);
 	}
 
-	private final IASTTranslationUnit createAST(AbstractLanguage language, FileContent codeReader,
-			IScannerInfo scanInfo, int options, boolean inContext, IProgressMonitor pm) throws CoreException {
+	private final IASTTranslationUnit createAST(ParserContext context, AbstractLanguage language,
+			FileContent codeReader, IScannerInfo scanInfo, int options, boolean inContext, IProgressMonitor pm)
+			throws CoreException {
 		if (fFileSizeLimit > 0 && fResolver.getFileSize(codeReader.getFileLocation()) > fFileSizeLimit) {
 			if (fShowActivity) {
 				trace("Indexer: Skipping large file " + codeReader.getFileLocation());  //$NON-NLS-1$ 
 			}
 			return null;
 		}
-		if (fCodeReaderFactory == null) {
+		InternalFileContentProvider codeReaderFactory= context.fCodeReaderFactory;
+		if (codeReaderFactory == null) {
 			InternalFileContentProvider fileContentProvider = createInternalFileContentProvider();
 			if (fIsFastIndexer) {
-				IndexBasedFileContentProvider ibfcp = new IndexBasedFileContentProvider(fIndex, fResolver,
-						language.getLinkageID(), fileContentProvider, this);
+				IndexBasedFileContentProvider ibfcp = new IndexBasedFileContentProvider(context.fParserIndex,
+						fResolver, language.getLinkageID(), fileContentProvider, this);
 				ibfcp.setSupportFillGapFromContextToHeader(inContext);
 				ibfcp.setFileSizeLimit(fFileSizeLimit);
-				fCodeReaderFactory= ibfcp;
+				codeReaderFactory= ibfcp;
 			} else {
-				fCodeReaderFactory= fileContentProvider;
+				codeReaderFactory= fileContentProvider;
 			}
+			context.fCodeReaderFactory= codeReaderFactory;
 		} else if (fIsFastIndexer) {
-			((IndexBasedFileContentProvider) fCodeReaderFactory).setLinkage(language.getLinkageID());
+			((IndexBasedFileContentProvider) codeReaderFactory).setLinkage(language.getLinkageID());
 		}
-		fCodeReaderFactory.setIncludeResolutionHeuristics(createIncludeHeuristics());
+		codeReaderFactory.setIncludeResolutionHeuristics(createIncludeHeuristics());
 		try {
-			IASTTranslationUnit ast= language.getASTTranslationUnit(codeReader, scanInfo, fCodeReaderFactory,
-					fIndex, options, getLogService());
+			IASTTranslationUnit ast= language.getASTTranslationUnit(codeReader, scanInfo, codeReaderFactory,
+					context.fParserIndex, options, getLogService());
 			if (pm.isCanceled()) {
 				return null;
 			}
 			return ast;
 		} finally {
 			if (fIsFastIndexer) {
-				((IndexBasedFileContentProvider) fCodeReaderFactory).cleanupAfterTranslationUnit();
+				((IndexBasedFileContentProvider) codeReaderFactory).cleanupAfterTranslationUnit();
 			}
 		}
 	}
@@ -338,6 +553,11 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			if (fIndex == null) {
 				return;
 			}
+			fParserContext= new ParserContext(fIndex);
+			if (fParserThreadCount > 1 && fIndex instanceof CIndex) {
+				fParallelParser= new ParallelParser(fParserThreadCount,
+						((CIndex) fIndex).getPrimaryFragments());
+			}
 			fTodoTaskUpdater= createTodoTaskUpdater();
 			
 			fASTOptions= ILanguage.OPTION_NO_IMAGE_LOCATIONS
@@ -348,6 +568,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 
 			fIndex.resetCacheCounters();
 			fIndex.acquireReadLock();
+			fLastCheckpoint= System.currentTimeMillis();
 	
 			try {
 				try {
@@ -419,6 +640,10 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				fIndex.releaseReadLock();
 			}
 		} finally {
+			if (fParallelParser != null) {
+				fParallelParser.dispose();
+				fParallelParser= null;
+			}
 			synchronized (this) {
 				fTaskCompleted = true;
 			}
@@ -555,10 +780,9 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	private void requestUpdate(int linkageID, IIndexFileLocation ifl, IIndexFragmentFile ifile) {
-		FileKey key= new FileKey(linkageID, ifl.getURI());
-		IndexFileContent info= fFileInfos.get(key);
+		IndexFileContent info= getFileInfo(linkageID, ifl);
 		if (info == null) {
-			info= createFileInfo(key, null);
+			info= createFileInfo(linkageID, ifl, null);
 		}
 		info.fIndexFile= ifile;
 		info.fRequestUpdate= true;
@@ -566,25 +790,27 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 	
 	private void setIndexed(int linkageID, IIndexFileLocation ifl) {
-		FileKey key= new FileKey(linkageID, ifl.getURI());
-		IndexFileContent info= fFileInfos.get(key);
+		IndexFileContent info= getFileInfo(linkageID, ifl);
 		if (info == null) {
-			info= createFileInfo(key, null);
+			info= createFileInfo(linkageID, ifl, null);
 		}
 		info.fIsUpdated= true;
 		info.clearCaches();
 	}
 
-	private IndexFileContent createFileInfo(FileKey key, IIndexFile ifile) {
+	private IndexFileContent createFileInfo(int linkageID, IIndexFileLocation ifl, IIndexFile ifile) {
 		IndexFileContent info = new IndexFileContent();
-		fFileInfos.put(key, info);
+		synchronized (fFileInfos) {
+			fFileInfos.put(linkageID, ifl.getURI(), info);
+		}
 		info.fIndexFile= ifile;
 		return info;
 	}
 
 	private IndexFileContent getFileInfo(int linkageID, IIndexFileLocation ifl) {
-		FileKey key= new FileKey(linkageID, ifl.getURI());
-		return fFileInfos.get(key);
+		synchronized (fFileInfos) {
+			return fFileInfos.get(linkageID, ifl.getURI());
+		}
 	}
 
 	private boolean isSourceUnitConfigChange(Object tu, IIndexFragmentFile ifile) {
@@ -707,7 +933,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 								}
 							}
 							writeToIndex(linkageID, ast, StreamHasher.hash(code), computeHashCode(scanInfo),
-									monitor);
+									false, monitor);
 							updateFileCount(0, 0, 1);
 						}
 					}
@@ -723,6 +949,12 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	
 	private void parseLinkage(int linkageID, Map<Integer, List<Object>> fileListMap, IProgressMonitor monitor)
 			throws CoreException, InterruptedException {
+		doParseLinkage(linkageID, fileListMap, monitor);
+		storePendingResults(monitor);
+	}
+
+	private void doParseLinkage(int linkageID, Map<Integer, List<Object>> fileListMap, IProgressMonitor monitor)
+			throws CoreException, InterruptedException {
 		// Sources
 		List<Object> files= fileListMap.get(getFileListKey(linkageID, true));
 		if (files != null) {
@@ -737,14 +969,12 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 					if (info != null && info.fRequestUpdate && !info.fIsUpdated) {
 						info.fRequestIsCounted= false;
 						final IScannerInfo scannerInfo= fResolver.getBuildConfiguration(linkageID, tu);
-						parseFile(tu, linkageID, ifl, scannerInfo, false, monitor);
-						if (info.fIsUpdated) {
-							updateFileCount(1, 0, 0);	// a source file was parsed
-						}
+						parseFile(tu, linkageID, ifl, scannerInfo, false, true, monitor);
 					}
 				}
 				iter.remove();
 			}
+			storePendingResults(monitor);
 		}
 		
 		// Headers with context
@@ -764,9 +994,8 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 						if (tu != null) {
 							final IScannerInfo scannerInfo= fResolver.getBuildConfiguration(linkageID, tu);
 							info.fRequestIsCounted= false;
-							parseFile(header, linkageID, ifl, scannerInfo, true, monitor);
+							parseFile(header, linkageID, ifl, scannerInfo, true, false, monitor);
 							if (info.fIsUpdated) {
-								updateFileCount(0, 1, 1);	// a header was parsed in context
 								iter.remove();
 							}
 						}
@@ -776,6 +1005,8 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 					iter.remove();
 				}
 			}
+			// Headers parsed in context by the parser threads are skipped below.
+			storePendingResults(monitor);
 
 			// Headers without context
 			contextMap= null;
@@ -789,16 +1020,19 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				if (info != null && info.fRequestUpdate && !info.fIsUpdated) {
 					info.fRequestIsCounted= false;
 					final IScannerInfo scannerInfo= fResolver.getBuildConfiguration(linkageID, header);
-					parseFile(header, linkageID, ifl, scannerInfo, false, monitor);
-					if (info.fIsUpdated) {
-						updateFileCount(0, 1, 1);	// a header was parsed without context
-					}
+					parseFile(header, linkageID, ifl, scannerInfo, false, false, monitor);
 				}
 				iter.remove();
 			}
 		}
 	}
 
+	private void storePendingResults(IProgressMonitor monitor) throws CoreException, InterruptedException {
+		if (fParallelParser != null) {
+			fParallelParser.storePendingResults(monitor);
+		}
+	}
+
 	private synchronized boolean hasUrgentTasks() {
 		return !fUrgentTasks.isEmpty();
 	}
@@ -847,7 +1081,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	private void parseFile(Object tu, int linkageID, IIndexFileLocation ifl, IScannerInfo scanInfo,
-			boolean inContext, IProgressMonitor pm) throws CoreException, InterruptedException {
+			boolean inContext, boolean isSource, IProgressMonitor pm) throws CoreException, InterruptedException {
 		IPath path= getPathForLabel(ifl);
 		AbstractLanguage[] langs= fResolver.getLanguages(tu, true);
 		AbstractLanguage lang= null;
@@ -868,13 +1102,12 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			}
 			pm.subTask(getMessage(MessageKind.parsingFileTask,
 					path.lastSegment(), path.removeLastSegments(1).toString()));
-			long start= System.currentTimeMillis();
-			FileContent codeReader= fResolver.getCodeReader(tu);
-			IASTTranslationUnit ast= createAST(tu, lang, codeReader, scanInfo, fASTOptions, inContext, pm);
-			fStatistics.fParsingTime += System.currentTimeMillis() - start;
-			if (ast != null) {
-				writeToIndex(linkageID, ast, codeReader.getContentsHash(), computeHashCode(scanInfo), pm);
+			if (fParallelParser != null) {
+				fParallelParser.schedule(fParallelParser.new ParseTask(tu, linkageID, path, lang, scanInfo,
+						inContext, isSource, pm), pm);
+				return;
 			}
+			parseAndWriteToIndex(tu, linkageID, lang, scanInfo, inContext, isSource, pm);
 		} catch (CoreException e) {
 			th= e;
 		} catch (RuntimeException e) {
@@ -893,8 +1126,40 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 	
+	private void parseAndWriteToIndex(Object tu, int linkageID, AbstractLanguage lang, IScannerInfo scanInfo,
+			boolean inContext, boolean isSource, IProgressMonitor pm) throws CoreException, InterruptedException {
+		long start= System.currentTimeMillis();
+		FileContent codeReader= fResolver.getCodeReader(tu);
+		IASTTranslationUnit ast= createAST(fParserContext, tu, lang, codeReader, scanInfo, fASTOptions,
+				inContext, pm);
+		fStatistics.fParsingTime += System.currentTimeMillis() - start;
+		if (ast != null) {
+			writeToIndex(linkageID, ast, codeReader.getContentsHash(), computeHashCode(scanInfo), isSource,
+					pm);
+		}
+	}
+
+	/**
+	 * Returns the number of nodes deleted from the writable fragment of the index, a change
+	 * invalidates the bindings of the index that a parser thread has obtained.
+	 */
+	private long getDeletedNodeCount() {
+		return fIndex.getWritableFragment().getDeletedNodeCount();
+	}
+
 	private void writeToIndex(final int linkageID, IASTTranslationUnit ast, long fileContentsHash,
-			int configHash, IProgressMonitor pm) throws CoreException, InterruptedException {
+			int configHash, boolean isSource, IProgressMonitor pm) throws CoreException, InterruptedException {
+		IIndexFileLocation[] ifls= getFilesToUpdate(linkageID, ast, fIndex);
+		PreparedSymbols symbols= prepareSymbols(ast, ifls, pm);
+		writeToIndex(linkageID, symbols, ifls, fileContentsHash, configHash, isSource, pm);
+	}
+
+	/**
+	 * Computes the files of the AST that need to be updated in the index, the file of the AST
+	 * itself is the last one. Files not yet known to the task are looked up in the given index.
+	 */
+	private IIndexFileLocation[] getFilesToUpdate(final int linkageID, IASTTranslationUnit ast, IIndex index)
+			throws CoreException {
 		HashSet<IIndexFileLocation> enteredFiles= new HashSet<IIndexFileLocation>();
 		ArrayList<IIndexFileLocation> orderedIFLs= new ArrayList<IIndexFileLocation>();
 		
@@ -903,7 +1168,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		IDependencyTree tree= ast.getDependencyTree();
 		IASTInclusionNode[] inclusions= tree.getInclusions();
 		for (IASTInclusionNode inclusion : inclusions) {
-			collectOrderedIFLs(linkageID, inclusion, enteredFiles, orderedIFLs);
+			collectOrderedIFLs(linkageID, inclusion, enteredFiles, orderedIFLs, index);
 		}
 		
 		IndexFileContent info= getFileInfo(linkageID, topIfl);
@@ -911,48 +1176,109 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			orderedIFLs.add(topIfl);
 		}
 		
-		IIndexFileLocation[] ifls= orderedIFLs.toArray(new IIndexFileLocation[orderedIFLs.size()]);
+		return orderedIFLs.toArray(new IIndexFileLocation[orderedIFLs.size()]);
+	}
+
+	private void writeToIndex(final int linkageID, PreparedSymbols symbols, IIndexFileLocation[] ifls,
+			long fileContentsHash, int configHash, boolean isSource, IProgressMonitor pm)
+			throws CoreException, InterruptedException {
+		final IIndexFileLocation topIfl= fResolver.resolveASTPath(symbols.getAST().getFilePath());
+		// The file of the AST is counted when it was requested, although it may have been stored
+		// along with another AST in the meantime.
+		final IndexFileContent topInfo= getFileInfo(linkageID, topIfl);
+		final boolean countFile= topInfo != null && topInfo.fRequestUpdate;
+		if (fParallelParser != null) {
+			// Files may have been stored along with another AST, since the symbols were prepared.
+			ArrayList<IIndexFileLocation> remaining= new ArrayList<IIndexFileLocation>(ifls.length);
+			for (IIndexFileLocation ifl : ifls) {
+				if (!getFileInfo(linkageID, ifl).fIsUpdated) {
+					remaining.add(ifl);
+				}
+			}
+			ifls= remaining.toArray(new IIndexFileLocation[remaining.size()]);
+		}
 		try {
-			addSymbols(ast, ifls, fIndex, 1, false, fileContentsHash, configHash, fTodoTaskUpdater, pm);
+			if (ifls.length > 0) {
+				storeSymbols(symbols, ifls, fIndex, 1, false, fileContentsHash, configHash, fTodoTaskUpdater, pm);
+			}
 		} finally {
 			// mark as updated in any case, to avoid parsing files that caused an exception to be thrown.
-			for (IIndexFileLocation ifl : ifls) {
-				info= getFileInfo(linkageID, ifl);
-				Assert.isNotNull(info);
-				info.fIsUpdated= true;
+			synchronized (fFileInfos) {
+				for (IIndexFileLocation ifl : ifls) {
+					IndexFileContent info= getFileInfo(linkageID, ifl);
+					Assert.isNotNull(info);
+					info.fIsUpdated= true;
+				}
+			}
+			if (countFile) {
+				if (isSource) {
+					updateFileCount(1, 0, 0);	// a source file was parsed
+				} else {
+					updateFileCount(0, 1, 1);	// a header was parsed
+				}
 			}
 		}
+		checkpoint();
+	}
+
+	/**
+	 * Flushes the index when the last flush is longer than {@link #CHECKPOINT_INTERVAL} ago. The
+	 * database is written atomically, after a crash the indexer resumes from the last checkpoint
+	 * rather than rebuilding the index.
+	 */
+	private void checkpoint() throws CoreException {
+		final long now= System.currentTimeMillis();
+		if (now - fLastCheckpoint >= CHECKPOINT_INTERVAL) {
+			fIndex.flush();
+			fLastCheckpoint= now;
+		}
 	}
 
 	private void collectOrderedIFLs(final int linkageID, IASTInclusionNode inclusion,
-			HashSet<IIndexFileLocation> enteredFiles, ArrayList<IIndexFileLocation> orderedIFLs) throws CoreException {
+			HashSet<IIndexFileLocation> enteredFiles, ArrayList<IIndexFileLocation> orderedIFLs, IIndex index)
+			throws CoreException {
 		final IASTPreprocessorIncludeStatement id= inclusion.getIncludeDirective();
 		if (id.isActive() && id.isResolved()) {
 			final IIndexFileLocation ifl= fResolver.resolveASTPath(id.getPath());
 			final boolean isFirstEntry= enteredFiles.add(ifl);
 			IASTInclusionNode[] nested= inclusion.getNestedInclusions();
 			for (IASTInclusionNode element : nested) {
-				collectOrderedIFLs(linkageID, element, enteredFiles, orderedIFLs);
+				collectOrderedIFLs(linkageID, element, enteredFiles, orderedIFLs, index);
 			}
-			if (isFirstEntry && needToUpdateHeader(linkageID, ifl)) {
+			if (isFirstEntry && needToUpdateHeader(linkageID, ifl, index)) {
 				orderedIFLs.add(ifl);
 			}
 		}
 	}
 
 	public final boolean needToUpdateHeader(int linkageID, IIndexFileLocation ifl) throws CoreException {
+		return needToUpdateHeader(linkageID, ifl, fIndex);
+	}
+
+	private boolean needToUpdateHeader(int linkageID, IIndexFileLocation ifl, IIndex index) throws CoreException {
+		synchronized (fFileInfos) {
+			return doNeedToUpdateHeader(linkageID, ifl, index);
+		}
+	}
+
+	/**
+	 * Checks whether the header needs to be parsed, files that are not yet known to the task
+	 * are looked up in the given index. Parser threads pass the index of their own, which
+	 * shares the fragments with the writable index.
+	 */
+	private boolean doNeedToUpdateHeader(int linkageID, IIndexFileLocation ifl, IIndex index) throws CoreException {
 		IndexFileContent info= getFileInfo(linkageID, ifl);
 		if (info == null) {
 			IIndexFile ifile= null;
 			if (fResolver.canBePartOfSDK(ifl)) {
-				ifile= fIndex.getFile(linkageID, ifl);
+				ifile= index.getFile(linkageID, ifl);
 			} else {
-				IIndexFragmentFile fragFile= fIndex.getWritableFile(linkageID, ifl);
+				IIndexFragmentFile fragFile= fIndex.getWritableFragment().getFile(linkageID, ifl);
 				if (fragFile != null && fragFile.hasContent()) {
 					ifile= fragFile;
 				}
 			}
-			info= createFileInfo(new FileKey(linkageID, ifl.getURI()), ifile);
+			info= createFileInfo(linkageID, ifl, ifile);
 			if (ifile == null) {
 				info.fRequestIsCounted= false;
 				info.fRequestUpdate= true;
@@ -1084,18 +1410,37 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	public final IndexFileContent getFileContent(int linkageID, IIndexFileLocation ifl) throws CoreException {
-		if (!needToUpdateHeader(linkageID, ifl)) {
-			IndexFileContent info= getFileInfo(linkageID, ifl);
-			Assert.isNotNull(info);
-			if (info.fIndexFile == null) {
-				info.fIndexFile= fIndex.getFile(linkageID, ifl);
+		return getFileContent(linkageID, ifl, fIndex);
+	}
+
+	/**
+	 * Returns the content of a header that does not need to be parsed, or <code>null</code>.
+	 * Parser threads pass the index of their own and obtain a content that is not shared with
+	 * other threads, its preprocessing directives are read from their index.
+	 */
+	public final IndexFileContent getFileContent(int linkageID, IIndexFileLocation ifl, IIndex index)
+			throws CoreException {
+		synchronized (fFileInfos) {
+			if (doNeedToUpdateHeader(linkageID, ifl, index))
+				return null;
+			if (index == fIndex) {
+				IndexFileContent info= getFileInfo(linkageID, ifl);
+				Assert.isNotNull(info);
 				if (info.fIndexFile == null) {
-					return null;
+					info.fIndexFile= fIndex.getFile(linkageID, ifl);
+					if (info.fIndexFile == null) {
+						return null;
+					}
 				}
+				return info;
 			}
-			return info;
 		}
-		return null;
+		final IIndexFile file= index.getFile(linkageID, ifl);
+		if (file == null)
+			return null;
+		final IndexFileContent content= new IndexFileContent();
+		content.fIndexFile= file;
+		return content;
 	}
 	
 	protected String getMessage(MessageKind kind, Object... arguments) {
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.net.URI;
+
+import org.eclipse.cdt.core.parser.util.ObjectTable;
+
+/**
+ * Map from pairs of linkage id and file location to values, used by the indexer to keep track
+ * of a large number of files.
+ * <p>
+ * Each location is assigned a consecutive number, the values are stored in one array per linkage
+ * indexed by these numbers. Other than a hash map with composite keys this does not need a key
+ * and an entry object per value, nor boxed integers.
+ * <p>
+ * The map is not synchronized.
+ */
+public final class LinkageFileMap<V> {
+	private static final Object[] NO_VALUES= {};
+
+	/**
+	 * Assigns consecutive numbers to the locations.
+	 */
+	private static final class LocationTable extends ObjectTable<URI> {
+		LocationTable(int initialSize) {
+			super(initialSize);
+		}
+		int getOrAdd(URI location) {
+			return add(location);
+		}
+		int find(URI location) {
+			return lookup(location);
+		}
+	}
+
+	private final LocationTable fLocations;
+	private int[] fLinkageIDs= {};
+	private Object[][] fValues= {};
+	private int fSize;
+
+	public LinkageFileMap() {
+		this(16);
+	}
+
+	public LinkageFileMap(int initialSize) {
+		fLocations= new LocationTable(initialSize);
+	}
+
+	/**
+	 * Returns the value for the given linkage and location, or <code>null</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int linkageID, URI location) {
+		final Object[] values= getValues(linkageID);
+		if (values.length == 0)
+			return null;
+		final int id= fLocations.find(location);
+		if (id < 0 || id >= values.length)
+			return null;
+		return (V) values[id];
+	}
+
+	/**
+	 * Stores a value for the given linkage and location.
+	 * @return the previous value, or <code>null</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int linkageID, URI location, V value) {
+		final int id= fLocations.getOrAdd(location);
+		int idx= indexOfLinkage(linkageID);
+		if (idx < 0) {
+			idx= fLinkageIDs.length;
+			int[] linkageIDs= new int[idx + 1];
+			System.arraycopy(fLinkageIDs, 0, linkageIDs, 0, idx);
+			linkageIDs[idx]= linkageID;
+			Object[][] values= new Object[idx + 1][];
+			System.arraycopy(fValues, 0, values, 0, idx);
+			values[idx]= NO_VALUES;
+			fLinkageIDs= linkageIDs;
+			fValues= values;
+		}
+		Object[] values= fValues[idx];
+		if (id >= values.length) {
+			// grow along with the table of locations.
+			Object[] newValues= new Object[Math.max(id + 1, fLocations.capacity())];
+			System.arraycopy(values, 0, newValues, 0, values.length);
+			fValues[idx]= values= newValues;
+		}
+		final Object old= values[id];
+		values[id]= value;
+		if (old == null) {
+			if (value != null)
+				fSize++;
+		} else if (value == null) {
+			fSize--;
+		}
+		return (V) old;
+	}
+
+	/**
+	 * Returns the number of values in the map.
+	 */
+	public int size() {
+		return fSize;
+	}
+
+	/**
+	 * Returns the number of distinct locations that have been used as keys.
+	 */
+	public int getLocationCount() {
+		return fLocations.size();
+	}
+
+	public void clear() {
+		fLocations.clear();
+		fLinkageIDs= new int[0];
+		fValues= new Object[0][];
+		fSize= 0;
+	}
+
+	private Object[] getValues(int linkageID) {
+		final int idx= indexOfLinkage(linkageID);
+		return idx < 0 ? NO_VALUES : fValues[idx];
+	}
+
+	private int indexOfLinkage(int linkageID) {
+		final int[] linkageIDs= fLinkageIDs;
+		for (int i = 0; i < linkageIDs.length; i++) {
+			if (linkageIDs[i] == linkageID)
+				return i;
+		}
+		return -1;
+	}
+}
@@ -72,6 +72,8 @@ import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
 import org.eclipse.cdt.internal.core.pdom.db.DBProperties;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.StringTable;
+import org.eclipse.cdt.internal.core.pdom.db.TrigramIndex;
 import org.eclipse.cdt.internal.core.pdom.dom.BindingCollector;
 import org.eclipse.cdt.internal.core.pdom.dom.FindBinding;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
@@ -102,6 +104,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	private static final int LONG_WRITE_LOCK_REPORT_THRESHOLD = 1000;
 	private static final int LONG_READ_LOCK_WAIT_REPORT_THRESHOLD = 1000;
 	static boolean sDEBUG_LOCKS= false; // initialized in the PDOMManager, because IBM needs PDOM independent of runtime plugin.
+	private static int sDefaultChunkSize= Database.CHUNK_SIZE; // initialized in the PDOMManager
 
 	/**
 	 * Identifier for PDOM format
@@ -206,10 +209,11 @@ public class PDOM extends PlatformObject implements IPDOM {
 	 *  113.0 - Changed marshaling of values, bug 327878
 	 *  114.0 - Partial specializations for class template specializations, bug 332884.
 	 *  115.0 - Corrected signatures for function templates, bug 335062.
+	 *  116.0 - Names of bindings are stored in a string table with a trigram index.
 	 */
-	private static final int MIN_SUPPORTED_VERSION= version(114, 0);
-	private static final int MAX_SUPPORTED_VERSION= version(114, Short.MAX_VALUE);
-	private static final int DEFAULT_VERSION = version(114, 0);
+	private static final int MIN_SUPPORTED_VERSION= version(116, 0);
+	private static final int MAX_SUPPORTED_VERSION= version(116, Short.MAX_VALUE);
+	private static final int DEFAULT_VERSION = version(116, 0);
 
 	private static int version(int major, int minor) {
 		return (major << 16) + minor;
@@ -222,6 +226,21 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return DEFAULT_VERSION;
 	}
 
+	/**
+	 * Returns the size of the chunks that shall be used when creating or rebuilding databases.
+	 * Databases with other chunk sizes remain readable, the size of the chunks is stored in the
+	 * header of the database.
+	 */
+	public static int getDefaultChunkSize() {
+		return sDefaultChunkSize;
+	}
+
+	public static void setDefaultChunkSize(int chunkSize) {
+		if (!Database.isValidChunkSize(chunkSize)) 
+			throw new IllegalArgumentException();
+		sDefaultChunkSize= chunkSize;
+	}
+
 	public static boolean isSupportedVersion(int vers) {
 		return vers >= MIN_SUPPORTED_VERSION && vers <= MAX_SUPPORTED_VERSION;
 	}
@@ -240,7 +259,9 @@ public class PDOM extends PlatformObject implements IPDOM {
 	public static final int LINKAGES = Database.DATA_AREA;
 	public static final int FILE_INDEX = Database.DATA_AREA + 4;
 	public static final int PROPERTIES = Database.DATA_AREA + 8;
-	public static final int END= Database.DATA_AREA + 12;
+	public static final int STRING_TABLE = Database.DATA_AREA + 12;
+	public static final int TRIGRAM_INDEX = Database.DATA_AREA + 16;
+	public static final int END= Database.DATA_AREA + 20;
 	static {
 		assert END <= Database.CHUNK_SIZE;
 	}
@@ -293,6 +314,8 @@ public class PDOM extends PlatformObject implements IPDOM {
 	// Local caches
 	protected Database db;
 	private BTree fileIndex;
+	private StringTable fStringTable;
+	private TrigramIndex fTrigramIndex;
 	private Map<Integer, PDOMLinkage> fLinkageIDCache = new HashMap<Integer, PDOMLinkage>();
 	private File fPath;
 	private IIndexLocationConverter locationConverter;
@@ -324,16 +347,17 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	private void loadDatabase(File dbPath, ChunkCache cache) throws CoreException {
 		fPath= dbPath;
-		final boolean lockDB= db == null || lockCount != 0;
+		final boolean lockDB= db == null || fLock.getLockCount() != 0;
 
 		clearCaches();
-		db = new Database(fPath, cache, getDefaultVersion(), isPermanentlyReadOnly());
+		db = new Database(fPath, cache, getDefaultVersion(), getDefaultChunkSize(), isPermanentlyReadOnly(),
+				Database.USE_MAPPED_IO_DEFAULT);
 
 		db.setLocked(lockDB);
 		if (isSupportedVersion()) {
 			readLinkages();
 		}
-		db.setLocked(lockCount != 0);
+		db.setLocked(fLock.getLockCount() != 0);
 	}
 
 	public IIndexLocationConverter getLocationConverter() {
@@ -415,6 +439,25 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return fileIndex;
 	}
 
+	/**
+	 * Returns the table of the names of the bindings, each distinct name is stored once.
+	 */
+	public StringTable getStringTable() {
+		if (fStringTable == null)
+			fStringTable = new StringTable(getDB(), STRING_TABLE, getTrigramIndex());
+		return fStringTable;
+	}
+
+	/**
+	 * Returns the index of the strings of the string table by trigrams, used for searching
+	 * bindings and macros with patterns.
+	 */
+	public TrigramIndex getTrigramIndex() {
+		if (fTrigramIndex == null)
+			fTrigramIndex = new TrigramIndex(getDB(), TRIGRAM_INDEX);
+		return fTrigramIndex;
+	}
+
 	public PDOMFile getFile(int linkageID, IIndexFileLocation location) throws CoreException {
 		PDOMLinkage linkage= getLinkage(linkageID);
 		if (linkage == null)
@@ -463,7 +506,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	protected void clear() throws CoreException {
-		assert lockCount < 0; // needs write-lock.
+		assert fLock.getLockCount() < 0; // needs write-lock.
 
 		// Clear out the database, everything is set to zero.
 		int vers = getDefaultVersion();
@@ -473,7 +516,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	void reloadFromFile(File file) throws CoreException {
-		assert lockCount < 0;	// must have write lock.
+		assert fLock.getLockCount() < 0;	// must have write lock.
 		File oldFile= fPath;
 		clearCaches();
 		try {
@@ -614,6 +657,11 @@ public class PDOM extends PlatformObject implements IPDOM {
 			}
 		}
 
+		IIndexFragmentBinding[] result= findBindingsViaTrigramIndex(patterns, isFullyQualified, filter, monitor);
+		if (result != null) {
+			return result;
+		}
+
 		BindingFinder finder = new BindingFinder(patterns, isFullyQualified, filter, monitor);
 		for (PDOMLinkage linkage : getLinkageList()) {
 			if (filter.acceptLinkage(linkage)) {
@@ -630,6 +678,77 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return finder.getBindings();
 	}
 
+	/**
+	 * Uses the trigram index to find the names matching the last pattern, returns <code>null</code>
+	 * if the pattern does not require a substring that is long enough for using the index.
+	 */
+	private IIndexFragmentBinding[] findBindingsViaTrigramIndex(Pattern[] patterns, boolean isFullyQualified,
+			IndexFilter filter, IProgressMonitor monitor) throws CoreException {
+		final int lastIdx= patterns.length-1;
+		final long[] names= findNamesViaTrigramIndex(patterns[lastIdx]);
+		if (names == null)
+			return null;
+
+		List<IIndexFragmentBinding> result= new ArrayList<IIndexFragmentBinding>();
+		for (long name : names) {
+			if (monitor.isCanceled())
+				return IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+
+			final String nameStr= db.getString(name).getString();
+			if (!patterns[lastIdx].matcher(nameStr).matches())
+				continue;
+
+			IIndexFragmentBinding[] bindings= findBindings(nameStr.toCharArray(), isFullyQualified && lastIdx == 0,
+					true, filter, monitor);
+			for (IIndexFragmentBinding binding : bindings) {
+				if (lastIdx == 0 || matchesQualifiers((PDOMNode) binding, patterns, isFullyQualified)) {
+					result.add(binding);
+				}
+			}
+		}
+		return result.toArray(new IIndexFragmentBinding[result.size()]);
+	}
+
+	/**
+	 * Returns the records of the names that may match the pattern, or <code>null</code> if the
+	 * trigram index cannot be used for the pattern.
+	 */
+	private long[] findNamesViaTrigramIndex(Pattern pattern) throws CoreException {
+		char[][] substrings= extractRequiredSubstrings(pattern);
+		if (substrings == null)
+			return null;
+		return getTrigramIndex().findCandidates(substrings);
+	}
+
+	/**
+	 * Checks whether the names of the enclosing nodes of the binding match the qualifiers of a
+	 * qualified pattern. The enumerators of unscoped enumerations are also members of the scope
+	 * enclosing the enumeration.
+	 */
+	private boolean matchesQualifiers(PDOMNode binding, Pattern[] patterns, boolean isFullyQualified) throws CoreException {
+		PDOMNode parent= binding.getParentNode();
+		if (matchesQualifiers(parent, patterns, patterns.length-2, isFullyQualified))
+			return true;
+		if (binding instanceof IEnumerator && parent instanceof ICPPEnumeration
+				&& !((ICPPEnumeration) parent).isScoped()) {
+			return matchesQualifiers(parent.getParentNode(), patterns, patterns.length-2, isFullyQualified);
+		}
+		return false;
+	}
+
+	private boolean matchesQualifiers(PDOMNode node, Pattern[] patterns, int idx, boolean isFullyQualified) throws CoreException {
+		for (; idx >= 0; idx--) {
+			if (!(node instanceof PDOMNamedNode))
+				return false;
+			String name= new String(((PDOMNamedNode) node).getNameCharArray());
+			if (!patterns[idx].matcher(name).matches())
+				return false;
+			node= node.getParentNode();
+		}
+		// the parent node of a top-level binding is the linkage, which is represented by null.
+		return !isFullyQualified || node == null;
+	}
+
 	private Boolean getCaseSensitive(Pattern[] patterns) {
 		Boolean caseSensitive= null;
 		for (Pattern p : patterns) {
@@ -685,6 +804,108 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return null;
 	}
 
+	/**
+	 * Returns substrings that each match of the pattern must contain, or <code>null</code> if
+	 * the pattern is too complex to be analyzed or does not require a substring of three or
+	 * more characters.
+	 */
+	private char[][] extractRequiredSubstrings(Pattern pattern) {
+		if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0)
+			return null;
+
+		final String p= pattern.pattern();
+		final List<char[]> result= new ArrayList<char[]>();
+		final StringBuilder run= new StringBuilder();
+		boolean lastWasLiteral= false;
+		final int len= p.length();
+		for (int i = 0; i < len; i++) {
+			char c= p.charAt(i);
+			switch (c) {
+			case '\\':
+				if (++i >= len)
+					return null;
+				c= p.charAt(i);
+				if (Character.isLetterOrDigit(c)) {
+					// a character class like \w or an escape like \Q
+					if (c == 'Q' || c == 'E')
+						return null;
+					addRun(run, result);
+					lastWasLiteral= false;
+				} else {
+					run.append(c);
+					lastWasLiteral= true;
+				}
+				break;
+			case '*': case '?': case '{':
+				// the preceding character is optional
+				if (lastWasLiteral) {
+					run.setLength(run.length()-1);
+				}
+				addRun(run, result);
+				if (c == '{') {
+					i= p.indexOf('}', i);
+					if (i < 0)
+						return null;
+				}
+				lastWasLiteral= false;
+				break;
+			case '[':
+				addRun(run, result);
+				i= skipCharacterClass(p, i);
+				if (i < 0)
+					return null;
+				lastWasLiteral= false;
+				break;
+			case '|': case '(': case ')':
+				return null;
+			case '.': case '+': case '^': case '$':
+				addRun(run, result);
+				lastWasLiteral= false;
+				break;
+			default:
+				run.append(c);
+				lastWasLiteral= true;
+				break;
+			}
+		}
+		addRun(run, result);
+		if (result.isEmpty())
+			return null;
+		return result.toArray(new char[result.size()][]);
+	}
+
+	private void addRun(StringBuilder run, List<char[]> result) {
+		if (run.length() >= 3) {
+			result.add(run.toString().toCharArray());
+		}
+		run.setLength(0);
+	}
+
+	/**
+	 * Returns the index of the closing bracket of the character class starting at the given
+	 * index, or <code>-1</code> for nested classes.
+	 */
+	private int skipCharacterClass(String p, int i) {
+		final int len= p.length();
+		// a closing bracket at the beginning of the class is a literal.
+		if (++i < len && p.charAt(i) == '^')
+			i++;
+		if (i < len && p.charAt(i) == ']')
+			i++;
+		for (; i < len; i++) {
+			switch (p.charAt(i)) {
+			case '\\':
+				i++;
+				break;
+			case '[':
+				return -1;
+			case ']':
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	public IIndexFragmentBinding[] findMacroContainers(Pattern pattern, IndexFilter filter, IProgressMonitor monitor) throws CoreException {
 		if (monitor == null) {
 			monitor= new NullProgressMonitor();
@@ -704,6 +925,20 @@ public class PDOM extends PlatformObject implements IPDOM {
 			}
 		}
 
+		final long[] names= findNamesViaTrigramIndex(pattern);
+		if (names != null) {
+			List<IIndexFragmentBinding> result= new ArrayList<IIndexFragmentBinding>();
+			for (long name : names) {
+				if (monitor.isCanceled())
+					return IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+				final String nameStr= db.getString(name).getString();
+				if (pattern.matcher(nameStr).matches()) {
+					result.addAll(Arrays.asList(findMacroContainers(nameStr.toCharArray(), false, true, filter, monitor)));
+				}
+			}
+			return result.toArray(new IIndexFragmentBinding[result.size()]);
+		}
+
 		List<IIndexFragmentBinding> result= new ArrayList<IIndexFragmentBinding>();
 		for (PDOMLinkage linkage : getLinkageList()) {
 			if (filter.acceptLinkage(linkage)) {
@@ -790,52 +1025,53 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	// Read-write lock rules. Readers don't conflict with other readers,
 	// Writers conflict with readers, and everyone conflicts with writers.
-	private Object mutex = new Object();
-	private int lockCount;
-	private int waitingReaders;
+	private final PDOMLock fLock= new PDOMLock() {
+		@Override
+		protected void lockCountChanged(int lockCount) {
+			db.setLocked(lockCount != 0);
+		}
+	};
 	private long lastWriteAccess= 0;
 	private long lastReadAccess= 0;
 	private long timeWriteLockAcquired;
+	private volatile long fDeletedNodeCount;
 
 	public void acquireReadLock() throws InterruptedException {
+		tryAcquireReadLock(-1);
+	}
+
+	/**
+	 * Acquire a read lock on this PDOM, waiting for at most the given time.
+	 * @param timeout the maximum time to wait in milliseconds, or a negative number to wait
+	 * until the lock is available.
+	 * @return whether the lock was acquired.
+	 * @throws InterruptedException
+	 */
+	public boolean tryAcquireReadLock(long timeout) throws InterruptedException {
 		long t = sDEBUG_LOCKS ? System.nanoTime() : 0;
-		synchronized (mutex) {
-			++waitingReaders;
-			try {
-				while (lockCount < 0)
-					mutex.wait();
-			} finally {
-				--waitingReaders;
-			}
-			++lockCount;
-			db.setLocked(true);
+		if (!fLock.acquireReadLock(timeout))
+			return false;
 
-			if (sDEBUG_LOCKS) {
-				t = (System.nanoTime() - t) / 1000000;
-				if (t >= LONG_READ_LOCK_WAIT_REPORT_THRESHOLD) {
-					System.out.println("Acquired index read lock after " + t + " ms wait."); //$NON-NLS-1$//$NON-NLS-2$
-				}
+		if (sDEBUG_LOCKS) {
+			t = (System.nanoTime() - t) / 1000000;
+			if (t >= LONG_READ_LOCK_WAIT_REPORT_THRESHOLD) {
+				System.out.println("Acquired index read lock after " + t + " ms wait."); //$NON-NLS-1$//$NON-NLS-2$
+			}
+			synchronized (fLockDebugging) {
 				incReadLock(fLockDebugging);
 			}
 		}
+		return true;
 	}
 
 	public void releaseReadLock() {
-		boolean clearCache= false;
-		synchronized (mutex) {
-			assert lockCount > 0: "No lock to release"; //$NON-NLS-1$
-			if (sDEBUG_LOCKS) {
+		if (sDEBUG_LOCKS) {
+			synchronized (fLockDebugging) {
 				decReadLock(fLockDebugging);
 			}
-
-			lastReadAccess= System.currentTimeMillis();
-			if (lockCount > 0)
-				--lockCount;
-			mutex.notifyAll();
-			clearCache= lockCount == 0;
-			db.setLocked(lockCount != 0);
 		}
-		if (clearCache) {
+		lastReadAccess= System.currentTimeMillis();
+		if (fLock.releaseReadLock()) {
 			clearResultCache();
 		}
 	}
@@ -856,35 +1092,32 @@ public class PDOM extends PlatformObject implements IPDOM {
 	 * @throws IllegalStateException if this PDOM is not writable
 	 */
 	public void acquireWriteLock(int giveupReadLocks) throws InterruptedException {
+		tryAcquireWriteLock(giveupReadLocks, -1);
+	}
+
+	/**
+	 * Acquire a write lock on this PDOM, giving up the specified number of read locks first. Waits
+	 * for at most the given time for other read/write locks to be released.
+	 * @param timeout the maximum time to wait in milliseconds, or a negative number to wait
+	 * until the lock is available.
+	 * @return whether the lock was acquired, if not the read locks are still held.
+	 * @throws InterruptedException
+	 * @throws IllegalStateException if this PDOM is not writable
+	 */
+	public boolean tryAcquireWriteLock(int giveupReadLocks, long timeout) throws InterruptedException {
 		assert !isPermanentlyReadOnly();
-		synchronized (mutex) {
-			if (sDEBUG_LOCKS) {
+		if (sDEBUG_LOCKS) {
+			if (!acquireWriteLockReportBlocked(giveupReadLocks, timeout))
+				return false;
+			synchronized (fLockDebugging) {
 				incWriteLock(giveupReadLocks);
 			}
-
-			if (giveupReadLocks > 0) {
-				// give up on read locks
-				assert lockCount >= giveupReadLocks: "Not enough locks to release"; //$NON-NLS-1$
-				if (lockCount < giveupReadLocks) {
-					giveupReadLocks= lockCount;
-				}
-			} else {
-				giveupReadLocks= 0;
-			}
-
-			// Let the readers go first
-			long start= sDEBUG_LOCKS ? System.currentTimeMillis() : 0;
-			while (lockCount > giveupReadLocks || waitingReaders > 0) {
-				mutex.wait(BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL);
-				if (sDEBUG_LOCKS) {
-					start = reportBlockedWriteLock(start, giveupReadLocks);
-				}
-			}
-			lockCount= -1;
-			if (sDEBUG_LOCKS)
-				timeWriteLockAcquired = System.currentTimeMillis();
-			db.setExclusiveLock();
+			timeWriteLockAcquired = System.currentTimeMillis();
+		} else if (!fLock.acquireWriteLock(giveupReadLocks, timeout)) {
+			return false;
 		}
+		db.setExclusiveLock();
+		return true;
 	}
 
 	final public void releaseWriteLock() {
@@ -902,31 +1135,37 @@ public class PDOM extends PlatformObject implements IPDOM {
 		} catch (CoreException e) {
 			CCorePlugin.log(e);
 		}
-		assert lockCount == -1;
+		assert fLock.getLockCount() == -1;
 		lastWriteAccess= System.currentTimeMillis();
 		final ChangeEvent event= fEvent;
 		fEvent= new ChangeEvent();
-		synchronized (mutex) {
-			if (sDEBUG_LOCKS) {
-				long timeHeld = lastWriteAccess - timeWriteLockAcquired;
-				if (timeHeld >= LONG_WRITE_LOCK_REPORT_THRESHOLD) {
-					System.out.println("Index write lock held for " + timeHeld + " ms");
-				}
+		if (sDEBUG_LOCKS) {
+			long timeHeld = lastWriteAccess - timeWriteLockAcquired;
+			if (timeHeld >= LONG_WRITE_LOCK_REPORT_THRESHOLD) {
+				System.out.println("Index write lock held for " + timeHeld + " ms");
+			}
+			synchronized (fLockDebugging) {
 				decWriteLock(establishReadLocks);
 			}
-
-			if (lockCount < 0)
-				lockCount= establishReadLocks;
-			mutex.notifyAll();
-			db.setLocked(lockCount != 0);
 		}
+		fLock.releaseWriteLock(establishReadLocks);
 		fireChange(event);
 	}
 
 	public boolean hasWaitingReaders() {
-		synchronized (mutex) {
-			return waitingReaders > 0;
-		}
+		return fLock.hasWaitingReaders();
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of the read/write lock of this PDOM: the times
+	 * waited for and the times holding locks, as well as the locks that were held longest.
+	 */
+	public PDOMLock.Statistics getLockStatistics() {
+		return fLock.getStatistics();
+	}
+
+	public void resetLockStatistics() {
+		fLock.resetStatistics();
 	}
 
 	public long getLastWriteAccess() {
@@ -937,6 +1176,20 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return lastReadAccess;
 	}
 
+	/**
+	 * Called when the record of a node is freed, while holding the write lock.
+	 */
+	public void nodeDeleted() {
+		fDeletedNodeCount++;
+	}
+
+	/**
+	 * Returns the number of nodes deleted from this PDOM since it was opened.
+	 */
+	public long getDeletedNodeCount() {
+		return fDeletedNodeCount;
+	}
+
 	protected PDOMLinkage adaptLinkage(ILinkage linkage) throws CoreException {
 		return fLinkageIDCache.get(linkage.getLinkageID());
 	}
@@ -1221,6 +1474,8 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	private void clearCaches() {
 		fileIndex= null;
+		fStringTable= null;
+		fTrigramIndex= null;
 		fLinkageIDCache.clear();
 		clearResultCache();
 	}
@@ -1239,6 +1494,10 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return db.getCacheMisses();
 	}
 
+	public long getCacheEvictions() {
+		return db.getCacheEvictions();
+	}
+
 	public void resetCacheCounters() {
 		db.resetCacheCounters();
 	}
@@ -1523,16 +1782,26 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	// For debugging lock issues
 	@SuppressWarnings("nls")
-	private long reportBlockedWriteLock(long start, int giveupReadLocks) {
-		long now= System.currentTimeMillis();
-		if (now >= start + BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL) {
+	private boolean acquireWriteLockReportBlocked(int giveupReadLocks, long timeout) throws InterruptedException {
+		final long start= System.currentTimeMillis();
+		while (true) {
+			long wait= BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL;
+			if (timeout >= 0) {
+				wait= Math.min(wait, timeout - (System.currentTimeMillis() - start));
+				if (wait <= 0)
+					return false;
+			}
+			if (fLock.acquireWriteLock(giveupReadLocks, wait))
+				return true;
+
 			System.out.println();
 			System.out.println("Blocked writeLock");
-			System.out.println("  lockcount= " + lockCount + ", giveupReadLocks=" + giveupReadLocks + ", waitingReaders=" + waitingReaders);
-			outputReadLocks(fLockDebugging);
-			start= now;
+			System.out.println("  lockcount= " + fLock.getLockCount() + ", giveupReadLocks=" + giveupReadLocks
+					+ ", waitingReaders=" + fLock.getWaitingReaderCount() + ", waitingWriters=" + fLock.getWaitingWriterCount());
+			synchronized (fLockDebugging) {
+				outputReadLocks(fLockDebugging);
+			}
 		}
-		return start;
 	}
 
 	// For debugging lock issues
@@ -1548,17 +1817,19 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	// For debugging lock issues
 	public void adjustThreadForReadLock(Map<Thread, DebugLockInfo> lockDebugging) {
-		for (Thread th : lockDebugging.keySet()) {
-			DebugLockInfo val= lockDebugging.get(th);
-			if (val.fReadLocks > 0) {
-				DebugLockInfo myval= fLockDebugging.get(th);
-				if (myval == null) {
-					myval= new DebugLockInfo();
-					fLockDebugging.put(th, myval);
-				}
-				myval.inc(val);
-				for (int i = 0; i < val.fReadLocks; i++) {
-					decReadLock(fLockDebugging);
+		synchronized (fLockDebugging) {
+			for (Thread th : lockDebugging.keySet()) {
+				DebugLockInfo val= lockDebugging.get(th);
+				if (val.fReadLocks > 0) {
+					DebugLockInfo myval= fLockDebugging.get(th);
+					if (myval == null) {
+						myval= new DebugLockInfo();
+						fLockDebugging.put(th, myval);
+					}
+					myval.inc(val);
+					for (int i = 0; i < val.fReadLocks; i++) {
+						decReadLock(fLockDebugging);
+					}
 				}
 			}
 		}
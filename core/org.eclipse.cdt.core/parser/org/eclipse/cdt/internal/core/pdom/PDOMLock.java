@@ -0,0 +1,461 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Read-write lock for the PDOM. Readers don't conflict with other readers, writers conflict
+ * with readers and everyone conflicts with writers.
+ * <p>
+ * Read locks are not owned by a thread, a write lock can be acquired in exchange for read locks
+ * ({@link #acquireWriteLock(int, long)}) and be turned back into read locks when it is released.
+ * <p>
+ * The lock is fair: writers are served in the order they arrive (except for writers that
+ * exchange read locks for the write lock) and new readers queue up behind
+ * a waiting writer, unless the thread already holds a read lock. Readers that have been waiting
+ * while a writer held the lock are admitted before the next writer. To avoid deadlocks between
+ * threads that depend on each other while holding read locks, a reader waits for at most
+ * {@link #READER_BARGING_DELAY} milliseconds behind a writer that has not yet got the lock.
+ * <p>
+ * The lock collects statistics about waiting and holding times, see {@link #getStatistics()}.
+ */
+public class PDOMLock {
+	/**
+	 * Maximum time in milliseconds a reader queues up behind a waiting writer.
+	 */
+	public static final long READER_BARGING_DELAY= 500;
+
+	/**
+	 * A lock that was held for a long time.
+	 */
+	public static final class LongHold {
+		private final String fThreadName;
+		private final boolean fIsWriteLock;
+		private final long fAcquired;
+		private final long fDuration;
+
+		LongHold(String threadName, boolean isWriteLock, long acquired, long duration) {
+			fThreadName= threadName;
+			fIsWriteLock= isWriteLock;
+			fAcquired= acquired;
+			fDuration= duration;
+		}
+
+		/**
+		 * Returns the name of the thread that has held the lock.
+		 */
+		public String getThreadName() {
+			return fThreadName;
+		}
+
+		public boolean isWriteLock() {
+			return fIsWriteLock;
+		}
+
+		/**
+		 * Returns the time the lock was acquired, as returned by {@link System#currentTimeMillis()}.
+		 */
+		public long getAcquired() {
+			return fAcquired;
+		}
+
+		/**
+		 * Returns the time the lock was held in milliseconds.
+		 */
+		public long getDuration() {
+			return fDuration;
+		}
+
+		@Override
+		@SuppressWarnings("nls")
+		public String toString() {
+			return (fIsWriteLock ? "write lock" : "read lock") + " held by '" + fThreadName + "' for " + fDuration + " ms";
+		}
+	}
+
+	/**
+	 * Statistics of the lock, times are in milliseconds.
+	 */
+	public static final class Statistics {
+		/**
+		 * Number of buckets of the wait time histograms. Bucket <code>i</code> counts the waits
+		 * shorter than <code>2^i</code> milliseconds, the last bucket counts all longer waits.
+		 */
+		public static final int HISTOGRAM_BUCKETS= 12;
+		/**
+		 * Number of long holds that are kept.
+		 */
+		public static final int MAX_LONG_HOLDS= 10;
+
+		long fReadLocks;
+		long fWriteLocks;
+		long fReadWaitNanos;
+		long fWriteWaitNanos;
+		long fReadHoldTime;
+		long fWriteHoldTime;
+		long fTimeouts;
+		final long[] fReadWaitHistogram= new long[HISTOGRAM_BUCKETS];
+		final long[] fWriteWaitHistogram= new long[HISTOGRAM_BUCKETS];
+		final List<LongHold> fLongHolds= new ArrayList<LongHold>(MAX_LONG_HOLDS+1);
+
+		Statistics() {
+		}
+
+		Statistics(Statistics other) {
+			fReadLocks= other.fReadLocks;
+			fWriteLocks= other.fWriteLocks;
+			fReadWaitNanos= other.fReadWaitNanos;
+			fWriteWaitNanos= other.fWriteWaitNanos;
+			fReadHoldTime= other.fReadHoldTime;
+			fWriteHoldTime= other.fWriteHoldTime;
+			fTimeouts= other.fTimeouts;
+			System.arraycopy(other.fReadWaitHistogram, 0, fReadWaitHistogram, 0, HISTOGRAM_BUCKETS);
+			System.arraycopy(other.fWriteWaitHistogram, 0, fWriteWaitHistogram, 0, HISTOGRAM_BUCKETS);
+			fLongHolds.addAll(other.fLongHolds);
+		}
+
+		void recordWait(boolean write, long nanos) {
+			final long millis= nanos / 1000000;
+			int bucket= 0;
+			while (bucket < HISTOGRAM_BUCKETS-1 && millis >= (1L << bucket)) {
+				bucket++;
+			}
+			if (write) {
+				fWriteLocks++;
+				fWriteWaitNanos+= nanos;
+				fWriteWaitHistogram[bucket]++;
+			} else {
+				fReadLocks++;
+				fReadWaitNanos+= nanos;
+				fReadWaitHistogram[bucket]++;
+			}
+		}
+
+		void recordHold(boolean write, long acquired, long duration) {
+			if (write) {
+				fWriteHoldTime+= duration;
+			} else {
+				fReadHoldTime+= duration;
+			}
+			final int size= fLongHolds.size();
+			if (size < MAX_LONG_HOLDS || fLongHolds.get(size-1).fDuration < duration) {
+				int i= size;
+				while (i > 0 && fLongHolds.get(i-1).fDuration < duration) {
+					i--;
+				}
+				fLongHolds.add(i, new LongHold(Thread.currentThread().getName(), write, acquired, duration));
+				if (size == MAX_LONG_HOLDS) {
+					fLongHolds.remove(MAX_LONG_HOLDS);
+				}
+			}
+		}
+
+		/**
+		 * Returns the number of read locks that were acquired.
+		 */
+		public long getReadLockCount() {
+			return fReadLocks;
+		}
+
+		/**
+		 * Returns the number of write locks that were acquired.
+		 */
+		public long getWriteLockCount() {
+			return fWriteLocks;
+		}
+
+		/**
+		 * Returns the number of timed acquisitions that have failed.
+		 */
+		public long getTimeoutCount() {
+			return fTimeouts;
+		}
+
+		public long getReadWaitTime() {
+			return fReadWaitNanos / 1000000;
+		}
+
+		public long getWriteWaitTime() {
+			return fWriteWaitNanos / 1000000;
+		}
+
+		/**
+		 * Returns the time read locks were held by threads. Time spans of read locks held in
+		 * parallel by different threads add up, nested read locks of a thread are not counted.
+		 */
+		public long getReadHoldTime() {
+			return fReadHoldTime;
+		}
+
+		public long getWriteHoldTime() {
+			return fWriteHoldTime;
+		}
+
+		/**
+		 * Returns the histogram of the times waited for read locks.
+		 * @see #HISTOGRAM_BUCKETS
+		 */
+		public long[] getReadWaitHistogram() {
+			return fReadWaitHistogram.clone();
+		}
+
+		/**
+		 * Returns the histogram of the times waited for write locks.
+		 * @see #HISTOGRAM_BUCKETS
+		 */
+		public long[] getWriteWaitHistogram() {
+			return fWriteWaitHistogram.clone();
+		}
+
+		/**
+		 * Returns the locks that were held for the longest time, longest first.
+		 */
+		public LongHold[] getLongestHolds() {
+			return fLongHolds.toArray(new LongHold[fLongHolds.size()]);
+		}
+
+		@Override
+		@SuppressWarnings("nls")
+		public String toString() {
+			StringBuilder buf= new StringBuilder();
+			buf.append("read locks: ").append(fReadLocks).append(", waited ").append(getReadWaitTime());
+			buf.append(" ms, held ").append(fReadHoldTime).append(" ms\n");
+			buf.append("write locks: ").append(fWriteLocks).append(", waited ").append(getWriteWaitTime());
+			buf.append(" ms, held ").append(fWriteHoldTime).append(" ms\n");
+			appendHistogram(buf, "read waits: ", fReadWaitHistogram);
+			appendHistogram(buf, "write waits: ", fWriteWaitHistogram);
+			for (LongHold hold : fLongHolds) {
+				buf.append(hold).append('\n');
+			}
+			return buf.toString();
+		}
+
+		@SuppressWarnings("nls")
+		private static void appendHistogram(StringBuilder buf, String label, long[] histogram) {
+			buf.append(label);
+			for (int i = 0; i < histogram.length; i++) {
+				buf.append(i < histogram.length-1 ? "<" : ">=");
+				buf.append(1L << Math.min(i, histogram.length-2)).append("ms:").append(histogram[i]).append(' ');
+			}
+			buf.append('\n');
+		}
+	}
+
+	/**
+	 * The locks held by a thread.
+	 */
+	private static final class Holder {
+		int fReadLocks;
+		long fReadSince;
+		long fWriteSince;
+	}
+
+	private final ThreadLocal<Holder> fHolder= new ThreadLocal<Holder>() {
+		@Override
+		protected Holder initialValue() {
+			return new Holder();
+		}
+	};
+	/** Positive for the number of read locks, -1 while a writer holds the lock. */
+	private int fLockCount;
+	private int fWaitingReaders;
+	/** Readers that have been waiting while the lock was last released by a writer. */
+	private int fEntitledReaders;
+	private long fWriteReleases;
+	private final LinkedList<Object> fWaitingWriters= new LinkedList<Object>();
+	private Statistics fStatistics= new Statistics();
+
+	/**
+	 * Called whenever the number of locks changes, while holding the monitor of the lock.
+	 * @param lockCount the number of read locks or <code>-1</code> for a write lock.
+	 */
+	protected void lockCountChanged(int lockCount) {
+	}
+
+	/**
+	 * Acquires a read lock, blocks as long as a writer holds the lock.
+	 * @param timeout the maximum time to wait in milliseconds, or a negative number
+	 * to wait without limit.
+	 * @return whether the lock was acquired.
+	 */
+	public synchronized boolean acquireReadLock(long timeout) throws InterruptedException {
+		final Holder holder= fHolder.get();
+		final long start= System.nanoTime();
+		final long writeReleases= fWriteReleases;
+		++fWaitingReaders;
+		try {
+			while (true) {
+				final boolean entitled= writeReleases != fWriteReleases;
+				final long waited= (System.nanoTime() - start) / 1000000;
+				long wait= 0;
+				if (fLockCount >= 0) {
+					if (fWaitingWriters.isEmpty() || entitled || holder.fReadLocks > 0 ||
+							waited >= READER_BARGING_DELAY) {
+						break;
+					}
+					wait= READER_BARGING_DELAY - waited;
+				}
+				if (timeout >= 0) {
+					if (waited >= timeout) {
+						fStatistics.fTimeouts++;
+						return false;
+					}
+					wait= wait == 0 ? timeout - waited : Math.min(wait, timeout - waited);
+				}
+				wait(wait);
+			}
+		} finally {
+			--fWaitingReaders;
+			if (writeReleases != fWriteReleases && fEntitledReaders > 0) {
+				fEntitledReaders--;
+				notifyAll();
+			}
+		}
+		++fLockCount;
+		if (holder.fReadLocks++ == 0) {
+			holder.fReadSince= System.currentTimeMillis();
+		}
+		fStatistics.recordWait(false, System.nanoTime() - start);
+		lockCountChanged(fLockCount);
+		return true;
+	}
+
+	/**
+	 * Releases a read lock.
+	 * @return whether no locks are held anymore.
+	 */
+	public synchronized boolean releaseReadLock() {
+		assert fLockCount > 0: "No lock to release"; //$NON-NLS-1$
+		if (fLockCount > 0)
+			--fLockCount;
+		final Holder holder= fHolder.get();
+		if (holder.fReadLocks > 0 && --holder.fReadLocks == 0) {
+			fStatistics.recordHold(false, holder.fReadSince, System.currentTimeMillis() - holder.fReadSince);
+		}
+		notifyAll();
+		lockCountChanged(fLockCount);
+		return fLockCount == 0;
+	}
+
+	/**
+	 * Acquires the write lock, giving up the specified number of read locks first. Blocks
+	 * until all other locks are released.
+	 * @param timeout the maximum time to wait in milliseconds, or a negative number
+	 * to wait without limit.
+	 * @return whether the lock was acquired, in case it was not, the read locks are still held.
+	 */
+	public synchronized boolean acquireWriteLock(int giveupReadLocks, long timeout) throws InterruptedException {
+		if (giveupReadLocks > 0) {
+			// give up on read locks
+			assert fLockCount >= giveupReadLocks: "Not enough locks to release"; //$NON-NLS-1$
+			if (fLockCount < giveupReadLocks) {
+				giveupReadLocks= fLockCount;
+			}
+		} else {
+			giveupReadLocks= 0;
+		}
+
+		final long start= System.nanoTime();
+		final Object ticket= new Object();
+		fWaitingWriters.add(ticket);
+		try {
+			// A writer giving up read locks does not queue up behind other writers, they'd wait for it.
+			while (fLockCount != giveupReadLocks || fEntitledReaders > 0 ||
+					(giveupReadLocks == 0 && fWaitingWriters.getFirst() != ticket)) {
+				long wait= 0;
+				if (timeout >= 0) {
+					final long waited= (System.nanoTime() - start) / 1000000;
+					if (waited >= timeout) {
+						fStatistics.fTimeouts++;
+						return false;
+					}
+					wait= timeout - waited;
+				}
+				wait(wait);
+			}
+		} finally {
+			fWaitingWriters.remove(ticket);
+			notifyAll();
+		}
+		fLockCount= -1;
+		final Holder holder= fHolder.get();
+		final long now= System.currentTimeMillis();
+		if (holder.fReadLocks > 0) {
+			holder.fReadLocks= Math.max(0, holder.fReadLocks - giveupReadLocks);
+			if (holder.fReadLocks == 0) {
+				fStatistics.recordHold(false, holder.fReadSince, now - holder.fReadSince);
+			}
+		}
+		holder.fWriteSince= now;
+		fStatistics.recordWait(true, System.nanoTime() - start);
+		lockCountChanged(fLockCount);
+		return true;
+	}
+
+	/**
+	 * Releases the write lock, establishing the specified number of read locks.
+	 */
+	public synchronized void releaseWriteLock(int establishReadLocks) {
+		assert fLockCount == -1;
+		final Holder holder= fHolder.get();
+		final long now= System.currentTimeMillis();
+		if (holder.fWriteSince != 0) {
+			fStatistics.recordHold(true, holder.fWriteSince, now - holder.fWriteSince);
+			holder.fWriteSince= 0;
+		}
+		if (fLockCount < 0)
+			fLockCount= establishReadLocks;
+		if (establishReadLocks > 0 && holder.fReadLocks == 0) {
+			holder.fReadSince= now;
+		}
+		holder.fReadLocks+= establishReadLocks;
+		if (fWaitingReaders > 0) {
+			// The readers waiting now go before the next writer.
+			fWriteReleases++;
+			fEntitledReaders= fWaitingReaders;
+		}
+		notifyAll();
+		lockCountChanged(fLockCount);
+	}
+
+	/**
+	 * Returns the number of read locks, or <code>-1</code> while the write lock is held.
+	 */
+	public synchronized int getLockCount() {
+		return fLockCount;
+	}
+
+	public synchronized boolean hasWaitingReaders() {
+		return fWaitingReaders > 0;
+	}
+
+	public synchronized int getWaitingReaderCount() {
+		return fWaitingReaders;
+	}
+
+	public synchronized int getWaitingWriterCount() {
+		return fWaitingWriters.size();
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of this lock.
+	 */
+	public synchronized Statistics getStatistics() {
+		return new Statistics(fStatistics);
+	}
+
+	public synchronized void resetStatistics() {
+		fStatistics= new Statistics();
+	}
+}
@@ -70,9 +70,11 @@ import org.eclipse.cdt.internal.core.index.IndexerStateEvent;
 import org.eclipse.cdt.internal.core.index.provider.IndexProviderManager;
 import org.eclipse.cdt.internal.core.pdom.PDOM.IListener;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMProjectIndexLocationConverter;
 import org.eclipse.cdt.internal.core.pdom.indexer.AbstractPDOMIndexer;
+import org.eclipse.cdt.internal.core.pdom.indexer.TruncatePDOMTask;
 import org.eclipse.cdt.internal.core.pdom.indexer.IndexerPreferences;
 import org.eclipse.cdt.internal.core.pdom.indexer.PDOMNullIndexer;
 import org.eclipse.cdt.internal.core.pdom.indexer.PDOMRebuildTask;
@@ -224,6 +226,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		InstanceScope.INSTANCE.getNode(CCorePlugin.PLUGIN_ID).addPreferenceChangeListener(fPreferenceChangeListener);
 		Job.getJobManager().addJobChangeListener(fJobChangeListener);
 		adjustCacheSize();
+		adjustChunkSize();
 		updatePathCanonicalizationStrategy();
 		fIndexProviderManager.startup();
 		
@@ -271,6 +274,8 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		if (prop.equals(CCorePreferenceConstants.INDEX_DB_CACHE_SIZE_PCT)
 				|| prop.equals(CCorePreferenceConstants.MAX_INDEX_DB_CACHE_SIZE_MB)) {
 			adjustCacheSize();
+		} else if (prop.equals(CCorePreferenceConstants.INDEX_DB_CHUNK_SIZE_KB)) {
+			adjustChunkSize();
 		} else if (prop.equals(CCorePreferenceConstants.TODO_TASK_TAGS) ||
 				prop.equals(CCorePreferenceConstants.TODO_TASK_PRIORITIES) ||
 				prop.equals(CCorePreferenceConstants.TODO_TASK_CASE_SENSITIVE)) {
@@ -292,6 +297,19 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		ChunkCache.getSharedInstance().setMaxSize(m2);
 	}
 
+	/**
+	 * The chunk size is used for new databases, existing databases are converted when they are rebuilt.
+	 */
+	protected void adjustChunkSize() {
+		IPreferencesService prefs = Platform.getPreferencesService();
+		int chunkSizeKB= prefs.getInt(CCorePlugin.PLUGIN_ID, CCorePreferenceConstants.INDEX_DB_CHUNK_SIZE_KB, 4, null);
+		int chunkSize= Database.CHUNK_SIZE;
+		while (chunkSize < chunkSizeKB * 1024L && chunkSize < Database.MAX_CHUNK_SIZE) {
+			chunkSize*= 2;
+		}
+		PDOM.setDefaultChunkSize(chunkSize);
+	}
+
 	private void updatePathCanonicalizationStrategy() {
 		IPreferencesService prefs = Platform.getPreferencesService();
 		boolean canonicalize = prefs.getBoolean(CCorePlugin.PLUGIN_ID, CCorePreferenceConstants.FILE_PATH_CANONICALIZATION, true, null);
@@ -694,8 +712,11 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 
 	IPDOMIndexerTask getNextTask() {
 		IPDOMIndexerTask result= null;
+		boolean idle= false;
     	synchronized (fTaskQueue) {
     		if (fTaskQueue.isEmpty()) {
+    			// truncate once after the other tasks have completed.
+    			idle= !(fCurrentTask instanceof TruncatePDOMTask);
     			fCurrentTask= null;
     			fSourceCount= fHeaderCount= fTickCount= 0;
     		} else {
@@ -709,8 +730,42 @@ public class PDOMManager implements IWritableIndexManager, IListener {
     			result= fCurrentTask= fTaskQueue.removeFirst();
     		}
 		}
+    	if (idle) {
+    		// the indexer is idle, use the time to truncate a database with a lot of free space.
+    		final IPDOMIndexerTask truncation= createTruncationTask();
+    		if (truncation != null) {
+    			synchronized (fTaskQueue) {
+    				fTaskQueue.addLast(truncation);
+    				result= fCurrentTask= fTaskQueue.removeFirst();
+    			}
+    		}
+    	}
     	return result;
     }
+
+	private IPDOMIndexerTask createTruncationTask() {
+		assert !Thread.holdsLock(fTaskQueue);
+		IProject project= null;
+		WritablePDOM pdom= null;
+		synchronized (fProjectToPDOM) {
+			for (Map.Entry<IProject, IPDOM> entry : fProjectToPDOM.entrySet()) {
+				final IPDOM candidate= entry.getValue();
+				if (candidate instanceof WritablePDOM && ((WritablePDOM) candidate).isTruncationRecommended()) {
+					project= entry.getKey();
+					pdom= (WritablePDOM) candidate;
+					break;
+				}
+			}
+		}
+		if (pdom != null) {
+			// the task needs the indexer of the project, such that it is cancelled when the project is closed.
+			final IPDOMIndexer indexer= getIndexer(CoreModel.getDefault().create(project));
+			if (indexer != null) {
+				return new TruncatePDOMTask(pdom, indexer);
+			}
+		}
+		return null;
+	}
     
     void cancelledIndexerJob(boolean byManager) {
     	synchronized (fTaskQueue) {
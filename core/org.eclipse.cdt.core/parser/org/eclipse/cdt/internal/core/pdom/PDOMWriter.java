@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@
 package org.eclipse.cdt.internal.core.pdom;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -80,6 +81,26 @@ abstract public class PDOMWriter {
 		ArrayList<IASTPreprocessorStatement> fMacros= new ArrayList<IASTPreprocessorStatement>();
 		ArrayList<IASTPreprocessorIncludeStatement> fIncludes= new ArrayList<IASTPreprocessorIncludeStatement>();
 	}
+
+	/**
+	 * Symbols extracted from an AST with their names resolved, ready to be stored in the index.
+	 * @see PDOMWriter#prepareSymbols(IASTTranslationUnit, IIndexFileLocation[], IProgressMonitor)
+	 */
+	protected static final class PreparedSymbols {
+		final IASTTranslationUnit fAST;
+		final Map<IIndexFileLocation, Symbols> fSymbolMap= new HashMap<IIndexFileLocation, Symbols>();
+		final HashSet<IASTPreprocessorIncludeStatement> fContextIncludes= new HashSet<IASTPreprocessorIncludeStatement>();
+		final ArrayList<IStatus> fStati= new ArrayList<IStatus>();
+
+		PreparedSymbols(IASTTranslationUnit ast) {
+			fAST= ast;
+		}
+
+		public IASTTranslationUnit getAST() {
+			return fAST;
+		}
+	}
+
 	private boolean fShowProblems;
 	protected boolean fShowInclusionProblems;
 	private boolean fShowScannerProblems;
@@ -143,25 +164,57 @@ abstract public class PDOMWriter {
 	public void addSymbols(IASTTranslationUnit ast, IIndexFileLocation[] ifls, IWritableIndex index,
 			int readlockCount, boolean flushIndex, long fileContentsHash, int configHash,
 			ITodoTaskUpdater taskUpdater, IProgressMonitor pm) throws InterruptedException, CoreException {
+		PreparedSymbols symbols= prepareSymbols(ast, ifls, pm);
+		storeSymbols(symbols, ifls, index, readlockCount, flushIndex, fileContentsHash, configHash,
+				taskUpdater, pm);
+	}
+
+	/**
+	 * Extracts symbols from the given AST and resolves their names. The index is not modified,
+	 * such that symbols for different ASTs can be prepared in parallel while the caller holds
+	 * a read-lock on the index the ASTs were created with.
+	 */
+	protected final PreparedSymbols prepareSymbols(IASTTranslationUnit ast, IIndexFileLocation[] ifls,
+			IProgressMonitor pm) throws CoreException {
 		if (fShowProblems) {
 			fShowInclusionProblems= true;
 			fShowScannerProblems= true;
 			fShowSyntaxProblems= true;
 		}
-		final Map<IIndexFileLocation, Symbols> symbolMap= new HashMap<IIndexFileLocation, Symbols>();
+		PreparedSymbols symbols= new PreparedSymbols(ast);
 		for (IIndexFileLocation ifl : ifls) {
-			prepareInMap(symbolMap, ifl);
+			prepareInMap(symbols.fSymbolMap, ifl);
 		}
-		ArrayList<IStatus> stati= new ArrayList<IStatus>();
-
-		HashSet<IASTPreprocessorIncludeStatement> contextIncludes= new HashSet<IASTPreprocessorIncludeStatement>();
-		extractSymbols(ast, symbolMap, contextIncludes);
+		extractSymbols(ast, symbols.fSymbolMap, symbols.fContextIncludes);
 
 		// name resolution
-		resolveNames(symbolMap, ifls, stati, pm);
+		resolveNames(symbols.fSymbolMap, ifls, symbols.fStati, pm);
+		return symbols;
+	}
+
+	/**
+	 * Stores symbols prepared by {@link #prepareSymbols(IASTTranslationUnit, IIndexFileLocation[], IProgressMonitor)}
+	 * in the index. The files to be stored may be a subset of the files the symbols were prepared for,
+	 * e.g. when a header has been stored with the symbols of another AST in the meantime.
+	 */
+	protected final void storeSymbols(PreparedSymbols symbols, IIndexFileLocation[] ifls, IWritableIndex index,
+			int readlockCount, boolean flushIndex, long fileContentsHash, int configHash,
+			ITodoTaskUpdater taskUpdater, IProgressMonitor pm) throws InterruptedException, CoreException {
+		final IASTTranslationUnit ast= symbols.fAST;
+		final ArrayList<IStatus> stati= symbols.fStati;
+		final HashSet<IASTPreprocessorIncludeStatement> contextIncludes= symbols.fContextIncludes;
+		if (ifls.length < symbols.fSymbolMap.size()) {
+			// An include can only be the context of a file that is stored along with it.
+			final Set<IIndexFileLocation> stored= new HashSet<IIndexFileLocation>(Arrays.asList(ifls));
+			for (Iterator<IASTPreprocessorIncludeStatement> it= contextIncludes.iterator(); it.hasNext();) {
+				if (!stored.contains(fResolver.resolveASTPath(it.next().getPath()))) {
+					it.remove();
+				}
+			}
+		}
 
 		// index update
-		storeSymbolsInIndex(symbolMap, ifls, ast.getLinkage().getLinkageID(), fileContentsHash,
+		storeSymbolsInIndex(symbols.fSymbolMap, ifls, ast.getLinkage().getLinkageID(), fileContentsHash,
 				configHash, contextIncludes, index, readlockCount, flushIndex, stati, pm);
 
 		if (taskUpdater != null) {
@@ -237,9 +290,13 @@ abstract public class PDOMWriter {
 	private void resolveNames(final Map<IIndexFileLocation, Symbols> symbolMap, IIndexFileLocation[] ifls,
 			ArrayList<IStatus> stati, IProgressMonitor pm) {
 		long start= System.currentTimeMillis();
+		// Statistics are collected locally, names of different ASTs may be resolved in parallel.
+		int problemBindingCount= 0;
+		int referenceCount= 0;
+		int declarationCount= 0;
 		for (IIndexFileLocation path : ifls) {
 			if (pm.isCanceled()) {
-				return;
+				break;
 			}
 			Symbols symbols= symbolMap.get(path);
 
@@ -256,7 +313,7 @@ abstract public class PDOMWriter {
 								((IASTName) name.getParent()).getBinding() == binding) {
 								na[0]= null;
 						} else if (binding instanceof IProblemBinding) {
-							fStatistics.fProblemBindingCount++;
+							problemBindingCount++;
 							if (fShowProblems) {
 								reportProblem((IProblemBinding) binding);
 							}
@@ -268,13 +325,13 @@ abstract public class PDOMWriter {
 								if (!isRequiredReference(name)) {
 									na[0]= null;
 								} else {
-									fStatistics.fReferenceCount++;
+									referenceCount++;
 								}
 							} else {
-								fStatistics.fReferenceCount++;
+								referenceCount++;
 							}
 						} else {
-							fStatistics.fDeclarationCount++;
+							declarationCount++;
 						}
 					} catch (RuntimeException e) {
 						th= e;
@@ -292,7 +349,12 @@ abstract public class PDOMWriter {
 				}
 			}
 		}
-		fStatistics.fResolutionTime += System.currentTimeMillis()-start;
+		synchronized (fStatistics) {
+			fStatistics.fProblemBindingCount += problemBindingCount;
+			fStatistics.fReferenceCount += referenceCount;
+			fStatistics.fDeclarationCount += declarationCount;
+			fStatistics.fResolutionTime += System.currentTimeMillis()-start;
+		}
 	}
 
 	private void extractSymbols(IASTTranslationUnit ast, final Map<IIndexFileLocation, Symbols> symbolMap,
@@ -372,8 +434,12 @@ abstract public class PDOMWriter {
 			}
 		}
 
-		fStatistics.fUnresolvedIncludesCount += unresolvedIncludes;
-		fStatistics.fPreprocessorProblemCount += ast.getPreprocessorProblemsCount() - unresolvedIncludes;
+		final List<IASTProblem> problems= visitor.getProblems();
+		synchronized (fStatistics) {
+			fStatistics.fUnresolvedIncludesCount += unresolvedIncludes;
+			fStatistics.fPreprocessorProblemCount += ast.getPreprocessorProblemsCount() - unresolvedIncludes;
+			fStatistics.fSyntaxProblemsCount += problems.size();
+		}
 		if (fShowScannerProblems || fShowInclusionProblems) {
 			final boolean reportAll= fShowScannerProblems && fShowInclusionProblems;
 			IASTProblem[] scannerProblems= ast.getPreprocessorProblems();
@@ -384,8 +450,6 @@ abstract public class PDOMWriter {
 			}
 		}
 
-		final List<IASTProblem> problems= visitor.getProblems();
-		fStatistics.fSyntaxProblemsCount += problems.size();
 		if (fShowSyntaxProblems) {
 			for (IASTProblem problem : problems) {
 				reportProblem(problem);
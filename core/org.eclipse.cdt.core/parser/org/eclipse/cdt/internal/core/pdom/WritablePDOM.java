@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2006, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,7 @@ import org.eclipse.cdt.internal.core.index.IWritableIndex.IncludeInformation;
 import org.eclipse.cdt.internal.core.pdom.db.BTree;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
 import org.eclipse.cdt.internal.core.pdom.db.DBProperties;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMBinding;
@@ -38,8 +39,14 @@ import org.eclipse.cdt.internal.core.pdom.dom.PDOMMacro;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMMacroReferenceName;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMName;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 
 public class WritablePDOM extends PDOM implements IWritableIndexFragment {	
+	/** Number of chunks processed while holding the write lock when merging free blocks. */
+	private static final int TRUNCATION_BATCH_SIZE= 256;
+	/** Minimum number of bytes to be freed before truncating the free space is recommended. */
+	private static final long TRUNCATION_THRESHOLD= 4 * 1024 * 1024;
+
 	private boolean fClearedBecauseOfVersionMismatch= false;
 	private boolean fCreatedFromScratch= false;
 	private ASTFilePathResolver fPathResolver;
@@ -189,15 +196,20 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 
 		clearFileIndex();
 		final List<PDOMFile> notConverted = new ArrayList<PDOMFile>();
+		final long[] converted= new long[pdomfiles.size()];
+		int convertedCount= 0;
 		for (PDOMFile file : pdomfiles) {
 			String internalFormat = newConverter.toInternalFormat(file.getLocation());
 			if (internalFormat != null) {
 				file.setInternalLocation(internalFormat);
-				getFileIndex().insert(file.getRecord());
+				converted[convertedCount++]= file.getRecord();
 			} else {
 				notConverted.add(file);
 			}
 		}
+		final long[] records= new long[convertedCount];
+		System.arraycopy(converted, 0, records, 0, convertedCount);
+		getFileIndex().insertAll(records);
 
 		// remove content where converter returns null
 		for (PDOMFile file : notConverted) {
@@ -276,4 +288,49 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 	public long getDatabaseSizeBytes() {
 		return getDB().getSizeBytes();
 	}
+
+	/**
+	 * Returns whether enough space has been freed since the last truncation, such that
+	 * merging the free blocks and truncating the free chunks at the end of the database is 
+	 * worthwhile. Does not require a lock.
+	 */
+	public boolean isTruncationRecommended() {
+		final Database db= getDB();
+		final long freed= db.getBytesFreedSinceTruncation();
+		return freed >= TRUNCATION_THRESHOLD && freed >= db.getSizeBytes() / 10;
+	}
+
+	/**
+	 * Merges the free space of the database and shrinks the file by the free chunks at its end.
+	 * Records are not moved. The write lock is acquired by this method, it is released between 
+	 * batches of chunks such that readers are not blocked for long. The method returns early
+	 * when the monitor is cancelled or the database is closed in between.
+	 * @return the number of bytes the database has been shrunk by.
+	 */
+	public long truncateTrailingFreeSpace(IProgressMonitor monitor) throws CoreException, InterruptedException {
+		final Database db= getDB();
+		if (db.getBytesFreedSinceTruncation() == 0)
+			return 0;
+		
+		long reclaimed= 0;
+		boolean completed= false;
+		acquireWriteLock();
+		try {
+			for (int chunk= 1; chunk < db.getChunkCount(); chunk+= TRUNCATION_BATCH_SIZE) {
+				if (monitor.isCanceled() || db.isClosed())
+					return 0;
+				db.coalesceFreeBlocks(chunk, chunk + TRUNCATION_BATCH_SIZE);
+				// unlocks the chunks that have been visited.
+				releaseWriteLock(0, false);
+				acquireWriteLock();
+			}
+			if (db.isClosed())
+				return 0;
+			reclaimed= db.truncateFreeChunks();
+			completed= true;
+		} finally {
+			releaseWriteLock(0, completed);
+		}
+		return reclaimed;
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 QNX Software Systems and others.
+ * Copyright (c) 2005, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,9 @@
 
 package org.eclipse.cdt.internal.core.pdom.db;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import com.ibm.icu.text.MessageFormat;
 
 import org.eclipse.cdt.core.CCorePlugin;
@@ -113,7 +116,8 @@ public class BTree {
 		// if this node is full (last record isn't null), split it
 		if (getRecord(chunk, node, MAX_RECORDS - 1) != 0) {
 			long median = getRecord(chunk, node, MEDIAN_RECORD); 
-			if (median == record)
+			final int compareToMedian= median == record ? 0 : cmp.compare(record, median);
+			if (compareToMedian == 0)
 				// found it, never mind
 				return median;
 			else {
@@ -152,7 +156,7 @@ public class BTree {
 				putRecord(chunk, node, MEDIAN_RECORD, 0);
 
 				// set the node to the correct one to follow
-				if (cmp.compare(record, median) > 0) {
+				if (compareToMedian > 0) {
 					node = newnode;
 					chunk = newchunk;
 				}
@@ -216,6 +220,129 @@ public class BTree {
 		return db.malloc((2 * MAX_RECORDS + 1) * Database.INT_SIZE);
 	}
 
+	/**
+	 * Inserts a batch of records into the b-tree. The records are sorted with the comparator of
+	 * the b-tree first. An empty b-tree is then built bottom-up, filling one node after the other,
+	 * otherwise the records are inserted in ascending order. As with {@link #insert(long)} a record
+	 * is not inserted when the b-tree or the batch already contains an equal record (in the latter
+	 * case the one that comes first in the batch is inserted).
+	 * 
+	 * @param records offsets of the records
+	 */
+	public void insertAll(long[] records) throws CoreException {
+		final long[] sorted= sortUnique(records);
+		if (sorted.length == 0)
+			return;
+		
+		if (getRoot() == 0) {
+			int height= 1;
+			while (getCapacity(height) < sorted.length) {
+				height++;
+			}
+			db.putRecPtr(rootPointer, buildSubtree(sorted, 0, sorted.length, height));
+		} else {
+			for (long record : sorted) {
+				insert(record);
+			}
+		}
+	}
+
+	/**
+	 * Returns a sorted copy of the records, records that are equal to a preceding one are removed.
+	 */
+	private long[] sortUnique(long[] records) throws CoreException {
+		final Long[] boxed= new Long[records.length];
+		for (int i = 0; i < records.length; i++) {
+			boxed[i]= records[i];
+		}
+		final CoreException[] failure= {null};
+		final Comparator<Long> comparator= new Comparator<Long>() {
+			public int compare(Long r1, Long r2) {
+				if (failure[0] == null) {
+					try {
+						return cmp.compare(r1, r2);
+					} catch (CoreException e) {
+						failure[0]= e;
+					}
+				}
+				return 0;
+			}
+		};
+		// the sort is stable, of equal records the first one is kept.
+		Arrays.sort(boxed, comparator);
+		if (failure[0] != null)
+			throw failure[0];
+
+		int n= 0;
+		final long[] result= new long[boxed.length];
+		for (int i = 0; i < boxed.length; i++) {
+			final long record= boxed[i];
+			if (n == 0 || cmp.compare(result[n-1], record) != 0) {
+				result[n++]= record;
+			}
+		}
+		if (n == result.length)
+			return result;
+		final long[] trimmed= new long[n];
+		System.arraycopy(result, 0, trimmed, 0, n);
+		return trimmed;
+	}
+
+	/**
+	 * Returns the maximum number of records in a b-tree of the given height.
+	 */
+	private long getCapacity(int height) {
+		long capacity= MAX_RECORDS;
+		for (int i= 1; i < height && capacity < Integer.MAX_VALUE; i++) {
+			capacity= (capacity+1) * MAX_CHILDREN - 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Creates a subtree of the given height from a range of sorted records. The records are
+	 * distributed evenly among the children of a node, the minimal number of children is used.
+	 * Thus all nodes are at least half full and the leaves are at the same depth.
+	 * @return the root node of the subtree.
+	 */
+	private long buildSubtree(long[] records, int from, int to, int height) throws CoreException {
+		final int count= to - from;
+		if (height == 1) {
+			final long node= allocateNode();
+			final Chunk chunk= db.getChunk(node);
+			for (int i = 0; i < count; i++) {
+				putRecord(chunk, node, i, records[from + i]);
+			}
+			return node;
+		}
+
+		final long childCapacity= getCapacity(height - 1);
+		// minimal number of children, such that childCount * (childCapacity + 1) - 1 >= count
+		final int childCount= Math.max(2, (int) ((count + childCapacity + 1) / (childCapacity + 1)));
+		final int childRecords= count - (childCount - 1);
+		final long[] children= new long[childCount];
+		final long[] separators= new long[childCount - 1];
+		int pos= from;
+		for (int i = 0; i < childCount; i++) {
+			final int size= childRecords / childCount + (i < childRecords % childCount ? 1 : 0);
+			children[i]= buildSubtree(records, pos, pos + size, height - 1);
+			pos+= size;
+			if (i < separators.length) {
+				separators[i]= records[pos++];
+			}
+		}
+
+		final long node= allocateNode();
+		final Chunk chunk= db.getChunk(node);
+		for (int i = 0; i < separators.length; i++) {
+			putRecord(chunk, node, i, separators[i]);
+		}
+		for (int i = 0; i < children.length; i++) {
+			putChild(chunk, node, i, children[i]);
+		}
+		return node;
+	}
+
 	/**
 	 * Deletes the specified record from the B-tree.
 	 * <p>
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 QNX Software Systems and others.
+ * Copyright (c) 2005, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,14 +19,22 @@ import org.eclipse.core.runtime.CoreException;
 
 /**
  * Caches the content of a piece of the database.
+ * <p>
+ * The content is either held in a private heap buffer that is read from and written to the
+ * file, or it is a view onto a memory-mapped segment of the file. In the latter case the
+ * chunk accesses the page cache of the operating system directly, {@link #read()} and
+ * {@link #flush()} do not copy any data.
  */
 final class Chunk {
-	final private byte[] fBuffer= new byte[Database.CHUNK_SIZE];
+	final private ByteBuffer fBuffer;
+	final private boolean fMapped;
+	final private int fOffsetMask;
 
 	final Database fDatabase;
 	final int fSequenceNumber;
 	
 	boolean fCacheHitFlag= false;
+	int fCacheHitCount= 0;
 	boolean fDirty= false;
 	boolean fLocked= false;	// locked chunks must not be released from cache.
 	int fCacheIndex= -1;
@@ -34,57 +42,106 @@ final class Chunk {
 	Chunk(Database db, int sequenceNumber) {
 		fDatabase= db;
 		fSequenceNumber= sequenceNumber;
+		fBuffer= ByteBuffer.allocate(db.getChunkSize());
+		fMapped= false;
+		fOffsetMask= fBuffer.capacity() - 1;
 	}
 
+	/**
+	 * Creates a chunk operating on a view of a memory-mapped region of the file.
+	 * @param mapped a buffer of the size of the database's chunks with big-endian byte order.
+	 */
+	Chunk(Database db, int sequenceNumber, ByteBuffer mapped) {
+		assert mapped.capacity() == db.getChunkSize();
+		fDatabase= db;
+		fSequenceNumber= sequenceNumber;
+		fBuffer= mapped;
+		fMapped= true;
+		fOffsetMask= fBuffer.capacity() - 1;
+	}
+
+	boolean isMapped() {
+		return fMapped;
+	}
+
+	/**
+	 * Returns the size of the chunk in bytes.
+	 */
+	int size() {
+		return fBuffer.capacity();
+	}
+	
 	void read() throws CoreException {
+		if (fMapped)
+			return;
 		try {
-			final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-			fDatabase.read(buf, (long)fSequenceNumber*Database.CHUNK_SIZE);
+			final ByteBuffer buf= fBuffer.duplicate();
+			buf.clear();
+			fDatabase.read(buf, (long)fSequenceNumber*buf.capacity());
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
 	}
 
+	/**
+	 * Writes the content of the chunk to the file. For a mapped chunk the data is already part
+	 * of the mapping, the database is responsible for forcing the mapped segments to the disk.
+	 */
 	void flush() throws CoreException {
-		try {
-			final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-			fDatabase.write(buf, (long)fSequenceNumber*Database.CHUNK_SIZE);
-		} catch (IOException e) {
-			throw new CoreException(new DBStatus(e));
+		if (!fMapped) {
+			try {
+				final ByteBuffer buf= fBuffer.duplicate();
+				buf.clear();
+				fDatabase.write(buf, (long)fSequenceNumber*buf.capacity());
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
 		}
 		fDirty= false;
 	}
-	private static int recPtrToIndex( final long offset ) {
-		return (int)(offset & Database.OFFSET_IN_CHUNK_MASK );
+	/**
+	 * Appends the content of the chunk to the write-ahead log.
+	 */
+	void log(WriteAheadLog log) throws IOException {
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.clear();
+		log.append((long)fSequenceNumber*buf.capacity(), buf);
+	}
+
+	private int recPtrToIndex( final long offset ) {
+		return (int)(offset & fOffsetMask );
 	}
 
 	public void putByte(final long offset, final byte value) {
 		assert fLocked;
 		fDirty= true;
-		fBuffer[recPtrToIndex( offset )]= value;
+		fBuffer.put(recPtrToIndex( offset ), value);
 	}
 	
 	public byte getByte(final long offset) {
-		return fBuffer[recPtrToIndex( offset )];
+		return fBuffer.get(recPtrToIndex( offset ));
 	}
 	
 	public byte[] getBytes(final long offset, final int length) {
 		final byte[] bytes = new byte[length];
-		System.arraycopy(fBuffer, recPtrToIndex( offset ), bytes, 0, length);
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(recPtrToIndex( offset ));
+		buf.get(bytes, 0, length);
 		return bytes;
 	}
 	
 	public void putBytes(final long offset, final byte[] bytes) {
 		assert fLocked;
 		fDirty= true;
-		System.arraycopy(bytes, 0, fBuffer, recPtrToIndex( offset ), bytes.length);
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(recPtrToIndex( offset ));
+		buf.put(bytes, 0, bytes.length);
 	}
 	
 	public void putInt(final long offset, final int value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		putInt(value, fBuffer, idx);
+		fBuffer.putInt(recPtrToIndex( offset ), value);
 	}
 
 	static final void putInt(final int value, final byte[] buffer, int idx) {
@@ -96,7 +153,7 @@ final class Chunk {
 
 	
 	public int getInt(final long offset) {
-		return getInt(fBuffer, recPtrToIndex(offset));
+		return fBuffer.getInt(recPtrToIndex(offset));
 	}
 
 	static final int getInt(final byte[] buffer, int idx) {
@@ -134,14 +191,21 @@ final class Chunk {
 		return address << Database.BLOCK_SIZE_DELTA_BITS;
 	}
 
+	private static int compressRecPtr(final long value) {
+		return value == 0 ? 0 : compressFreeRecPtr(value - Database.BLOCK_HEADER_SIZE);
+	}
+
+	private static long expandToRecPtr(final int value) {
+		long address = expandToFreeRecPtr(value);
+		return address != 0 ? (address + Database.BLOCK_HEADER_SIZE) : address;
+	}
 
 	/**
 	 * A Record Pointer is a pointer as returned by Database.malloc().
 	 * This is a pointer to a block + BLOCK_HEADER_SIZE.
 	 */
 	static void putRecPtr(final long value, byte[] buffer, int idx) {
-		final int denseValue = value == 0 ? 0 : compressFreeRecPtr(value - Database.BLOCK_HEADER_SIZE);
-		putInt(denseValue, buffer, idx);
+		putInt(compressRecPtr(value), buffer, idx);
 	}
 
 	/**
@@ -149,9 +213,7 @@ final class Chunk {
 	 * This is a pointer to a block + BLOCK_HEADER_SIZE.
 	 */
 	static long getRecPtr(byte[] buffer, final int idx) {
-		int value = getInt(buffer, idx);
-		long address = expandToFreeRecPtr(value);
-		return address != 0 ? (address + Database.BLOCK_HEADER_SIZE) : address;
+		return expandToRecPtr(getInt(buffer, idx));
 	}
 
 	/**
@@ -161,8 +223,7 @@ final class Chunk {
 	public void putRecPtr(final long offset, final long value) {
 		assert fLocked;
 		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		putRecPtr(value, fBuffer, idx);
+		fBuffer.putInt(recPtrToIndex(offset), compressRecPtr(value));
 	}
 
 	
@@ -173,92 +234,65 @@ final class Chunk {
 	public void putFreeRecPtr(final long offset, final long value) {
 		assert fLocked;
 		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		putInt(compressFreeRecPtr(value), fBuffer, idx);
+		fBuffer.putInt(recPtrToIndex(offset), compressFreeRecPtr(value));
 	}
 
 	public long getRecPtr(final long offset) {
-		final int idx = recPtrToIndex(offset);
-		return getRecPtr(fBuffer, idx);
+		return expandToRecPtr(fBuffer.getInt(recPtrToIndex(offset)));
 	}
 	
 	public long getFreeRecPtr(final long offset) {
-		final int idx = recPtrToIndex(offset);
-		int value = getInt(fBuffer, idx);
-		return expandToFreeRecPtr(value);
+		return expandToFreeRecPtr(fBuffer.getInt(recPtrToIndex(offset)));
 	}
 	
 	public void put3ByteUnsignedInt(final long offset, final int value) {
 		assert fLocked;
 		fDirty= true;
 		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 16);
-		fBuffer[++idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		fBuffer.put(idx, (byte)(value >> 16));
+		fBuffer.put(++idx, (byte)(value >> 8));
+		fBuffer.put(++idx, (byte)(value));
 	}
 	
 	public int get3ByteUnsignedInt(final long offset) {
 		int idx= recPtrToIndex( offset );
-		return ((fBuffer[idx] & 0xff) << 16) |
-			((fBuffer[++idx] & 0xff) <<  8) |
-			((fBuffer[++idx] & 0xff) <<  0);
+		return ((fBuffer.get(idx) & 0xff) << 16) |
+			((fBuffer.get(++idx) & 0xff) <<  8) |
+			((fBuffer.get(++idx) & 0xff) <<  0);
 	}
 
 	public void putShort(final long offset, final short value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		fBuffer.putShort(recPtrToIndex( offset ), value);
 	}
 	
 	public short getShort(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return (short) (((fBuffer[idx] << 8) | (fBuffer[++idx] & 0xff)));
+		return fBuffer.getShort(recPtrToIndex( offset ));
 	}
 
 	public long getLong(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return ((((long)fBuffer[idx] & 0xff) << 56) |
-				(((long)fBuffer[++idx] & 0xff) << 48) |
-				(((long)fBuffer[++idx] & 0xff) << 40) |
-				(((long)fBuffer[++idx] & 0xff) << 32) |
-				(((long)fBuffer[++idx] & 0xff) << 24) |
-				(((long)fBuffer[++idx] & 0xff) << 16) |
-				(((long)fBuffer[++idx] & 0xff) <<  8) |
-				(((long)fBuffer[++idx] & 0xff) <<  0));
+		return fBuffer.getLong(recPtrToIndex( offset ));
 	}
 
 	public void putLong(final long offset, final long value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-
-		fBuffer[idx]=   (byte)(value >> 56);
-		fBuffer[++idx]= (byte)(value >> 48);
-		fBuffer[++idx]= (byte)(value >> 40);
-		fBuffer[++idx]= (byte)(value >> 32);
-		fBuffer[++idx]= (byte)(value >> 24);
-		fBuffer[++idx]= (byte)(value >> 16);
-		fBuffer[++idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		fBuffer.putLong(recPtrToIndex( offset ), value);
 	}
 	
 	public void putChar(final long offset, final char value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		fBuffer.putChar(recPtrToIndex( offset ), value);
 	}
 	
 	public char getChar(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return (char) (((fBuffer[idx] << 8) | (fBuffer[++idx] & 0xff)));
+		return fBuffer.getChar(recPtrToIndex( offset ));
 	}
 
 	public void getCharArray(final long offset, final char[] result) {
-		final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
+		final ByteBuffer buf= fBuffer.duplicate();
 		buf.position(recPtrToIndex( offset ));
 		buf.asCharBuffer().get(result);
 	}
@@ -269,26 +303,21 @@ final class Chunk {
 		int idx = recPtrToIndex(offset);
 		final int end = idx + length;
 		for (; idx < end; idx++) {
-			fBuffer[idx] = 0;
+			fBuffer.put(idx, (byte) 0);
 		}
 	}
 
 	void put(final long offset, final byte[] data, final int len) {
 		assert fLocked;
 		fDirty= true;
-		int idx = recPtrToIndex(offset);
-		int i=0;
-		while (i<len) {
-			fBuffer[idx++]= data[i++];
-		}
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(recPtrToIndex(offset));
+		buf.put(data, 0, len);
 	}
 	
 	public void get(final long offset, byte[] data) {
-		int idx = recPtrToIndex(offset);
-		final int end= idx + data.length;
-		int i= 0;
-		while (idx < end) {
-			data[i++]= fBuffer[idx++];
-		}
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(recPtrToIndex(offset));
+		buf.get(data);
 	}
 }
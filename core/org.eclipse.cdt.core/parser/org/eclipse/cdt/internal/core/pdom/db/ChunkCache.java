@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,13 +11,85 @@
 
 package org.eclipse.cdt.internal.core.pdom.db;
 
+/**
+ * Cache for the chunks of one or more databases.
+ * <p>
+ * Cache hits do not acquire the monitor of the cache, they merely record the access with
+ * the {@link EvictionPolicy}. Adding, removing and evicting chunks is synchronized on the
+ * cache, which also protects the chunk tables of the databases using the cache.
+ * <p>
+ * The size of the cache is limited by the total number of bytes of the chunks, such that
+ * databases with different chunk sizes can share a cache.
+ */
 public final class ChunkCache {
+	/**
+	 * Strategy for selecting the chunk to be evicted when the cache is full.
+	 */
+	public enum EvictionPolicy {
+		/**
+		 * The CLOCK algorithm, i.e. if the chunk in the current slot of the page table has been
+		 * recently referenced (i.e. the reference flag is set), unset the reference flag and move
+		 * to the next slot. Otherwise, evict the chunk in the current slot.
+		 */
+		CLOCK {
+			@Override
+			void recordAccess(Chunk chunk) {
+				chunk.fCacheHitFlag= true;
+			}
+			@Override
+			boolean spare(Chunk chunk) {
+				if (chunk.fCacheHitFlag) {
+					chunk.fCacheHitFlag= false;
+					return true;
+				}
+				return false;
+			}
+		},
+		/**
+		 * Generalized CLOCK, counts the references to a chunk (up to a small limit) and
+		 * decrements the count each time the clock passes the chunk. Frequently used chunks
+		 * (e.g. the roots of the b-trees) survive scans over large parts of the database.
+		 */
+		GCLOCK {
+			private static final int MAX_COUNT= 3;
+
+			@Override
+			void recordAccess(Chunk chunk) {
+				if (chunk.fCacheHitCount < MAX_COUNT) {
+					chunk.fCacheHitCount++;
+				}
+			}
+			@Override
+			boolean spare(Chunk chunk) {
+				if (chunk.fCacheHitCount > 0) {
+					chunk.fCacheHitCount--;
+					return true;
+				}
+				return false;
+			}
+		};
+
+		/**
+		 * Records an access to a chunk that is part of the cache. May be called without
+		 * holding the monitor of the cache.
+		 */
+		abstract void recordAccess(Chunk chunk);
+
+		/**
+		 * Called when the clock passes a chunk, returns whether the chunk shall be kept in the cache.
+		 */
+		abstract boolean spare(Chunk chunk);
+	}
+
 	private static ChunkCache sSharedInstance= new ChunkCache();
-	
+
 	private Chunk[] fPageTable;
-	private boolean fTableIsFull= false;
+	private int fSize= 0;
 	private int fPointer= 0;
-	
+	private long fMaxSize;
+	private long fUsedSize= 0;
+	private final EvictionPolicy fPolicy;
+
 	public static ChunkCache getSharedInstance() {
 		return sSharedInstance;
 	}
@@ -27,7 +99,41 @@ public final class ChunkCache {
 	}
 	
 	public ChunkCache(long maxSize) {
+		this(maxSize, getDefaultPolicy());
+	}
+
+	public ChunkCache(long maxSize, EvictionPolicy policy) {
 		fPageTable= new Chunk[computeLength(maxSize)];
+		fMaxSize= (long) fPageTable.length * Database.CHUNK_SIZE;
+		fPolicy= policy;
+	}
+
+	private static EvictionPolicy getDefaultPolicy() {
+		final String policy= System.getProperty("org.eclipse.cdt.core.parser.pdom.cache.policy"); //$NON-NLS-1$
+		if (policy != null) {
+			try {
+				return EvictionPolicy.valueOf(policy);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		return EvictionPolicy.CLOCK;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return fPolicy;
+	}
+
+	/**
+	 * Records a cache hit for the given chunk, in case it is part of the cache. May be called
+	 * without holding the monitor of the cache.
+	 * @return whether the chunk was part of the cache.
+	 */
+	boolean hit(Chunk chunk) {
+		if (chunk.fCacheIndex >= 0) {
+			fPolicy.recordAccess(chunk);
+			return true;
+		}
+		return false;
 	}
 	
 	public synchronized void add(Chunk chunk, boolean locked) {
@@ -35,48 +141,36 @@ public final class ChunkCache {
 			chunk.fLocked= true;
 		}
 		if (chunk.fCacheIndex >= 0) {
-			chunk.fCacheHitFlag= true;
+			fPolicy.recordAccess(chunk);
 			return;
 		}
-		if (fTableIsFull) {
+		final int size= chunk.size();
+		while (fSize > 0 && (fSize == fPageTable.length || fUsedSize + size > fMaxSize)) {
 			evictChunk();
-			chunk.fCacheIndex= fPointer;
-			fPageTable[fPointer]= chunk;
-		}
-		else {
-			chunk.fCacheIndex= fPointer;
-			fPageTable[fPointer]= chunk;
-
-			fPointer++;
-			if (fPointer == fPageTable.length) {
-				fPointer= 0;
-				fTableIsFull= true;
-			}
 		}
+		chunk.fCacheIndex= fSize;
+		fPageTable[fSize++]= chunk;
+		fUsedSize+= size;
 	}
 	
 	/**                                                                   
 	 * Evicts a chunk from the page table and the chunk table.            
-	 * After this method returns, {@link #fPointer}  will contain
-	 * the index of the evicted chunk within the page table.              
 	 */                                                                   
 	private void evictChunk() {
 		/*
-		 * Use the CLOCK algorithm to determine which chunk to evict.
-		 * i.e., if the chunk in the current slot of the page table has been
-		 * recently referenced (i.e. the reference flag is set), unset the
-		 * reference flag and move to the next slot.  Otherwise, evict the
-		 * chunk in the current slot.
+		 * Ask the eviction policy whether the chunk in the current slot of the page table shall
+		 * be spared. If so, move to the next slot, otherwise evict the chunk in the current slot.
 		 */
 		while (true) {
+			if (fPointer >= fSize) {
+				fPointer= 0;
+			}
 			Chunk chunk = fPageTable[fPointer];
-			if (chunk.fCacheHitFlag) {
-				chunk.fCacheHitFlag= false;
-				fPointer= (fPointer + 1) % fPageTable.length;
+			if (fPolicy.spare(chunk)) {
+				fPointer++;
 			} else {
 				chunk.fDatabase.releaseChunk(chunk);
-				chunk.fCacheIndex= -1;
-				fPageTable[fPointer] = null;
+				removeAt(fPointer);
 				return;
 			}
 		}
@@ -85,26 +179,39 @@ public final class ChunkCache {
 	public synchronized void remove(Chunk chunk) {
 		final int idx= chunk.fCacheIndex;
 		if (idx >= 0) {
-			if (fTableIsFull) {
-				fPointer= fPageTable.length-1;
-				fTableIsFull= false;
-			}
-			else {
-				fPointer--;
-			}
-			chunk.fCacheIndex= -1;
-			final Chunk move= fPageTable[fPointer];
+			removeAt(idx);
+		}	
+	}
+
+	/**
+	 * Removes the chunk at the given index of the page table, the last chunk of the table
+	 * is moved into the free slot.
+	 */
+	private void removeAt(int idx) {
+		final Chunk chunk= fPageTable[idx];
+		chunk.fCacheIndex= -1;
+		fUsedSize-= chunk.size();
+		final int last= --fSize;
+		if (idx != last) {
+			final Chunk move= fPageTable[last];
 			fPageTable[idx]= move;
 			move.fCacheIndex= idx;
-			fPageTable[fPointer]= null;
-		}	
+		}
+		fPageTable[last]= null;
 	}
 
 	/**                                                                           
 	 * Returns the maximum size of the chunk cache in bytes.
 	 */                                                                           
 	public synchronized long getMaxSize() {
-		return (long) fPageTable.length * Database.CHUNK_SIZE;
+		return fMaxSize;
+	}
+
+	/**
+	 * Returns the total size of the chunks in the cache in bytes.
+	 */
+	public synchronized long getUsedSize() {
+		return fUsedSize;
 	}
 
 	/**                                                                           
@@ -114,26 +221,14 @@ public final class ChunkCache {
 	 */                                                                           
 	public synchronized void setMaxSize(long maxSize) {
 		final int newLength= computeLength(maxSize);
-		final int oldLength= fTableIsFull ? fPageTable.length : fPointer;
-		if (newLength > oldLength) {
-			Chunk[] newTable= new Chunk[newLength];
-			System.arraycopy(fPageTable, 0, newTable, 0, oldLength);
-			fTableIsFull= false;
-			fPointer= oldLength;
-			fPageTable= newTable;
+		fMaxSize= (long) newLength * Database.CHUNK_SIZE;
+		while (fSize > 0 && (fSize > newLength || fUsedSize > fMaxSize)) {
+			evictChunk();
 		}
-		else {
-			for (int i=newLength; i<oldLength; i++) {
-				final Chunk chunk= fPageTable[i];
-				chunk.fDatabase.releaseChunk(chunk);
-				chunk.fCacheIndex= -1;
-			}
-			Chunk[] newTable= new Chunk[newLength];
-			System.arraycopy(fPageTable, 0, newTable, 0, newLength);
-			fTableIsFull= true;
-			fPointer= 0;
-			fPageTable= newTable;
-		}       
+		Chunk[] newTable= new Chunk[newLength];
+		System.arraycopy(fPageTable, 0, newTable, 0, fSize);
+		fPageTable= newTable;
+		fPointer= 0;
 	}                                                                             
 
 	private int computeLength(long maxSize) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 QNX Software Systems and others.
+ * Copyright (c) 2005, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,11 +17,17 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.core.runtime.CoreException;
@@ -37,21 +43,28 @@ import org.eclipse.osgi.util.NLS;
  * @author Doug Schaefer
  */
 /* 
- * The file encapsulated is divided into Chunks of size CHUNK_SIZE, and a table of contents
+ * The file encapsulated is divided into Chunks of size fChunkSize, and a table of contents
  * mapping chunk index to chunk address is maintained. Chunk structure exists only conceptually -
- * it is not a structure that appears in the file.
+ * it is not a structure that appears in the file. The size of the chunks is a power of two between
+ * CHUNK_SIZE and MAX_CHUNK_SIZE, it is chosen when the database is created (or cleared). Independent
+ * of the chunk size, blocks are allocated from areas of CHUNK_SIZE bytes, such that the maximum
+ * size of a block does not depend on the chunk size.
  * 
  * ===== The first chunk is used by Database itself for house-keeping purposes and has structure
  * 
  * offset            content
  * 	                 _____________________________
- * 0                | version number
+ * 0                | version number (2)
  * INT_SIZE         | pointer to head of linked list of blocks of size MIN_BLOCK_DELTAS*BLOCK_SIZE_DELTA
  * ..               | ...
  * INT_SIZE * m (1) | pointer to head of linked list of blocks of size (m+MIN_BLOCK_DELTAS) * BLOCK_SIZE_DELTA 
  * DATA_AREA        | undefined (PDOM stores its own house-keeping data in this area) 
  * 
  * (1) where 2 <= m <= CHUNK_SIZE/BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 1
+ * (2) the upper bits (CHUNK_SIZE_SHIFT and above) store log2(fChunkSize/CHUNK_SIZE). Databases
+ *     that use the default chunk size store the plain version number, older databases can be read 
+ *     without conversion. Databases with larger chunks are rejected by readers not knowing about
+ *     the encoding, because the version number is not supported.
  * 
  * ===== block structure
  * 
@@ -61,12 +74,34 @@ import org.eclipse.osgi.util.NLS;
  * PREV_OFFSET      | pointer to prev block (of same size) (only in free blocks)
  * NEXT_OFFSET      | pointer to next block (of same size) (only in free blocks)
  * 
+ * ===== chunk table
+ * 
+ * The table of chunks is modified while holding the monitor of the chunk cache only. To allow for
+ * concurrent readers, chunks that are part of the cache are obtained without acquiring the monitor.
+ * 
+ * ===== memory-mapped mode
+ * 
+ * Optionally the chunks (except for the header chunk) are views onto segments of the file that
+ * are mapped into memory. Each segment spans MAPPED_SEGMENT_SIZE bytes, further segments are mapped
+ * as the file grows. Writes go directly to the page cache of the operating system, on flush the 
+ * modified segments are forced to the disk before the header chunk is written.
+ * 
+ * ===== write-ahead log
+ * 
+ * Unless memory mapped I/O is used, the modified chunks are appended to a redo log (see
+ * WriteAheadLog) before they are written to the file. A flush that is interrupted by a crash is
+ * completed when the database is opened again, such that the file always reflects the state of
+ * the last flush. Locked chunks that are evicted from the cache cannot be written without the
+ * others, they are kept until the next flush. Only when they take up more memory than the cache
+ * itself, releasing the exclusive lock causes all modified chunks to be flushed.
  */
 public class Database {
 	// public for tests only, you shouldn't need these
 	public static final int INT_SIZE = 4;
+	/** Minimum size of a chunk and the size of the areas blocks are allocated from. */
 	public static final int CHUNK_SIZE = 1024 * 4;
-	public static final int OFFSET_IN_CHUNK_MASK= CHUNK_SIZE-1;
+	/** Maximum size of a chunk. */
+	public static final int MAX_CHUNK_SIZE = 1024 * 64;
 	public static final int BLOCK_HEADER_SIZE= 2;
 	public static final int BLOCK_SIZE_DELTA_BITS = 3;
 	public static final int BLOCK_SIZE_DELTA= 1 << BLOCK_SIZE_DELTA_BITS;
@@ -78,8 +113,25 @@ public class Database {
 	public static final int VALUE_SIZE = TYPE_SIZE;  // size of a value in the database in bytes
 	public static final long MAX_DB_SIZE= ((long) 1 << (Integer.SIZE + BLOCK_SIZE_DELTA_BITS));
 
+	/**
+	 * Size of the segments of the file that are mapped into memory at once, when using memory mapped I/O.
+	 */
+	public static final int MAPPED_SEGMENT_SIZE = 64 * 1024 * 1024;
+	
+	/**
+	 * Whether databases use memory mapped I/O unless specified otherwise.
+	 */
+	public static final boolean USE_MAPPED_IO_DEFAULT= Boolean.getBoolean("org.eclipse.cdt.core.parser.pdom.mmap"); //$NON-NLS-1$
+
+	/**
+	 * Whether writable databases not using memory mapped I/O flush the chunks via a write-ahead log.
+	 */
+	public static final boolean USE_WRITE_AHEAD_LOG= !"false".equals(System.getProperty("org.eclipse.cdt.core.parser.pdom.wal")); //$NON-NLS-1$ //$NON-NLS-2$
+
 
 	public static final int VERSION_OFFSET = 0;
+	private static final int CHUNK_SIZE_SHIFT = 28;
+	private static final int VERSION_MASK = (1 << CHUNK_SIZE_SHIFT) - 1;
 	public static final int DATA_AREA = (CHUNK_SIZE / BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 2) * INT_SIZE;
 	
 	private static final int BLOCK_PREV_OFFSET = BLOCK_HEADER_SIZE;
@@ -93,16 +145,32 @@ public class Database {
 	private boolean fIsMarkedIncomplete= false;
 
 	private int fVersion;
-	private final Chunk fHeaderChunk;
-	private Chunk[] fChunks;
+	private int fChunkSize;
+	private final int fRequestedChunkSize;
+	private int fChunksPerSegment;
+	private Chunk fHeaderChunk;
+	private volatile AtomicReferenceArray<Chunk> fChunks;
 	private int fChunksUsed;
 	private int fChunksAllocated;
 	private ChunkCache fCache;
+	private final boolean fUseMappedIO;
+	private MappedByteBuffer[] fSegments= {};
+	private final WriteAheadLog fLog;
 	
 	private long malloced;
 	private long freed;
-	private long cacheHits;
-	private long cacheMisses;
+	private volatile long fFreedSinceTruncation;
+	/** Indices of the chunks in which blocks have been freed since the last truncation. */
+	private final BitSet fChunksFreedSinceTruncation= new BitSet();
+	private boolean fTruncatePending;
+	private volatile boolean fClosed;
+	private final AtomicLong cacheHits= new AtomicLong();
+	private final AtomicLong cacheMisses= new AtomicLong();
+	private final AtomicLong cacheEvictions= new AtomicLong();
+
+	/** Releases mapped buffers, or <code>null</code> if the VM does not support it. */
+	private static final Unmapper UNMAPPER= Unmapper.create();
+	private static volatile boolean sUnmapFailed;
 	
 	/**
 	 * Construct a new Database object, creating a backing file if necessary.
@@ -113,30 +181,118 @@ public class Database {
 	 * @throws CoreException
 	 */
 	public Database(File location, ChunkCache cache, int version, boolean openReadOnly) throws CoreException {
+		this(location, cache, version, openReadOnly, USE_MAPPED_IO_DEFAULT);
+	}
+
+	/**
+	 * Construct a new Database object, creating a backing file if necessary.
+	 * @param location the local file path for the database 
+	 * @param cache the cache to be used optimization
+	 * @param version the version number to store in the database (only applicable for new databases)
+	 * @param openReadOnly whether this Database object will ever need writing to
+	 * @param useMappedIO whether to access the file via memory mapped segments rather than 
+	 * reading and writing the chunks.
+	 * @throws CoreException
+	 */
+	public Database(File location, ChunkCache cache, int version, boolean openReadOnly, boolean useMappedIO) throws CoreException {
+		this(location, cache, version, CHUNK_SIZE, openReadOnly, useMappedIO);
+	}
+
+	/**
+	 * Construct a new Database object, creating a backing file if necessary.
+	 * @param location the local file path for the database 
+	 * @param cache the cache to be used optimization
+	 * @param version the version number to store in the database (only applicable for new databases)
+	 * @param chunkSize the size of the chunks, a power of two between {@link #CHUNK_SIZE} and 
+	 * {@link #MAX_CHUNK_SIZE} (only applicable for new or cleared databases). 
+	 * @param openReadOnly whether this Database object will ever need writing to
+	 * @param useMappedIO whether to access the file via memory mapped segments rather than 
+	 * reading and writing the chunks.
+	 * @throws CoreException
+	 */
+	public Database(File location, ChunkCache cache, int version, int chunkSize, boolean openReadOnly,
+			boolean useMappedIO) throws CoreException {
+		if (!isValidChunkSize(chunkSize)) 
+			throw new IllegalArgumentException("Invalid chunk size " + chunkSize); //$NON-NLS-1$
+		if (useMappedIO && !canUnmap()) {
+			// the file could not be truncated or deleted while it is mapped.
+			useMappedIO= false;
+		}
+		final File logLocation= WriteAheadLog.getLocation(location);
+		fLog= !openReadOnly && !useMappedIO && USE_WRITE_AHEAD_LOG ? new WriteAheadLog(logLocation) : null;
 		try {
 			fLocation = location;
 			fReadOnly= openReadOnly;
 			fCache= cache;
+			fUseMappedIO= useMappedIO;
+			fRequestedChunkSize= chunkSize;
 			openFile();
+			if (!fReadOnly) {
+				// complete or discard a flush that has been interrupted.
+				WriteAheadLog.recover(logLocation, this);
+			}
 			
-			int nChunksOnDisk = (int) (fFile.length() / CHUNK_SIZE);
-			fHeaderChunk= new Chunk(this, 0);
-			fHeaderChunk.fLocked= true;		// never makes it into the cache, needed to satisfy assertions
+			final long length= fFile.length();
+			int versionWord= 0;
+			if (length >= INT_SIZE) {
+				final ByteBuffer buf= ByteBuffer.allocate(INT_SIZE);
+				read(buf, VERSION_OFFSET);
+				versionWord= buf.getInt(0);
+			}
+			final int existingChunkSize= decodeChunkSize(versionWord);
+			setChunkSize(length > 0 && existingChunkSize > 0 ? existingChunkSize : chunkSize);
+
+			int nChunksOnDisk = (int) (length / fChunkSize);
 			if (nChunksOnDisk <= 0) {
 				fVersion= version;
-				fChunks= new Chunk[1];
-				fChunksUsed = fChunksAllocated = fChunks.length;
+				fChunks= new AtomicReferenceArray<Chunk>(1);
+				fChunksUsed = fChunksAllocated = fChunks.length();
 			}
 			else {
 				fHeaderChunk.read();
-				fVersion= fHeaderChunk.getInt(VERSION_OFFSET);
-				fChunks = new Chunk[nChunksOnDisk];	// chunk[0] is unused.
+				// an invalid chunk size is treated like an incomplete database.
+				fVersion= existingChunkSize > 0 ? versionWord & VERSION_MASK : 0;
+				fChunks = new AtomicReferenceArray<Chunk>(nChunksOnDisk);	// chunk[0] is unused.
 				fChunksUsed = fChunksAllocated = nChunksOnDisk;
 			}
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
 	}
+
+	/**
+	 * Returns whether the given value can be used as the size of the chunks of a database.
+	 */
+	public static boolean isValidChunkSize(int chunkSize) {
+		return chunkSize >= CHUNK_SIZE && chunkSize <= MAX_CHUNK_SIZE && (chunkSize & (chunkSize-1)) == 0;
+	}
+
+	private static int decodeChunkSize(int versionWord) {
+		final int chunkSize= CHUNK_SIZE << (versionWord >>> CHUNK_SIZE_SHIFT);
+		return isValidChunkSize(chunkSize) ? chunkSize : -1;
+	}
+
+	private int encodeVersion(int version) {
+		assert (version & ~VERSION_MASK) == 0;
+		return version | (Integer.numberOfTrailingZeros(fChunkSize / CHUNK_SIZE) << CHUNK_SIZE_SHIFT);
+	}
+
+	/**
+	 * Changes the size of the chunks, must not be called while there are chunks in use. 
+	 */
+	private void setChunkSize(int chunkSize) {
+		fChunkSize= chunkSize;
+		fChunksPerSegment= MAPPED_SEGMENT_SIZE / chunkSize;
+		fHeaderChunk= new Chunk(this, 0);
+		fHeaderChunk.fLocked= true;		// never makes it into the cache, needed to satisfy assertions
+	}
+
+	/**
+	 * Returns the size of the chunks of this database in bytes.
+	 */
+	public int getChunkSize() {
+		return fChunkSize;
+	}
 		
 	private void openFile() throws FileNotFoundException {
 		fFile = new RandomAccessFile(fLocation, fReadOnly ? "r" : "rw"); //$NON-NLS-1$ //$NON-NLS-2$
@@ -170,6 +326,38 @@ public class Database {
 		} while(true);
 	}
 
+	/**
+	 * Forces the changes written to the file to the disk.
+	 */
+	void force() throws IOException {
+		int retries= 0;
+		do {
+			try {
+				fFile.getChannel().force(false);
+				return;
+			}
+			catch (ClosedChannelException e) {
+				reopen(e, ++retries);
+			} 
+		} while(true);
+	}
+
+	/**
+	 * Truncates the file to the given length, has no effect if the file is shorter.
+	 */
+	void truncate(long length) throws IOException {
+		int retries= 0;
+		do {
+			try {
+				fFile.getChannel().truncate(length);
+				return;
+			}
+			catch (ClosedChannelException e) {
+				reopen(e, ++retries);
+			} 
+		} while(true);
+	}
+
 	private void reopen(ClosedChannelException e, int attempt) throws ClosedChannelException, FileNotFoundException {
 		// only if the current thread was not interrupted we try to reopen the file.
 		if (e instanceof ClosedByInterruptException || attempt >= 20) {
@@ -184,7 +372,7 @@ public class Database {
         final FileChannel from= fFile.getChannel();
         long nRead = 0;
         long position = 0;
-        long size = from.size();
+        long size = fUseMappedIO ? (long) fChunksUsed * fChunkSize : from.size();
         while (position < size) {
         	nRead = from.transferTo(position, 4096*16, target);
         	if (nRead == 0) {
@@ -201,7 +389,7 @@ public class Database {
 	
 	public void setVersion(int version) throws CoreException {
 		assert fExclusiveLock;
-		fHeaderChunk.putInt(VERSION_OFFSET, version);
+		fHeaderChunk.putInt(VERSION_OFFSET, encodeVersion(version));
 		fVersion= version;
 	}
 
@@ -214,19 +402,40 @@ public class Database {
 		removeChunksFromCache();
 		
 		fVersion= version;
+		if (fChunkSize != fRequestedChunkSize) {
+			// the database is rebuilt, switch to the chunk size requested.
+			setChunkSize(fRequestedChunkSize);
+		}
 		// clear the first chunk.
-		fHeaderChunk.clear(0, CHUNK_SIZE);
+		fHeaderChunk.clear(0, fChunkSize);
 		// chunks have been removed from the cache, so we may just reset the array of chunks.
-		fChunks = new Chunk[] {null};
-		fChunksUsed = fChunksAllocated = fChunks.length;
+		fChunks = new AtomicReferenceArray<Chunk>(1);
+		fChunksUsed = fChunksAllocated = fChunks.length();
 		try {
-			fHeaderChunk.flush();	// zero out header chunk
-			fFile.getChannel().truncate(CHUNK_SIZE);	// truncate database
+			// the file cannot be truncated on all platforms while segments are mapped.
+			unmapSegments();
+			synchronized (fHeaderChunk) {
+				if (fLog != null) {
+					// zero out the header and truncate the database as one transaction.
+					fLog.begin();
+					fHeaderChunk.log(fLog);
+					fLog.commit(fChunkSize);
+					fHeaderChunk.flush();
+					truncate(fChunkSize);
+					force();
+					fLog.reset();
+				} else {
+					truncate(fChunkSize);		// truncate database
+					fHeaderChunk.flush();		// zero out header chunk
+				}
+			}
 		}
 		catch (IOException e) {
-			CCorePlugin.log(e);
+			throw new CoreException(new DBStatus(e));
 		}
-		malloced = freed = 0;
+		malloced = freed = fFreedSinceTruncation = 0;
+		fChunksFreedSinceTruncation.clear();
+		fTruncatePending= false;
 		/*
 		 * This is for debugging purposes in order to simulate having a very large PDOM database. 
 		 * This will set aside the specified number of chunks.
@@ -246,11 +455,11 @@ public class Database {
 
 	private void removeChunksFromCache() {
 		synchronized (fCache) {
-			for (int i=1; i < fChunks.length; i++) {
-				Chunk chunk= fChunks[i];
+			for (int i=1; i < fChunks.length(); i++) {
+				Chunk chunk= fChunks.get(i);
 				if (chunk != null) {
 					fCache.remove(chunk);
-					fChunks[i]= null;
+					fChunks.set(i, null);
 				}
 			}
 		}
@@ -262,25 +471,44 @@ public class Database {
 	 * @throws CoreException 
 	 */
 	public Chunk getChunk(long offset) throws CoreException {
-		if (offset < CHUNK_SIZE) {
+		if (offset < fChunkSize) {
 			return fHeaderChunk;
 		}
-		long long_index = offset / CHUNK_SIZE;
+		long long_index = offset / fChunkSize;
 		assert long_index < Integer.MAX_VALUE; 
+		final int index = (int)long_index;
+		final boolean exclusive= fExclusiveLock;
+		if (fUseMappedIO && exclusive && !fReadOnly) {
+			// the chunk may be modified, which is immediately visible in the file.
+			markFileIncomplete();
+		}
+
+		// fast path, a chunk that is part of the cache does not need the monitor of the cache.
+		// For write access the chunk needs to be locked, already.
+		Chunk chunk= fChunks.get(index);
+		if (chunk != null && (!exclusive || chunk.fLocked) && fCache.hit(chunk)) {
+			cacheHits.incrementAndGet();
+			return chunk;
+		}
 
 		synchronized(fCache) {
 			assert fLocked;
-			final int index = (int)long_index;
-			Chunk chunk= fChunks[index];
+			chunk= fChunks.get(index);
 			if (chunk == null) {
-				cacheMisses++;
-				chunk = fChunks[index] = new Chunk(this, index);
-				chunk.read();
+				cacheMisses.incrementAndGet();
+				if (fUseMappedIO) {
+					chunk = new Chunk(this, index, mapChunk(index));
+				} else {
+					chunk = new Chunk(this, index);
+					chunk.read();
+				}
+				// publish the chunk after it has been read.
+				fChunks.set(index, chunk);
 			}
 			else {
-				cacheHits++;
+				cacheHits.incrementAndGet();
 			}
-			fCache.add(chunk, fExclusiveLock);
+			fCache.add(chunk, exclusive);
 			return chunk;
 		}
 	}
@@ -313,6 +541,10 @@ public class Database {
 			freeblock= createNewChunk();
 			useDeltas = MAX_BLOCK_DELTAS;
 			chunk = getChunk(freeblock);
+			// a chunk larger than the maximum block size provides further blocks.
+			for (long block= freeblock + CHUNK_SIZE; block < freeblock + fChunkSize; block+= CHUNK_SIZE) {
+				addBlock(chunk, MAX_BLOCK_DELTAS*BLOCK_SIZE_DELTA, block);
+			}
 		} else {
 			chunk = getChunk(freeblock);
 			removeBlock(chunk, useDeltas*BLOCK_SIZE_DELTA, freeblock);
@@ -338,25 +570,25 @@ public class Database {
 	
 	private long createNewChunk() throws CoreException {
 		assert fExclusiveLock;
+		if (fUseMappedIO) {
+			markFileIncomplete();
+		}
 		synchronized (fCache) {
 			final int newChunkIndex = fChunksUsed; // fChunks.length;
 
-			final Chunk chunk = new Chunk(this, newChunkIndex);
+			final Chunk chunk = newChunk(newChunkIndex);
 			chunk.fDirty = true;
 
 			if (newChunkIndex >= fChunksAllocated) {
 				int increment = Math.max(1024, fChunksAllocated/20);
-				Chunk[] newchunks = new Chunk[fChunksAllocated + increment];
-				System.arraycopy(fChunks, 0, newchunks, 0, fChunksAllocated);
-
-				fChunks = newchunks;
+				growChunkTable(fChunksAllocated + increment);
 				fChunksAllocated += increment;
 			}
 			fChunksUsed += 1;
-			fChunks[newChunkIndex] = chunk;
+			fChunks.set(newChunkIndex, chunk);
 
 			fCache.add(chunk, true);
-			long address = (long) newChunkIndex * CHUNK_SIZE;
+			long address = (long) newChunkIndex * fChunkSize;
 
 			/*
 			 * non-dense pointers are at most 31 bits dense pointers are at most 35 bits Check the sizes here
@@ -374,26 +606,191 @@ public class Database {
 		}
 	}
 
+	/**
+	 * Replaces the table of chunks with a larger one. Must be called while holding the lock
+	 * on {@link #fCache}.
+	 */
+	private void growChunkTable(int newLength) {
+		assert Thread.holdsLock(fCache);
+		final AtomicReferenceArray<Chunk> oldChunks= fChunks;
+		final AtomicReferenceArray<Chunk> newChunks= new AtomicReferenceArray<Chunk>(newLength);
+		for (int i = 0; i < oldChunks.length(); i++) {
+			newChunks.set(i, oldChunks.get(i));
+		}
+		fChunks= newChunks;
+	}
+
+	/**
+	 * Creates a chunk that is not yet stored in the file. Must be called while holding the lock
+	 * on {@link #fCache}.
+	 */
+	private Chunk newChunk(int index) throws CoreException {
+		if (!fUseMappedIO)
+			return new Chunk(this, index);
+		
+		// the region may contain stale data from a previous use of the file.
+		final ByteBuffer buf= mapChunk(index);
+		for (int i = 0; i < fChunkSize; i+= 8) {
+			buf.putLong(i, 0);
+		}
+		return new Chunk(this, index, buf);
+	}
+
+	/**
+	 * Returns a view onto the mapped region for the chunk with the given index, maps
+	 * the segment containing the chunk if necessary. Must be called while holding the lock
+	 * on {@link #fCache}.
+	 */
+	private ByteBuffer mapChunk(int index) throws CoreException {
+		assert Thread.holdsLock(fCache);
+		final int segmentIndex= index / fChunksPerSegment;
+		if (segmentIndex >= fSegments.length) {
+			MappedByteBuffer[] newSegments= new MappedByteBuffer[segmentIndex+1];
+			System.arraycopy(fSegments, 0, newSegments, 0, fSegments.length);
+			fSegments= newSegments;
+		}
+		MappedByteBuffer segment= fSegments[segmentIndex];
+		if (segment == null) {
+			final long position= (long) segmentIndex * MAPPED_SEGMENT_SIZE;
+			try {
+				long size= MAPPED_SEGMENT_SIZE;
+				if (fReadOnly) {
+					// read-only mappings cannot grow the file.
+					size= Math.min(size, fFile.length() - position);
+				}
+				final FileChannel.MapMode mode= fReadOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+				segment= fSegments[segmentIndex]= fFile.getChannel().map(mode, position, size);
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
+		}
+		final ByteBuffer buf= segment.duplicate();
+		final int offset= (index % fChunksPerSegment) * fChunkSize;
+		buf.position(offset);
+		buf.limit(offset + fChunkSize);
+		return buf.slice();
+	}
+
+	/**
+	 * Releases the mapped segments, such that the file can be truncated. Must be called while 
+	 * holding the exclusive lock and no chunks in use.
+	 */
+	private void unmapSegments() {
+		final MappedByteBuffer[] segments;
+		synchronized (fCache) {
+			segments= fSegments;
+			fSegments= new MappedByteBuffer[0];
+		}
+		for (MappedByteBuffer segment : segments) {
+			if (segment != null) {
+				unmap(segment);
+			}
+		}
+	}
+
+	/**
+	 * Releases the mapping of the buffer immediately rather than when it is garbage collected. 
+	 * There is no API for this, when it fails the mapping stays in place until the buffer is
+	 * garbage collected and databases opened afterwards do not use memory mapped I/O.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		if (UNMAPPER != null && !sUnmapFailed) {
+			try {
+				UNMAPPER.unmap(buffer);
+			} catch (Exception e) {
+				// databases opened from now on do not use memory mapped I/O.
+				sUnmapFailed= true;
+				CCorePlugin.log("Cannot release the memory mapped segments of the index database", e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Returns whether mapped segments can be released explicitly. Otherwise memory mapped I/O is
+	 * not used.
+	 */
+	static boolean canUnmap() {
+		if (UNMAPPER == null) {
+			if (!sUnmapFailed) {
+				sUnmapFailed= true;
+				CCorePlugin.log("The VM does not support releasing memory mapped segments, the index database is not mapped into memory"); //$NON-NLS-1$
+			}
+			return false;
+		}
+		return !sUnmapFailed;
+	}
+
+	/**
+	 * Releases mapped buffers via the internal API of the VM.
+	 */
+	private static abstract class Unmapper {
+		abstract void unmap(MappedByteBuffer buffer) throws Exception;
+
+		static Unmapper create() {
+			try {
+				// java 9 and later
+				final Class<?> unsafeClass= Class.forName("sun.misc.Unsafe"); //$NON-NLS-1$
+				final Method invokeCleaner= unsafeClass.getMethod("invokeCleaner", ByteBuffer.class); //$NON-NLS-1$
+				final Field theUnsafe= unsafeClass.getDeclaredField("theUnsafe"); //$NON-NLS-1$
+				theUnsafe.setAccessible(true);
+				final Object unsafe= theUnsafe.get(null);
+				return new Unmapper() {
+					@Override
+					void unmap(MappedByteBuffer buffer) throws Exception {
+						invokeCleaner.invoke(unsafe, buffer);
+					}
+				};
+			} catch (Exception e) {
+			}
+			try {
+				// java 8 and earlier
+				final Method getCleaner= Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner"); //$NON-NLS-1$ //$NON-NLS-2$
+				final Method clean= Class.forName("sun.misc.Cleaner").getMethod("clean"); //$NON-NLS-1$ //$NON-NLS-2$
+				return new Unmapper() {
+					@Override
+					void unmap(MappedByteBuffer buffer) throws Exception {
+						final Object cleaner= getCleaner.invoke(buffer);
+						if (cleaner != null) {
+							clean.invoke(cleaner);
+						}
+					}
+				};
+			} catch (Exception e) {
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the modified mapped segments to the disk.
+	 */
+	private void forceSegments(BitSet segments) {
+		MappedByteBuffer[] mapped;
+		synchronized (fCache) {
+			mapped= fSegments;
+		}
+		for (int i = segments.nextSetBit(0); i >= 0 && i < mapped.length; i= segments.nextSetBit(i+1)) {
+			if (mapped[i] != null) {
+				mapped[i].force();
+			}
+		}
+	}
+
 	/**
 	 * for testing purposes, only.
 	 */
 	private long createNewChunks(int numChunks) throws CoreException {
 		assert fExclusiveLock;
 		synchronized (fCache) {
-			final int oldLen= fChunks.length;
-			Chunk[] newchunks = new Chunk[oldLen+numChunks];
-			System.arraycopy(fChunks, 0, newchunks, 0, oldLen);
-			for( int i = oldLen; i < oldLen + numChunks; i++ ) {
-				newchunks[i]= null;
-			}
-			final Chunk chunk= new Chunk(this, oldLen + numChunks - 1);
+			final int oldLen= fChunks.length();
+			growChunkTable(oldLen+numChunks);
+			final Chunk chunk= newChunk(oldLen + numChunks - 1);
 			chunk.fDirty= true;
-			newchunks[ oldLen + numChunks - 1 ] = chunk;
-			fChunks= newchunks;
+			fChunks.set(oldLen + numChunks - 1, chunk);
 			fCache.add(chunk, true);
 			fChunksAllocated=oldLen+numChunks;
 			fChunksUsed=oldLen+numChunks;
-			return (long)(oldLen + numChunks - 1) * CHUNK_SIZE;
+			return (long)(oldLen + numChunks - 1) * fChunkSize;
 		}
 	}
 	
@@ -441,7 +838,7 @@ public class Database {
 	 */
 	public void free(long offset) throws CoreException {
 		assert fExclusiveLock;
-		// TODO - look for opportunities to merge blocks
+		// adjacent free blocks are merged by truncateTrailingFreeSpace()
 		long block = offset - BLOCK_HEADER_SIZE;
 		Chunk chunk = getChunk(block);
 		int blocksize = - chunk.getShort(block);
@@ -451,6 +848,153 @@ public class Database {
 		}
 		addBlock(chunk, blocksize, block);
 		freed += blocksize;
+		fFreedSinceTruncation += blocksize;
+		fChunksFreedSinceTruncation.set((int) (block / fChunkSize));
+	}
+
+	/**
+	 * Merges adjacent free blocks and releases the free chunks at the end of the database.
+	 * Records are not moved, such that record pointers stay valid. Free space in front of 
+	 * the last chunk in use is not reclaimed, the file of a fragmented database does not shrink.
+	 * @return the number of bytes the database has been shrunk by.
+	 */
+	public long truncateTrailingFreeSpace() throws CoreException {
+		coalesceFreeBlocks(1, fChunksUsed);
+		return truncateFreeChunks();
+	}
+
+	/**
+	 * Merges adjacent free blocks within the chunks with an index in the given range, such
+	 * that larger blocks become available. Blocks are never merged across the boundary of the
+	 * areas of {@link #CHUNK_SIZE} bytes they are allocated from. Chunks in which no block has
+	 * been freed since the last truncation are skipped without being read.
+	 * @param fromChunk index of the first chunk to process, the header chunk is always skipped.
+	 * @param toChunk index of the chunk after the last one to process.
+	 * @return the number of blocks that have been merged into their predecessors.
+	 */
+	public int coalesceFreeBlocks(int fromChunk, int toChunk) throws CoreException {
+		assert fExclusiveLock;
+		final int end= Math.min(toChunk, fChunksUsed);
+		int merged= 0;
+		for (int i= fChunksFreedSinceTruncation.nextSetBit(Math.max(1, fromChunk)); i >= 0 && i < end; 
+				i= fChunksFreedSinceTruncation.nextSetBit(i + 1)) {
+			final long chunkOffset= (long) i * fChunkSize;
+			for (long area= chunkOffset; area < chunkOffset + fChunkSize; area+= CHUNK_SIZE) {
+				merged+= coalesceFreeBlocks(area);
+			}
+			fChunksFreedSinceTruncation.clear(i);
+		}
+		return merged;
+	}
+
+	private int coalesceFreeBlocks(final long area) throws CoreException {
+		final Chunk chunk= getChunk(area);
+		final long end= area + CHUNK_SIZE;
+		int merged= 0;
+		long block= area;
+		while (block < end) {
+			final int size= chunk.getShort(block);
+			if (size < 0) {
+				block-= size;
+				continue;
+			} 
+			if (size == 0 || size % BLOCK_SIZE_DELTA != 0 || block + size > end) {
+				// the area has never been used for allocations (or is corrupt), leave it alone.
+				break;
+			}
+			// find the free blocks following this one.
+			long next= block + size;
+			int mergedSize= size;
+			while (next < end) {
+				final int nextSize= chunk.getShort(next);
+				if (nextSize <= 0 || nextSize % BLOCK_SIZE_DELTA != 0 || next + nextSize > end)
+					break;
+				mergedSize+= nextSize;
+				next+= nextSize;
+			}
+			if (mergedSize > size) {
+				for (long b= block; b < next; ) {
+					final int bs= chunk.getShort(b);
+					removeBlock(chunk, bs, b);
+					b+= bs;
+					merged++;
+				}
+				merged--;
+				addBlock(chunk, mergedSize, block);
+			}
+			block= next;
+		}
+		return merged;
+	}
+
+	/**
+	 * Releases the chunks at the end of the database that consist of a single free block per area,
+	 * only. Such chunks result from {@link #coalesceFreeBlocks(int, int)}. The file is truncated
+	 * with the next flush.
+	 * @return the number of bytes the database has been shrunk by.
+	 */
+	public long truncateFreeChunks() throws CoreException {
+		assert fExclusiveLock;
+		int newChunksUsed= fChunksUsed;
+		while (newChunksUsed > 1 && isFreeChunk(newChunksUsed-1)) {
+			newChunksUsed--;
+		}
+		fFreedSinceTruncation= 0;
+		if (newChunksUsed == fChunksUsed) 
+			return 0;
+		
+		fChunksFreedSinceTruncation.clear(newChunksUsed, fChunksUsed);
+		
+		for (int i= newChunksUsed; i < fChunksUsed; i++) {
+			final long chunkOffset= (long) i * fChunkSize;
+			final Chunk chunk= getChunk(chunkOffset);
+			for (long area= chunkOffset; area < chunkOffset + fChunkSize; area+= CHUNK_SIZE) {
+				removeBlock(chunk, CHUNK_SIZE, area);
+				// in case the file is not truncated, the area must not be mistaken for a free block.
+				chunk.putShort(area, (short) 0);
+			}
+		}
+		synchronized (fCache) {
+			for (int i= newChunksUsed; i < fChunksUsed; i++) {
+				final Chunk chunk= fChunks.get(i);
+				if (chunk != null) {
+					fCache.remove(chunk);
+					chunk.fLocked= false;
+					chunk.fDirty= false;
+					fChunks.set(i, null);
+				}
+			}
+		}
+		final long reclaimed= (long) (fChunksUsed - newChunksUsed) * fChunkSize;
+		fChunksUsed= newChunksUsed;
+		fTruncatePending= true;
+		return reclaimed;
+	}
+
+	private boolean isFreeChunk(int index) throws CoreException {
+		final long chunkOffset= (long) index * fChunkSize;
+		final Chunk chunk= getChunk(chunkOffset);
+		for (long area= chunkOffset; area < chunkOffset + fChunkSize; area+= CHUNK_SIZE) {
+			if (chunk.getShort(area) != CHUNK_SIZE)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of bytes that have been freed since the free space of the database has been truncated
+	 * for the last time. May be called without holding a lock on the database.
+	 */
+	public long getBytesFreedSinceTruncation() {
+		return fFreedSinceTruncation;
+	}
+
+	/**
+	 * Returns whether the database has been closed. May be called without holding a lock 
+	 * on the database.
+	 */
+	public boolean isClosed() {
+		return fClosed;
 	}
 
 	public void putByte(long offset, byte value) throws CoreException {
@@ -555,10 +1099,10 @@ public class Database {
 	 * For debugging purposes, only.
 	 */
 	public void reportFreeBlocks() throws CoreException {
-		System.out.println("Allocated size: " + fChunksUsed * CHUNK_SIZE); //$NON-NLS-1$
+		System.out.println("Allocated size: " + (long) fChunksUsed * fChunkSize); //$NON-NLS-1$
 		System.out.println("malloc'ed: " + malloced); //$NON-NLS-1$
 		System.out.println("free'd: " + freed); //$NON-NLS-1$
-		System.out.println("wasted: " + (fChunksUsed * CHUNK_SIZE - (malloced - freed))); //$NON-NLS-1$
+		System.out.println("wasted: " + ((long) fChunksUsed * fChunkSize - (malloced - freed))); //$NON-NLS-1$
 		System.out.println("Free blocks"); //$NON-NLS-1$
 		for (int bs = MIN_BLOCK_DELTAS*BLOCK_SIZE_DELTA; bs <= CHUNK_SIZE; bs += BLOCK_SIZE_DELTA) {
 			int count = 0;
@@ -580,16 +1124,31 @@ public class Database {
 	 */
 	public void close() throws CoreException {
 		assert fExclusiveLock;
+		fClosed= true;
 		flush();
 		removeChunksFromCache();
 		
 		// chunks have been removed from the cache, so we are fine
-		fHeaderChunk.clear(0, CHUNK_SIZE);
+		fHeaderChunk.clear(0, fChunkSize);
 		fHeaderChunk.fDirty= false;
-		fChunks= new Chunk[] {null};
-		fChunksUsed = fChunksAllocated = fChunks.length;
+		final long usedSize= (long) fChunksUsed * fChunkSize;
+		fChunks= new AtomicReferenceArray<Chunk>(1);
+		fChunksUsed = fChunksAllocated = fChunks.length();
 		try {
+			if (fUseMappedIO && !fReadOnly && fSegments.length > 0) {
+				unmapSegments();
+				try {
+					// mapping the last segment has grown the file
+					fFile.getChannel().truncate(usedSize);
+				} catch (IOException e) {
+					// some platforms do not allow for truncating a file that is still mapped,
+					// the unused chunks at the end of the file are harmless.
+				}
+			}
 			fFile.close();
+			if (fLog != null) {
+				fLog.close();
+			}
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
@@ -606,8 +1165,9 @@ public class Database {
 	 * Called from any thread via the cache, protected by {@link #fCache}.
 	 */
 	void releaseChunk(final Chunk chunk) {
+		cacheEvictions.incrementAndGet();
 		if (!chunk.fLocked) {
-			fChunks[chunk.fSequenceNumber]= null;
+			fChunks.set(chunk.fSequenceNumber, null);
 		}			
 	}
 
@@ -636,45 +1196,67 @@ public class Database {
 		if (fExclusiveLock) {
 			try {
 				ArrayList<Chunk> dirtyChunks= new ArrayList<Chunk>();
+				boolean flushAll= flush;
 				synchronized (fCache) {
-					for (int i= 1; i < fChunksUsed; i++) {
-						Chunk chunk= fChunks[i];
-						if (chunk != null) {
-							if (chunk.fCacheIndex < 0) { 	
-								// locked chunk that has been removed from cache.
-								if (chunk.fDirty) {
-									dirtyChunks.add(chunk); // keep in fChunks until it is flushed.
-								}
-								else {
-									chunk.fLocked= false;
-									fChunks[i]= null;
-								}
-							}
-							else if (chunk.fLocked) {
-								// locked chunk, still in cache.
-								if (chunk.fDirty) {
-									if (flush) {
-										dirtyChunks.add(chunk);
-									}
-								}
-								else {
-									chunk.fLocked= false;
-								}
-							}
-							else {
-								assert !chunk.fDirty; // dirty chunks must be locked.
-							}
+					collectDirtyChunks(dirtyChunks, flushAll);
+					if (!flushAll && fLog != null && !dirtyChunks.isEmpty()) {
+						// evicted chunks can be written as part of a complete flush, only. They
+						// stay locked until the next flush, unless they take up more memory 
+						// than the cache itself.
+						if ((long) dirtyChunks.size() * fChunkSize > fCache.getMaxSize()) {
+							flushAll= true;
+							dirtyChunks.clear();
+							collectDirtyChunks(dirtyChunks, flushAll);
+						} else {
+							dirtyChunks.clear();
 						}
 					}
 				}
 				// also handles header chunk
-				flushAndUnlockChunks(dirtyChunks, flush);
+				flushAndUnlockChunks(dirtyChunks, flushAll);
 			}
 			finally {
 				fExclusiveLock= false;
 			}
 		}
 	}
+
+	/**
+	 * Collects the chunks that need to be written when giving up the exclusive lock, unlocks
+	 * the others. Must be called while holding the lock on {@link #fCache}.
+	 */
+	private void collectDirtyChunks(ArrayList<Chunk> dirtyChunks, boolean flush) {
+		assert Thread.holdsLock(fCache);
+		for (int i= 1; i < fChunksUsed; i++) {
+			Chunk chunk= fChunks.get(i);
+			if (chunk != null) {
+				if (chunk.fCacheIndex < 0) { 	
+					// locked chunk that has been removed from cache.
+					if (chunk.fDirty) {
+						dirtyChunks.add(chunk); // keep in fChunks until it is flushed.
+					}
+					else {
+						chunk.fLocked= false;
+						fChunks.set(i, null);
+					}
+				}
+				else if (chunk.fLocked) {
+					// locked chunk, still in cache.
+					if (chunk.fDirty) {
+						if (flush) {
+							dirtyChunks.add(chunk);
+						}
+					}
+					else {
+						chunk.fLocked= false;
+					}
+				}
+				else {
+					assert !chunk.fDirty; // dirty chunks must be locked.
+				}
+			}
+		}
+	}
 	
 	public void flush() throws CoreException {
 		assert fLocked;
@@ -692,7 +1274,7 @@ public class Database {
 		ArrayList<Chunk> dirtyChunks= new ArrayList<Chunk>();
 		synchronized (fCache) {
 			for (int i= 1; i < fChunksUsed ; i++) {
-				Chunk chunk= fChunks[i];
+				Chunk chunk= fChunks.get(i);
 				if (chunk != null && chunk.fDirty) {
 					dirtyChunks.add(chunk);
 				}
@@ -706,31 +1288,52 @@ public class Database {
 	private void flushAndUnlockChunks(final ArrayList<Chunk> dirtyChunks, boolean isComplete) throws CoreException {
 		assert !Thread.holdsLock(fCache);
 		synchronized(fHeaderChunk) {
+			if (fLog != null) {
+				assert isComplete || dirtyChunks.isEmpty();
+				if (isComplete) {
+					commitChunks(dirtyChunks);
+				}
+				return;
+			}
 			final boolean haveDirtyChunks = !dirtyChunks.isEmpty();
 			if (haveDirtyChunks || fHeaderChunk.fDirty) {
 				markFileIncomplete();
 			}
 			if (haveDirtyChunks) {
+				BitSet dirtySegments= null;
 				for (Chunk chunk : dirtyChunks) {
 					if (chunk.fDirty) {
+						if (chunk.isMapped()) {
+							if (dirtySegments == null) {
+								dirtySegments= new BitSet();
+							}
+							dirtySegments.set(chunk.fSequenceNumber / fChunksPerSegment);
+						}
 						chunk.flush();
 					}
 				}
+				if (dirtySegments != null) {
+					forceSegments(dirtySegments);
+				}
 
 				// only after the chunks are flushed we may unlock and release them.
 				synchronized (fCache) {
 					for (Chunk chunk : dirtyChunks) {
 						chunk.fLocked= false;
 						if (chunk.fCacheIndex < 0) {
-							fChunks[chunk.fSequenceNumber]= null;
+							fChunks.set(chunk.fSequenceNumber, null);
 						}
 					}
 				}
 			}
 
 			if (isComplete) {
+				if (fTruncatePending) {
+					// truncate while the file is still marked incomplete.
+					truncateFile();
+				}
 				if (fHeaderChunk.fDirty || fIsMarkedIncomplete) {
-					fHeaderChunk.putInt(VERSION_OFFSET, fVersion);
+					fHeaderChunk.putInt(VERSION_OFFSET, encodeVersion(fVersion));
 					fHeaderChunk.flush();
 					fIsMarkedIncomplete= false;
 				}
@@ -738,11 +1341,79 @@ public class Database {
 		}
 	}
 		
+	/**
+	 * Writes the modified chunks and the header chunk via the write-ahead log, then unlocks
+	 * and releases the chunks. Must be called while holding the lock on {@link #fHeaderChunk}.
+	 */
+	private void commitChunks(final ArrayList<Chunk> dirtyChunks) throws CoreException {
+		assert Thread.holdsLock(fHeaderChunk);
+		final ArrayList<Chunk> chunks= new ArrayList<Chunk>(dirtyChunks.size() + 1);
+		for (Chunk chunk : dirtyChunks) {
+			if (chunk.fDirty) {
+				chunks.add(chunk);
+			}
+		}
+		if (fHeaderChunk.fDirty) {
+			fHeaderChunk.putInt(VERSION_OFFSET, encodeVersion(fVersion));
+			chunks.add(fHeaderChunk);
+		}
+		if (!chunks.isEmpty() || fTruncatePending) {
+			final long truncateTo= fTruncatePending ? (long) fChunksUsed * fChunkSize : -1;
+			try {
+				fLog.begin();
+				for (Chunk chunk : chunks) {
+					chunk.log(fLog);
+				}
+				fLog.commit(truncateTo);
+				// from now on the changes survive a crash.
+				for (Chunk chunk : chunks) {
+					chunk.flush();
+				}
+				if (fTruncatePending) {
+					truncateFile();
+				}
+				force();
+				fLog.reset();
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
+		}
+
+		// only after the chunks are flushed we may unlock and release them.
+		if (!dirtyChunks.isEmpty()) {
+			synchronized (fCache) {
+				for (Chunk chunk : dirtyChunks) {
+					chunk.fLocked= false;
+					if (chunk.fCacheIndex < 0) {
+						fChunks.set(chunk.fSequenceNumber, null);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Truncates the file after chunks at the end of the database have been released. With memory
+	 * mapped I/O the file is truncated when the database is closed.
+	 */
+	private void truncateFile() throws CoreException {
+		fTruncatePending= false;
+		if (!fUseMappedIO) {
+			try {
+				truncate((long) fChunksUsed * fChunkSize);
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
+		}
+	}
+
 	private void markFileIncomplete() throws CoreException {
 		if (!fIsMarkedIncomplete) {
 			fIsMarkedIncomplete= true;
 			try {
-				final ByteBuffer buf= ByteBuffer.wrap(new byte[4]);
+				// keep the chunk size, such that the database can be opened and cleared.
+				final ByteBuffer buf= ByteBuffer.allocate(INT_SIZE);
+				buf.putInt(0, encodeVersion(0));
 				fFile.getChannel().write(buf, 0);
 			} catch (IOException e) {
 				throw new CoreException(new DBStatus(e));
@@ -751,18 +1422,45 @@ public class Database {
 	}
 
 	public void resetCacheCounters() {
-		cacheHits= cacheMisses= 0;
+		cacheHits.set(0);
+		cacheMisses.set(0);
+		cacheEvictions.set(0);
 	}
 	
 	public long getCacheHits() {
-		return cacheHits;
+		return cacheHits.get();
 	}
 	
 	public long getCacheMisses() {
-		return cacheMisses;
+		return cacheMisses.get();
+	}
+
+	/**
+	 * Returns the number of chunks of this database that have been evicted from the cache.
+	 */
+	public long getCacheEvictions() {
+		return cacheEvictions.get();
+	}
+
+	/**
+	 * Returns whether the chunks of this database are accessed via memory mapped I/O.
+	 */
+	public boolean usesMappedIO() {
+		return fUseMappedIO;
+	}
+
+	/**
+	 * Returns the number of chunks of the database, including the header chunk.
+	 */
+	public int getChunkCount() {
+		return fChunksUsed;
 	}
 
 	public long getSizeBytes() {
+		if (fUseMappedIO) {
+			// the file may have been grown by the last mapped segment.
+			return (long) fChunksUsed * fChunkSize;
+		}
 		try {
 			return fFile.length();
 		} catch (IOException e) {
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Pool of strings stored in the database, such that each distinct string is stored once. The strings
+ * are reference counted, they are deleted when the last reference is released. Two strings of
+ * the pool are equal if and only if their records are equal.
+ * <p>
+ * Optionally the strings of the pool are added to a {@link TrigramIndex}.
+ */
+/*
+ * The pool is a hash table with a fixed number of buckets, organized in two levels to avoid
+ * allocating space for the buckets of small tables. The root pointer refers to the directory,
+ * which points to pages of buckets, both are allocated on demand. A bucket is the head of a
+ * list of entries:
+ *
+ * offset            content
+ * 	                 _____________________________
+ * 0                | pointer to next entry of the bucket
+ * 4                | pointer to the string (ShortString or LongString)
+ * 8                | hash code of the string
+ * 12               | reference count
+ */
+public class StringTable {
+	private static final int DIRECTORY_SIZE= 256;
+	private static final int PAGE_SIZE= 256;
+	private static final int BUCKET_MASK= DIRECTORY_SIZE * PAGE_SIZE - 1;
+
+	private static final int NEXT= 0;
+	private static final int STRING= 4;
+	private static final int HASH= 8;
+	private static final int REFCOUNT= 12;
+	private static final int ENTRY_SIZE= 16;
+
+	private final Database db;
+	private final long rootPointer;
+	private final TrigramIndex trigramIndex;
+
+	/**
+	 * Creates a wrapper for the string table stored at the given location.
+	 * @param db the database containing the table.
+	 * @param rootPointer offset of the pointer to the table, initially zero.
+	 */
+	public StringTable(Database db, long rootPointer) {
+		this(db, rootPointer, null);
+	}
+
+	/**
+	 * Creates a wrapper for the string table stored at the given location, which maintains
+	 * the given index of its strings.
+	 * @param db the database containing the table.
+	 * @param rootPointer offset of the pointer to the table, initially zero.
+	 * @param trigramIndex the index of the strings of the table, or <code>null</code>.
+	 */
+	public StringTable(Database db, long rootPointer, TrigramIndex trigramIndex) {
+		this.db= db;
+		this.rootPointer= rootPointer;
+		this.trigramIndex= trigramIndex;
+	}
+
+	/**
+	 * Returns the string with the given characters, creates it if it is not yet part of the table.
+	 * Each call has to be balanced with a call to {@link #release(long)}.
+	 */
+	public IString intern(char[] chars) throws CoreException {
+		final int hash= hash(chars);
+		final long bucket= getBucket(hash, true);
+		for (long entry= db.getRecPtr(bucket); entry != 0; entry= db.getRecPtr(entry + NEXT)) {
+			if (db.getInt(entry + HASH) == hash) {
+				final IString string= db.getString(db.getRecPtr(entry + STRING));
+				if (string.compare(chars, true) == 0) {
+					db.putInt(entry + REFCOUNT, db.getInt(entry + REFCOUNT) + 1);
+					return string;
+				}
+			}
+		}
+		final IString string= db.newString(chars);
+		final long entry= db.malloc(ENTRY_SIZE);
+		db.putRecPtr(entry + NEXT, db.getRecPtr(bucket));
+		db.putRecPtr(entry + STRING, string.getRecord());
+		db.putInt(entry + HASH, hash);
+		db.putInt(entry + REFCOUNT, 1);
+		db.putRecPtr(bucket, entry);
+		if (trigramIndex != null) {
+			trigramIndex.add(string.getRecord(), chars);
+		}
+		return string;
+	}
+
+	/**
+	 * Returns the record of the string with the given characters, or <code>0</code> if the
+	 * string is not part of the table.
+	 */
+	public long find(char[] chars) throws CoreException {
+		final int hash= hash(chars);
+		final long bucket= getBucket(hash, false);
+		if (bucket != 0) {
+			for (long entry= db.getRecPtr(bucket); entry != 0; entry= db.getRecPtr(entry + NEXT)) {
+				if (db.getInt(entry + HASH) == hash) {
+					final long record= db.getRecPtr(entry + STRING);
+					if (db.getString(record).compare(chars, true) == 0)
+						return record;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Releases a reference to the string with the given record, the string is deleted when it is
+	 * no longer referenced. A string that is not part of the table is deleted right away.
+	 */
+	public void release(long record) throws CoreException {
+		final IString string= db.getString(record);
+		final char[] chars= string.getChars();
+		final int hash= hash(chars);
+		final long bucket= getBucket(hash, false);
+		if (bucket != 0) {
+			long prev= 0;
+			for (long entry= db.getRecPtr(bucket); entry != 0; entry= db.getRecPtr(entry + NEXT)) {
+				if (db.getRecPtr(entry + STRING) == record) {
+					final int refcount= db.getInt(entry + REFCOUNT) - 1;
+					if (refcount > 0) {
+						db.putInt(entry + REFCOUNT, refcount);
+						return;
+					}
+					final long next= db.getRecPtr(entry + NEXT);
+					if (prev == 0) {
+						db.putRecPtr(bucket, next);
+					} else {
+						db.putRecPtr(prev + NEXT, next);
+					}
+					db.free(entry);
+					if (trigramIndex != null) {
+						trigramIndex.remove(record, chars);
+					}
+					break;
+				}
+				prev= entry;
+			}
+		}
+		string.delete();
+	}
+
+	/**
+	 * Returns the number of references to the string with the given record, or <code>0</code>
+	 * if it is not part of the table. For testing purposes.
+	 */
+	public int getReferenceCount(long record) throws CoreException {
+		final int hash= hash(db.getString(record).getChars());
+		final long bucket= getBucket(hash, false);
+		if (bucket != 0) {
+			for (long entry= db.getRecPtr(bucket); entry != 0; entry= db.getRecPtr(entry + NEXT)) {
+				if (db.getRecPtr(entry + STRING) == record)
+					return db.getInt(entry + REFCOUNT);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the offset of the head of the bucket for the given hash code. If the bucket has
+	 * not yet been allocated either it is created or <code>0</code> is returned.
+	 */
+	private long getBucket(int hash, boolean create) throws CoreException {
+		final int index= (hash ^ (hash >>> 16)) & BUCKET_MASK;
+		long directory= db.getRecPtr(rootPointer);
+		if (directory == 0) {
+			if (!create)
+				return 0;
+			directory= db.malloc(DIRECTORY_SIZE * Database.PTR_SIZE);
+			db.putRecPtr(rootPointer, directory);
+		}
+		final long pagePointer= directory + (index / PAGE_SIZE) * Database.PTR_SIZE;
+		long page= db.getRecPtr(pagePointer);
+		if (page == 0) {
+			if (!create)
+				return 0;
+			page= db.malloc(PAGE_SIZE * Database.PTR_SIZE);
+			db.putRecPtr(pagePointer, page);
+		}
+		return page + (index % PAGE_SIZE) * Database.PTR_SIZE;
+	}
+
+	/**
+	 * The hash code is stored in the database, it must not depend on the implementation of
+	 * {@link String#hashCode()}.
+	 */
+	private static int hash(char[] chars) {
+		int h= 0;
+		for (char c : chars) {
+			h= 31 * h + c;
+		}
+		return h;
+	}
+}
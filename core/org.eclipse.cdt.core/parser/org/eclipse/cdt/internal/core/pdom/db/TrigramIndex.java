@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import java.util.Arrays;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Index of strings by the sequences of three characters (trigrams) they contain. Allows to find
+ * the strings containing a given substring without looking at all strings. The trigrams are
+ * case-insensitive, characters other than letters, digits and underscores are not distinguished,
+ * therefore the strings found have to be checked by the caller.
+ */
+/*
+ * The index has a slot for each trigram, organized in two levels such that pages of slots are
+ * allocated on demand. The root pointer refers to the directory, which points to the pages:
+ *
+ * offset            content
+ * 	                 _____________________________
+ * 0                | root of the b-tree with the records of the strings containing the trigram
+ * 4                | number of strings containing the trigram
+ */
+public class TrigramIndex {
+	/** 26 letters, 10 digits, the underscore and a code for all other characters */
+	private static final int ALPHABET_SIZE= 38;
+	private static final int TRIGRAM_COUNT= ALPHABET_SIZE * ALPHABET_SIZE * ALPHABET_SIZE;
+	private static final int PAGE_SIZE= 128;
+	private static final int DIRECTORY_SIZE= (TRIGRAM_COUNT + PAGE_SIZE - 1) / PAGE_SIZE;
+
+	private static final int ROOT= 0;
+	private static final int COUNT= 4;
+	private static final int SLOT_SIZE= 8;
+
+	private static final long[] NO_RECORDS= {};
+
+	private static final IBTreeComparator RECORD_COMPARATOR= new IBTreeComparator() {
+		public int compare(long record1, long record2) {
+			return record1 < record2 ? -1 : (record1 > record2 ? 1 : 0);
+		}
+	};
+
+	private final Database db;
+	private final long rootPointer;
+
+	/**
+	 * Creates a wrapper for the index stored at the given location.
+	 * @param db the database containing the index.
+	 * @param rootPointer offset of the pointer to the index, initially zero.
+	 */
+	public TrigramIndex(Database db, long rootPointer) {
+		this.db= db;
+		this.rootPointer= rootPointer;
+	}
+
+	/**
+	 * Adds the string with the given record and characters to the index.
+	 */
+	public void add(long record, char[] chars) throws CoreException {
+		for (int trigram : getTrigrams(chars)) {
+			final long slot= getSlot(trigram, true);
+			new BTree(db, slot + ROOT, RECORD_COMPARATOR).insert(record);
+			db.putInt(slot + COUNT, db.getInt(slot + COUNT) + 1);
+		}
+	}
+
+	/**
+	 * Removes the string with the given record and characters from the index.
+	 */
+	public void remove(long record, char[] chars) throws CoreException {
+		for (int trigram : getTrigrams(chars)) {
+			final long slot= getSlot(trigram, false);
+			if (slot != 0 && db.getRecPtr(slot + ROOT) != 0) {
+				new BTree(db, slot + ROOT, RECORD_COMPARATOR).delete(record);
+				db.putInt(slot + COUNT, db.getInt(slot + COUNT) - 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the records of the strings that may contain all of the given substrings. At least one
+	 * of the substrings must consist of three or more characters, otherwise <code>null</code> is
+	 * returned. The result is a superset of the strings containing the substrings.
+	 */
+	public long[] findCandidates(char[][] substrings) throws CoreException {
+		int[] trigrams= {};
+		for (char[] substring : substrings) {
+			final int[] t= getTrigrams(substring);
+			final int[] merged= new int[trigrams.length + t.length];
+			System.arraycopy(trigrams, 0, merged, 0, trigrams.length);
+			System.arraycopy(t, 0, merged, trigrams.length, t.length);
+			trigrams= merged;
+		}
+		if (trigrams.length == 0)
+			return null;
+
+		// Start with the trigram that is contained in the smallest number of strings.
+		final long[] slots= new long[trigrams.length];
+		int smallest= 0;
+		int smallestCount= Integer.MAX_VALUE;
+		for (int i = 0; i < trigrams.length; i++) {
+			final long slot= getSlot(trigrams[i], false);
+			final int count= slot == 0 ? 0 : db.getInt(slot + COUNT);
+			if (count == 0)
+				return NO_RECORDS;
+			slots[i]= slot;
+			if (count < smallestCount) {
+				smallestCount= count;
+				smallest= i;
+			}
+		}
+
+		final long[] candidates= new long[smallestCount];
+		final int[] n= {0};
+		new BTree(db, slots[smallest] + ROOT, RECORD_COMPARATOR).accept(new IBTreeVisitor() {
+			public int compare(long record) {
+				return 0;
+			}
+			public boolean visit(long record) {
+				if (n[0] < candidates.length) {
+					candidates[n[0]++]= record;
+				}
+				return true;
+			}
+		});
+
+		// Check the other trigrams for each of the candidates.
+		int count= n[0];
+		for (int i = 0; i < slots.length && count > 0; i++) {
+			if (i == smallest)
+				continue;
+			final BTree btree= new BTree(db, slots[i] + ROOT, RECORD_COMPARATOR);
+			int kept= 0;
+			for (int j = 0; j < count; j++) {
+				if (contains(btree, candidates[j])) {
+					candidates[kept++]= candidates[j];
+				}
+			}
+			count= kept;
+		}
+		if (count == candidates.length)
+			return candidates;
+		final long[] result= new long[count];
+		System.arraycopy(candidates, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Returns the number of strings containing the trigram at the beginning of the given
+	 * characters. For testing purposes.
+	 */
+	public int getCount(char[] trigram) throws CoreException {
+		final int[] trigrams= getTrigrams(new char[] {trigram[0], trigram[1], trigram[2]});
+		final long slot= getSlot(trigrams[0], false);
+		return slot == 0 ? 0 : db.getInt(slot + COUNT);
+	}
+
+	private static boolean contains(BTree btree, final long record) throws CoreException {
+		final boolean[] found= {false};
+		btree.accept(new IBTreeVisitor() {
+			public int compare(long other) throws CoreException {
+				return RECORD_COMPARATOR.compare(other, record);
+			}
+			public boolean visit(long other) {
+				found[0]= true;
+				return false;
+			}
+		});
+		return found[0];
+	}
+
+	/**
+	 * Returns the slot for the given trigram. If the page containing the slot has not yet been
+	 * allocated either it is created or <code>0</code> is returned.
+	 */
+	private long getSlot(int trigram, boolean create) throws CoreException {
+		long directory= db.getRecPtr(rootPointer);
+		if (directory == 0) {
+			if (!create)
+				return 0;
+			directory= db.malloc(DIRECTORY_SIZE * Database.PTR_SIZE);
+			db.putRecPtr(rootPointer, directory);
+		}
+		final long pagePointer= directory + (trigram / PAGE_SIZE) * Database.PTR_SIZE;
+		long page= db.getRecPtr(pagePointer);
+		if (page == 0) {
+			if (!create)
+				return 0;
+			page= db.malloc(PAGE_SIZE * SLOT_SIZE);
+			db.putRecPtr(pagePointer, page);
+		}
+		return page + (trigram % PAGE_SIZE) * SLOT_SIZE;
+	}
+
+	/**
+	 * Returns the distinct trigrams of the given characters in ascending order.
+	 */
+	private static int[] getTrigrams(char[] chars) {
+		if (chars.length < 3)
+			return new int[0];
+
+		final int[] trigrams= new int[chars.length - 2];
+		int c1= code(chars[0]);
+		int c2= code(chars[1]);
+		for (int i = 2; i < chars.length; i++) {
+			final int c3= code(chars[i]);
+			trigrams[i - 2]= (c1 * ALPHABET_SIZE + c2) * ALPHABET_SIZE + c3;
+			c1= c2;
+			c2= c3;
+		}
+		Arrays.sort(trigrams);
+		int n= 1;
+		for (int i = 1; i < trigrams.length; i++) {
+			if (trigrams[i] != trigrams[n - 1]) {
+				trigrams[n++]= trigrams[i];
+			}
+		}
+		if (n == trigrams.length)
+			return trigrams;
+		final int[] result= new int[n];
+		System.arraycopy(trigrams, 0, result, 0, n);
+		return result;
+	}
+
+	private static int code(char c) {
+		if (c >= 'a' && c <= 'z')
+			return c - 'a';
+		if (c >= 'A' && c <= 'Z')
+			return c - 'A';
+		if (c >= '0' && c <= '9')
+			return 26 + c - '0';
+		if (c == '_')
+			return 36;
+		return 37;
+	}
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Redo log for the database, makes flushing the modified chunks an atomic operation.
+ * <p>
+ * The content of the modified chunks is appended to the log, followed by a commit record. Only
+ * after the log has been forced to the disk the chunks are written to the database file. Once
+ * this is done, the log is truncated. When a database is opened and finds a log with a commit
+ * record, the chunks are written again, a log without commit record is discarded. Either way
+ * the database is in the state of the last completed flush. A transaction may also shorten
+ * the database file, the truncation is repeated during recovery as well.
+ */
+/*
+ * The log contains the records of one transaction, only:
+ *
+ * offset            content
+ *                   _____________________________
+ * 0                | RECORD_TAG
+ * 4                | position in the database file (long)
+ * 12               | length of the data (int)
+ * 16               | data
+ * ..               | further records
+ *                  | COMMIT_TAG
+ *                  | number of records (int)
+ *                  | new length of the database file or -1 (long)
+ *                  | CRC32 over the records including their headers (long)
+ */
+final class WriteAheadLog {
+	private static final int RECORD_TAG= 0x57414C52;	// 'WALR'
+	private static final int COMMIT_TAG= 0x57414C43;	// 'WALC'
+	private static final int RECORD_HEADER_SIZE= 16;
+	private static final int COMMIT_SIZE= 24;
+
+	private final File fLocation;
+	private RandomAccessFile fFile;
+	private long fPosition;
+	private int fRecords;
+	private final CRC32 fChecksum= new CRC32();
+	private final ByteBuffer fHeader= ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+	WriteAheadLog(File location) {
+		fLocation= location;
+	}
+
+	/**
+	 * Returns the location of the log for the given database file.
+	 */
+	static File getLocation(File database) {
+		return new File(database.getPath() + ".wal"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Starts a new transaction.
+	 */
+	void begin() throws IOException {
+		if (fFile == null) {
+			fFile= new RandomAccessFile(fLocation, "rw"); //$NON-NLS-1$
+		}
+		fFile.getChannel().truncate(0);
+		fPosition= 0;
+		fRecords= 0;
+		fChecksum.reset();
+	}
+
+	/**
+	 * Appends the remaining content of the buffer to the log, it shall be written to the given
+	 * position of the database file.
+	 */
+	void append(long position, ByteBuffer data) throws IOException {
+		final int length= data.remaining();
+		fHeader.clear();
+		fHeader.putInt(RECORD_TAG).putLong(position).putInt(length);
+		fHeader.flip();
+		updateChecksum(fChecksum, fHeader);
+		updateChecksum(fChecksum, data);
+		writeFully(fFile.getChannel(), fHeader, fPosition);
+		writeFully(fFile.getChannel(), data, fPosition + RECORD_HEADER_SIZE);
+		fPosition+= RECORD_HEADER_SIZE + length;
+		fRecords++;
+	}
+
+	/**
+	 * Writes the commit record and forces the log to the disk. After this method returns
+	 * the transaction is durable.
+	 * @param truncateTo the length the database file is truncated to as part of the transaction,
+	 * or <code>-1</code>.
+	 */
+	void commit(long truncateTo) throws IOException {
+		final ByteBuffer buf= ByteBuffer.allocate(COMMIT_SIZE);
+		buf.putInt(COMMIT_TAG).putInt(fRecords).putLong(truncateTo).putLong(fChecksum.getValue());
+		buf.flip();
+		final FileChannel channel= fFile.getChannel();
+		writeFully(channel, buf, fPosition);
+		fPosition+= COMMIT_SIZE;
+		channel.force(false);
+	}
+
+	/**
+	 * Discards the transaction after it has been written to the database.
+	 */
+	void reset() throws IOException {
+		if (fFile != null) {
+			fFile.getChannel().truncate(0);
+		}
+		fPosition= 0;
+		fRecords= 0;
+	}
+
+	/**
+	 * Closes and deletes the log.
+	 */
+	void close() throws IOException {
+		if (fFile != null) {
+			fFile.close();
+			fFile= null;
+		}
+		fLocation.delete();
+	}
+
+	/**
+	 * Completes a committed transaction found in the log at the given location by writing it
+	 * to the database file, a transaction that has not been committed is discarded. Afterwards
+	 * the log is deleted.
+	 * @return whether the database file has been modified.
+	 */
+	static boolean recover(File location, Database db) throws IOException {
+		if (!location.exists())
+			return false;
+
+		boolean modified= false;
+		final RandomAccessFile file= new RandomAccessFile(location, "r"); //$NON-NLS-1$
+		try {
+			final FileChannel channel= file.getChannel();
+			if (isCommitted(channel)) {
+				final ByteBuffer header= ByteBuffer.allocate(COMMIT_SIZE);
+				long pos= 0;
+				while (true) {
+					header.clear();
+					readFully(channel, header, pos);
+					if (header.getInt(0) != RECORD_TAG) {
+						final long truncateTo= header.getLong(8);
+						if (truncateTo >= 0) {
+							db.truncate(truncateTo);
+						}
+						break;
+					}
+					final long dbPosition= header.getLong(4);
+					final ByteBuffer data= ByteBuffer.allocate(header.getInt(12));
+					readFully(channel, data, pos + RECORD_HEADER_SIZE);
+					data.flip();
+					db.write(data, dbPosition);
+					pos+= RECORD_HEADER_SIZE + data.capacity();
+				}
+				db.force();
+				modified= true;
+			}
+		} finally {
+			file.close();
+		}
+		location.delete();
+		return modified;
+	}
+
+	/**
+	 * Checks whether the log contains a complete transaction with a valid checksum.
+	 */
+	private static boolean isCommitted(FileChannel channel) throws IOException {
+		final long size= channel.size();
+		final CRC32 checksum= new CRC32();
+		final ByteBuffer header= ByteBuffer.allocate(COMMIT_SIZE);
+		final ByteBuffer data= ByteBuffer.allocate(Database.MAX_CHUNK_SIZE);
+		long pos= 0;
+		int records= 0;
+		while (pos + COMMIT_SIZE <= size) {
+			header.clear();
+			readFully(channel, header, pos);
+			header.flip();
+			final int tag= header.getInt(0);
+			if (tag == COMMIT_TAG) {
+				return header.getInt(4) == records && header.getLong(16) == checksum.getValue();
+			}
+			header.limit(RECORD_HEADER_SIZE);
+			final int length= header.getInt(12);
+			if (tag != RECORD_TAG || length < 0 || length > data.capacity() ||
+					pos + RECORD_HEADER_SIZE + length > size) {
+				return false;
+			}
+			updateChecksum(checksum, header);
+			data.clear();
+			data.limit(length);
+			readFully(channel, data, pos + RECORD_HEADER_SIZE);
+			data.flip();
+			updateChecksum(checksum, data);
+			pos+= RECORD_HEADER_SIZE + length;
+			records++;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the remaining bytes of the buffer to the checksum, does not change the position
+	 * of the buffer.
+	 */
+	private static void updateChecksum(CRC32 checksum, ByteBuffer buf) {
+		if (buf.hasArray()) {
+			checksum.update(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+		} else {
+			final byte[] bytes= new byte[buf.remaining()];
+			buf.duplicate().get(bytes);
+			checksum.update(bytes, 0, bytes.length);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			position+= channel.write(buf, position);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			final int read= channel.read(buf, position);
+			if (read < 0)
+				throw new IOException("Unexpected end of file"); //$NON-NLS-1$
+			position+= read;
+		}
+	}
+}
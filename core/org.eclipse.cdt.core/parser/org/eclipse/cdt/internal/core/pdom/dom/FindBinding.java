@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2010 Symbian Software Systems and others.
+ * Copyright (c) 2006, 2011 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -35,9 +35,15 @@ public class FindBinding {
 		}
 
 		public int compare(long record1, long record2) throws CoreException {
-			IString nm1 = PDOMNamedNode.getDBName(database, record1);
-			IString nm2 = PDOMNamedNode.getDBName(database, record2);
-			int cmp= nm1.compareCompatibleWithIgnoreCase(nm2);
+			final long nameRec1= PDOMNamedNode.getNameRecord(database, record1);
+			final long nameRec2= PDOMNamedNode.getNameRecord(database, record2);
+			// names are interned, equal names do not need to be compared.
+			int cmp= 0;
+			if (nameRec1 != nameRec2) {
+				IString nm1 = database.getString(nameRec1);
+				IString nm2 = database.getString(nameRec2);
+				cmp= nm1.compareCompatibleWithIgnoreCase(nm2);
+			}
 			if (cmp == 0) {
 				long t1= PDOMBinding.getLocalToFileRec(database, record1);
 				long t2= PDOMBinding.getLocalToFileRec(database, record2);
@@ -56,6 +62,7 @@ public class FindBinding {
 		private final char[] fName;
 		private final int[] fConstants;
 		private final long fLocalToFile;
+		private long fNameRecord= -1;
 		protected PDOMBinding fResult;
 	
 		protected DefaultFindBindingVisitor(PDOMLinkage linkage, char[] name, int[] constants, long localToFile) {
@@ -64,12 +71,27 @@ public class FindBinding {
 			fConstants = constants;
 			fLocalToFile= localToFile;
 		}
+
+		/**
+		 * Returns the record of the name in the string table, or <code>0</code> if there is no
+		 * binding with the name.
+		 */
+		private long getNameRecord() throws CoreException {
+			if (fNameRecord < 0) {
+				fNameRecord= fLinkage.getPDOM().getStringTable().find(fName);
+			}
+			return fNameRecord;
+		}
 		
 		// IBTreeVisitor
 		public int compare(long record) throws CoreException {
 			final Database db = fLinkage.getDB();
-			IString nm1 = PDOMNamedNode.getDBName(db, record);
-			int cmp= nm1.compareCompatibleWithIgnoreCase(fName); 
+			final long nameRec= PDOMNamedNode.getNameRecord(db, record);
+			int cmp= 0;
+			if (nameRec == 0 || nameRec != getNameRecord()) {
+				IString nm1 = db.getString(nameRec);
+				cmp= nm1.compareCompatibleWithIgnoreCase(fName); 
+			}
 			if (cmp == 0) {
 				long t1= PDOMBinding.getLocalToFileRec(db, record);
 				long t2= fLocalToFile;
@@ -92,7 +114,8 @@ public class FindBinding {
 		}
 		
 		protected boolean matches(PDOMBinding nnode) throws CoreException {
-			if (nnode.hasName(fName)) {
+			final long nameRec= getNameRecord();
+			if (nameRec != 0 && PDOMNamedNode.getNameRecord(fLinkage.getDB(), nnode.getRecord()) == nameRec) {
 				int constant = nnode.getNodeType();
 				for (int c : fConstants) {
 					if (constant == c) {
@@ -148,7 +171,11 @@ public class FindBinding {
 			db= database;
 		}
 		public int compare(long record1, long record2) throws CoreException {
-			return compare(PDOMNamedNode.getDBName(db, record1), PDOMNamedNode.getDBName(db, record2));	// compare names
+			final long nameRec1= PDOMNamedNode.getNameRecord(db, record1);
+			final long nameRec2= PDOMNamedNode.getNameRecord(db, record2);
+			if (nameRec1 == nameRec2)
+				return 0;
+			return compare(db.getString(nameRec1), db.getString(nameRec2));	// compare names
 		}
 		private int compare(IString nameInDB, IString nameInDB2) throws CoreException {
 			return nameInDB.compareCompatibleWithIgnoreCase(nameInDB2);
@@ -158,6 +185,8 @@ public class FindBinding {
 	public static PDOMBinding findBinding(BTree btree, final PDOMLinkage linkage, final char[] name, 
 			final int[] constants, final long localToFileRec) throws CoreException {
 		final DefaultFindBindingVisitor visitor = new DefaultFindBindingVisitor(linkage, name, constants, localToFileRec);
+		if (visitor.getNameRecord() == 0)
+			return null;
 		btree.accept(visitor);
 		return visitor.getResult();
 	}
@@ -18,6 +18,7 @@ import org.eclipse.cdt.core.dom.IPDOMNode;
 import org.eclipse.cdt.core.dom.IPDOMVisitor;
 import org.eclipse.cdt.core.parser.util.IContentAssistMatcher;
 import org.eclipse.cdt.internal.core.parser.util.ContentAssistMatcherFactory;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
 import org.eclipse.core.runtime.CoreException;
@@ -37,6 +38,7 @@ public class NamedNodeCollector implements IBTreeVisitor, IPDOMVisitor {
 	private final boolean caseSensitive;
 	private IProgressMonitor monitor= null;
 	private int monitorCheckCounter= 0;
+	private long nameRecord= -1;
 	
 	private List<PDOMNamedNode> nodes = new ArrayList<PDOMNamedNode>();
 
@@ -90,8 +92,28 @@ public class NamedNodeCollector implements IBTreeVisitor, IPDOMVisitor {
 	final public int compare(long record) throws CoreException {
 		if (monitor != null)
 			checkCancelled();
-		IString rhsName= PDOMNamedNode.getDBName(linkage.getDB(), record);
-		return compare(rhsName);
+		final Database db= linkage.getDB();
+		final long rhsNameRec= PDOMNamedNode.getNameRecord(db, record);
+		if (rhsNameRec != 0 && rhsNameRec == getNameRecord()) {
+			// names are interned, no need to compare the characters.
+			return 0;
+		}
+		return compare(db.getString(rhsNameRec));
+	}
+
+	/**
+	 * For an exact, case sensitive lookup returns the record of the name in the string table,
+	 * or <code>0</code> if no node can match. 
+	 */
+	private long getNameRecord() throws CoreException {
+		if (nameRecord < 0) {
+			if (prefixLookup || !caseSensitive) {
+				nameRecord= 0;
+			} else {
+				nameRecord= linkage.getPDOM().getStringTable().find(matchChars);
+			}
+		}
+		return nameRecord;
 	}
 
 	private int compare(IString rhsName) throws CoreException {
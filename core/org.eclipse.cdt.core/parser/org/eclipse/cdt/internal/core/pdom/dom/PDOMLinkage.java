@@ -81,7 +81,7 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 	}
 
 	protected PDOMLinkage(PDOM pdom, String languageId, char[] name) throws CoreException {
-		super(pdom.getDB(), name);
+		super(pdom, name);
 		final Database db= pdom.getDB();
 
 		fPDOM= pdom;
@@ -400,10 +400,14 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 				return result;
 		}
 		
-		BindingCollector visitor = new BindingCollector(this, name, null, false, false, true);
-		visitor.setMonitor(monitor);
-		getIndex().accept(visitor);
-		PDOMBinding[] result= visitor.getBindings();
+		PDOMBinding[] result= PDOMBinding.EMPTY_PDOMBINDING_ARRAY;
+		// a name that is not part of the string table is not used by any binding.
+		if (fPDOM.getStringTable().find(name) != 0) {
+			BindingCollector visitor = new BindingCollector(this, name, null, false, false, true);
+			visitor.setMonitor(monitor);
+			getIndex().accept(visitor);
+			result= visitor.getBindings();
+		}
 		synchronized(map) {
 			map.put(name, result);
 		}
@@ -18,8 +18,10 @@ import java.util.Arrays;
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.parser.util.CharArrayUtils;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentBinding;
+import org.eclipse.cdt.internal.core.pdom.PDOM;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.StringTable;
 import org.eclipse.core.runtime.CoreException;
 
 /**
@@ -28,7 +30,8 @@ import org.eclipse.core.runtime.CoreException;
  */
 public abstract class PDOMNamedNode extends PDOMNode {
 	/**
-	 * Offset of pointer to node name (relative to the beginning of the record).
+	 * Offset of pointer to node name (relative to the beginning of the record). The name is 
+	 * part of the string table of the pdom.
 	 */
 	private static final int NAME = PDOMNode.RECORD_SIZE + 0;
 
@@ -49,16 +52,16 @@ public abstract class PDOMNamedNode extends PDOMNode {
 		
 		fName= name;
 		final Database db = linkage.getDB();
-		db.putRecPtr(record + NAME, name != null ? db.newString(name).getRecord() : 0);
+		db.putRecPtr(record + NAME, name != null ? linkage.getPDOM().getStringTable().intern(name).getRecord() : 0);
 	}
 
 	/**
 	 * For linkages, only.
 	 */
-	protected PDOMNamedNode(Database db, char[] name) throws CoreException {
-		super(db);
+	protected PDOMNamedNode(PDOM pdom, char[] name) throws CoreException {
+		super(pdom.getDB());
 		fName= name;
-		db.putRecPtr(record + NAME, name != null ? db.newString(name).getRecord() : 0);
+		pdom.getDB().putRecPtr(record + NAME, name != null ? pdom.getStringTable().intern(name).getRecord() : 0);
 	}
 	
 	@Override
@@ -72,6 +75,14 @@ public abstract class PDOMNamedNode extends PDOMNode {
 		long namerec = db.getRecPtr(record + NAME);
 		return db.getString(namerec);
 	}
+
+	/**
+	 * Returns the record of the name of the node at the given record. Names are interned,
+	 * two nodes of a pdom have the same name if and only if the records of their names are equal.
+	 */
+	public static long getNameRecord(Database db, long record) throws CoreException {
+		return db.getRecPtr(record + NAME);
+	}
 	
 	public char[] getNameCharArray() throws CoreException {
 		if (fName != null)
@@ -97,21 +108,30 @@ public abstract class PDOMNamedNode extends PDOMNode {
 		
 		IString name= getDBName();
 		if (!name.equals(nameCharArray)) {
-			name.delete();
-			final Database db= getDB();
-			db.putRecPtr(record + NAME, db.newString(nameCharArray).getRecord());
+			final StringTable strings= getPDOM().getStringTable();
+			strings.release(name.getRecord());
+			getDB().putRecPtr(record + NAME, strings.intern(nameCharArray).getRecord());
 		}
 		fName= nameCharArray;
 	}
 
 
-	@Override
-	public void delete(PDOMLinkage linkage) throws CoreException {
+	/**
+	 * Releases the name of this node, for nodes that are removed without calling 
+	 * {@link #delete(PDOMLinkage)}.
+	 */
+	protected void releaseName(PDOMLinkage linkage) throws CoreException {
 		final Database db = getDB();
 		final long namerec= db.getRecPtr(record + NAME);
 		if (namerec != 0) {
-			db.free(namerec);
+			db.putRecPtr(record + NAME, 0);
+			linkage.getPDOM().getStringTable().release(namerec);
 		}
+	}
+
+	@Override
+	public void delete(PDOMLinkage linkage) throws CoreException {
+		releaseName(linkage);
 		super.delete(linkage);
 	}
 	
@@ -169,6 +169,7 @@ public abstract class PDOMNode implements IInternalPDOMNode {
 	 * @throws CoreException 
 	 */
 	public void delete(PDOMLinkage linkage) throws CoreException {
+		getPDOM().nodeDeleted();
 		getDB().free(record);
 	}
 }
\ No newline at end of file
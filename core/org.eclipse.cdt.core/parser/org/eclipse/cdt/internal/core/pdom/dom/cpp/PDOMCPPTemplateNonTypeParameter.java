@@ -97,7 +97,7 @@ class PDOMCPPTemplateNonTypeParameter extends PDOMCPPBinding implements IPDOMMem
 	}
 
 	public void forceDelete(PDOMLinkage linkage) throws CoreException {
-		getDBName().delete();
+		releaseName(linkage);
 		linkage.storeType(record+TYPE_OFFSET, null);
 		linkage.storeValue(record+DEFAULTVAL, null);
 	}
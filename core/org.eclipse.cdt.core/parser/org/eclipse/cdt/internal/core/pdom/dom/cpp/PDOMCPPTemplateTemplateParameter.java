@@ -228,7 +228,7 @@ public class PDOMCPPTemplateTemplateParameter extends PDOMCPPBinding
 	}
 
 	public void forceDelete(PDOMLinkage linkage) throws CoreException {
-		getDBName().delete();
+		releaseName(linkage);
 		linkage.storeType(record + DEFAULT_TYPE, null);
 
 		final Database db= getDB();
@@ -199,7 +199,7 @@ class PDOMCPPTemplateTypeParameter extends PDOMCPPBinding implements IPDOMMember
 	}
 	
 	public void forceDelete(PDOMLinkage linkage) throws CoreException {
-		getDBName().delete();
+		releaseName(linkage);
 		getLinkage().storeType(record + DEFAULT_TYPE, null);
 	}
 }
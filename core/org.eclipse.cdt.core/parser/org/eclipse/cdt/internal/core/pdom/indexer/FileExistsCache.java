@@ -27,7 +27,7 @@ import org.eclipse.core.runtime.CoreException;
 /**
  * A cache for checking whether a file exists. The cache shall be used for a limited amount of time, only (e.g. one 
  * indexer task). It uses as much memory as it needs. To protect against OutOfMemory situations, a soft reference is
- * used.
+ * used. The cache can be accessed by multiple threads.
  * @since 5.0
  */
 public final class FileExistsCache {
@@ -88,7 +88,10 @@ public final class FileExistsCache {
 		if (fCaseInSensitive)
 			name= name.toUpperCase();
 		
-		Content avail= getExistsCache().get(parent); 
+		Content avail;
+		synchronized (this) {
+			avail= getExistsCache().get(parent);
+		}
 		if (avail == null) {
 			String[] files = null;
 			try {
@@ -108,7 +111,9 @@ public final class FileExistsCache {
 				Arrays.sort(files);
 				avail= new Content(files);
 			}
-			getExistsCache().put(parent, avail);
+			synchronized (this) {
+				getExistsCache().put(parent, avail);
+			}
 		}
 		int idx= Arrays.binarySearch(avail.fNames, name);
 		if (idx < 0)
@@ -116,17 +121,18 @@ public final class FileExistsCache {
 		idx *= 2;
 		
 		final BitSet isFileBitset = avail.fIsFile;
-		if (isFileBitset.get(idx))
-			return true;
-		if (isFileBitset.get(idx+1))
-			return false;
+		synchronized (isFileBitset) {
+			if (isFileBitset.get(idx))
+				return true;
+			if (isFileBitset.get(idx+1))
+				return false;
+		}
 		
-		if ((file != null && file.isFile()) || (fileStore != null && !fileStore.fetchInfo().isDirectory())) {
-			isFileBitset.set(idx);
-			return true;
+		final boolean isFile= (file != null && file.isFile()) || (fileStore != null && !fileStore.fetchInfo().isDirectory());
+		synchronized (isFileBitset) {
+			isFileBitset.set(isFile ? idx : idx+1);
 		}
-		isFileBitset.set(idx+1);
-		return false;
+		return isFile;
 	}
 
 	private Map<String, Content> getExistsCache() {
@@ -57,6 +57,7 @@ public class IndexerPreferences {
 	public static final String KEY_SKIP_MACRO_REFERENCES= "skipMacroReferences"; //$NON-NLS-1$
 	public static final String KEY_UPDATE_POLICY= "updatePolicy"; //$NON-NLS-1$
 	public static final String KEY_SKIP_FILES_LARGER_THAN_MB = "skipFilesLargerThanMB"; //$NON-NLS-1$
+	public static final String KEY_PARSER_THREADS= "parserThreads"; //$NON-NLS-1$
 
 	private static final String KEY_INDEXER_PREFS_SCOPE = "preferenceScope"; //$NON-NLS-1$
 	private static final String KEY_INDEX_IMPORT_LOCATION = "indexImportLocation"; //$NON-NLS-1$
@@ -76,6 +77,7 @@ public class IndexerPreferences {
 		"cstdio";              // configures stdio.h for c++ !! fragments bits/signum.h !!	//$NON-NLS-1$
 	private static final int DEFAULT_UPDATE_POLICY= 0;
 	public static final int DEFAULT_FILE_SIZE_LIMIT = 8;
+	public static final int DEFAULT_PARSER_THREADS = 1;
 
 	private static final String QUALIFIER = CCorePlugin.PLUGIN_ID;
 	private static final String INDEXER_NODE = "indexer"; //$NON-NLS-1$
@@ -430,6 +432,36 @@ public class IndexerPreferences {
 		return DEFAULT_UPDATE_POLICY;
 	}
 
+	/**
+	 * Returns the number of threads the indexer uses for parsing files. The index is
+	 * always written by a single thread.
+	 */
+	public static int getParserThreadCount() {
+		// no support for project specific thread counts
+		String val= Platform.getPreferencesService().get(KEY_PARSER_THREADS, null, getInstancePreferencesArray());
+		if (val != null) {
+			try {
+				int result= Integer.parseInt(val);
+				if (result > 0) {
+					return result;
+				}
+			} catch (NumberFormatException e) {
+				CCorePlugin.log(e);
+			}
+		}
+		return DEFAULT_PARSER_THREADS;
+	}
+
+	/**
+	 * Sets the number of threads the indexer uses for parsing files.
+	 */
+	public static void setParserThreadCount(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException();
+		}
+		getInstancePreferences().put(KEY_PARSER_THREADS, String.valueOf(count));
+	}
+
 	public static boolean preferDefaultLanguage(IProject project) {
 		IPreferencesService prefService = Platform.getPreferencesService();
 		Preferences[] prefs= IndexerPreferences.getPreferences(project);
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    CDT contributors - initial API and implementation
+ *******************************************************************************/ 
+package org.eclipse.cdt.internal.core.pdom.indexer;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.dom.IPDOMIndexer;
+import org.eclipse.cdt.core.dom.IPDOMIndexerTask;
+import org.eclipse.cdt.internal.core.pdom.IndexerProgress;
+import org.eclipse.cdt.internal.core.pdom.WritablePDOM;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Merges the free blocks of a pdom and truncates the free chunks at the end of the database.
+ * Records are not relocated. Scheduled when the indexer has become idle.
+ */
+public class TruncatePDOMTask implements IPDOMIndexerTask {
+	private final WritablePDOM fPDOM;
+	private final IPDOMIndexer fIndexer;
+
+	/**
+	 * @param pdom the database to truncate.
+	 * @param indexer the indexer of the project owning the database, used to cancel the task 
+	 * when the project is closed or deleted. 
+	 */
+	public TruncatePDOMTask(WritablePDOM pdom, IPDOMIndexer indexer) {
+		fPDOM= pdom;
+		fIndexer= indexer;
+	}
+
+	public IPDOMIndexer getIndexer() {
+		return fIndexer;
+	}
+
+	public IndexerProgress getProgressInformation() {
+		return new IndexerProgress();
+	}
+
+	public void run(IProgressMonitor monitor) throws InterruptedException {
+		try {
+			if (!fPDOM.isTruncationRecommended())
+				return;
+
+			final long size= fPDOM.getDatabaseSizeBytes();
+			final long time= System.currentTimeMillis();
+			final long reclaimed= fPDOM.truncateTrailingFreeSpace(monitor);
+			if (PDOMIndexerTask.checkDebugOption(IPDOMIndexerTask.TRACE_STATISTICS, "true")) { //$NON-NLS-1$
+				System.out.println("C/C++ Indexer: Truncated " + fPDOM.getDB().getLocation().getName()  //$NON-NLS-1$
+						+ " (" + size + " bytes), reclaimed " + reclaimed + " bytes in "  //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+						+ (System.currentTimeMillis() - time) + " ms.");  //$NON-NLS-1$
+			}
+		} catch (CoreException e) {
+			CCorePlugin.log(e);
+		}
+	}
+
+	public boolean acceptUrgentTask(IPDOMIndexerTask task) {
+		return false;
+	}
+}
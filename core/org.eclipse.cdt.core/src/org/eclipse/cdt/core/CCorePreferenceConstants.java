@@ -123,6 +123,18 @@ public class CCorePreferenceConstants {
 	 */
 	public static final String DEFAULT_MAX_INDEX_DB_CACHE_SIZE_MB = "64"; //$NON-NLS-1$
 
+	/**
+	 * Size of the chunks of newly created index-dbs in kilobytes, a power of two between 4 and 64. 
+	 * @since 5.3
+	 */
+	public static final String INDEX_DB_CHUNK_SIZE_KB = CCorePlugin.PLUGIN_ID + ".indexDBChunkSizeKB"; //$NON-NLS-1$
+
+	/**
+	 * Default size of the chunks of newly created index-dbs in kilobytes.
+	 * @since 5.3
+	 */
+	public static final String DEFAULT_INDEX_DB_CHUNK_SIZE_KB = "4"; //$NON-NLS-1$
+
 	/**
 	 * Boolean preference controlling whether paths of non-workspace files are stored in index in canonical
 	 * form or not. Canonicalization is performed by calling {@link java.io.File#getCanonicalPath()}.
@@ -1096,24 +1096,26 @@ public class MIExpressions extends AbstractDsfService implements IMIExpressions,
 		
 		if (exprCtx instanceof MIExpressionDMC) {
 			fExpressionCache.execute(
-					new ExprMetaGetChildren(exprCtx, startIndex + length),				
+					new ExprMetaGetChildren(exprCtx, startIndex, startIndex + length),				
 					new DataRequestMonitor<ExprMetaGetChildrenInfo>(getExecutor(), rm) {
 						@Override
 						protected void handleSuccess() {
 							ExpressionInfo[] childrenExpr = getData().getChildrenExpressions();
+							// The children may be provided from the start index, only
+							int offset = startIndex - getData().getStartIndex();
 
-							if (startIndex >= childrenExpr.length) {
+							if (offset >= childrenExpr.length) {
 								rm.setStatus(new Status(IStatus.ERROR, GdbPlugin.PLUGIN_ID, REQUEST_FAILED, "Invalid range for evaluating sub expressions.", null)); //$NON-NLS-1$
 								rm.done();
 								return;
 							}
 
-							int numChildren = childrenExpr.length - startIndex;
+							int numChildren = childrenExpr.length - offset;
 							numChildren = Math.min(length, numChildren);
 							IExpressionDMContext[] childrenArray = new IExpressionDMContext[numChildren];
 							for (int i=0; i < numChildren; i++) {
 								childrenArray[i] = createExpression(
-										exprCtx.getParents()[0], childrenExpr[startIndex + i]);
+										exprCtx.getParents()[0], childrenExpr[offset + i]);
 							}
 							rm.setData(childrenArray);
 							rm.done();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 Wind River Systems and others.
+ * Copyright (c) 2007, 2011 Wind River Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@
  *******************************************************************************/
 package org.eclipse.cdt.dsf.mi.service;
 
+import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.LinkedList;
@@ -63,6 +64,29 @@ import org.osgi.framework.BundleContext;
 public class MIMemory extends AbstractDsfService implements IMemory, ICachingService {
 
 	private static final String READ_MEMORY_BYTES_FEATURE = "data-read-memory-bytes"; //$NON-NLS-1$
+
+	/**
+	 * Memory is read from the back end in multiples of this number of bytes, aligned
+	 * on a multiple of it.
+	 */
+	private static final int PAGE_SIZE = 256;
+
+	/**
+	 * The maximum number of bytes read beyond a request in the direction the memory is scrolled.
+	 */
+	private static final int MAX_READ_AHEAD = 16 * 1024;
+
+	/**
+	 * Contiguous cached blocks are merged up to this length, such that the cache can evict
+	 * memory in reasonably small units.
+	 */
+	private static final int MAX_BLOCK_LENGTH = 16 * 1024;
+
+	/**
+	 * The default for the number of bytes of target memory kept by the memory caches of a session,
+	 * can be changed with the system property <code>org.eclipse.cdt.dsf.gdb.memoryCacheSize</code>.
+	 */
+	private static final int DEFAULT_CACHE_SIZE_LIMIT = Integer.getInteger("org.eclipse.cdt.dsf.gdb.memoryCacheSize", 256 * 1024).intValue(); //$NON-NLS-1$
 	
     public class MemoryChangedEvent extends AbstractDMEvent<IMemoryDMContext> 
         implements IMemoryChangedEvent 
@@ -99,6 +123,14 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
     // Whether the -data-read-memory-bytes should be used
     // instead of -data-read-memory
     private boolean fDataReadMemoryBytes;
+
+    // The bound of the memory caches and their statistics. The blocks least recently 
+    // used are evicted when the caches exceed the limit.
+    private long fCacheSizeLimit = DEFAULT_CACHE_SIZE_LIMIT;
+    private long fUseCount;
+    private long fCacheHits;
+    private long fCacheMisses;
+    private long fEvictions;
     
 	/**
 	 *  Constructor 
@@ -313,6 +345,95 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
     	getMemoryCache(memoryDMC).setMemory(memoryDMC, address, offset, word_size, count * length, buffer, rm);
     }
 
+    ///////////////////////////////////////////////////////////////////////
+    // Memory cache
+    // Like the other methods of the service, these have to be called on
+    // the executor of the session.
+    ///////////////////////////////////////////////////////////////////////
+
+    /**
+     * Sets the number of bytes of target memory the memory caches may keep, the blocks least 
+     * recently used are evicted to meet the limit.
+     * 
+     * @since 4.0
+     */
+    public void setCacheSizeLimit(long limit) {
+    	fCacheSizeLimit = limit;
+    	evictMemoryBlocks();
+    }
+
+    /**
+     * @since 4.0
+     */
+    public long getCacheSizeLimit() {
+    	return fCacheSizeLimit;
+    }
+
+    /**
+     * Returns the number of bytes of target memory kept by the memory caches.
+     * 
+     * @since 4.0
+     */
+    public long getCacheBytesHeld() {
+    	long size = 0;
+    	for (MIMemoryCache cache : fMemoryCaches.values()) {
+    		size += cache.fSize;
+    	}
+    	return size;
+    }
+
+    /**
+     * Returns the number of memory requests that were served from the cache.
+     * 
+     * @since 4.0
+     */
+    public long getCacheHitCount() {
+    	return fCacheHits;
+    }
+
+    /**
+     * Returns the number of memory requests that required reading from the back end.
+     * 
+     * @since 4.0
+     */
+    public long getCacheMissCount() {
+    	return fCacheMisses;
+    }
+
+    /**
+     * Returns the number of memory blocks evicted from the cache to meet the size limit.
+     * 
+     * @since 4.0
+     */
+    public long getCacheEvictionCount() {
+    	return fEvictions;
+    }
+
+    /**
+     * Evicts the blocks least recently used until the caches meet the size limit.
+     */
+    private void evictMemoryBlocks() {
+    	long size = getCacheBytesHeld();
+    	while (size > fCacheSizeLimit) {
+    		MIMemoryCache lruCache = null;
+    		MemoryBlock lruBlock = null;
+    		for (MIMemoryCache cache : fMemoryCaches.values()) {
+    			for (MemoryBlock block : cache.fMemoryBlockList) {
+    				if (lruBlock == null || block.fLastUse < lruBlock.fLastUse) {
+    					lruCache = cache;
+    					lruBlock = block;
+    				}
+    			}
+    		}
+    		if (lruBlock == null)
+    			break;
+    		lruCache.fMemoryBlockList.remove(lruBlock);
+    		lruCache.fSize -= lruBlock.fLength;
+    		size -= lruBlock.fLength;
+    		fEvictions++;
+    	}
+    }
+
     ///////////////////////////////////////////////////////////////////////
     // Back-end functions 
     ///////////////////////////////////////////////////////////////////////
@@ -518,10 +639,13 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 		public IAddress fAddress;
 		public long fLength;
 		public MemoryByte[] fBlock;
+		// For the eviction of the least recently used blocks
+		public long fLastUse;
 		public MemoryBlock(IAddress address, long length, MemoryByte[] block) {
 			fAddress = address;
 			fLength = length;
 			fBlock = block;
+			fLastUse = ++fUseCount;
 		}
 	}
 
@@ -565,7 +689,7 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 		}
 
 		// Merge this block with its contiguous neighbors (if any)
-		// Note: Merge is not performed if resulting block size would exceed MAXINT
+		// Note: Merge is not performed if resulting block size would exceed MAX_BLOCK_LENGTH
 		private void compact(int index) {
 
 			MemoryBlock newBlock = get(index); 
@@ -576,7 +700,7 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 				IAddress endOfPreviousBlock = prevBlock.fAddress.add(prevBlock.fLength);
 				if (endOfPreviousBlock.distanceTo(newBlock.fAddress).longValue() == 0) {
 					long newLength = prevBlock.fLength + newBlock.fLength;
-					if (newLength <= Integer.MAX_VALUE) {
+					if (newLength <= MAX_BLOCK_LENGTH) {
 						MemoryByte[] block = new MemoryByte[(int) newLength] ;
 						System.arraycopy(prevBlock.fBlock, 0, block, 0, (int) prevBlock.fLength);
 						System.arraycopy(newBlock.fBlock, 0, block, (int) prevBlock.fLength, (int) newBlock.fLength);
@@ -595,7 +719,7 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 				IAddress endOfNewBlock = newBlock.fAddress.add(newBlock.fLength);
 				if (endOfNewBlock.distanceTo(nextBlock.fAddress).longValue() == 0) {
 					long newLength = newBlock.fLength + nextBlock.fLength;
-					if (newLength <= Integer.MAX_VALUE) {
+					if (newLength <= MAX_BLOCK_LENGTH) {
 						MemoryByte[] block = new MemoryByte[(int) newLength] ;
 						System.arraycopy(newBlock.fBlock, 0, block, 0, (int) newBlock.fLength);
 						System.arraycopy(nextBlock.fBlock, 0, block, (int) newBlock.fLength, (int) nextBlock.fLength);
@@ -615,6 +739,14 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 	private class MIMemoryCache {
 		// The memory cache data structure
 		private SortedMemoryBlockList fMemoryBlockList;
+		// The number of bytes cached
+		private long fSize;
+
+		// The previous request and the number of bytes to read beyond the next one, 
+		// positive when the memory is scrolled forward, negative when scrolled backward.
+		private IAddress fLastRequestStart;
+		private IAddress fLastRequestEnd;
+		private int fReadAhead;
 
 		public MIMemoryCache() {
 	    	// Create the memory block cache
@@ -624,6 +756,10 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 		public void reset() {
 	    	// Clear the memory cache
 	    	fMemoryBlockList.clear();
+	    	fSize = 0;
+	    	fLastRequestStart = null;
+	    	fLastRequestEnd = null;
+	    	fReadAhead = 0;
 		}
 
 	    /**
@@ -749,6 +885,8 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 	     *       :       [c-----+------]       :
 	     *       :       [c'---]+[c"---]       :
 		 *
+		 *  The bytes of the requested block that are not cached are left <code>null</code>.
+		 *
 	     * @param reqBlockStart The address of the requested block
 	     * @param count Its length
 	     * @return The cached memory content
@@ -770,6 +908,7 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 				{
 					int pos = (int) cachedBlockStart.distanceTo(reqBlockStart).longValue();
 					System.arraycopy(cachedBlock.fBlock, pos, resultBlock, 0, count);
+					cachedBlock.fLastUse = ++fUseCount;
 				}
 				
 				// Case where the beginning of the cached block is within the requested memory block  
@@ -779,6 +918,7 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 					int pos = (int) reqBlockStart.distanceTo(cachedBlockStart).longValue();
 					int length = (int) Math.min(cachedBlock.fLength, count - pos);
 					System.arraycopy(cachedBlock.fBlock, 0, resultBlock, pos, length);
+					cachedBlock.fLastUse = ++fUseCount;
 				}
 				
 				// Case where the end of the cached block is within the requested memory block  
@@ -788,6 +928,7 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 					int pos = (int) cachedBlockStart.distanceTo(reqBlockStart).longValue();
 					int length = (int) Math.min(cachedBlock.fLength - pos, count);
 					System.arraycopy(cachedBlock.fBlock, pos, resultBlock, 0, length);
+					cachedBlock.fLastUse = ++fUseCount;
 				}
  			}
 			return resultBlock;
@@ -853,45 +994,179 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 	     * @param count		the number of bytes to read
 	     * @param drm		the asynchronous data request monitor
 	     */
-	    public void getMemory(IMemoryDMContext memoryDMC, final IAddress address, final int word_size, 
+	    public void getMemory(final IMemoryDMContext memoryDMC, final IAddress address, final int word_size, 
 	    		final int count, final DataRequestMonitor<MemoryByte[]> drm)
 	    {
-	    	// Determine the number of read requests to issue 
+	    	// Determine the blocks to fetch on the target
 	    	LinkedList<MemoryBlock> missingBlocks = getListOfMissingBlocks(address, count);
-	    	int numberOfRequests = missingBlocks.size();
+	    	updateReadAhead(address, count);
+
+	    	// The bytes already cached are copied right away, such that the result does
+	    	// not depend on blocks evicted while the missing ones are read
+	    	final MemoryByte[] result = getMemoryBlockFromCache(address, count);
+	    	if (missingBlocks.isEmpty()) {
+	    		fCacheHits++;
+	    		drm.setData(result);
+	    		drm.done();
+	    		return;
+	    	}
+	    	fCacheMisses++;
 
 	    	// A read request will be issued for each block needed
 	    	// so we need to keep track of the count
+	    	LinkedList<MemoryBlock> reads = getListOfReads(missingBlocks);
 	        final CountingRequestMonitor countingRM =
 	        	new CountingRequestMonitor(getExecutor(), drm) { 
 	                @Override
 	                protected void handleSuccess() {
-	                	// We received everything so read the result from the memory cache
-	                	drm.setData(getMemoryBlockFromCache(address, count));
+	                	drm.setData(result);
 	                    drm.done();
 	                }
 	            };
-	       	countingRM.setDoneCount(numberOfRequests);
+	       	countingRM.setDoneCount(reads.size());
 
 	        // Issue the read requests
-	        for (int i = 0; i < numberOfRequests; i++) {
-	        	MemoryBlock block = missingBlocks.get(i);
-	        	final IAddress startAddress = block.fAddress;
-	        	final int length = (int) block.fLength;
-		        readMemoryBlock(memoryDMC, startAddress, 0, word_size, length,
-					    new DataRequestMonitor<MemoryByte[]>(getSession().getExecutor(), drm) {
-					    	@Override
-					    	protected void handleSuccess() {
-					    		MemoryByte[] block = new MemoryByte[count];
-					    		block = getData();
-					    		MemoryBlock memoryBlock = new MemoryBlock(startAddress, length, block);
-					    		fMemoryBlockList.add(memoryBlock);
-					    		countingRM.done();
-					    	}
-					    });
+	        for (MemoryBlock read : reads) {
+	        	readIntoCache(memoryDMC, read.fAddress, (int) read.fLength, word_size, address, result, countingRM);
 	        }
 	    }
 
+	    /**
+	     * Detects whether the memory is scrolled, i.e. whether the request follows or precedes the
+	     * previous one, and adapts the number of bytes to read ahead: it doubles for every request
+	     * in the same direction and is reset by any other request.
+	     */
+	    private void updateReadAhead(IAddress address, int count) {
+	    	IAddress end = address.add(count);
+	    	int readAhead = 0;
+	    	if (fLastRequestStart != null) {
+	    		if (address.compareTo(fLastRequestStart) > 0 
+	    			&& fLastRequestEnd.distanceTo(address).longValue() <= PAGE_SIZE)
+	    		{
+	    			readAhead = fReadAhead > 0 ? Math.min(2 * fReadAhead, MAX_READ_AHEAD) : PAGE_SIZE;
+	    		} else if (end.compareTo(fLastRequestEnd) < 0 
+	    			&& end.distanceTo(fLastRequestStart).longValue() <= PAGE_SIZE)
+	    		{
+	    			readAhead = fReadAhead < 0 ? Math.max(2 * fReadAhead, -MAX_READ_AHEAD) : -PAGE_SIZE;
+	    		}
+	    	}
+	    	fReadAhead = readAhead;
+	    	fLastRequestStart = address;
+	    	fLastRequestEnd = end;
+	    }
+
+	    /**
+	     * Computes the reads needed to fetch the missing blocks. The first or the last block is
+	     * extended by the read-ahead, all of them are extended to page boundaries and the reads that
+	     * are at most a page apart are merged. Bytes between missing blocks are read again rather
+	     * than paying for another round trip to the back end.
+	     */
+	    private LinkedList<MemoryBlock> getListOfReads(LinkedList<MemoryBlock> missingBlocks) {
+	    	LinkedList<MemoryBlock> reads = new LinkedList<MemoryBlock>();
+	    	IAddress lastEnd = null;
+	    	for (int i = 0; i < missingBlocks.size(); i++) {
+	    		MemoryBlock block = missingBlocks.get(i);
+	    		long before = 0;
+	    		long after = 0;
+	    		if (i == 0 && fReadAhead < 0) {
+	    			before = -fReadAhead;
+	    		}
+	    		if (i == missingBlocks.size() - 1 && fReadAhead > 0) {
+	    			after = fReadAhead;
+	    		}
+	    		IAddress start = extend(block.fAddress, -before, true);
+	    		IAddress end = extend(block.fAddress.add(block.fLength), after, false);
+
+	    		if (lastEnd != null && lastEnd.distanceTo(start).longValue() <= PAGE_SIZE) {
+	    			MemoryBlock read = reads.getLast();
+	    			read.fLength = read.fAddress.distanceTo(end).longValue();
+	    		} else {
+	    			reads.add(new MemoryBlock(start, start.distanceTo(end).longValue(), null));
+	    		}
+	    		lastEnd = end;
+	    	}
+	    	return reads;
+	    }
+
+	    /**
+	     * Moves the address by the given number of bytes and then to the previous or next page 
+	     * boundary, without leaving the address space.
+	     */
+	    private IAddress extend(IAddress address, long delta, boolean down) {
+	    	BigInteger value = address.getValue().add(BigInteger.valueOf(delta)).max(BigInteger.ZERO);
+	    	BigInteger page = BigInteger.valueOf(PAGE_SIZE);
+	    	BigInteger remainder = value.mod(page);
+	    	if (remainder.signum() != 0) {
+	    		value = down ? value.subtract(remainder) : value.add(page).subtract(remainder);
+	    	}
+	    	value = value.min(address.getMaxOffset());
+	    	return address.add(value.subtract(address.getValue()));
+	    }
+
+	    /**
+	     * Reads a block, stores the parts that are not yet cached and copies the part overlapping
+	     * the request into its result.
+	     */
+	    private void readIntoCache(final IMemoryDMContext memoryDMC, final IAddress readStart, final int length, 
+	    		final int word_size, final IAddress reqStart, final MemoryByte[] result, final RequestMonitor rm)
+	    {
+	    	readMemoryBlock(memoryDMC, readStart, 0, word_size, length,
+	    		new DataRequestMonitor<MemoryByte[]>(getSession().getExecutor(), rm) {
+	    			@Override
+	    			protected void handleSuccess() {
+	    				MemoryByte[] block = getData();
+	    				long readOffset = reqStart.distanceTo(readStart).longValue();
+	    				int from = (int) Math.max(0, readOffset);
+	    				int to = (int) Math.min(result.length, readOffset + Math.min(length, block.length));
+
+	    				// If the block had to be extended beyond the request, the extension may be
+	    				// the reason why the read failed. Read the requested part only, in that case.
+	    				if (readOffset < 0 || readOffset + length > result.length) {
+	    					for (int i = from; i < to; i++) {
+	    						if (!block[(int) (i - readOffset)].isReadable()) {
+	    							readIntoCache(memoryDMC, reqStart.add(from), to - from, word_size, reqStart, result, rm);
+	    							return;
+	    						}
+	    					}
+	    				}
+
+	    				for (int i = from; i < to; i++) {
+	    					result[i] = block[(int) (i - readOffset)];
+	    				}
+	    				storeMemoryBlock(readStart, block, Math.min(length, block.length));
+	    				evictMemoryBlocks();
+	    				rm.done();
+	    			}
+
+	    			@Override
+	    			protected void handleErrorOrWarning() {
+	    				// A read that was extended beyond the request may fail as a whole because
+	    				// of the extension.  Read the requested part only, in that case.
+	    				long readOffset = reqStart.distanceTo(readStart).longValue();
+	    				int from = (int) Math.max(0, readOffset);
+	    				int to = (int) Math.min(result.length, readOffset + length);
+	    				if ((readOffset < 0 || readOffset + length > result.length) && from < to) {
+	    					readIntoCache(memoryDMC, reqStart.add(from), to - from, word_size, reqStart, result, rm);
+	    					return;
+	    				}
+	    				super.handleErrorOrWarning();
+	    			}
+	    		});
+	    }
+
+	    /**
+	     * Adds the parts of the block that are not yet cached to the cache.
+	     */
+	    private void storeMemoryBlock(IAddress start, MemoryByte[] block, int length) {
+	    	for (MemoryBlock missing : getListOfMissingBlocks(start, length)) {
+	    		int pos = (int) start.distanceTo(missing.fAddress).longValue();
+	    		MemoryByte[] bytes = new MemoryByte[(int) missing.fLength];
+	    		System.arraycopy(block, pos, bytes, 0, bytes.length);
+	    		fMemoryBlockList.add(new MemoryBlock(missing.fAddress, missing.fLength, bytes));
+	    		fSize += missing.fLength;
+	    	}
+	    }
+
 	    /**
 		 * @param memoryDMC
 	     * @param address	the memory block address (on the target)
@@ -975,7 +1250,7 @@ public class MIMemory extends AbstractDsfService implements IMemory, ICachingSer
 						   MemoryByte[] newBlock = getData();
 						   boolean blocksDiffer = false;
 						   for (int i = 0; i < oldBlock.length; i++) {
-						       if (oldBlock[i].getValue() != newBlock[i].getValue()) {
+						       if (oldBlock[i] == null || oldBlock[i].getValue() != newBlock[i].getValue()) {
 						          blocksDiffer = true;
 						          break;
 						       }
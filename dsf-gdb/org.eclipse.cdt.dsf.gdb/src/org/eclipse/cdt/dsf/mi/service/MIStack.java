@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2010 Wind River Systems and others.
+ * Copyright (c) 2006, 2011 Wind River Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,7 @@ import java.util.Map;
 import org.eclipse.cdt.core.IAddress;
 import org.eclipse.cdt.dsf.concurrent.CountingRequestMonitor;
 import org.eclipse.cdt.dsf.concurrent.DataRequestMonitor;
+import org.eclipse.cdt.dsf.concurrent.DsfRunnable;
 import org.eclipse.cdt.dsf.concurrent.ImmediateExecutor;
 import org.eclipse.cdt.dsf.concurrent.RequestMonitor;
 import org.eclipse.cdt.dsf.datamodel.AbstractDMContext;
@@ -38,6 +39,7 @@ import org.eclipse.cdt.dsf.debug.service.command.BufferedCommandControl;
 import org.eclipse.cdt.dsf.debug.service.command.CommandCache;
 import org.eclipse.cdt.dsf.debug.service.command.ICommand;
 import org.eclipse.cdt.dsf.debug.service.command.ICommandControlService;
+import org.eclipse.cdt.dsf.debug.service.command.ICommandControlService.ICommandControlDMContext;
 import org.eclipse.cdt.dsf.gdb.internal.GdbPlugin;
 import org.eclipse.cdt.dsf.gdb.service.IGDBTraceControl.ITraceRecordSelectedChangedDMEvent;
 import org.eclipse.cdt.dsf.mi.service.command.CommandFactory;
@@ -49,6 +51,8 @@ import org.eclipse.cdt.dsf.mi.service.command.output.MIStackInfoDepthInfo;
 import org.eclipse.cdt.dsf.mi.service.command.output.MIStackListArgumentsInfo;
 import org.eclipse.cdt.dsf.mi.service.command.output.MIStackListFramesInfo;
 import org.eclipse.cdt.dsf.mi.service.command.output.MIStackListLocalsInfo;
+import org.eclipse.cdt.dsf.mi.service.command.output.MIThread;
+import org.eclipse.cdt.dsf.mi.service.command.output.MIThreadInfoInfo;
 import org.eclipse.cdt.dsf.service.AbstractDsfService;
 import org.eclipse.cdt.dsf.service.DsfServiceEventHandler;
 import org.eclipse.cdt.dsf.service.DsfSession;
@@ -141,7 +145,7 @@ public class MIStack extends AbstractDsfService
     }
     
     /**
-     * A HashMap for our StackDepth cache, that can clear based on a context.
+     * A HashMap for our caches by thread id, that can clear based on a context.
      */
     @SuppressWarnings("serial")
     private class StackDepthHashMap<V,T> extends HashMap<V,T> {
@@ -166,6 +170,18 @@ public class MIStack extends AbstractDsfService
 	// we can potentially re-use the answer.
 	private StackDepthHashMap<Integer, StackDepthInfo> fStackDepthCache = new StackDepthHashMap<Integer, StackDepthInfo>();
 
+	// When several threads stop, the top frame of each of them is requested at about the same
+	// time.  Instead of sending -stack-list-frames for every thread, the requests arriving within
+	// one dispatch cycle of the executor are collected and answered by a single -thread-info,
+	// which reports the top frame of all threads.  The frames received are kept per thread id.
+	private Map<IMIExecutionDMContext, List<DataRequestMonitor<MIFrame>>> fPendingTopFrameRequests;
+	private StackDepthHashMap<Integer, MIFrame> fTopFrameCache = new StackDepthHashMap<Integer, MIFrame>();
+	// Set when -thread-info failed, e.g. because the back end does not support it.  The command
+	// is tried again after the next suspended event.
+	private boolean fThreadInfoFailed;
+	private BufferedCommandControl fBufferedCommandControl;
+	private ICommandControlDMContext fCommandControlContext;
+
     private MIStoppedEvent fCachedStoppedEvent;
     private IRunControl fRunControl;
 
@@ -211,6 +227,8 @@ public class MIStack extends AbstractDsfService
 		// See bug 280461
         fMICommandCache = new CommandCache(getSession(), bufferedCommandControl);
         fMICommandCache.setContextAvailable(commandControl.getContext(), true);
+        fBufferedCommandControl = bufferedCommandControl;
+        fCommandControlContext = commandControl.getContext();
         fRunControl = getServicesTracker().getService(IRunControl.class);
 
         fCommandFactory = getServicesTracker().getService(IMICommandControl.class).getCommandFactory();
@@ -283,6 +301,24 @@ public class MIStack extends AbstractDsfService
 	        }
 	    }
 
+	    if (!fTraceVisualization && startIndex == 0 && endIndex == 0) {
+	    	getTopMIFrame(execDmc, new DataRequestMonitor<MIFrame>(getExecutor(), rm) {
+	    		@Override
+	    		protected void handleSuccess() {
+	    			if (getData() != null) {
+	    				rm.setData(new IFrameDMContext[] { createFrameDMContext(execDmc, getData().getLevel()) });
+	    				rm.done();
+	    			} else {
+	    				getFramesFromStackList(execDmc, startIndex, endIndex, rm);
+	    			}
+	    		}
+	    	});
+	    	return;
+	    }
+	    getFramesFromStackList(execDmc, startIndex, endIndex, rm);
+	}
+
+	private void getFramesFromStackList(final IMIExecutionDMContext execDmc, final int startIndex, final int endIndex, final DataRequestMonitor<IFrameDMContext[]> rm) {
 	    final ICommand<MIStackListFramesInfo> miStackListCmd;
 	    // firstIndex is the first index retrieved
 	    final int firstIndex;
@@ -337,6 +373,91 @@ public class MIStack extends AbstractDsfService
             });
     }
     
+    /**
+     * Retrieves the top frame of the given thread together with the top frames requested for other
+     * threads during the same dispatch cycle of the executor.  The request monitor receives
+     * <code>null</code> if the frame could not be obtained that way, the caller then has to ask
+     * for the frames of the thread.
+     */
+    private void getTopMIFrame(IMIExecutionDMContext execDmc, DataRequestMonitor<MIFrame> rm) {
+    	MIFrame frame = fTopFrameCache.get(execDmc.getThreadId());
+    	if (frame != null || fThreadInfoFailed) {
+    		rm.setData(frame);
+    		rm.done();
+    		return;
+    	}
+
+    	if (fPendingTopFrameRequests == null) {
+    		fPendingTopFrameRequests = new LinkedHashMap<IMIExecutionDMContext, List<DataRequestMonitor<MIFrame>>>();
+    		getExecutor().execute(new DsfRunnable() {
+    			public void run() {
+    				sendPendingTopFrameRequests();
+    			}
+    		});
+    	}
+    	List<DataRequestMonitor<MIFrame>> rms = fPendingTopFrameRequests.get(execDmc);
+    	if (rms == null) {
+    		rms = new ArrayList<DataRequestMonitor<MIFrame>>();
+    		fPendingTopFrameRequests.put(execDmc, rms);
+    	}
+    	rms.add(rm);
+    }
+
+    private void sendPendingTopFrameRequests() {
+    	final Map<IMIExecutionDMContext, List<DataRequestMonitor<MIFrame>>> pending = fPendingTopFrameRequests;
+    	fPendingTopFrameRequests = null;
+
+    	if (pending.size() == 1) {
+    		// For a single thread -stack-list-frames is cheaper, and it is shared with 
+    		// the other requests for the frames of the thread by the command cache.
+    		completeTopFrameRequests(pending, new HashMap<String, MIFrame>());
+    		return;
+    	}
+
+    	// The command is not cached, the frames received are stored per thread instead. It goes through
+    	// the buffered command control such that the result is processed after the events that 
+    	// preceded it, see doInitialize().
+    	fBufferedCommandControl.queueCommand(
+    		fCommandFactory.createMIThreadInfo(fCommandControlContext),
+    		new DataRequestMonitor<MIThreadInfoInfo>(getExecutor(), null) {
+    			@Override
+    			protected void handleCompleted() {
+    				Map<String, MIFrame> frames = new HashMap<String, MIFrame>();
+    				if (isSuccess()) {
+    					for (MIThread thread : getData().getThreadList()) {
+    						if (thread.getTopFrame() != null) {
+    							frames.put(thread.getThreadId(), thread.getTopFrame());
+    						}
+    					}
+    				} else {
+    					// Don't try again before the next stop, until then the frames are 
+    					// requested per thread.
+    					fThreadInfoFailed = true;
+    				}
+    				completeTopFrameRequests(pending, frames);
+    			}
+    		});
+    }
+
+    private void completeTopFrameRequests(Map<IMIExecutionDMContext, List<DataRequestMonitor<MIFrame>>> pending, Map<String, MIFrame> frames) {
+    	for (Map.Entry<IMIExecutionDMContext, List<DataRequestMonitor<MIFrame>>> entry : pending.entrySet()) {
+    		final IMIExecutionDMContext execDmc = entry.getKey();
+    		MIFrame frame = frames.get(Integer.toString(execDmc.getThreadId()));
+    		if (frame != null) {
+    			// The thread may have been resumed in the meantime.
+    			if (fRunControl.isSuspended(execDmc)) {
+    				fTopFrameCache.put(execDmc.getThreadId(), frame);
+    			} else {
+    				frame = null;
+    			}
+    		}
+    		for (DataRequestMonitor<MIFrame> rm : entry.getValue()) {
+    			rm.setData(frame);
+    			rm.done();
+    		}
+    	}
+    }
+
     private IFrameDMContext[] getFrames(IMIExecutionDMContext execDmc, MIStackListFramesInfo info, int firstIndex, int lastIndex, int startIndex) {
         int length = info.getMIFrames().length;
         if (lastIndex > 0) {
@@ -358,6 +479,10 @@ public class MIStack extends AbstractDsfService
 
     
     public void getFrameData(final IFrameDMContext frameDmc, final DataRequestMonitor<IFrameDMData> rm) {
+    	getFrameData(frameDmc, true, rm);
+    }
+
+    private void getFrameData(final IFrameDMContext frameDmc, boolean useTopFrameRequests, final DataRequestMonitor<IFrameDMData> rm) {
         if (!(frameDmc instanceof MIFrameDMC)) {
             rm.setStatus(new Status(IStatus.ERROR, GdbPlugin.PLUGIN_ID, INVALID_HANDLE, "Invalid context type " + frameDmc, null)); //$NON-NLS-1$
             rm.done();
@@ -425,6 +550,27 @@ public class MIStack extends AbstractDsfService
         	}
         }
 
+        // Otherwise the top frame is requested together with the top frames of other
+        // threads, see getTopMIFrame().
+        if (useTopFrameRequests && !fTraceVisualization && miFrameDmc.fLevel == 0) {
+        	getTopMIFrame(execDmc, new DataRequestMonitor<MIFrame>(getExecutor(), rm) {
+        		@Override
+        		protected void handleSuccess() {
+        			final MIFrame frame = getData();
+        			if (frame != null) {
+        				rm.setData(new FrameData() {
+        					@Override
+        					protected MIFrame getMIFrame() { return frame; }
+        				});
+        				rm.done();
+        			} else {
+        				getFrameData(frameDmc, false, rm);
+        			}
+        		}
+        	});
+        	return;
+        }
+
         // If not, retrieve the full list of frame data.
         class FrameDataFromMIStackFrameListInfo extends FrameData {
             private MIStackListFramesInfo fFrameDataCacheInfo;
@@ -985,10 +1131,12 @@ public class MIStack extends AbstractDsfService
     @DsfServiceEventHandler 
     public void eventDispatched(IResumedDMEvent e) {
     	fMICommandCache.setContextAvailable(e.getDMContext(), false);
+    	fTopFrameCache.clear(e.getDMContext());
         if (e.getReason() != StateChangeReason.STEP) {
             fCachedStoppedEvent = null;
             fMICommandCache.reset();
             fStackDepthCache.clear();
+            fTopFrameCache.clear();
         }
     }
     
@@ -1002,6 +1150,8 @@ public class MIStack extends AbstractDsfService
     	fMICommandCache.setContextAvailable(e.getDMContext(), true);
         fMICommandCache.reset();
         fStackDepthCache.clear();
+        fTopFrameCache.clear();
+        fThreadInfoFailed = false;
     }
     
 
@@ -1035,6 +1185,7 @@ public class MIStack extends AbstractDsfService
 	public void flushCache(IDMContext context) {
         fMICommandCache.reset(context);
        	fStackDepthCache.clear(context);
+       	fTopFrameCache.clear(context);
 	}
 
 }
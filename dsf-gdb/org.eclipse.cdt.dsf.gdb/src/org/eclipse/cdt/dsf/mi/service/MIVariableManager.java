@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2010 Monta Vista and others.
+ * Copyright (c) 2008, 2011 Monta Vista and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -133,7 +133,9 @@ import org.eclipse.core.runtime.Status;
  *   accessed using the gdb-given name to allow quick updates from the -var-update 
  *   result (see below.)
  * 
- * - we do not use -var-list-children for arrays, but create them manually
+ * - we do not use -var-list-children for arrays, but create them manually.  The
+ *   expressions of the elements are created on demand, for the range of elements
+ *   requested by the view, such that expanding a huge array is cheap.
  *  
  * - when the program stops, we should mark all roots as needing to be updated. 
  * To achieve this efficiently, we have a dedicated list of roots that are updated.
@@ -364,6 +366,9 @@ public class MIVariableManager implements ICommandControl {
 		// The children of this variable, if any.  
 		// Null means we didn't fetch them yet, while an empty array means no children
         private ExpressionInfo[] children = null; 
+        // The elements of an array that have been requested so far, by their index.
+        // Null means that none were requested yet.
+        private Map<Integer, ExpressionInfo> arrayElements = null;
 		private boolean hasMore = false;
 		private MIDisplayHint displayHint = MIDisplayHint.NONE;
 		
@@ -645,6 +650,46 @@ public class MIVariableManager implements ICommandControl {
         	addChildren(plainChildren);
         }
         
+        /**
+         * Returns the elements of this array in the range [from, to), creating those that
+         * have not been requested before.  Only the elements shown by the view are ever
+         * created, which keeps expanding an array with millions of elements cheap.
+         * 
+         * @param exprDmc the expression of this array
+         * @return the elements of the range, limited to the size of the array.
+         */
+        private ExpressionInfo[] getArrayElements(MIExpressionDMC exprDmc, int from, int to) {
+        	from = Math.max(from, 0);
+        	to = Math.min(to, getNumChildrenHint());
+        	if (from >= to) return new ExpressionInfo[0];
+
+        	if (arrayElements == null) {
+        		arrayElements = new HashMap<Integer, ExpressionInfo>();
+        	}
+        	String exprName = exprDmc.getExpression();
+        	int castingIndex = 0;
+        	// in case of casts, need to resolve that before dereferencing, to be safe
+        	if (exprDmc instanceof ICastedExpressionDMContext) {
+        		// When casting, if we are dealing with a resulting array, we should surround
+        		// it with parenthesis before we subscript it.
+        		exprName = '(' + exprName + ')';
+        		castingIndex = ((ICastedExpressionDMContext)exprDmc).getCastInfo().getArrayStartIndex();
+        	}
+        	ExpressionInfo[] elements = new ExpressionInfo[to - from];
+        	for (int i = from; i < to; i++) {
+        		ExpressionInfo element = arrayElements.get(i);
+        		if (element == null) {
+        			String fullExpr = exprName + "[" + i + "]";//$NON-NLS-1$//$NON-NLS-2$
+        			String relExpr = exprDmc.getRelativeExpression() + "[" + (castingIndex + i) + "]";//$NON-NLS-1$//$NON-NLS-2$
+
+        			element = new ExpressionInfo(fullExpr, relExpr, false, exprInfo, i);
+        			arrayElements.put(i, element);
+        		}
+        		elements[i - from] = element;
+        	}
+        	return elements;
+        }
+
         /**
          * @param newNumChildren
          * 
@@ -665,6 +710,17 @@ public class MIVariableManager implements ICommandControl {
         		children = new ExpressionInfo[newNumChildren];
         		System.arraycopy(oldChildren, 0, children, 0, newNumChildren);
         	}
+        	if (arrayElements != null) {
+        		for (Iterator<Map.Entry<Integer, ExpressionInfo>> it = arrayElements.entrySet().iterator(); it.hasNext();) {
+        			Map.Entry<Integer, ExpressionInfo> entry = it.next();
+        			if (entry.getKey() >= newNumChildren) {
+        				VariableObjectId childId = new VariableObjectId();
+        				childId.generateId(entry.getValue().getFullExpr(), getInternalId());
+        				lruVariableList.remove(childId);
+        				it.remove();
+        			}
+        		}
+        	}
         	
         	numChildrenHint = newNumChildren;
         }
@@ -1251,27 +1307,10 @@ public class MIVariableManager implements ICommandControl {
 	        // to avoid creating an enormous amount of children variable objects that the view may
 	        // never need.  Using -var-list-children will create a variable object for every child
 	        // immediately, that is why we don't want to use it for arrays.
+	        // A range of elements is better requested with getArrayElements().
 	        if (isArray()) {
-	        	ExpressionInfo[] childrenOfArray = new ExpressionInfo[getNumChildrenHint()];
-	        	String exprName = exprDmc.getExpression();
-	        	
-        		int castingIndex = 0;
-	        	// in case of casts, need to resolve that before dereferencing, to be safe
-	        	if (exprDmc instanceof ICastedExpressionDMContext) {
-	        		// When casting, if we are dealing with a resulting array, we should surround
-	        		// it with parenthesis before we subscript it.
-	        		exprName = '(' + exprName + ')';
-	        		castingIndex = ((ICastedExpressionDMContext)exprDmc).getCastInfo().getArrayStartIndex();
-	        	}
-	        	for (int i= 0; i < childrenOfArray.length; i++) {
-	        		String fullExpr = exprName + "[" + i + "]";//$NON-NLS-1$//$NON-NLS-2$
-	        		String relExpr = exprDmc.getRelativeExpression() + "[" + (castingIndex + i) + "]";//$NON-NLS-1$//$NON-NLS-2$
-
-	        		childrenOfArray[i] = new ExpressionInfo(fullExpr, relExpr, false, exprInfo, i);
-	        	}
-
 	        	// First store these children, for the next time
-				setChildren(childrenOfArray);
+				setChildren(getArrayElements(exprDmc, 0, getNumChildrenHint()));
 				hasMore = false;
 				rm.setData(new ChildrenInfo(getChildren(), hasMore));
 	        	rm.done();
@@ -2234,9 +2273,6 @@ public class MIVariableManager implements ICommandControl {
 	private class LRUVariableCache extends LinkedHashMap<VariableObjectId, MIVariableObject> {
 		public static final long serialVersionUID = 0;
 
-		// Maximum allowed concurrent variables
-		private static final int MAX_VARIABLE_LIST = 1000;
-		
 		public LRUVariableCache() {
 			super(0,     // Initial load capacity
 				  0.75f, // Load factor as defined in JAVA 1.5
@@ -2301,6 +2337,9 @@ public class MIVariableManager implements ICommandControl {
      * @since 3.0
      */
     private static final GDBTypeParser fGDBTypeParser = new GDBTypeParser();
+
+	// Maximum allowed concurrent variables, can be tuned for programs with large data structures
+	private static final int MAX_VARIABLE_LIST = Integer.getInteger("org.eclipse.cdt.dsf.gdb.maxVariableObjects", 1000); //$NON-NLS-1$
     
 	private final DsfSession fSession;
 	
@@ -2753,12 +2792,25 @@ public class MIVariableManager implements ICommandControl {
     				new DataRequestMonitor<MIVariableObject>(fSession.getExecutor(), drm) {
     					@Override
     					protected void handleSuccess() {
-    						getData().getChildren(exprCtx, ((ExprMetaGetChildren)command).getNumChildLimit(),
+    						final MIVariableObject varObj = getData();
+    						final ExprMetaGetChildren getChildren = (ExprMetaGetChildren)command;
+    						if (varObj.isArray()) {
+    							// Create the elements of the requested range, only
+    							final int from = getChildren.getStartIndex();
+    							int to = getChildren.getNumChildLimit();
+    							if (to == IMIExpressions.CHILD_COUNT_LIMIT_UNSPECIFIED) {
+    								to = varObj.getNumChildrenHint();
+    							}
+    							drm.setData(new ExprMetaGetChildrenInfo(varObj.getArrayElements(exprCtx, from, to), from));
+    							drm.done();
+    							processCommandDone(token, drm.getData());
+    							return;
+    						}
+    						varObj.getChildren(exprCtx, getChildren.getNumChildLimit(),
     								new DataRequestMonitor<ChildrenInfo>(fSession.getExecutor(), drm) {
     									@Override
     									protected void handleSuccess() {
-    										drm.setData(new ExprMetaGetChildrenInfo(
-    												getData().getChildren()));
+    										drm.setData(new ExprMetaGetChildrenInfo(getData().getChildren()));
     										drm.done();
     										processCommandDone(token, drm.getData());
     									}
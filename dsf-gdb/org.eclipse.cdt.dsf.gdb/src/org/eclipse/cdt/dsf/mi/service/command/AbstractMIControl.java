@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2010 Wind River Systems and others.
+ * Copyright (c) 2006, 2011 Wind River Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -73,6 +73,13 @@ public abstract class AbstractMIControl extends AbstractDsfService
     implements IMICommandControl
 {
 	private static final String MI_TRACE_IDENTIFIER = " [MI]  "; //$NON-NLS-1$
+
+	/**
+	 * Default for the number of commands that may be on the wire to the backend at any one
+	 * time, can be changed with -Dorg.eclipse.cdt.dsf.gdb.maxInFlightCommands=n.
+	 */
+	private static final int DEFAULT_MAX_IN_FLIGHT_COMMANDS =
+		Math.max(1, Integer.getInteger("org.eclipse.cdt.dsf.gdb.maxInFlightCommands", 3)); //$NON-NLS-1$
 	
     /*
 	 *  Thread control variables for the transmit and receive threads.
@@ -97,6 +104,9 @@ public abstract class AbstractMIControl extends AbstractDsfService
     private final BlockingQueue<CommandHandle> fTxCommands = new LinkedBlockingQueue<CommandHandle>();
     private final Map<Integer, CommandHandle>  fRxCommands = Collections.synchronizedMap(new HashMap<Integer, CommandHandle>());
 
+    private int fMaxInFlightCommands = DEFAULT_MAX_IN_FLIGHT_COMMANDS;
+    private final MICommandStatistics fStatistics = new MICommandStatistics();
+
     /**
      * Handle that's inserted into the TX commands queue to signal 
      * that the TX thread should shut down.
@@ -179,6 +189,35 @@ public abstract class AbstractMIControl extends AbstractDsfService
     	return fTracingStream;
     }
     
+    /**
+     * Sets the number of commands that may be on the wire to the backend at any one time.
+     * The backend processes the commands in order, the results are correlated to the
+     * commands by their token ids. A small window leaves room for coalescing and canceling
+     * the queued commands on a state change, a larger one avoids a round trip per command
+     * over slow connections.
+     * 
+     * @param count the number of commands, at least one.
+	 * @since 4.0
+	 */
+    protected void setMaxInFlightCommands(int count) {
+    	fMaxInFlightCommands = Math.max(1, count);
+    }
+
+    /**
+	 * @since 4.0
+	 */
+    public int getMaxInFlightCommands() {
+    	return fMaxInFlightCommands;
+    }
+
+    /**
+     * Returns the statistics about the commands sent to the backend.
+	 * @since 4.0
+	 */
+    public MICommandStatistics getCommandStatistics() {
+    	return fStatistics;
+    }
+
     /**
 	 * @since 3.0
 	 */
@@ -311,15 +350,15 @@ public abstract class AbstractMIControl extends AbstractDsfService
             rm.done();
         } else {
         	/*
-        	 *  We only allow three outstanding commands to be on the wire to the backend
-        	 *  at any one time. This allows for coalescing as well as canceling
-        	 *  existing commands on a state change. So we add it to the waiting list and let
-        	 *  the user know they can now work with this item if need be.
+        	 *  We only allow a few outstanding commands to be on the wire to the backend
+        	 *  at any one time (see setMaxInFlightCommands()). This allows for coalescing as well
+        	 *  as canceling existing commands on a state change. So we add it to the waiting list
+        	 *  and let the user know they can now work with this item if need be.
         	 */
         	fCommandQueue.add(handle);
             processCommandQueued(handle);
             
-            if (fRxCommands.size() < 3) {
+            if (getInFlightCommandCount() < fMaxInFlightCommands) {
                 // In a separate dispatch cycle.  This allows command listeners 
             	// to respond to the command queued event.  
                 getExecutor().execute(new DsfRunnable() {
@@ -333,7 +372,27 @@ public abstract class AbstractMIControl extends AbstractDsfService
         return handle;
     }
 
+    /**
+     * Returns the number of commands that have been handed to the TX thread and are
+     * awaiting their result.
+     */
+    private int getInFlightCommandCount() {
+    	return fRxCommands.size() + fTxCommands.size();
+    }
+
+    /**
+     * Hands the queued commands to the TX thread until the maximum number of commands is in flight.
+     * The TX thread sends them in order. Without the --thread/--frame options, the commands to
+     * select the thread and the frame are inserted right before the command that needs them, the
+     * current thread and frame track the selection as it will be when the backend gets there.
+     */
     private void processNextQueuedCommand() {
+    	while (fCommandQueue.size() > 0 && getInFlightCommandCount() < fMaxInFlightCommands) {
+    		sendNextQueuedCommand();
+    	}
+    }
+
+    private void sendNextQueuedCommand() {
 		if (fCommandQueue.size() > 0) {
 			final CommandHandle handle = fCommandQueue.remove(0);
 			if (handle != null) {
@@ -518,6 +577,7 @@ public abstract class AbstractMIControl extends AbstractDsfService
         private MICommand<MIInfo> fCommand;
         private DataRequestMonitor<MIInfo> fRequestMonitor;
         private int fTokenId ;
+        private long fSentTime;
         
         CommandHandle(MICommand<MIInfo> c, DataRequestMonitor<MIInfo> d) {
             fCommand = c; 
@@ -532,6 +592,8 @@ public abstract class AbstractMIControl extends AbstractDsfService
         // be sent
         public void generateTokenId() { fTokenId = getNewTokenId(); }
         public Integer getTokenId() { return fTokenId; }
+        public void setSentTime(long nanoTime) { fSentTime = nanoTime; }
+        public long getSentTime() { return fSentTime; }
         
         public int getStackFrameId() {
         	IFrameDMContext frameCtx = DMContexts.getAncestorOfType(fCommand.getContext(), IFrameDMContext.class);
@@ -602,7 +664,9 @@ public abstract class AbstractMIControl extends AbstractDsfService
                      */
                     if (!(commandHandle.getCommand() instanceof RawCommand)) {
                     	// RawCommands will not get an answer, so we cannot put them in the receive queue.
+                    	commandHandle.setSentTime(System.nanoTime());
                     	fRxCommands.put(commandHandle.getTokenId(), commandHandle);
+                    	fStatistics.commandSent(fRxCommands.size());
                     }
                 }
                 
@@ -859,6 +923,7 @@ public abstract class AbstractMIControl extends AbstractDsfService
                 final CommandHandle commandHandle = fRxCommands.remove(id);
 
                 if (commandHandle != null) {
+                	fStatistics.resultReceived(System.nanoTime() - commandHandle.getSentTime());
                     final MIOutput response = new MIOutput(
                         rr, fAccumulatedOOBRecords.toArray(new MIOOBRecord[fAccumulatedOOBRecords.size()]) );
                     fAccumulatedOOBRecords.clear();
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.dsf.mi.service.command;
+
+/**
+ * Statistics about the MI commands sent to the debugger back end: the number of commands
+ * awaiting their result at the time a command is sent, and the time it takes to receive
+ * the result of a command.
+ *
+ * @since 4.0
+ */
+public final class MICommandStatistics {
+	/**
+	 * Number of buckets of the round trip histogram. Bucket 0 counts the round trips below
+	 * one millisecond, bucket i those in [2^(i-1), 2^i) milliseconds, the last bucket all
+	 * longer ones.
+	 */
+	public static final int ROUND_TRIP_BUCKETS = 16;
+
+	private final long[] fRoundTrips = new long[ROUND_TRIP_BUCKETS];
+	private long[] fInFlightDepths = new long[8];
+	private int fMaxInFlight;
+	private long fSentCount;
+	private long fReceivedCount;
+	private long fTotalRoundTripNanos;
+
+	MICommandStatistics() {
+	}
+
+	/**
+	 * Records that a command was sent, with the given number of commands (including the one
+	 * sent) awaiting their result.
+	 */
+	synchronized void commandSent(int inFlight) {
+		if (inFlight >= fInFlightDepths.length) {
+			long[] depths = new long[Math.max(inFlight + 1, 2 * fInFlightDepths.length)];
+			System.arraycopy(fInFlightDepths, 0, depths, 0, fInFlightDepths.length);
+			fInFlightDepths = depths;
+		}
+		fInFlightDepths[inFlight]++;
+		fMaxInFlight = Math.max(fMaxInFlight, inFlight);
+		fSentCount++;
+	}
+
+	/**
+	 * Records the time between sending a command and receiving its result.
+	 */
+	synchronized void resultReceived(long roundTripNanos) {
+		long millis = roundTripNanos / 1000000;
+		int bucket = 0;
+		while (millis > 0 && bucket < ROUND_TRIP_BUCKETS - 1) {
+			millis >>= 1;
+			bucket++;
+		}
+		fRoundTrips[bucket]++;
+		fTotalRoundTripNanos += roundTripNanos;
+		fReceivedCount++;
+	}
+
+	/**
+	 * Returns the number of commands sent per round trip time, see {@link #ROUND_TRIP_BUCKETS}.
+	 */
+	public synchronized long[] getRoundTripHistogram() {
+		return fRoundTrips.clone();
+	}
+
+	/**
+	 * Returns the number of commands sent per number of commands awaiting their result at that
+	 * time. The index is the number of commands in flight, including the one sent.
+	 */
+	public synchronized long[] getInFlightHistogram() {
+		long[] result = new long[fMaxInFlight + 1];
+		System.arraycopy(fInFlightDepths, 0, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * Returns the maximum number of commands that have been awaiting their result at the same time.
+	 */
+	public synchronized int getMaxInFlight() {
+		return fMaxInFlight;
+	}
+
+	public synchronized long getSentCount() {
+		return fSentCount;
+	}
+
+	public synchronized long getAverageRoundTripMillis() {
+		return fReceivedCount == 0 ? 0 : fTotalRoundTripNanos / fReceivedCount / 1000000;
+	}
+
+	public synchronized void reset() {
+		for (int i = 0; i < fRoundTrips.length; i++) {
+			fRoundTrips[i] = 0;
+		}
+		fInFlightDepths = new long[8];
+		fMaxInFlight = 0;
+		fSentCount = fReceivedCount = fTotalRoundTripNanos = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "MI commands: " + fSentCount + " sent, at most " + fMaxInFlight + " in flight, average round trip " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ getAverageRoundTripMillis() + "ms"; //$NON-NLS-1$
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 Ericsson and others.
+ * Copyright (c) 2007, 2011 Ericsson and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,6 +17,7 @@ import org.eclipse.cdt.dsf.mi.service.command.output.ExprMetaGetChildrenInfo;
 
 public class ExprMetaGetChildren extends ExprMetaCommand<ExprMetaGetChildrenInfo> {
 
+	private int startIndex = 0;
 	private int numChildLimit = IMIExpressions.CHILD_COUNT_LIMIT_UNSPECIFIED;
 	
 	public ExprMetaGetChildren(IExpressionDMContext ctx) {
@@ -34,6 +35,29 @@ public class ExprMetaGetChildren extends ExprMetaCommand<ExprMetaGetChildrenInfo
 		this.numChildLimit = numChildLimit;
 	}
 	
+	/**
+	 * Creates the command for the children from startIndex up to numChildLimit, the
+	 * children before startIndex need not be provided.
+	 * 
+	 * @param ctx
+	 * @param startIndex
+	 * @param numChildLimit
+	 * 
+	 * @since 4.0
+	 */
+	public ExprMetaGetChildren(IExpressionDMContext ctx, int startIndex, int numChildLimit) {
+		super(ctx);
+		this.startIndex = startIndex;
+		this.numChildLimit = numChildLimit;
+	}
+
+	/**
+	 * @since 4.0
+	 */
+	public int getStartIndex() {
+		return startIndex;
+	}
+
 	/**
 	 * @since 4.0
 	 */
@@ -45,6 +69,7 @@ public class ExprMetaGetChildren extends ExprMetaCommand<ExprMetaGetChildrenInfo
 	public int hashCode() {
 		final int prime = 31;
 		int result = super.hashCode();
+		result = prime * result + startIndex;
 		result = prime * result + numChildLimit;
 		return result;
 	}
@@ -56,7 +81,7 @@ public class ExprMetaGetChildren extends ExprMetaCommand<ExprMetaGetChildrenInfo
 		if (!super.equals(obj))
 			return false;
 		ExprMetaGetChildren other = (ExprMetaGetChildren) obj;
-		if (numChildLimit != other.numChildLimit)
+		if (startIndex != other.startIndex || numChildLimit != other.numChildLimit)
 			return false;
 		return true;
 	}
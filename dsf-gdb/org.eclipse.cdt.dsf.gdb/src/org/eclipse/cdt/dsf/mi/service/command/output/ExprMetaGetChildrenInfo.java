@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 Ericsson and others.
+ * Copyright (c) 2007, 2011 Ericsson and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,12 +17,35 @@ import org.eclipse.cdt.dsf.mi.service.MIExpressions.ExpressionInfo;
 public class ExprMetaGetChildrenInfo implements ICommandResult {
     
 	private final ExpressionInfo[] childrenExpressions;
+	private final int startIndex;
 
     public ExprMetaGetChildrenInfo(ExpressionInfo[] c) {
+    	this(c, 0);
+    }
+    
+    /**
+     * @param c the children from startIndex on
+     * @param startIndex the index of the first of the children within all children
+     * 
+     * @since 4.0
+     */
+    public ExprMetaGetChildrenInfo(ExpressionInfo[] c, int startIndex) {
     	childrenExpressions = c;
+    	this.startIndex = startIndex;
     }
     
+    /**
+     * Returns the children starting at {@link #getStartIndex()}.
+     */
     public ExpressionInfo[] getChildrenExpressions() { return childrenExpressions; }
+
+    /**
+     * Returns the index of the first of the children returned by
+     * {@link #getChildrenExpressions()} within all children of the expression.
+     * 
+     * @since 4.0
+     */
+    public int getStartIndex() { return startIndex; }
     
 	public <V extends ICommandResult> V getSubsetResult(ICommand<V> command) {
 		return null;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 QNX Software Systems and others.
+ * Copyright (c) 2000, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,19 +18,42 @@ package org.eclipse.cdt.dsf.mi.service.command.output;
 public class MIConst extends MIValue {
     String cstring = ""; //$NON-NLS-1$
 
-    public String getCString() {
+    // The line of output containing the c-string, as long as it has not been translated.
+    private String line;
+    private int start;
+    private int end;
+
+    public MIConst() {
+    }
+
+    /**
+     * Creates a constant for the c-string between start and end in the given line of output,
+     * it is translated on first access.
+     */
+    MIConst(String line, int start, int end) {
+        this.line = line;
+        this.start = start;
+        this.end = end;
+    }
+
+    public synchronized String getCString() {
+        if (line != null) {
+            cstring = MIParser.translateCString(line, start, end);
+            line = null;
+        }
         return cstring;
     }
 
-    public void setCString(String str) {
+    public synchronized void setCString(String str) {
         cstring = str;
+        line = null;
     }
 
     /**
      * Translate gdb c-string.
      */
     public String getString() {
-        return getString(cstring);
+        return getString(getCString());
     }
 
     public static String getString(String str) {
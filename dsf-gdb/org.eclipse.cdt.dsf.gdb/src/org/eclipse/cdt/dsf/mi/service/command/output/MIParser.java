@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 QNX Software Systems and others.
+ * Copyright (c) 2000, 2011 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -116,40 +116,40 @@ public class MIParser {
     }    
 
     /**
-     * 
+     * Parses a result record in a single pass over the line.
      */
     public MIResultRecord parseMIResultRecord(String line) {
-        StringBuffer buffer = new StringBuffer(line);
+        Input input = new Input(line);
         // Fetch the Token/Id
-        int id = parseToken(buffer);
+        int id = parseToken(input);
         // Consume the '^'
-        buffer.deleteCharAt(0);
+        input.skip();
         
         MIResultRecord rr = new MIResultRecord();
         rr.setToken(id);
-        if (buffer.toString().startsWith(MIResultRecord.DONE)) {
+        if (input.startsWith(MIResultRecord.DONE)) {
             rr.setResultClass(MIResultRecord.DONE);
-            buffer.delete(0, MIResultRecord.DONE.length());
-        } else if (buffer.toString().startsWith(MIResultRecord.ERROR)) {
+            input.skip(MIResultRecord.DONE.length());
+        } else if (input.startsWith(MIResultRecord.ERROR)) {
             rr.setResultClass(MIResultRecord.ERROR);
-            buffer.delete(0, MIResultRecord.ERROR.length());
-        } else if (buffer.toString().startsWith(MIResultRecord.EXIT)) {
+            input.skip(MIResultRecord.ERROR.length());
+        } else if (input.startsWith(MIResultRecord.EXIT)) {
             rr.setResultClass(MIResultRecord.EXIT);
-            buffer.delete(0, MIResultRecord.EXIT.length());
-        } else if (buffer.toString().startsWith(MIResultRecord.RUNNING)) {
+            input.skip(MIResultRecord.EXIT.length());
+        } else if (input.startsWith(MIResultRecord.RUNNING)) {
             rr.setResultClass(MIResultRecord.RUNNING);
-            buffer.delete(0, MIResultRecord.RUNNING.length());
-        } else if (buffer.toString().startsWith(MIResultRecord.CONNECTED)) {
+            input.skip(MIResultRecord.RUNNING.length());
+        } else if (input.startsWith(MIResultRecord.CONNECTED)) {
             rr.setResultClass(MIResultRecord.CONNECTED);
-            buffer.delete(0, MIResultRecord.CONNECTED.length());
+            input.skip(MIResultRecord.CONNECTED.length());
         } else {
             // Error throw an exception?
         }
 
         // Results are separated by commas.
-        if (buffer.length() > 0 && buffer.charAt(0) == ',') {
-            buffer.deleteCharAt(0);
-            MIResult[] res = processMIResults(new FSB(buffer));
+        if (input.peek() == ',') {
+            input.skip();
+            MIResult[] res = processMIResults(input);
             rr.setMIResults(res);
         }
         return rr;
@@ -159,13 +159,13 @@ public class MIParser {
      * Find OutOfBand Records depending on the starting token.
      */
     public MIOOBRecord parseMIOOBRecord(String line) {
-        StringBuffer buffer = new StringBuffer(line);
-        int id = parseToken(buffer);
+        Input input = new Input(line);
+        int id = parseToken(input);
         MIOOBRecord oob = null;
-        char c = buffer.length() != 0 ? buffer.charAt(0) : 0;
+        char c = input.peek();
         if (c == '*' || c == '+' || c == '=') {
             // Consume the first char
-            buffer.deleteCharAt(0);
+            input.skip();
             MIAsyncRecord async = null;
             switch (c) {
                 case '*' :
@@ -182,22 +182,21 @@ public class MIParser {
             }
             async.setToken(id);
             // Extract the Async-Class
-            int i = buffer.toString().indexOf(',');
+            int i = input.indexOf(',');
             if (i != -1) {
-                String asyncClass = buffer.substring(0, i);
-                async.setAsyncClass(asyncClass);
+                async.setAsyncClass(input.substring(i));
                 // Consume the async-class and the comma
-                buffer.delete(0, i + 1);
+                input.skip(i + 1);
             } else {
-                async.setAsyncClass(buffer.toString().trim());
-                buffer.setLength(0);
+                async.setAsyncClass(input.rest().trim());
+                input.skipAll();
             }
-            MIResult[] res = processMIResults(new FSB(buffer));
+            MIResult[] res = processMIResults(input);
             async.setMIResults(res);
             oob = async;
         } else if (c == '~' || c == '@' || c == '&') {
             // Consume the first char
-            buffer.deleteCharAt(0);
+            input.skip();
             MIStreamRecord stream = null;
             switch (c) {
                 case '~' :
@@ -213,10 +212,12 @@ public class MIParser {
                     break;
             }
             // translateCString() assumes that the leading " is deleted
-            if (buffer.length() > 0 && buffer.charAt(0) == '"') {
-                buffer.deleteCharAt(0);
+            if (input.peek() == '"') {
+                input.skip();
             }
-            stream.setCString(translateCString(new FSB(buffer)));
+            int start = input.pos;
+            int end = skipCString(input);
+            stream.setCString(translateCString(line, start, end));
             oob = stream;
         } else {
             // Badly format MI line, just pass it to the user as target stream
@@ -227,21 +228,20 @@ public class MIParser {
         return oob;
     }
     
-    private int parseToken(StringBuffer buffer) {
+    private int parseToken(Input input) {
         int id = -1;
         // Fetch the Token/Id
-        if (Character.isDigit(buffer.charAt(0))) {
+        if (Character.isDigit(input.peek())) {
             int i = 1;
-            while (i < buffer.length() && Character.isDigit(buffer.charAt(i))) {
+            while (i < input.length() && Character.isDigit(input.charAt(i))) {
                 i++;
             }
-            String numbers = buffer.substring(0, i);
             try {
-                id = Integer.parseInt(numbers);
+                id = Integer.parseInt(input.substring(i));
             } catch (NumberFormatException e) {
             }
             // Consume the token.
-            buffer.delete(0, i);
+            input.skip(i);
         }
         return id;
     }
@@ -250,15 +250,15 @@ public class MIParser {
      * Assuming that the usual leading comma was consumed.
      * Extract the MI Result comma seperated responses.
      */
-    private MIResult[] processMIResults(FSB buffer) {
+    private MIResult[] processMIResults(Input input) {
         List<MIResult> aList = new ArrayList<MIResult>();
-        MIResult result = processMIResult(buffer);
+        MIResult result = processMIResult(input);
         if (result != null) {
             aList.add(result);
         }
-        while (buffer.length() > 0 && buffer.charAt(0) == ',') {
-            buffer.deleteCharAt(0);
-            result = processMIResult(buffer);
+        while (input.peek() == ',') {
+            input.skip();
+            result = processMIResult(input);
             if (result != null) {
                 aList.add(result);
             }
@@ -267,26 +267,26 @@ public class MIParser {
     }
 
     /**
-     * Construct the DsfMIResult.  Characters will be consume/delete
+     * Construct the DsfMIResult.  Characters will be consumed
      * moving forward constructing the AST.
      */
-    private MIResult processMIResult(FSB buffer) {
+    private MIResult processMIResult(Input input) {
         MIResult result = new MIResult();
         int equal;
-        if (buffer.length() > 0 && Character.isLetter(buffer.charAt(0)) && (equal = buffer.indexOf('=')) != -1) {
-            String variable = buffer.substring(0, equal);
+        if (input.length() > 0 && Character.isLetter(input.peek()) && (equal = input.indexOf('=')) != -1) {
+            String variable = input.substring(equal);
             result.setVariable(variable);
-            buffer.delete(0, equal + 1);
-            MIValue value = processMIValue(buffer);
+            input.skip(equal + 1);
+            MIValue value = processMIValue(input);
             result.setMIValue(value);
-        } else if(buffer.length()>0 && buffer.charAt(0)=='"') {
+        } else if (input.peek() == '"') {
             // This an error but we just swallow it and move on.
-            MIValue value = processMIValue(buffer);
+            MIValue value = processMIValue(input);
             result.setMIValue(value);
         } else {
-            result.setVariable(buffer.toString());
+            result.setVariable(input.rest());
             result.setMIValue(new MIConst()); // Empty string:???
-            buffer.setLength(0);
+            input.skipAll();
         }
         return result;
     }
@@ -294,53 +294,38 @@ public class MIParser {
     /**
      * Find a DsfMIValue implementation or return null.
      */
-    private MIValue processMIValue(FSB buffer) {
+    private MIValue processMIValue(Input input) {
         MIValue value = null;
-        if (buffer.length() > 0) {
-            if (buffer.charAt(0) == '{') {
-                buffer.deleteCharAt(0);
-                value = processMITuple(buffer);
-            } else if (buffer.charAt(0) == '[') {
-                buffer.deleteCharAt(0);
-                value = processMIList(buffer);
-            } else if (buffer.charAt(0) == '"') {
-                buffer.deleteCharAt(0);
-                MIConst cnst = new MIConst();
-                cnst.setCString(translateCString(buffer));
-                value = cnst;
-            }
+        switch (input.peek()) {
+            case '{':
+                input.skip();
+                value = processMITuple(input);
+                break;
+            case '[':
+                input.skip();
+                value = processMIList(input);
+                break;
+            case '"':
+                input.skip();
+                // The c-string is translated when it is accessed.
+                int start = input.pos;
+                int end = skipCString(input);
+                value = new MIConst(input.line, start, end);
+                break;
         }
         return value;
     }
 
     /**
-     * Assuming the starting '{' was deleted form the StringBuffer,
-     * go to the closing '}' consuming/deleting all the characters.
+     * Assuming the starting '{' was consumed, go to the closing '}'
+     * consuming all the characters.
      * This is usually call by processMIvalue();
      */
-    private MIValue processMITuple(FSB buffer) {
+    private MIValue processMITuple(Input input) {
         MITuple tuple = new MITuple();
         List<MIValue> valueList = new ArrayList<MIValue>();
         List<MIResult> resultList = new ArrayList<MIResult>();
-        // Catch closing '}'
-        while (buffer.length() > 0 && buffer.charAt(0) != '}') {
-            // Try for the DsfMIValue first
-            MIValue value = processMIValue(buffer);
-            if (value != null) {
-                valueList.add(value);
-            } else {
-                MIResult result = processMIResult(buffer);
-                if (result != null) {
-                    resultList.add(result);
-                }
-            }
-            if (buffer.length() > 0 && buffer.charAt(0) == ',') {
-                buffer.deleteCharAt(0);
-            }
-        }
-        if (buffer.length() > 0 && buffer.charAt(0) == '}') {
-            buffer.deleteCharAt(0);
-        }
+        processMIValuesAndResults(input, '}', valueList, resultList);
         MIValue[] values = valueList.toArray(new MIValue[valueList.size()]);
         MIResult[] res = resultList.toArray(new MIResult[resultList.size()]);
         tuple.setMIValues(values);
@@ -349,56 +334,83 @@ public class MIParser {
     }
 
     /**
-     * Assuming the leading '[' was deleted, find the closing
-     * ']' consuming/delete chars from the StringBuffer.
+     * Assuming the leading '[' was consumed, find the closing
+     * ']' consuming all the characters.
      */
-    private MIValue processMIList(FSB buffer) {
+    private MIValue processMIList(Input input) {
         MIList list = new MIList();
         List<MIValue> valueList = new ArrayList<MIValue>();
         List<MIResult> resultList = new ArrayList<MIResult>();
-        // catch closing ']'
-        while (buffer.length() > 0 && buffer.charAt(0) != ']') {
+        processMIValuesAndResults(input, ']', valueList, resultList);
+        MIValue[] values = valueList.toArray(new MIValue[valueList.size()]);
+        MIResult[] res = resultList.toArray(new MIResult[resultList.size()]);
+        list.setMIValues(values);
+        list.setMIResults(res);
+        return list;
+    }
+
+    private void processMIValuesAndResults(Input input, char closing, List<MIValue> valueList, List<MIResult> resultList) {
+        // Catch the closing character
+        while (input.length() > 0 && input.peek() != closing) {
             // Try for the DsfMIValue first
-            MIValue value = processMIValue(buffer);
+            MIValue value = processMIValue(input);
             if (value != null) {
                 valueList.add(value);
             } else {
-                MIResult result = processMIResult(buffer);
+                MIResult result = processMIResult(input);
                 if (result != null) {
                     resultList.add(result);
                 }
             }
-            if (buffer.length() > 0 && buffer.charAt(0) == ',') {
-                buffer.deleteCharAt(0);
+            if (input.peek() == ',') {
+                input.skip();
             }
         }
-        if (buffer.length() > 0 && buffer.charAt(0) == ']') {
-            buffer.deleteCharAt(0);
+        if (input.peek() == closing) {
+            input.skip();
         }
-        MIValue[] values = valueList.toArray(new MIValue[valueList.size()]);
-        MIResult[] res = resultList.toArray(new MIResult[resultList.size()]);
-        list.setMIValues(values);
-        list.setMIResults(res);
-        return list;
     }
 
     /*
      * MI C-String rather MICOnst values are enclose in double quotes
      * and any double quotes or backslash in the string are escaped.
-     * Assuming the starting double quote was removed.
-     * This method will stop at the closing double quote remove the extra
-     * backslach escaping and return the string __without__ the enclosing double quotes
-     * The orignal StringBuffer will move forward.
+     * Assuming the starting double quote was consumed, this method moves
+     * the input past the closing double quote and returns the end of the
+     * c-string __without__ the enclosing double quotes.
      */
-    private String translateCString(FSB buffer) {
-        boolean escape = false;
-        boolean closingQuotes = false;
-
-        StringBuffer sb = new StringBuffer();
+    private int skipCString(Input input) {
+        final String line = input.line;
+        final int length = line.length();
+        int i = input.pos;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                // skip the escaped character
+                i += 2;
+            } else if (c == '"') {
+                input.pos = i + 1;
+                return i;
+            } else {
+                i++;
+            }
+        }
+        input.pos = length;
+        return length;
+    }
 
-        int index = 0;
-        for (; index < buffer.length() && !closingQuotes; index++) {
-            char c = buffer.charAt(index);
+    /**
+     * Removes the extra backslash escaping the double quotes from the c-string between start
+     * and end. Other escape sequences are kept, they are translated by {@link MIConst#getString()}.
+     */
+    static String translateCString(String line, int start, int end) {
+        int backslash = line.indexOf('\\', start);
+        if (backslash < 0 || backslash >= end) {
+            return line.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        boolean escape = false;
+        for (int index = start; index < end; index++) {
+            char c = line.charAt(index);
             if (c == '\\') {
                 if (escape) {
                     sb.append(c);
@@ -408,13 +420,9 @@ public class MIParser {
                     escape = true;
                 }
             } else if (c == '"') {
-                if (escape) {
-                    sb.append(c);
-                    escape = false;
-                } else {
-                    // Bail out.
-                    closingQuotes = true;
-                }
+                // the closing double quote is not part of the c-string, this one is escaped.
+                sb.append(c);
+                escape = false;
             } else {
                 if (escape) {
                     sb.append('\\');
@@ -423,7 +431,6 @@ public class MIParser {
                 escape = false;
             }
         }
-        buffer.delete(0, index);
         return sb.toString();
     }
 
@@ -450,6 +457,62 @@ public class MIParser {
         return true;
     }
 
+    /**
+     * Position within a line of output, the parser moves forward over the line without copying it.
+     */
+    private static final class Input {
+        final String line;
+        int pos;
+
+        Input(String line) {
+            this.line = line;
+        }
+
+        int length() {
+            return line.length() - pos;
+        }
+
+        /**
+         * Returns the character at the current position, or <code>0</code> at the end of the line.
+         */
+        char peek() {
+            return pos < line.length() ? line.charAt(pos) : 0;
+        }
+
+        char charAt(int index) {
+            return line.charAt(pos + index);
+        }
+
+        void skip() {
+            pos++;
+        }
+
+        void skip(int count) {
+            pos += count;
+        }
+
+        void skipAll() {
+            pos = line.length();
+        }
+
+        boolean startsWith(String prefix) {
+            return line.startsWith(prefix, pos);
+        }
+
+        int indexOf(char c) {
+            int i = line.indexOf(c, pos);
+            return i < 0 ? -1 : i - pos;
+        }
+
+        String substring(int end) {
+            return line.substring(pos, pos + end);
+        }
+
+        String rest() {
+            return line.substring(Math.min(pos, line.length()));
+        }
+    }
+
     /** 
      * Fast String Buffer class. MIParser does a lot
      * of deleting off the front of a string, that's clearly
@@ -458,7 +521,9 @@ public class MIParser {
      * with this for large arrays. Use of FSB rather than String
      * Buffer makes MIParser N rather than N^2 because FSB can 
      * delete from the front in constant time.
+     * @deprecated The parser moves forward over the line of output without copying it.
      */
+    @Deprecated
     public class FSB {
         StringBuffer buf;
         int pos;
@@ -208,6 +208,12 @@ int testDeleteChildren() {
 	return 1;
 }
 
+int testLargeArray() {
+	int a[100000];
+	a[0] = 0; // this line is here to ensure a step-over after running to this function leaves our locals visible
+	return a[0];
+}
+
 int testUpdateGDBBug() {
 	// GDB 6.7 has a bug which will cause var-update not to show
 	// the new value of 'a' if we switch the format to binary,
@@ -310,6 +316,7 @@ int main() {
     testUpdateChildren(100);
     testUpdateChildren2(200);
     testDeleteChildren();
+    testLargeArray();
     testUpdateGDBBug();
     testUpdateIssue();
     testUpdateIssue2();
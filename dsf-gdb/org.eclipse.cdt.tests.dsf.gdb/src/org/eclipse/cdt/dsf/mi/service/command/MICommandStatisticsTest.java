@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.dsf.mi.service.command;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MICommandStatisticsTest {
+	private static final long MS = 1000000;
+
+	@Test
+	public void testRoundTripHistogram() {
+		MICommandStatistics stats = new MICommandStatistics();
+		stats.resultReceived(MS / 2);
+		stats.resultReceived(MS);
+		stats.resultReceived(3 * MS);
+		stats.resultReceived(1000 * MS);
+		stats.resultReceived(10000000 * MS);
+
+		long[] histogram = stats.getRoundTripHistogram();
+		assertEquals(MICommandStatistics.ROUND_TRIP_BUCKETS, histogram.length);
+		assertEquals(1, histogram[0]);	// < 1ms
+		assertEquals(1, histogram[1]);	// [1, 2)
+		assertEquals(1, histogram[2]);	// [2, 4)
+		assertEquals(1, histogram[10]);	// [512, 1024)
+		assertEquals(1, histogram[MICommandStatistics.ROUND_TRIP_BUCKETS - 1]);
+	}
+
+	@Test
+	public void testInFlightHistogram() {
+		MICommandStatistics stats = new MICommandStatistics();
+		stats.commandSent(1);
+		stats.commandSent(2);
+		stats.commandSent(2);
+		stats.commandSent(20);
+
+		long[] histogram = stats.getInFlightHistogram();
+		assertEquals(21, histogram.length);
+		assertEquals(1, histogram[1]);
+		assertEquals(2, histogram[2]);
+		assertEquals(1, histogram[20]);
+		assertEquals(20, stats.getMaxInFlight());
+		assertEquals(4, stats.getSentCount());
+
+		stats.reset();
+		assertEquals(0, stats.getMaxInFlight());
+		assertEquals(1, stats.getInFlightHistogram().length);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2009 Ericsson and others.
+ * Copyright (c) 2008, 2011 Ericsson and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.cdt.dsf.mi.service.command.commands;
 
+import org.eclipse.cdt.dsf.mi.service.command.MICommandStatisticsTest;
+import org.eclipse.cdt.dsf.mi.service.command.output.MIParserTests;
 import org.eclipse.cdt.dsf.mi.service.command.output.MIThreadTests;
 import org.eclipse.cdt.tests.dsf.gdb.framework.OnceOnlySuite;
 import org.eclipse.cdt.tests.dsf.gdb.tests.LaunchUtilsTest;
@@ -27,6 +29,8 @@ import org.junit.runners.Suite;
         TestMIBreakInsertCommand.class,
         TestMICommandConstructCommand.class,
         MIThreadTests.class,
+        MIParserTests.class,
+        MICommandStatisticsTest.class,
         LaunchUtilsTest.class
         /* Add your test class here */
         })
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.dsf.mi.service.command.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MIParserTests {
+	private final MIParser fParser = new MIParser();
+
+	@Test
+	public void testResultRecord() {
+		MIResultRecord rr = fParser.parseMIResultRecord("12^done,stack=[frame={level=\"0\",func=\"main\",args=[{name=\"s\",value=\"\\\"a\\\\n\\\"\"}]}]");
+		assertEquals(12, rr.getToken());
+		assertEquals(MIResultRecord.DONE, rr.getResultClass());
+		MIResult[] results = rr.getMIResults();
+		assertEquals(1, results.length);
+		assertEquals("stack", results[0].getVariable());
+
+		MIList stack = (MIList) results[0].getMIValue();
+		assertEquals(1, stack.getMIResults().length);
+		MITuple frame = (MITuple) stack.getMIResults()[0].getMIValue();
+		assertEquals("level", frame.getMIResults()[0].getVariable());
+		assertEquals("0", ((MIConst) frame.getMIResults()[0].getMIValue()).getCString());
+
+		MITuple arg = (MITuple) ((MIList) frame.getMIResults()[2].getMIValue()).getMIValues()[0];
+		MIConst value = (MIConst) arg.getMIResults()[1].getMIValue();
+		// escaped double quotes are removed by the parser, other escapes by getString()
+		assertEquals("\"a\\\\n\"", value.getCString());
+		assertEquals("\"a\\n\"", value.getString());
+	}
+
+	@Test
+	public void testErrorRecord() {
+		MIResultRecord rr = fParser.parseMIResultRecord("^error,msg=\"No symbol \\\"x\\\" in current context.\"");
+		assertEquals(-1, rr.getToken());
+		assertEquals(MIResultRecord.ERROR, rr.getResultClass());
+		assertEquals("No symbol \"x\" in current context.", ((MIConst) rr.getMIResults()[0].getMIValue()).getString());
+	}
+
+	@Test
+	public void testOOBRecords() {
+		MIOOBRecord oob = fParser.parseMIOOBRecord("*stopped,reason=\"breakpoint-hit\",thread-id=\"1\"");
+		assertTrue(oob instanceof MIExecAsyncOutput);
+		MIAsyncRecord async = (MIAsyncRecord) oob;
+		assertEquals("stopped", async.getAsyncClass());
+		assertEquals(2, async.getMIResults().length);
+		assertEquals("thread-id", async.getMIResults()[1].getVariable());
+
+		oob = fParser.parseMIOOBRecord("*running");
+		assertEquals("running", ((MIAsyncRecord) oob).getAsyncClass());
+
+		oob = fParser.parseMIOOBRecord("~\"Hello \\\"world\\\"\\n\"");
+		assertTrue(oob instanceof MIConsoleStreamOutput);
+		assertEquals("Hello \"world\"\\n", ((MIStreamRecord) oob).getCString());
+
+		oob = fParser.parseMIOOBRecord("not an mi record");
+		assertTrue(oob instanceof MITargetStreamOutput);
+		assertEquals("not an mi record\n", ((MIStreamRecord) oob).getCString());
+	}
+
+	@Test
+	public void testLargeResultRecord() {
+		final int count = 100000;
+		StringBuilder buf = new StringBuilder("^done,addr=\"0x0\",memory=[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				buf.append(',');
+			}
+			buf.append("{addr=\"0x").append(Integer.toHexString(i)).append("\",data=[\"0x00\",\"0x01\"]}");
+		}
+		buf.append(']');
+
+		MIResultRecord rr = fParser.parseMIResultRecord(buf.toString());
+		MIList memory = (MIList) rr.getMIResults()[1].getMIValue();
+		assertEquals(count, memory.getMIValues().length);
+		MITuple last = (MITuple) memory.getMIValues()[count - 1];
+		assertEquals("0x" + Integer.toHexString(count - 1), ((MIConst) last.getMIResults()[0].getMIValue()).getCString());
+	}
+}
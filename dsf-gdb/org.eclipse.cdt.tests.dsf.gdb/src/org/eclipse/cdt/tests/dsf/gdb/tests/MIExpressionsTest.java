@@ -2015,6 +2015,25 @@ public class MIExpressionsTest extends BaseTestCase {
         
     }
     
+    /**
+     * This test expands ranges of the elements of a large array, only the requested
+     * elements must be returned, also when ranges overlap or exceed the size of the array.
+     */
+    @Test
+    public void testLargeArrayChildren() throws Throwable {
+        SyncUtil.runToLocation("testLargeArray");
+        MIStoppedEvent stoppedEvent = SyncUtil.step(1, StepType.STEP_OVER);
+        final IFrameDMContext frameDmc = SyncUtil.getStackFrame(stoppedEvent.getDMContext(), 0);
+        final IExpressionDMContext exprDmc = SyncUtil.createExpression(frameDmc, "a");
+
+        getChildren(exprDmc, 500, 3, new String[] {"a[500]", "a[501]", "a[502]"});
+        getChildren(exprDmc, 499, 3, new String[] {"a[499]", "a[500]", "a[501]"});
+        getChildren(exprDmc, 99998, 5, new String[] {"a[99998]", "a[99999]"});
+        // a range requested before is not affected by the ranges requested after it
+        getChildren(exprDmc, 500, 3, new String[] {"a[500]", "a[501]", "a[502]"});
+        getChildren(exprDmc, 0, 2, new String[] {"a[0]", "a[1]"});
+    }
+
     /**
 	 * GDB 6.7 has a bug which will cause var-update not to show
 	 * the new value of 'a' if we switch the format to binary,
@@ -3217,13 +3236,24 @@ public class MIExpressionsTest extends BaseTestCase {
     private IExpressionDMContext[] getChildren(
     		final IExpressionDMContext parentDmc, 
     		String[] expectedValues) throws Throwable {
+    	return getChildren(parentDmc, -1, -1, expectedValues);
+    }
+
+    /**
+     * Checks the children of the parent in the given range, or all children if 
+     * startIndex is negative.
+     */
+    private IExpressionDMContext[] getChildren(
+    		final IExpressionDMContext parentDmc, 
+    		final int startIndex,
+    		final int length,
+    		String[] expectedValues) throws Throwable {
 
         final AsyncCompletionWaitor wait = new AsyncCompletionWaitor();
 
         fExpService.getExecutor().submit(new Runnable() {
             public void run() {
-
-                fExpService.getSubExpressions(parentDmc,
+                DataRequestMonitor<IExpressionDMContext[]> rm =
                     new DataRequestMonitor<IExpressionDMContext[]>(fExpService.getExecutor(), null) {
                         @Override
                         protected void handleCompleted() {
@@ -3232,7 +3262,12 @@ public class MIExpressionsTest extends BaseTestCase {
                             }
                             wait.waitFinished(getStatus());
                         }
-                    });
+                    };
+                if (startIndex < 0) {
+                	fExpService.getSubExpressions(parentDmc, rm);
+                } else {
+                	fExpService.getSubExpressions(parentDmc, startIndex, length, rm);
+                }
             }
         });
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 Ericsson and others.
+ * Copyright (c) 2007, 2011 Ericsson and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,8 @@ package org.eclipse.cdt.tests.dsf.gdb.tests;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.Callable;
+
 import org.eclipse.cdt.core.IAddress;
 import org.eclipse.cdt.debug.core.ICDTLaunchConfigurationConstants;
 import org.eclipse.cdt.dsf.concurrent.DataRequestMonitor;
@@ -28,6 +30,7 @@ import org.eclipse.cdt.dsf.debug.service.IMemory.IMemoryChangedEvent;
 import org.eclipse.cdt.dsf.debug.service.IMemory.IMemoryDMContext;
 import org.eclipse.cdt.dsf.debug.service.IRunControl.StepType;
 import org.eclipse.cdt.dsf.debug.service.IStack.IFrameDMContext;
+import org.eclipse.cdt.dsf.mi.service.MIMemory;
 import org.eclipse.cdt.dsf.mi.service.MIRunControl;
 import org.eclipse.cdt.dsf.mi.service.command.events.MIStoppedEvent;
 import org.eclipse.cdt.dsf.service.DsfServiceEventHandler;
@@ -1673,4 +1676,89 @@ public class MIMemoryTest extends BaseTestCase {
 		assertTrue("MemoryChangedEvent problem: expected " + 0 + ", received " + getEventCount(), getEventCount() == 0);
 	}
 
+	// ------------------------------------------------------------------------
+	// memoryCacheLimit
+	// Read memory with a cache that is too small to keep it. The content
+	// must still be correct and the requests be counted as cache misses.
+	// ------------------------------------------------------------------------
+	@Test
+	public void memoryCacheLimit() throws Throwable {
+
+		// Run to the point where the variable is initialized
+		SyncUtil.addBreakpoint("MemoryTestApp.cc:setBlocks", true);
+		SyncUtil.resumeUntilStopped();
+		MIStoppedEvent stoppedEvent = SyncUtil.step(StepType.STEP_RETURN);
+        IFrameDMContext frameDmc = SyncUtil.getStackFrame(stoppedEvent.getDMContext(), 0);
+
+		// Setup call parameters
+		long offset = 0;
+		int word_size = 1;
+		int count = BLOCK_SIZE;
+		fBaseAddress = evaluateExpression(frameDmc, "&charBlock");
+
+		// Read the block twice, the second request is served by the cache
+		long[] before = getCacheStatistics();
+		for (int n = 0; n < 2; n++) {
+			fWait.waitReset();
+			readMemory(fMemoryDmc, fBaseAddress, offset, word_size, count);
+			fWait.waitUntilDone(AsyncCompletionWaitor.WAIT_FOREVER);
+			assertTrue(fWait.getMessage(), fWait.isOK());
+		}
+		long[] after = getCacheStatistics();
+		assertTrue("Wrong number of cache misses: " + (after[1] - before[1]), after[1] - before[1] == 1);
+		assertTrue("Wrong number of cache hits: " + (after[0] - before[0]), after[0] - before[0] == 1);
+		assertTrue("Memory not cached", after[2] >= count);
+
+		long limit = setCacheSizeLimit(0);
+		try {
+			// Drop the cached memory
+			assertTrue("Memory still cached", getCacheStatistics()[2] == 0);
+
+			// Read the block again, it is missing from the memory cache
+			before = after;
+			fWait.waitReset();
+			readMemory(fMemoryDmc, fBaseAddress, offset, word_size, count);
+			fWait.waitUntilDone(AsyncCompletionWaitor.WAIT_FOREVER);
+			assertTrue(fWait.getMessage(), fWait.isOK());
+			MemoryByte[] buffer = (MemoryByte[]) fWait.getReturnInfo();
+
+			// Verify that all bytes are set to 'i'
+			for (int i = 0; i < count; i++) {
+				assertTrue("Wrong value read at offset " + i + ": expected '" + i + "', received '" + buffer[i].getValue() + "'",
+					(buffer[i].getValue() == (byte) i));
+			}
+			after = getCacheStatistics();
+			assertTrue("Wrong number of cache misses: " + (after[1] - before[1]), after[1] - before[1] == 1);
+			assertTrue("Memory still cached", after[2] == 0);
+		} finally {
+			setCacheSizeLimit(limit);
+		}
+	}
+
+	/*
+	 * Returns the number of cache hits, cache misses and the number of bytes cached.
+	 */
+	private long[] getCacheStatistics() throws Exception {
+		return fSession.getExecutor().submit(new Callable<long[]>() {
+			public long[] call() {
+				MIMemory memoryService = (MIMemory) fMemoryService;
+				return new long[] { memoryService.getCacheHitCount(), memoryService.getCacheMissCount(), memoryService.getCacheBytesHeld() };
+			}
+		}).get();
+	}
+
+	/*
+	 * Sets the size limit of the cache and returns the previous one.
+	 */
+	private long setCacheSizeLimit(final long limit) throws Exception {
+		return fSession.getExecutor().submit(new Callable<Long>() {
+			public Long call() {
+				MIMemory memoryService = (MIMemory) fMemoryService;
+				long previous = memoryService.getCacheSizeLimit();
+				memoryService.setCacheSizeLimit(limit);
+				return previous;
+			}
+		}).get();
+	}
+
 }
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.tests.dsf.gdb.tests;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.cdt.debug.core.ICDTLaunchConfigurationConstants;
+import org.eclipse.cdt.dsf.concurrent.CountingRequestMonitor;
+import org.eclipse.cdt.dsf.concurrent.DataRequestMonitor;
+import org.eclipse.cdt.dsf.concurrent.ImmediateExecutor;
+import org.eclipse.cdt.dsf.concurrent.Query;
+import org.eclipse.cdt.dsf.datamodel.DMContexts;
+import org.eclipse.cdt.dsf.debug.service.IRunControl;
+import org.eclipse.cdt.dsf.debug.service.IRunControl.IContainerDMContext;
+import org.eclipse.cdt.dsf.debug.service.IRunControl.IExecutionDMContext;
+import org.eclipse.cdt.dsf.debug.service.IStack;
+import org.eclipse.cdt.dsf.debug.service.IStack.IFrameDMContext;
+import org.eclipse.cdt.dsf.debug.service.IStack.IFrameDMData;
+import org.eclipse.cdt.dsf.gdb.service.command.IGDBControl;
+import org.eclipse.cdt.dsf.mi.service.IMIExecutionDMContext;
+import org.eclipse.cdt.dsf.mi.service.command.events.MIStoppedEvent;
+import org.eclipse.cdt.dsf.mi.service.command.output.MIFrame;
+import org.eclipse.cdt.dsf.mi.service.command.output.MIStackListFramesInfo;
+import org.eclipse.cdt.dsf.service.DsfServicesTracker;
+import org.eclipse.cdt.dsf.service.DsfSession;
+import org.eclipse.cdt.tests.dsf.gdb.framework.BackgroundRunner;
+import org.eclipse.cdt.tests.dsf.gdb.framework.BaseTestCase;
+import org.eclipse.cdt.tests.dsf.gdb.framework.SyncUtil;
+import org.eclipse.cdt.tests.dsf.gdb.launching.TestsPlugin;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests the retrieval of the top frames of several threads by MIStack.  The top frames
+ * requested together are obtained with a single -thread-info, the threads missing in its
+ * answer fall back to -stack-list-frames.
+ */
+@RunWith(BackgroundRunner.class)
+public class MIStackTest extends BaseTestCase {
+
+	/*
+	 * Path to executable
+	 */
+	private static final String EXEC_PATH = "data/launch/bin/";
+	/*
+	 * Name of the executable
+	 */
+	private static final String EXEC_NAME = "MultiThread.exe";
+	private static final String SRC_NAME = "MultiThread.cc";
+
+	// line of the printf in PrintHello() in MultiThread.cc
+	private static final int LINE_THREAD_PRINTF = 25;
+
+	private DsfSession fSession;
+	private DsfServicesTracker fServicesTracker;
+	private IGDBControl fGdbControl;
+	private IStack fStack;
+	private IRunControl fRunControl;
+
+	@Before
+	public void init() throws Exception {
+		fSession = getGDBLaunch().getSession();
+
+		Runnable runnable = new Runnable() {
+			public void run() {
+				fServicesTracker = new DsfServicesTracker(TestsPlugin.getBundleContext(), fSession.getId());
+				fGdbControl = fServicesTracker.getService(IGDBControl.class);
+				fStack = fServicesTracker.getService(IStack.class);
+				fRunControl = fServicesTracker.getService(IRunControl.class);
+			}
+		};
+		fSession.getExecutor().submit(runnable).get();
+	}
+
+	@BeforeClass
+	public static void beforeClassMethod() {
+		setLaunchAttribute(ICDTLaunchConfigurationConstants.ATTR_PROGRAM_NAME,
+				           EXEC_PATH + EXEC_NAME);
+	}
+
+	@After
+	public void tearDown() {
+		fServicesTracker.dispose();
+	}
+
+	/**
+	 * Requests the top frames of all threads at once.  Except for the thread that reported the
+	 * stop, they are requested with a single -thread-info.  The frames have to match the ones
+	 * reported by -stack-list-frames for each thread.
+	 */
+	@Test
+	public void getTopFramesOfSeveralThreads() throws Throwable {
+		// Stop in the second thread while the first one is still sleeping
+		SyncUtil.runToLocation(SRC_NAME + ":" + LINE_THREAD_PRINTF);
+		MIStoppedEvent stoppedEvent = SyncUtil.runToLocation(SRC_NAME + ":" + LINE_THREAD_PRINTF);
+
+		IContainerDMContext containerDmc = DMContexts.getAncestorOfType(stoppedEvent.getDMContext(), IContainerDMContext.class);
+		IExecutionDMContext[] threads = getExecutionContexts(containerDmc);
+		Assert.assertTrue("Expected at least three threads, got " + threads.length, threads.length >= 3);
+
+		IFrameDMData[] topFrames = getTopFrameData(threads);
+		for (int i = 0; i < threads.length; i++) {
+			Assert.assertNotNull("No top frame for thread " + i, topFrames[i]);
+			MIFrame expected = getTopMIFrame((IMIExecutionDMContext)threads[i]);
+			Assert.assertEquals("Wrong function for thread " + i, expected.getFunction(), topFrames[i].getFunction());
+			Assert.assertEquals("Wrong line for thread " + i, expected.getLine(), topFrames[i].getLine());
+		}
+	}
+
+	/**
+	 * Requests the top frames of the threads together with the one of a thread that does not
+	 * exist.  The latter is not part of the answer to -thread-info and is requested with
+	 * -stack-list-frames, which fails.  This must not affect the other threads.
+	 */
+	@Test
+	public void getTopFrameOfMissingThread() throws Throwable {
+		MIStoppedEvent stoppedEvent = SyncUtil.runToLocation(SRC_NAME + ":" + LINE_THREAD_PRINTF);
+
+		IContainerDMContext containerDmc = DMContexts.getAncestorOfType(stoppedEvent.getDMContext(), IContainerDMContext.class);
+		IExecutionDMContext[] threads = getExecutionContexts(containerDmc);
+		Assert.assertTrue("Expected at least two threads, got " + threads.length, threads.length >= 2);
+
+		IExecutionDMContext[] requested = new IExecutionDMContext[threads.length + 1];
+		System.arraycopy(threads, 0, requested, 0, threads.length);
+		requested[threads.length] = SyncUtil.createExecutionContext(containerDmc, 99);
+
+		IFrameDMData[] topFrames = getTopFrameData(requested);
+		for (int i = 0; i < threads.length; i++) {
+			Assert.assertNotNull("No top frame for thread " + i, topFrames[i]);
+			MIFrame expected = getTopMIFrame((IMIExecutionDMContext)threads[i]);
+			Assert.assertEquals("Wrong function for thread " + i, expected.getFunction(), topFrames[i].getFunction());
+		}
+		Assert.assertNull("Top frame for a thread that does not exist", topFrames[threads.length]);
+	}
+
+	private IExecutionDMContext[] getExecutionContexts(final IContainerDMContext containerDmc) throws Throwable {
+		Query<IExecutionDMContext[]> query = new Query<IExecutionDMContext[]>() {
+			@Override
+			protected void execute(DataRequestMonitor<IExecutionDMContext[]> rm) {
+				fRunControl.getExecutionContexts(containerDmc, rm);
+			}
+		};
+		fSession.getExecutor().execute(query);
+		return query.get(TestsPlugin.massageTimeout(2000), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Requests the data of the top frames of the given threads within a single dispatch cycle
+	 * of the executor.  The entry of a thread is <code>null</code> if its request failed.
+	 */
+	private IFrameDMData[] getTopFrameData(final IExecutionDMContext[] threads) throws Throwable {
+		final IFrameDMData[] result = new IFrameDMData[threads.length];
+		Query<IFrameDMData[]> query = new Query<IFrameDMData[]>() {
+			@Override
+			protected void execute(final DataRequestMonitor<IFrameDMData[]> rm) {
+				// Failures of single threads are recorded as null entries.
+				final CountingRequestMonitor crm = new CountingRequestMonitor(ImmediateExecutor.getInstance(), null) {
+					@Override
+					protected void handleCompleted() {
+						rm.setData(result);
+						rm.done();
+					}
+				};
+				crm.setDoneCount(threads.length);
+				for (int i = 0; i < threads.length; i++) {
+					final int index = i;
+					fStack.getTopFrame(threads[i], new DataRequestMonitor<IFrameDMContext>(ImmediateExecutor.getInstance(), null) {
+						@Override
+						protected void handleCompleted() {
+							if (!isSuccess()) {
+								crm.done();
+								return;
+							}
+							fStack.getFrameData(getData(), new DataRequestMonitor<IFrameDMData>(ImmediateExecutor.getInstance(), null) {
+								@Override
+								protected void handleCompleted() {
+									if (isSuccess()) {
+										result[index] = getData();
+									}
+									crm.done();
+								}
+							});
+						}
+					});
+				}
+			}
+		};
+		fSession.getExecutor().execute(query);
+		return query.get(TestsPlugin.massageTimeout(5000), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the top frame of the thread as reported by -stack-list-frames.
+	 */
+	private MIFrame getTopMIFrame(final IMIExecutionDMContext thread) throws Throwable {
+		Query<MIStackListFramesInfo> query = new Query<MIStackListFramesInfo>() {
+			@Override
+			protected void execute(DataRequestMonitor<MIStackListFramesInfo> rm) {
+				fGdbControl.queueCommand(fGdbControl.getCommandFactory().createMIStackListFrames(thread, 0, 0), rm);
+			}
+		};
+		fSession.getExecutor().execute(query);
+		MIStackListFramesInfo info = query.get(TestsPlugin.massageTimeout(2000), TimeUnit.MILLISECONDS);
+		Assert.assertTrue("No frames for thread " + thread.getThreadId(), info.getMIFrames().length > 0);
+		return info.getMIFrames()[0];
+	}
+}
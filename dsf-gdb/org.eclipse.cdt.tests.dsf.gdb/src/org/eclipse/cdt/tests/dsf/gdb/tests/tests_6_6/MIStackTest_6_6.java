@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) 2011 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.tests.dsf.gdb.tests.tests_6_6;
+
+import org.eclipse.cdt.tests.dsf.gdb.framework.BackgroundRunner;
+import org.eclipse.cdt.tests.dsf.gdb.tests.ITestConstants;
+import org.eclipse.cdt.tests.dsf.gdb.tests.MIStackTest;
+import org.junit.BeforeClass;
+import org.junit.runner.RunWith;
+
+@RunWith(BackgroundRunner.class)
+public class MIStackTest_6_6 extends MIStackTest {
+	@BeforeClass
+	public static void beforeClassMethod_6_6() {
+		setGdbProgramNamesLaunchAttributes(ITestConstants.SUFFIX_GDB_6_6);
+	}
+}
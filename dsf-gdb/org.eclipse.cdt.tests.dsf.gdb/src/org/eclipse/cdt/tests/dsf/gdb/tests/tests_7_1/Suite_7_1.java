@@ -27,6 +27,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	// We need specific name for the tests of this suite, because of bug https://bugs.eclipse.org/172256
 	MIRegistersTest_7_1.class,
+	MIStackTest_7_1.class,
 	MIRunControlTest_7_1.class,
 	MIRunControlTargetAvailableTest_7_1.class,
 	MIRunControlNonStopTargetAvailableTest_7_1.class,
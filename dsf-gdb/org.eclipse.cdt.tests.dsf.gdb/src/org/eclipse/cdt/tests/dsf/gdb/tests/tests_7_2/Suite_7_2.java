@@ -27,6 +27,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	// We need specific name for the tests of this suite, because of bug https://bugs.eclipse.org/172256
 	MIRegistersTest_7_2.class,
+	MIStackTest_7_2.class,
 	MIRunControlTest_7_2.class,
 	MIRunControlTargetAvailableTest_7_2.class,
 	MIRunControlNonStopTargetAvailableTest_7_2.class,